@@ -0,0 +1,113 @@
+package com.example.gaanesuno;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Preamp, {@link ParametricEqualizer} and a peak limiter, in that order, on interleaved PCM:
+ * float blocks, or 16-bit blocks in a (direct) ByteBuffer, converted through a scratch array.
+ *
+ * <p>Everything is allocated in the constructor; setting a preset and processing a block
+ * allocate nothing, so the chain can run on an audio callback thread.</p>
+ *
+ * <p>The limiter keeps every sample at or below {@link #CEILING}: a frame that would go over
+ * lowers the gain at once, and the gain recovers over {@link #RELEASE_MS} so the music
+ * doesn't pump. Boosting presets lower the preamp, so it rarely has to.</p>
+ */
+public final class AudioEffectsChain {
+
+    public static final float CEILING = 0.98f; // About -0.2 dBFS
+    public static final float RELEASE_MS = 100;
+    private static final float PCM16_SCALE = 32768f;
+
+    private final int channels;
+    private final int maxFrames;
+    private final ParametricEqualizer equalizer;
+    private final float[] scratch; // maxFrames frames, for 16-bit blocks
+    private final float releaseCoefficient; // Per frame
+    private float preampGain = 1.0f;
+    private float limiterGain = 1.0f;
+    private long limitedFrames;
+
+    /** A chain for blocks of up to {@code maxFrames} frames; longer 16-bit blocks are done in parts. */
+    public AudioEffectsChain(int bandCount, int channels, int sampleRate, int maxFrames) {
+        this.channels = channels;
+        this.maxFrames = maxFrames;
+        this.equalizer = new ParametricEqualizer(bandCount, channels, sampleRate);
+        this.scratch = new float[maxFrames * channels];
+        this.releaseCoefficient = (float) Math.exp(-1.0 / (RELEASE_MS / 1000 * sampleRate));
+    }
+
+    public void setPreset(EqualizerPreset preset) {
+        preset.applyTo(equalizer);
+        preampGain = (float) Math.pow(10, preset.getPreampDb() / 20);
+    }
+
+    public ParametricEqualizer getEqualizer() {
+        return equalizer;
+    }
+
+    /** Frames the limiter has turned down so far. */
+    public long getLimitedFrames() {
+        return limitedFrames;
+    }
+
+    /** Clears the filter state and the limiter, e.g. before a song that doesn't continue the last one. */
+    public void reset() {
+        equalizer.reset();
+        limiterGain = 1.0f;
+    }
+
+    /** Processes {@code frames} interleaved float frames starting at {@code offset}, in place. */
+    public void process(float[] samples, int offset, int frames) {
+        equalizer.process(samples, offset, frames);
+        limit(samples, offset, frames);
+    }
+
+    /**
+     * Processes {@code frames} interleaved 16-bit frames from the buffer's position, in place,
+     * in the buffer's byte order. The position is left where it was.
+     */
+    public void processPcm16(ByteBuffer pcm, int frames) {
+        int base = pcm.position();
+        for (int done = 0; done < frames; done += maxFrames) {
+            int count = Math.min(maxFrames, frames - done);
+            int samples = count * channels;
+            int byteOffset = base + done * channels * 2;
+            for (int i = 0; i < samples; i++) {
+                scratch[i] = pcm.getShort(byteOffset + i * 2) / PCM16_SCALE;
+            }
+            process(scratch, 0, count);
+            for (int i = 0; i < samples; i++) {
+                // The limiter keeps samples under 1.0, so this doesn't overflow
+                pcm.putShort(byteOffset + i * 2, (short) Math.round(scratch[i] * PCM16_SCALE));
+            }
+        }
+    }
+
+    /** Applies the preamp and holds each frame's peak at or below the ceiling. */
+    private void limit(float[] samples, int offset, int frames) {
+        float gain = limiterGain;
+        float preamp = preampGain;
+        float release = releaseCoefficient;
+        int end = offset + frames * channels;
+        for (int frame = offset; frame < end; frame += channels) {
+            float peak = 0;
+            for (int i = frame; i < frame + channels; i++) {
+                peak = Math.max(peak, Math.abs(samples[i]));
+            }
+            peak *= preamp;
+            float target = peak > CEILING ? CEILING / peak : 1.0f;
+            if (target < gain) {
+                gain = target; // Instant attack: no sample gets over the ceiling
+                limitedFrames++;
+            } else {
+                gain = target + (gain - target) * release;
+            }
+            float frameGain = preamp * gain;
+            for (int i = frame; i < frame + channels; i++) {
+                samples[i] *= frameGain;
+            }
+        }
+        limiterGain = gain;
+    }
+}
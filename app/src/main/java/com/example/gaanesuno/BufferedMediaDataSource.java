@@ -0,0 +1,123 @@
+package com.example.gaanesuno;
+
+import android.content.Context;
+import android.media.MediaDataSource;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Feeds MediaPlayer from a {@link ReadAheadBuffer} instead of letting it read through the
+ * content provider on demand. The file is opened once and memory-mapped when the system
+ * allows it, otherwise read with positional reads on its channel.
+ */
+public class BufferedMediaDataSource extends MediaDataSource {
+
+    private static final String TAG = "BufferedMediaDataSource";
+
+    private final ReadAheadBuffer buffer;
+
+    public BufferedMediaDataSource(Context context, Uri uri, int capacity) throws IOException {
+        ParcelFileDescriptor descriptor = context.getContentResolver().openFileDescriptor(uri, "r");
+        if (descriptor == null) throw new FileNotFoundException("No file for " + uri);
+        ReadAheadBuffer.Source source = open(descriptor);
+        try {
+            buffer = new ReadAheadBuffer(source, capacity, ReadAheadStats.getInstance());
+        } catch (IOException e) {
+            source.close();
+            throw e;
+        }
+    }
+
+    private static ReadAheadBuffer.Source open(ParcelFileDescriptor descriptor) throws IOException {
+        FileInputStream in = new ParcelFileDescriptor.AutoCloseInputStream(descriptor);
+        FileChannel channel = in.getChannel();
+        try {
+            long size = channel.size();
+            if (size <= Integer.MAX_VALUE) {
+                return new MappedSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), in);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Pipes and some FUSE-backed files can't be mapped
+            Log.d(TAG, "Not mapping the file, reading it instead: " + e.getMessage());
+        }
+        return new ChannelSource(channel, in);
+    }
+
+    @Override
+    public int readAt(long position, byte[] bytes, int offset, int size) throws IOException {
+        return buffer.readAt(position, bytes, offset, size);
+    }
+
+    @Override
+    public long getSize() {
+        return buffer.getSize();
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.close(); // Also called by MediaPlayer on reset(); closing twice is harmless
+    }
+
+    private static final class MappedSource implements ReadAheadBuffer.Source {
+        private final ByteBuffer mapped; // Position unused, every read is absolute
+        private final FileInputStream in;
+
+        MappedSource(MappedByteBuffer mapped, FileInputStream in) {
+            this.mapped = mapped;
+            this.in = in;
+        }
+
+        @Override
+        public long size() {
+            return mapped.capacity();
+        }
+
+        @Override
+        public int read(long position, byte[] buffer, int offset, int length) {
+            if (position >= mapped.capacity()) return -1;
+            int count = (int) Math.min(length, mapped.capacity() - position);
+            ByteBuffer view = mapped.duplicate(); // An absolute bulk get() needs API 35
+            view.position((int) position);
+            view.get(buffer, offset, count);
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close(); // The mapping stays valid until it's collected
+        }
+    }
+
+    private static final class ChannelSource implements ReadAheadBuffer.Source {
+        private final FileChannel channel;
+        private final FileInputStream in;
+
+        ChannelSource(FileChannel channel, FileInputStream in) {
+            this.channel = channel;
+            this.in = in;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+            return channel.read(ByteBuffer.wrap(buffer, offset, length), position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
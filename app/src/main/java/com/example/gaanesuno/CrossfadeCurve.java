@@ -0,0 +1,49 @@
+package com.example.gaanesuno;
+
+/**
+ * Timing and gain math for crossfading from one song into the next.
+ *
+ * <p>Gains follow an equal-power curve (cosine out, sine in), so the sum of the two songs
+ * keeps the same loudness through the fade instead of dipping in the middle like a linear
+ * fade does. Gains are computed from the time elapsed since the fade started, never
+ * accumulated step by step, so a late step lands on the right value.</p>
+ */
+public final class CrossfadeCurve {
+
+    public static final int MIN_SECONDS = 1;
+    public static final int MAX_SECONDS = 12;
+
+    /** Below this little remaining time a fade isn't worth it; the songs are linked gaplessly. */
+    public static final long MIN_FADE_MS = 500;
+
+    private CrossfadeCurve() {
+    }
+
+    /**
+     * Length of the fade between two songs: the configured length, but at most half of
+     * either song so a short song is still heard on its own.
+     */
+    public static long fadeLength(long crossfadeMs, long currentDurationMs, long nextDurationMs) {
+        return Math.max(0, Math.min(crossfadeMs, Math.min(currentDurationMs, nextDurationMs) / 2));
+    }
+
+    /** Milliseconds from now until the fade should start, so it ends with the current song; 0 if already due. */
+    public static long startDelay(long currentDurationMs, long positionMs, long fadeMs) {
+        return Math.max(0, currentDurationMs - positionMs - fadeMs);
+    }
+
+    /** Gain of the outgoing song after {@code elapsedMs} of a {@code fadeMs} fade, 1 down to 0. */
+    public static float gainOut(long elapsedMs, long fadeMs) {
+        return (float) Math.cos(progress(elapsedMs, fadeMs) * Math.PI / 2);
+    }
+
+    /** Gain of the incoming song after {@code elapsedMs} of a {@code fadeMs} fade, 0 up to 1. */
+    public static float gainIn(long elapsedMs, long fadeMs) {
+        return (float) Math.sin(progress(elapsedMs, fadeMs) * Math.PI / 2);
+    }
+
+    private static double progress(long elapsedMs, long fadeMs) {
+        if (fadeMs <= 0) return 1;
+        return Math.max(0, Math.min(1, (double) elapsedMs / fadeMs));
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.gaanesuno;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Runs crossfades for MusicService on its own audio-priority thread: starts the incoming
+ * engine at the scheduled time and ramps both volumes along {@link CrossfadeCurve}.
+ *
+ * <p>The ramp doesn't share the main thread, so a busy UI can't delay or bunch up steps.
+ * Steps are posted at fixed times from the start of the fade rather than "20 ms after the
+ * last one", and each step computes its gains from the actual elapsed time, so a late step
+ * doesn't shift the rest of the fade.</p>
+ *
+ * <p>Every access to the players happens under a lock. After {@link #cancel()} returns this
+ * thread won't touch them again, so the service can reset or swap them right away.</p>
+ */
+public class CrossfadeScheduler implements PlaybackController.Crossfader {
+
+    private static final String TAG = "CrossfadeScheduler";
+    private static final long STEP_MS = 20; // 50 volume steps per second, smooth to the ear
+    private static final Trace.Point SCHEDULED = Trace.point(TAG, Trace.DEBUG, "Crossfade {} scheduled in {} ms, lasting {} ms");
+
+    /** Called on the callback handler's thread when a fade has reached its end. */
+    public interface Listener {
+        void onCrossfadeFinished(int token);
+    }
+
+    private final HandlerThread thread;
+    private final Handler rampHandler;
+    private final Handler callbackHandler;
+    private final Listener listener;
+    private final Object lock = new Object();
+    private final Runnable startFadeRunnable = this::startFade;
+    private final Runnable stepRunnable = this::step; // Posted 50 times a second, not re-created each time
+
+    // The scheduled or running fade, guarded by lock
+    private PlaybackEngine outgoing;
+    private PlaybackEngine incoming;
+    private long startUptimeMs;
+    private long fadeMs;
+    private int token;
+    private boolean started; // The incoming player was started; stays set after the ramp ends, until cancel()
+    private float volume = 1.0f; // Upper bound for both gains, lowered while ducking
+
+    public CrossfadeScheduler(Listener listener, Handler callbackHandler) {
+        this.listener = listener;
+        this.callbackHandler = callbackHandler;
+        thread = new HandlerThread("CrossfadeRamp", Process.THREAD_PRIORITY_AUDIO);
+        thread.start();
+        rampHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Schedules a fade from {@code from} (playing) into {@code to} (prepared, not started)
+     * that starts in {@code delayMs} and lasts {@code fadeMs}. Replaces any other fade.
+     * Returns the token passed to {@link Listener#onCrossfadeFinished} for this fade.
+     */
+    @Override
+    public int schedule(PlaybackEngine from, PlaybackEngine to, long delayMs, long fadeMs) {
+        synchronized (lock) {
+            rampHandler.removeCallbacksAndMessages(null);
+            this.outgoing = from;
+            this.incoming = to;
+            this.fadeMs = fadeMs;
+            this.startUptimeMs = SystemClock.uptimeMillis() + delayMs;
+            this.started = false;
+            token++;
+            rampHandler.postAtTime(startFadeRunnable, startUptimeMs);
+            SCHEDULED.log(token, delayMs, fadeMs);
+            return token;
+        }
+    }
+
+    /**
+     * Stops the scheduled or running fade, or acknowledges a finished one. Returns true if
+     * the incoming player had been started: unless the caller is handing over to it, it has
+     * to stop it and restore the volumes.
+     */
+    @Override
+    public boolean cancel() {
+        synchronized (lock) {
+            rampHandler.removeCallbacksAndMessages(null);
+            boolean wasStarted = started;
+            outgoing = null;
+            incoming = null;
+            started = false;
+            return wasStarted;
+        }
+    }
+
+    /** True once the incoming song has started, until the fade is cancelled or acknowledged. */
+    @Override
+    public boolean isFading() {
+        synchronized (lock) {
+            return started;
+        }
+    }
+
+    /** Scales the fade for ducking; takes effect from the next step. */
+    @Override
+    public void setVolume(float volume) {
+        synchronized (lock) {
+            this.volume = volume;
+        }
+    }
+
+    public void quit() {
+        cancel();
+        thread.quitSafely();
+    }
+
+    private void startFade() {
+        synchronized (lock) {
+            if (incoming == null || started) return; // Cancelled meanwhile
+            try {
+                incoming.setVolume(0f);
+                incoming.start();
+                started = true;
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "Could not start the incoming player: " + e.getMessage());
+                outgoing = null;
+                incoming = null;
+                return;
+            }
+        }
+        step();
+    }
+
+    private void step() {
+        int finishedToken;
+        synchronized (lock) {
+            if (outgoing == null) return; // Cancelled meanwhile
+            long elapsed = SystemClock.uptimeMillis() - startUptimeMs;
+            float out = CrossfadeCurve.gainOut(elapsed, fadeMs) * volume;
+            float in = CrossfadeCurve.gainIn(elapsed, fadeMs) * volume;
+            try {
+                outgoing.setVolume(out);
+                incoming.setVolume(in);
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "Volume step failed: " + e.getMessage()); // The outgoing song may just have ended
+            }
+            if (elapsed < fadeMs) {
+                // Next step on the fixed grid, however late this one ran
+                long nextStep = (elapsed / STEP_MS + 1) * STEP_MS;
+                rampHandler.postAtTime(stepRunnable, startUptimeMs + Math.min(nextStep, fadeMs));
+                return;
+            }
+            outgoing = null; // The ramp is done; started stays set until the service takes over
+            incoming = null;
+            finishedToken = token;
+        }
+        callbackHandler.post(() -> listener.onCrossfadeFinished(finishedToken));
+    }
+}
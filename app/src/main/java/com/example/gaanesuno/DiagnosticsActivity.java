@@ -0,0 +1,109 @@
+package com.example.gaanesuno;
+
+import android.net.Uri;
+import android.os.Bundle;
+import android.util.Log;
+import android.widget.Button;
+import android.widget.ImageButton;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Hidden screen (long-press the settings button in MainActivity) showing how long each stage
+ * of starting a song takes, per file type, with a JSON export for comparing devices, and
+ * how often buffered reading ran dry and how many seeks each seek bar drag cost. The recent
+ * {@link Trace} events can be saved as a text file.
+ */
+public class DiagnosticsActivity extends AppCompatActivity {
+
+    private static final String TAG = "DiagnosticsActivity";
+
+    private final PlaybackLatencyTracker latencyTracker = PlaybackLatencyTracker.getInstance();
+    private final ReadAheadStats readAheadStats = ReadAheadStats.getInstance();
+    private final SeekStats seekStats = SeekStats.getInstance();
+    private final NotificationStats notificationStats = NotificationStats.getInstance();
+    private TextView tvReport;
+
+    // Lets the user pick where the JSON goes; no storage permission needed
+    private final ActivityResultLauncher<String> exportLauncher =
+            registerForActivityResult(new ActivityResultContracts.CreateDocument("application/json"), this::exportTo);
+    private final ActivityResultLauncher<String> traceLauncher =
+            registerForActivityResult(new ActivityResultContracts.CreateDocument("text/plain"), this::saveTraceTo);
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_diagnostics);
+
+        tvReport = findViewById(R.id.tv_diagnostics_report);
+        ImageButton btnBack = findViewById(R.id.btn_diagnostics_back);
+        Button btnExport = findViewById(R.id.btn_export_diagnostics);
+        Button btnReset = findViewById(R.id.btn_reset_diagnostics);
+        Button btnTrace = findViewById(R.id.btn_save_trace);
+
+        btnBack.setOnClickListener(v -> finish());
+        btnExport.setOnClickListener(v -> exportLauncher.launch("gaanesuno-playback-latency.json"));
+        btnTrace.setOnClickListener(v -> traceLauncher.launch("gaanesuno-trace.txt"));
+        btnReset.setOnClickListener(v -> {
+            latencyTracker.reset();
+            readAheadStats.reset();
+            seekStats.reset();
+            notificationStats.reset();
+            Trace.getBuffer().clear();
+            showReport();
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showReport(); // Songs may have been played since the screen was last shown
+    }
+
+    private void showReport() {
+        tvReport.setText("Time per stage of starting a song, from the previous stage.\n"
+                + "TOTAL is tap (or play request) to first progress update.\n\n"
+                + latencyTracker.toText()
+                + "\nBuffered reading (Settings > Buffered Reading)\n"
+                + readAheadStats.toText()
+                + "\nSeek bar\n"
+                + seekStats.toText()
+                + "\nNotification\n"
+                + notificationStats.toText()
+                + "\nTrace\n"
+                + Trace.getBuffer().getWritten() + " events traced, the last "
+                + Trace.getBuffer().getCapacity() + " can be saved\n");
+    }
+
+    private void saveTraceTo(Uri uri) {
+        if (uri == null) return; // Cancelled
+        try (OutputStream out = getContentResolver().openOutputStream(uri)) {
+            if (out == null) throw new IOException("No output stream for " + uri);
+            out.write(Trace.dump().getBytes(StandardCharsets.UTF_8));
+            Toast.makeText(this, "Trace saved.", Toast.LENGTH_SHORT).show();
+        } catch (IOException e) {
+            Log.e(TAG, "Saving the trace failed: " + e.getMessage(), e);
+            Toast.makeText(this, "Saving the trace failed: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void exportTo(Uri uri) {
+        if (uri == null) return; // Cancelled
+        try (OutputStream out = getContentResolver().openOutputStream(uri)) {
+            if (out == null) throw new IOException("No output stream for " + uri);
+            out.write(latencyTracker.toJson().getBytes(StandardCharsets.UTF_8));
+            Toast.makeText(this, "Diagnostics exported.", Toast.LENGTH_SHORT).show();
+        } catch (IOException e) {
+            Log.e(TAG, "Export failed: " + e.getMessage(), e);
+            Toast.makeText(this, "Export failed: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.gaanesuno;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A named equalizer setting: a preamp gain and a gain for each of five bands, a low shelf,
+ * three peaks and a high shelf. The band centres are the ones of the platform's default
+ * five-band equalizer, so a preset maps onto it with little error.
+ */
+public final class EqualizerPreset {
+
+    private static final double[] FREQUENCIES_HZ = {60, 230, 910, 3_600, 14_000};
+    private static final double SHELF_Q = 0.707; // Steepest slope without a bump
+    private static final double PEAK_Q = 0.7; // About two octaves wide, the spacing of the bands
+
+    public static final EqualizerPreset FLAT = new EqualizerPreset("Flat", 0, 0, 0, 0, 0, 0);
+    // Boosts are balanced by a lower preamp so they don't just run into the limiter
+    public static final EqualizerPreset BASS_BOOST = new EqualizerPreset("Bass Boost", -4, 6, 3, 0, 0, 0);
+    public static final EqualizerPreset VOCAL = new EqualizerPreset("Vocal", -2, -2, -1, 3, 3, 0);
+    public static final EqualizerPreset TREBLE_BOOST = new EqualizerPreset("Treble Boost", -4, 0, 0, 0, 3, 6);
+    public static final EqualizerPreset ROCK = new EqualizerPreset("Rock", -3, 4, 2, -1, 2, 4);
+    public static final EqualizerPreset LATE_NIGHT = new EqualizerPreset("Late Night", 0, -4, -1, 1, 0, -3);
+
+    /** The presets offered in the Equalizer dialog, Flat first. */
+    public static final List<EqualizerPreset> PRESETS = Collections.unmodifiableList(Arrays.asList(
+            FLAT, BASS_BOOST, VOCAL, TREBLE_BOOST, ROCK, LATE_NIGHT));
+
+    private final String name;
+    private final double preampDb;
+    private final double[] gainsDb;
+
+    private EqualizerPreset(String name, double preampDb, double... gainsDb) {
+        this.name = name;
+        this.preampDb = preampDb;
+        this.gainsDb = gainsDb;
+    }
+
+    /** The preset with this name, or Flat if there is none (e.g. a name saved by an older version). */
+    public static EqualizerPreset byName(String name) {
+        for (EqualizerPreset preset : PRESETS) {
+            if (preset.name.equals(name)) return preset;
+        }
+        return FLAT;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getPreampDb() {
+        return preampDb;
+    }
+
+    public int getBandCount() {
+        return gainsDb.length;
+    }
+
+    public double getFrequencyHz(int band) {
+        return FREQUENCIES_HZ[band];
+    }
+
+    public double getGainDb(int band) {
+        return gainsDb[band];
+    }
+
+    public boolean isFlat() {
+        if (preampDb != 0) return false;
+        for (double gain : gainsDb) {
+            if (gain != 0) return false;
+        }
+        return true;
+    }
+
+    /** Sets the bands of {@code equalizer}, which needs at least {@link #getBandCount} of them. */
+    public void applyTo(ParametricEqualizer equalizer) {
+        int last = gainsDb.length - 1;
+        for (int band = 0; band <= last; band++) {
+            ParametricEqualizer.BandType type = band == 0 ? ParametricEqualizer.BandType.LOW_SHELF
+                    : band == last ? ParametricEqualizer.BandType.HIGH_SHELF
+                    : ParametricEqualizer.BandType.PEAK;
+            double q = type == ParametricEqualizer.BandType.PEAK ? PEAK_Q : SHELF_Q;
+            equalizer.setBand(band, type, FREQUENCIES_HZ[band], gainsDb[band], q);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
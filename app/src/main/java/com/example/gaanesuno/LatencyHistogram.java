@@ -0,0 +1,101 @@
+package com.example.gaanesuno;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in microseconds with log-linear buckets, for the playback
+ * diagnostics.
+ *
+ * <p>Values below 16 µs get a bucket each; above that every power of two is split into
+ * 8 buckets, so a reported value is at most 12.5% off the recorded one, from microseconds
+ * up to hours, in about 300 counters. Recording is one bucket computation and two atomic adds:
+ * no allocation and no lock, so it can be called from any thread on the play path.</p>
+ */
+public final class LatencyHistogram {
+
+    private static final int LINEAR_LIMIT = 16; // Values below this are exact
+    private static final int SUB_BUCKET_BITS = 3; // 8 buckets per power of two
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int FIRST_EXPONENT = 4; // log2(LINEAR_LIMIT)
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + (40 - FIRST_EXPONENT) * SUB_BUCKETS; // Up to 2^40 µs
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLongArray totals = new AtomicLongArray(2); // [0] count, [1] sum of values
+    private volatile long max;
+
+    /** Records one latency; negative values count as 0, huge ones land in the last bucket. */
+    public void record(long micros) {
+        if (micros < 0) micros = 0;
+        counts.incrementAndGet(bucketOf(micros));
+        totals.incrementAndGet(0);
+        totals.addAndGet(1, micros);
+        long currentMax = max;
+        if (micros > currentMax) {
+            max = micros; // A racing larger value can be lost; max is informational
+        }
+    }
+
+    public long getCount() {
+        return totals.get(0);
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /** Mean of the recorded values, exact (not bucketed); 0 when empty. */
+    public long getMean() {
+        long count = totals.get(0);
+        return count == 0 ? 0 : totals.get(1) / count;
+    }
+
+    /**
+     * The value below which {@code percentile} percent of the recordings fall, as the
+     * middle of its bucket (never above the max); 0 when empty.
+     */
+    public long getPercentile(double percentile) {
+        long count = totals.get(0);
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(max, middleOf(bucket));
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            counts.set(bucket, 0);
+        }
+        totals.set(0, 0);
+        totals.set(1, 0);
+        max = 0;
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < LINEAR_LIMIT) return (int) micros;
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        int bucket = LINEAR_LIMIT + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + subBucket;
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+
+    /** Smallest value that falls in this bucket. */
+    static long lowerBoundOf(int bucket) {
+        if (bucket < LINEAR_LIMIT) return bucket;
+        int exponent = FIRST_EXPONENT + (bucket - LINEAR_LIMIT) / SUB_BUCKETS;
+        int subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        return (1L << exponent) + ((long) subBucket << (exponent - SUB_BUCKET_BITS));
+    }
+
+    private static long middleOf(int bucket) {
+        if (bucket < LINEAR_LIMIT) return bucket;
+        long lower = lowerBoundOf(bucket);
+        int exponent = FIRST_EXPONENT + (bucket - LINEAR_LIMIT) / SUB_BUCKETS;
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) / 2;
+    }
+}
@@ -0,0 +1,602 @@
+package com.example.gaanesuno;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Scans the MediaStore audio collection on a background thread and publishes the
+ * results to the main thread in pages, so the first screen of songs can be shown
+ * long before a large library has been fully read.
+ *
+ * <p>When a {@link LibrarySnapshot} from a previous run exists it is shown first and then
+ * reconciled against MediaStore, which only reads the id and DATE_MODIFIED columns plus
+ * the full rows of songs that actually changed.</p>
+ */
+public class LibraryScanner {
+
+    private static final String TAG = "LibraryScanner";
+
+    // The first page is kept small so the list can be drawn as early as possible,
+    // later pages are bigger to keep the number of main-thread hops low.
+    static final int FIRST_PAGE_SIZE = 50;
+    static final int PAGE_SIZE = 500;
+    // SQLite allows at most 999 bound arguments per statement
+    private static final int ID_QUERY_CHUNK = 500;
+
+    // Only the columns Song actually needs (the old query used a null projection)
+    static final String[] PROJECTION = {
+            MediaStore.Audio.Media._ID,
+            MediaStore.Audio.Media.TITLE,
+            MediaStore.Audio.Media.ARTIST,
+            MediaStore.Audio.Media.DURATION,
+            MediaStore.Audio.Media.DATA,
+            MediaStore.Audio.Media.DATE_MODIFIED
+    };
+    static final String[] RECONCILE_PROJECTION = {
+            MediaStore.Audio.Media._ID,
+            MediaStore.Audio.Media.DATE_MODIFIED
+    };
+    static final String SELECTION = MediaStore.Audio.Media.IS_MUSIC + " != 0";
+    static final String SORT_ORDER = MediaStore.Audio.Media.TITLE + " ASC";
+
+    /** Receives scan results. All callbacks are delivered on the main thread. */
+    public interface Callback {
+        /**
+         * Called for every page of songs read from the cursor, in cursor order.
+         * @param library Every song read so far; the new page is at the end.
+         * @param isFirstPage True for the first page of a scan.
+         */
+        void onPageLoaded(SongStore library, boolean isFirstPage);
+
+        /**
+         * Called when reconciling a snapshot found changes. The library replaces everything
+         * delivered through {@link #onPageLoaded} before.
+         */
+        void onLibraryReplaced(SongStore library);
+
+        /** Called once when the scan has finished (not called for cancelled scans). */
+        void onScanFinished(ScanStats stats);
+    }
+
+    /** Receives the result of {@link #sync}, on the main thread. */
+    public interface SyncCallback {
+        /**
+         * @param base The library the sync was computed against.
+         * @param library The updated library, or {@code base} itself if nothing changed.
+         */
+        void onSyncFinished(SongStore base, SongStore library, ScanStats stats);
+    }
+
+    /** Timing metrics for a single scan. */
+    public static class ScanStats {
+        public boolean fromSnapshot; // True if the list was shown from the on-disk snapshot
+        public int rows;
+        public int pages;
+        public int removed;       // Snapshot rows no longer in MediaStore
+        public int changed;       // New or modified rows re-read during reconciliation
+        public int queries;       // Number of provider queries issued
+        public long queryMs;      // Time until the provider (or snapshot file) returned the data
+        public long firstPageMs;  // Time until the first page was handed to the main thread
+        public long totalMs;      // Time for the whole scan, including reconciliation
+
+        @Override
+        public String toString() {
+            return "fromSnapshot=" + fromSnapshot + ", rows=" + rows + ", pages=" + pages
+                    + ", removed=" + removed + ", changed=" + changed + ", queries=" + queries + ", queryMs=" + queryMs
+                    + ", firstPageMs=" + firstPageMs + ", totalMs=" + totalMs;
+        }
+    }
+
+    private final Context context;
+    private final ContentResolver contentResolver;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "LibraryScanner");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    private ScanTask currentTask;
+
+    public LibraryScanner(Context context) {
+        this.context = context.getApplicationContext();
+        this.contentResolver = this.context.getContentResolver();
+    }
+
+    /**
+     * Starts a new full scan. Any scan still running is cancelled first, so only the
+     * newest scan ever delivers callbacks.
+     * @param snapshotFile Where to write the library snapshot afterwards, or null.
+     */
+    public void scan(File snapshotFile, Callback callback) {
+        start(new ScanTask(callback, snapshotFile, false));
+    }
+
+    /**
+     * Shows the library from {@code snapshotFile} if it exists and is valid, then
+     * reconciles it against MediaStore. Falls back to a full scan otherwise.
+     */
+    public void load(File snapshotFile, Callback callback) {
+        start(new ScanTask(callback, snapshotFile, true));
+    }
+
+    /**
+     * Brings {@code library} up to date with MediaStore without a full scan. Runs after any
+     * scan already queued and, unlike scans, isn't cancelled by a newer scan; the caller
+     * checks whether its list still is {@code library} when the result arrives.
+     * @param changedIds Ids MediaStore reported as changed. Only these rows are queried.
+     *                   Null if the changes are unknown, then (id, DATE_MODIFIED) of all
+     *                   songs is compared like when reconciling a snapshot.
+     * @param snapshotFile Snapshot to rewrite if anything changed, or null.
+     */
+    public void sync(SongStore library, long[] changedIds, File snapshotFile, SyncCallback callback) {
+        if (executor.isShutdown()) return;
+        executor.execute(new SyncTask(library, changedIds, snapshotFile, callback));
+    }
+
+    private void start(ScanTask task) {
+        cancel();
+        currentTask = task;
+        executor.execute(task);
+    }
+
+    /** Cancels the running scan, if any. Pending callbacks of that scan are dropped. */
+    public void cancel() {
+        if (currentTask != null) {
+            currentTask.cancel();
+            currentTask = null;
+        }
+    }
+
+    /** Cancels the running scan and stops the worker thread. */
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    /** Work on the scanner thread: cancellation state plus the queries scans and syncs share. */
+    private abstract class Task implements Runnable {
+        final File snapshotFile;
+        final CancellationSignal cancellationSignal = new CancellationSignal();
+        volatile boolean cancelled = false;
+
+        Task(File snapshotFile) {
+            this.snapshotFile = snapshotFile;
+        }
+
+        void cancel() {
+            cancelled = true;
+            cancellationSignal.cancel();
+        }
+
+        /** Reads only (id, DATE_MODIFIED) of every song, enough to find adds, changes and removals. */
+        IdDates queryIdsAndDates(ScanStats stats, int expectedCount) {
+            IdDates result = new IdDates(Math.max(16, expectedCount));
+            Cursor cursor = contentResolver.query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                    RECONCILE_PROJECTION, SELECTION, null, null, cancellationSignal);
+            stats.queries++;
+            if (cursor == null) return null;
+            try {
+                int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
+                int dateModifiedColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATE_MODIFIED);
+                while (!cancelled && cursor.moveToNext()) {
+                    result.add(cursor.getLong(idColumn), cursor.getLong(dateModifiedColumn));
+                }
+            } finally {
+                cursor.close();
+            }
+            return result;
+        }
+
+        /** Reads the full rows of the given songs, in chunks of {@link #ID_QUERY_CHUNK} ids. */
+        Map<Long, Song> querySongsById(long[] ids, ScanStats stats) {
+            Map<Long, Song> result = new HashMap<>();
+            for (int offset = 0; offset < ids.length && !cancelled; offset += ID_QUERY_CHUNK) {
+                int end = Math.min(ids.length, offset + ID_QUERY_CHUNK);
+                StringBuilder selection = new StringBuilder(SELECTION).append(" AND ")
+                        .append(MediaStore.Audio.Media._ID).append(" IN (");
+                String[] args = new String[end - offset];
+                for (int i = offset; i < end; i++) {
+                    selection.append(i == offset ? "?" : ",?");
+                    args[i - offset] = String.valueOf(ids[i]);
+                }
+                selection.append(')');
+
+                Cursor cursor = contentResolver.query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, PROJECTION,
+                        selection.toString(), args, null, cancellationSignal);
+                stats.queries++;
+                if (cursor == null) continue;
+                try {
+                    int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
+                    int titleColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.TITLE);
+                    int artistColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ARTIST);
+                    int durationColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DURATION);
+                    int dataColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATA);
+                    int dateModifiedColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATE_MODIFIED);
+                    while (cursor.moveToNext()) {
+                        long id = cursor.getLong(idColumn);
+                        result.put(id, new Song(id, cursor.getString(titleColumn), cursor.getString(artistColumn),
+                                cursor.getLong(durationColumn), cursor.getString(dataColumn),
+                                cursor.getLong(dateModifiedColumn)));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            return result;
+        }
+
+        void writeSnapshot(SongStore library, long generation, String mediaStamp) {
+            if (snapshotFile == null) return;
+            try {
+                library.toSnapshot(generation, mediaStamp).writeTo(snapshotFile);
+                Log.d(TAG, "Library snapshot written: " + library.size() + " songs.");
+            } catch (IOException e) {
+                Log.w(TAG, "Could not write library snapshot: " + e.getMessage());
+            }
+        }
+    }
+
+    private class ScanTask extends Task {
+        private final Callback callback;
+        private final boolean useSnapshot;
+
+        ScanTask(Callback callback, File snapshotFile, boolean useSnapshot) {
+            super(snapshotFile);
+            this.callback = callback;
+            this.useSnapshot = useSnapshot;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) return;
+            ScanStats stats = new ScanStats();
+            long start = SystemClock.elapsedRealtime();
+            try {
+                LibrarySnapshot snapshot = useSnapshot ? readSnapshot() : null;
+                if (snapshot != null) {
+                    stats.fromSnapshot = true;
+                    reconcile(snapshot, stats, start);
+                } else {
+                    fullScan(stats, start);
+                }
+            } catch (OperationCanceledException e) {
+                Log.d(TAG, "Scan cancelled after " + stats.rows + " rows.");
+                return;
+            } catch (SecurityException e) {
+                Log.e(TAG, "No permission to read the audio collection: " + e.getMessage());
+            }
+
+            if (cancelled) {
+                Log.d(TAG, "Scan cancelled after " + stats.rows + " rows.");
+                return;
+            }
+            stats.totalMs = SystemClock.elapsedRealtime() - start;
+            if (stats.pages == 0) {
+                stats.firstPageMs = stats.totalMs;
+            }
+            Log.d(TAG, "Scan finished: " + stats);
+            mainHandler.post(() -> {
+                if (!cancelled) {
+                    callback.onScanFinished(stats);
+                }
+            });
+        }
+
+        private void fullScan(ScanStats stats, long start) {
+            String mediaStamp = readMediaStamp();
+            long generation = readGeneration();
+            Cursor cursor = contentResolver.query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, PROJECTION,
+                    SELECTION, null, SORT_ORDER, cancellationSignal);
+            stats.queries++;
+            stats.queryMs = SystemClock.elapsedRealtime() - start;
+            if (cursor == null) return;
+
+            SongStore.Builder builder = new SongStore.Builder(cursor.getCount());
+            try {
+                int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
+                int titleColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.TITLE);
+                int artistColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ARTIST);
+                int durationColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DURATION);
+                int dataColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATA);
+                int dateModifiedColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATE_MODIFIED);
+
+                int pageEnd = FIRST_PAGE_SIZE;
+                int published = 0;
+                while (!cancelled && cursor.moveToNext()) {
+                    // The file path is only kept as a deletion fallback. Checking that the file
+                    // exists for every row was the most expensive part of the old scan, and a
+                    // stale row is already handled by the error-skip logic in MusicService.
+                    builder.add(cursor.getLong(idColumn), cursor.getString(titleColumn),
+                            cursor.getString(artistColumn), cursor.getLong(durationColumn),
+                            cursor.getString(dataColumn), cursor.getLong(dateModifiedColumn));
+                    stats.rows++;
+
+                    if (builder.size() >= pageEnd) {
+                        // Stores from the builder share the rows already read, this doesn't copy
+                        publishPage(builder.build(), stats, start);
+                        published = builder.size();
+                        pageEnd += PAGE_SIZE;
+                    }
+                }
+                if (builder.size() > published && !cancelled) {
+                    publishPage(builder.build(), stats, start);
+                }
+            } finally {
+                cursor.close();
+            }
+            if (!cancelled) {
+                writeSnapshot(builder.build(), generation, mediaStamp);
+            }
+        }
+
+        private void reconcile(LibrarySnapshot snapshot, ScanStats stats, long start) {
+            SongStore library = SongStore.fromSnapshot(snapshot);
+            stats.queryMs = SystemClock.elapsedRealtime() - start;
+            stats.rows = library.size();
+            publishPage(library, stats, start);
+
+            String mediaStamp = readMediaStamp();
+            long generation = readGeneration();
+            if (mediaStamp != null && mediaStamp.equals(snapshot.getMediaStoreVersion())
+                    && generation == snapshot.getGeneration()) {
+                // Nothing in MediaStore changed since the snapshot was written (API 30+)
+                Log.d(TAG, "reconcile: MediaStore generation unchanged (" + generation + "), skipping.");
+                return;
+            }
+
+            IdDates current = queryIdsAndDates(stats, snapshot.size());
+            if (current == null || cancelled) return;
+
+            LibrarySnapshot.Delta delta = snapshot.diff(current.ids, current.dates, current.count);
+            stats.removed = delta.removedIndexes.length;
+            stats.changed = delta.changedIds.length;
+            if (delta.isEmpty()) {
+                // Still rewrite so the next launch can take the generation fast path
+                writeSnapshot(library, generation, mediaStamp);
+                return;
+            }
+
+            Map<Long, Song> changedSongs = querySongsById(delta.changedIds, stats);
+            if (cancelled) return;
+            SongStore merged = merge(library, delta.removedIndexes, changedSongs);
+            stats.rows = merged.size();
+            mainHandler.post(() -> {
+                if (!cancelled) {
+                    callback.onLibraryReplaced(merged);
+                }
+            });
+            writeSnapshot(merged, generation, mediaStamp);
+        }
+
+        private LibrarySnapshot readSnapshot() {
+            if (snapshotFile == null || !snapshotFile.exists()) {
+                return null;
+            }
+            try {
+                return LibrarySnapshot.readFrom(snapshotFile);
+            } catch (LibrarySnapshot.CorruptSnapshotException e) {
+                Log.w(TAG, "Library snapshot is corrupt (" + e.getMessage() + "), falling back to a full scan.");
+                snapshotFile.delete();
+            } catch (IOException e) {
+                Log.w(TAG, "Could not read library snapshot, falling back to a full scan: " + e.getMessage());
+            }
+            return null;
+        }
+
+        private void publishPage(SongStore library, ScanStats stats, long start) {
+            boolean isFirstPage = stats.pages == 0;
+            if (isFirstPage) {
+                stats.firstPageMs = SystemClock.elapsedRealtime() - start;
+            }
+            stats.pages++;
+            mainHandler.post(() -> {
+                if (!cancelled) {
+                    callback.onPageLoaded(library, isFirstPage);
+                }
+            });
+        }
+    }
+
+    /** Applies MediaStore changes to an already loaded library, see {@link #sync}. */
+    private class SyncTask extends Task {
+        private final SongStore base;
+        private final long[] changedIds;
+        private final SyncCallback callback;
+
+        SyncTask(SongStore base, long[] changedIds, File snapshotFile, SyncCallback callback) {
+            super(snapshotFile);
+            this.base = base;
+            this.changedIds = changedIds;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            ScanStats stats = new ScanStats();
+            long start = SystemClock.elapsedRealtime();
+            SongStore library = base;
+            try {
+                String mediaStamp = readMediaStamp();
+                long generation = readGeneration();
+                int[] removedIndexes;
+                Map<Long, Song> changedSongs;
+                if (changedIds == null) {
+                    // Unknown changes: compare (id, DATE_MODIFIED) of everything, like a reconcile
+                    IdDates current = queryIdsAndDates(stats, base.size());
+                    if (current == null) {
+                        Log.w(TAG, "sync: the audio collection query returned no cursor.");
+                        removedIndexes = new int[0];
+                        changedSongs = new HashMap<>();
+                    } else {
+                        LibrarySnapshot.Delta delta = base.diff(current.ids, current.dates, current.count);
+                        removedIndexes = delta.removedIndexes;
+                        changedSongs = querySongsById(delta.changedIds, stats);
+                    }
+                } else {
+                    // Only the reported songs: found ones are new or updated, missing ones were removed
+                    changedSongs = querySongsById(changedIds, stats);
+                    removedIndexes = missingIndexes(base, changedIds, changedSongs);
+                }
+                stats.queryMs = SystemClock.elapsedRealtime() - start;
+                stats.removed = removedIndexes.length;
+                stats.changed = changedSongs.size();
+                if (removedIndexes.length > 0 || !changedSongs.isEmpty()) {
+                    library = merge(base, removedIndexes, changedSongs);
+                    writeSnapshot(library, generation, mediaStamp);
+                }
+            } catch (SecurityException e) {
+                Log.e(TAG, "No permission to read the audio collection: " + e.getMessage());
+            }
+            stats.rows = library.size();
+            stats.totalMs = SystemClock.elapsedRealtime() - start;
+            Log.d(TAG, "Sync finished (" + (changedIds == null ? "all" : changedIds.length) + " ids): " + stats);
+            SongStore result = library;
+            mainHandler.post(() -> callback.onSyncFinished(base, result, stats));
+        }
+    }
+
+    /** Rows of {@code library} whose id was asked for but not returned, in ascending order. */
+    private static int[] missingIndexes(SongStore library, long[] requestedIds, Map<Long, Song> found) {
+        int[] indexes = new int[requestedIds.length];
+        int count = 0;
+        for (long id : requestedIds) {
+            int row = found.containsKey(id) ? -1 : library.indexOfId(id);
+            if (row != -1) {
+                indexes[count++] = row;
+            }
+        }
+        indexes = Arrays.copyOf(indexes, count);
+        Arrays.sort(indexes);
+        return indexes;
+    }
+
+    /** Growable (id, DATE_MODIFIED) columns. */
+    private static final class IdDates {
+        long[] ids;
+        long[] dates;
+        int count;
+
+        IdDates(int capacity) {
+            ids = new long[capacity];
+            dates = new long[capacity];
+        }
+
+        void add(long id, long date) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+                dates = Arrays.copyOf(dates, count * 2);
+            }
+            ids[count] = id;
+            dates[count] = date;
+            count++;
+        }
+    }
+
+    /**
+     * Applies a delta: drops removed rows, replaces changed ones and merges new ones into the
+     * TITLE ASC order of the original query. Untouched rows are copied column by column, no
+     * Song objects are created for them and the library isn't sorted again.
+     * @param removedIndexes Rows to drop, ascending.
+     * @param changedSongs New and modified songs by id. Entries are removed while merging.
+     */
+    private static SongStore merge(SongStore library, int[] removedIndexes, Map<Long, Song> changedSongs) {
+        boolean[] skip = new boolean[library.size()];
+        for (int index : removedIndexes) {
+            skip[index] = true;
+        }
+        Map<Integer, Song> inPlace = new HashMap<>();
+        List<Song> inserts = new ArrayList<>();
+        if (!changedSongs.isEmpty()) {
+            for (int i = 0; i < library.size(); i++) {
+                if (skip[i]) continue;
+                Song changed = changedSongs.remove(library.getId(i));
+                if (changed == null) continue;
+                if (compareTitles(changed.getTitle(), library.getTitle(i)) == 0) {
+                    inPlace.put(i, changed); // Keeps its place in the title order
+                } else {
+                    skip[i] = true; // Retitled, gets merged in again with the new songs
+                    inserts.add(changed);
+                }
+            }
+            inserts.addAll(changedSongs.values());
+            Collections.sort(inserts, (a, b) -> compareTitles(a.getTitle(), b.getTitle()));
+        }
+
+        SongStore.Builder builder = new SongStore.Builder(library.size() + inserts.size());
+        int next = 0;
+        for (int i = 0; i < library.size(); i++) {
+            if (skip[i]) continue;
+            while (next < inserts.size() && compareTitles(inserts.get(next).getTitle(), library.getTitle(i)) < 0) {
+                builder.add(inserts.get(next++));
+            }
+            Song changed = inPlace.get(i);
+            if (changed != null) {
+                builder.add(changed);
+            } else {
+                builder.add(library, i);
+            }
+        }
+        while (next < inserts.size()) {
+            builder.add(inserts.get(next++));
+        }
+        return builder.build();
+    }
+
+    private static int compareTitles(String a, String b) {
+        if (a == null) return b == null ? 0 : -1;
+        if (b == null) return 1;
+        return a.compareToIgnoreCase(b);
+    }
+
+    /**
+     * Sum of the generations of all external volumes (API 30+), or -1. Generations only ever
+     * grow, so for an unchanged set of volumes an equal sum means nothing was modified.
+     */
+    private long readGeneration() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.R) {
+            return -1L;
+        }
+        long generation = 0;
+        for (String volume : MediaStore.getExternalVolumeNames(context)) {
+            generation += MediaStore.getGeneration(context, volume);
+        }
+        return generation;
+    }
+
+    /** The MediaStore version plus the set of external volumes, or null before API 30. */
+    private String readMediaStamp() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.R) {
+            return null;
+        }
+        StringBuilder stamp = new StringBuilder(MediaStore.getVersion(context));
+        Set<String> volumes = MediaStore.getExternalVolumeNames(context);
+        List<String> sorted = new ArrayList<>(volumes);
+        Collections.sort(sorted);
+        for (String volume : sorted) {
+            stamp.append('|').append(volume);
+        }
+        return stamp.toString();
+    }
+}
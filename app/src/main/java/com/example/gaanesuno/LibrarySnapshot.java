@@ -0,0 +1,353 @@
+package com.example.gaanesuno;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary snapshot of the song library, written after a scan and loaded on the
+ * next cold start so the list can be shown before MediaStore has been queried.
+ *
+ * <pre>
+ * int    magic ("GSLS")
+ * int    format version
+ * int    record count
+ * long   MediaStore generation at scan time (-1 if unknown)
+ * string MediaStore version at scan time (may be null)
+ * record[count]: long id, long duration, long dateModified, string title, string artist, string path
+ * long   CRC32 of every byte before it
+ *
+ * string: int byte length (-1 for null) followed by UTF-8 bytes
+ * </pre>
+ */
+public class LibrarySnapshot {
+
+    static final int MAGIC = 0x47534C53; // "GSLS"
+    static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8;
+    private static final int CHECKSUM_SIZE = 8;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    /** Thrown when a snapshot file is truncated, has a bad checksum or an unknown version. */
+    public static class CorruptSnapshotException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public CorruptSnapshotException(String message) {
+            super(message);
+        }
+    }
+
+    private final int count;
+    private final long[] ids;
+    private final String[] titles;
+    private final String[] artists;
+    private final long[] durations;
+    private final String[] paths;
+    private final long[] dateModified; // Seconds, as reported by MediaStore.Audio.Media.DATE_MODIFIED
+    private final long generation;
+    private final String mediaStoreVersion;
+
+    public LibrarySnapshot(int count, long[] ids, String[] titles, String[] artists, long[] durations,
+                           String[] paths, long[] dateModified, long generation, String mediaStoreVersion) {
+        if (ids.length < count || titles.length < count || artists.length < count
+                || durations.length < count || paths.length < count || dateModified.length < count) {
+            throw new IllegalArgumentException("Column arrays shorter than count " + count);
+        }
+        this.count = count;
+        this.ids = ids;
+        this.titles = titles;
+        this.artists = artists;
+        this.durations = durations;
+        this.paths = paths;
+        this.dateModified = dateModified;
+        this.generation = generation;
+        this.mediaStoreVersion = mediaStoreVersion;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public long getId(int index) {
+        return ids[index];
+    }
+
+    public String getTitle(int index) {
+        return titles[index];
+    }
+
+    public String getArtist(int index) {
+        return artists[index];
+    }
+
+    public long getDuration(int index) {
+        return durations[index];
+    }
+
+    public String getPath(int index) {
+        return paths[index];
+    }
+
+    public long getDateModified(int index) {
+        return dateModified[index];
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public String getMediaStoreVersion() {
+        return mediaStoreVersion;
+    }
+
+    // --- Writing ---
+
+    /**
+     * Writes the snapshot to {@code file}. The data goes to a temporary file first and is
+     * renamed into place, so a crash mid-write never leaves a half written snapshot behind.
+     */
+    public void writeTo(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            FileChannel channel = out.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+
+            buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(count).putLong(generation);
+            buffer = putString(buffer, mediaStoreVersion, channel, crc);
+            for (int i = 0; i < count; i++) {
+                buffer = ensureCapacity(buffer, 24, channel, crc);
+                buffer.putLong(ids[i]).putLong(durations[i]).putLong(dateModified[i]);
+                buffer = putString(buffer, titles[i], channel, crc);
+                buffer = putString(buffer, artists[i], channel, crc);
+                buffer = putString(buffer, paths[i], channel, crc);
+            }
+            flush(buffer, channel, crc);
+            buffer.putLong(crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not move snapshot into place: " + file);
+        }
+    }
+
+    private static ByteBuffer putString(ByteBuffer buffer, String value, FileChannel channel, CRC32 crc) throws IOException {
+        if (value == null) {
+            buffer = ensureCapacity(buffer, 4, channel, crc);
+            buffer.putInt(-1);
+            return buffer;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer = ensureCapacity(buffer, 4 + bytes.length, channel, crc);
+        buffer.putInt(bytes.length).put(bytes);
+        return buffer;
+    }
+
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int bytes, FileChannel channel, CRC32 crc) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return buffer;
+        }
+        flush(buffer, channel, crc);
+        if (buffer.capacity() < bytes) {
+            // A single string bigger than the write buffer (very unlikely), grow for this one
+            return ByteBuffer.allocate(bytes);
+        }
+        return buffer;
+    }
+
+    private static void flush(ByteBuffer buffer, FileChannel channel, CRC32 crc) throws IOException {
+        buffer.flip();
+        crc.update(buffer.array(), buffer.arrayOffset(), buffer.limit());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // --- Reading ---
+
+    /**
+     * Memory-maps and decodes a snapshot file.
+     * @throws CorruptSnapshotException If the file is truncated, fails the checksum or has another version.
+     * @throws IOException If the file cannot be read at all.
+     */
+    public static LibrarySnapshot readFrom(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + 4 + CHECKSUM_SIZE || size > Integer.MAX_VALUE) {
+                throw new CorruptSnapshotException("Unexpected snapshot size: " + size);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return decode(buffer, (int) size);
+        }
+    }
+
+    private static LibrarySnapshot decode(ByteBuffer buffer, int size) throws CorruptSnapshotException {
+        int payloadSize = size - CHECKSUM_SIZE;
+        long expectedCrc = buffer.getLong(payloadSize);
+        if (checksum(buffer, payloadSize) != expectedCrc) {
+            throw new CorruptSnapshotException("Checksum mismatch");
+        }
+
+        buffer.position(0);
+        buffer.limit(payloadSize);
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new CorruptSnapshotException("Not a library snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new CorruptSnapshotException("Unsupported snapshot version: " + version);
+            }
+            int count = buffer.getInt();
+            // Every record takes at least 36 bytes, a larger count can only come from a corrupt header
+            if (count < 0 || count > payloadSize / 36) {
+                throw new CorruptSnapshotException("Invalid record count: " + count);
+            }
+            long generation = buffer.getLong();
+            byte[] scratch = new byte[256];
+            String mediaStoreVersion = getString(buffer, scratch);
+
+            long[] ids = new long[count];
+            long[] durations = new long[count];
+            long[] dateModified = new long[count];
+            String[] titles = new String[count];
+            String[] artists = new String[count];
+            String[] paths = new String[count];
+            // Artists repeat a lot in real libraries, decode each distinct one only once
+            Map<String, String> artistPool = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                ids[i] = buffer.getLong();
+                durations[i] = buffer.getLong();
+                dateModified[i] = buffer.getLong();
+                titles[i] = getString(buffer, scratch);
+                String artist = getString(buffer, scratch);
+                if (artist != null) {
+                    String pooled = artistPool.get(artist);
+                    if (pooled == null) {
+                        artistPool.put(artist, artist);
+                    } else {
+                        artist = pooled;
+                    }
+                }
+                artists[i] = artist;
+                paths[i] = getString(buffer, scratch);
+            }
+            if (buffer.hasRemaining()) {
+                throw new CorruptSnapshotException("Trailing bytes after last record");
+            }
+            return new LibrarySnapshot(count, ids, titles, artists, durations, paths, dateModified,
+                    generation, mediaStoreVersion);
+        } catch (java.nio.BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new CorruptSnapshotException("Truncated snapshot");
+        }
+    }
+
+    private static long checksum(ByteBuffer buffer, int length) {
+        // CRC32.update(ByteBuffer) needs API 26, so feed the mapped bytes through a small array
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[8192];
+        ByteBuffer view = buffer.duplicate();
+        view.position(0);
+        view.limit(length);
+        while (view.hasRemaining()) {
+            int n = Math.min(chunk.length, view.remaining());
+            view.get(chunk, 0, n);
+            crc.update(chunk, 0, n);
+        }
+        return crc.getValue();
+    }
+
+    private static String getString(ByteBuffer buffer, byte[] scratch) throws CorruptSnapshotException {
+        int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new CorruptSnapshotException("Invalid string length: " + length);
+        }
+        if (length > scratch.length) {
+            scratch = new byte[length];
+        }
+        buffer.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // --- Reconciliation ---
+
+    /** The difference between a snapshot and the current (id, DATE_MODIFIED) pairs in MediaStore. */
+    public static class Delta {
+        /** Snapshot indexes of songs that are no longer in MediaStore. */
+        public final int[] removedIndexes;
+        /** Ids that are new or whose DATE_MODIFIED changed, and need a full row query. */
+        public final long[] changedIds;
+
+        Delta(int[] removedIndexes, long[] changedIds) {
+            this.removedIndexes = removedIndexes;
+            this.changedIds = changedIds;
+        }
+
+        public boolean isEmpty() {
+            return removedIndexes.length == 0 && changedIds.length == 0;
+        }
+    }
+
+    /**
+     * Compares the snapshot against the id and DATE_MODIFIED columns currently in MediaStore.
+     * Only these two columns have to be read to detect every add, change and removal.
+     * @param currentCount Number of valid entries in the two arrays.
+     */
+    public Delta diff(long[] currentIds, long[] currentDateModified, int currentCount) {
+        return diff(ids, dateModified, count, currentIds, currentDateModified, currentCount);
+    }
+
+    /** Same as {@link #diff(long[], long[], int)} for any (id, DATE_MODIFIED) columns, e.g. a SongStore's. */
+    static Delta diff(long[] ids, long[] dateModified, int count,
+                      long[] currentIds, long[] currentDateModified, int currentCount) {
+        LongIntHashMap indexById = LongIntHashMap.indexOf(ids, count);
+        boolean[] seen = new boolean[count];
+        long[] changed = new long[16];
+        int changedCount = 0;
+        for (int i = 0; i < currentCount; i++) {
+            int index = indexById.get(currentIds[i]);
+            if (index != LongIntHashMap.NO_VALUE) {
+                seen[index] = true;
+                if (dateModified[index] == currentDateModified[i]) {
+                    continue;
+                }
+            }
+            if (changedCount == changed.length) {
+                changed = Arrays.copyOf(changed, changedCount * 2);
+            }
+            changed[changedCount++] = currentIds[i];
+        }
+        List<Integer> removed = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (!seen[i]) {
+                removed.add(i);
+            }
+        }
+        int[] removedIndexes = new int[removed.size()];
+        for (int i = 0; i < removedIndexes.length; i++) {
+            removedIndexes[i] = removed.get(i);
+        }
+        return new Delta(removedIndexes, Arrays.copyOf(changed, changedCount));
+    }
+}
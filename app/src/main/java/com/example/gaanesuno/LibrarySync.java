@@ -0,0 +1,178 @@
+package com.example.gaanesuno;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the loaded library in step with MediaStore while the app is running.
+ *
+ * <p>A {@link ContentObserver} on the audio collection collects the ids of changed songs.
+ * Notifications usually arrive in bursts (copying an album fires one per file, often
+ * several per file), so they are batched: a sync starts once no notification arrived for
+ * {@link #BATCH_WINDOW_MS}, or at the latest {@link #MAX_BATCH_DELAY_MS} after the first
+ * one. Each sync only queries the affected ids and hands a new store to the
+ * {@link Listener}; only one sync runs at a time and changes arriving meanwhile go into
+ * the next batch.</p>
+ *
+ * <p>All methods and callbacks run on the main thread.</p>
+ */
+public class LibrarySync {
+
+    private static final String TAG = "LibrarySync";
+
+    static final long BATCH_WINDOW_MS = 500;
+    static final long MAX_BATCH_DELAY_MS = 2000;
+    // Above this many changed ids one (id, DATE_MODIFIED) pass is cheaper than the id queries
+    static final int MAX_BATCH_IDS = 2000;
+
+    /** Provides the library to sync and receives the result. */
+    public interface Listener {
+        /** The library currently shown, or null while it's still being loaded (changes are kept until {@link #requestSync()}). */
+        SongStore getCurrentLibrary();
+
+        /** Called with the updated library when a sync changed something. */
+        void onLibrarySynced(SongStore library, LibraryScanner.ScanStats stats);
+    }
+
+    private final Context context;
+    private final LibraryScanner scanner;
+    private final File snapshotFile;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final Set<Long> pendingIds = new HashSet<>();
+    private boolean pendingUnknownChange = false; // A notification without an id, everything has to be compared
+    private long firstPendingTime = 0;
+    private boolean syncInFlight = false;
+    private boolean registered = false;
+
+    private final ContentObserver observer = new ContentObserver(handler) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            // On API 30+ the Collection<Uri> overload ends up here once per Uri
+            onMediaChanged(uri);
+        }
+    };
+
+    private final Runnable flushRunnable = this::requestSync;
+
+    public LibrarySync(Context context, LibraryScanner scanner, File snapshotFile, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.scanner = scanner;
+        this.snapshotFile = snapshotFile;
+        this.listener = listener;
+    }
+
+    /** Starts observing the audio collection. Needs the read permission to have been granted. */
+    public void start() {
+        if (registered) return;
+        context.getContentResolver().registerContentObserver(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, true, observer);
+        registered = true;
+        Log.d(TAG, "Observing MediaStore audio changes.");
+    }
+
+    /** Stops observing and forgets pending changes. A sync already running still reports back. */
+    public void stop() {
+        if (!registered) return;
+        context.getContentResolver().unregisterContentObserver(observer);
+        registered = false;
+        handler.removeCallbacks(flushRunnable);
+        pendingIds.clear();
+        pendingUnknownChange = false;
+    }
+
+    private void onMediaChanged(Uri uri) {
+        long id = songIdOf(uri);
+        if (id == -1) {
+            pendingUnknownChange = true;
+        } else {
+            pendingIds.add(id);
+        }
+        long now = SystemClock.uptimeMillis();
+        if (firstPendingTime == 0) {
+            firstPendingTime = now;
+        }
+        // Push the sync back while the burst goes on, but not past the maximum delay
+        handler.removeCallbacks(flushRunnable);
+        long delay = Math.min(BATCH_WINDOW_MS, firstPendingTime + MAX_BATCH_DELAY_MS - now);
+        handler.postDelayed(flushRunnable, Math.max(0, delay));
+    }
+
+    /**
+     * Syncs the pending changes now, if there are any and the library is loaded. Called when
+     * a batch window closes and by the owner once the initial load has finished.
+     */
+    public void requestSync() {
+        handler.removeCallbacks(flushRunnable);
+        if (syncInFlight || (pendingIds.isEmpty() && !pendingUnknownChange)) {
+            return; // Whatever is pending goes out when the running sync reports back
+        }
+        SongStore base = listener.getCurrentLibrary();
+        if (base == null) {
+            return; // Still loading, the owner calls requestSync() when done
+        }
+
+        long[] ids = null;
+        if (!pendingUnknownChange && pendingIds.size() <= MAX_BATCH_IDS) {
+            ids = new long[pendingIds.size()];
+            int i = 0;
+            for (long id : pendingIds) {
+                ids[i++] = id;
+            }
+        }
+        final long[] batchIds = ids;
+        pendingIds.clear();
+        pendingUnknownChange = false;
+        firstPendingTime = 0;
+        syncInFlight = true;
+        Log.d(TAG, "Syncing " + (batchIds == null ? "all songs" : batchIds.length + " changed songs") + ".");
+
+        scanner.sync(base, batchIds, snapshotFile, (syncedBase, library, stats) -> {
+            syncInFlight = false;
+            if (listener.getCurrentLibrary() != syncedBase) {
+                // The list was replaced meanwhile (rescan, deletion), apply the same changes to the new one
+                Log.d(TAG, "Library changed during sync, retrying.");
+                requeue(batchIds);
+            } else if (library != syncedBase) {
+                listener.onLibrarySynced(library, stats);
+            }
+            if (!pendingIds.isEmpty() || pendingUnknownChange) {
+                requestSync();
+            }
+        });
+    }
+
+    private void requeue(long[] ids) {
+        if (ids == null) {
+            pendingUnknownChange = true;
+        } else {
+            for (long id : ids) {
+                pendingIds.add(id);
+            }
+        }
+    }
+
+    /** The song id of an item Uri (.../audio/media/42), or -1 for the collection or anything else. */
+    private static long songIdOf(Uri uri) {
+        if (uri == null) return -1;
+        List<String> segments = uri.getPathSegments();
+        if (segments.isEmpty()) return -1;
+        try {
+            return Long.parseLong(segments.get(segments.size() - 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.gaanesuno;
+
+import java.util.Arrays;
+
+/**
+ * Map from long keys (song ids) to int values (list positions) without boxing.
+ *
+ * <p>Open addressing with linear probing in two parallel primitive arrays, kept at most
+ * half full so a lookup almost always finds its key in the first or second slot. Key 0
+ * marks a free slot and is stored separately, so every long can be used as a key.</p>
+ *
+ * <p>Not thread safe; owners either never change it after building it or guard it themselves.</p>
+ */
+public final class LongIntHashMap {
+
+    /** Returned by {@link #get(long)} for a key that isn't in the map. */
+    public static final int NO_VALUE = -1;
+
+    private static final long FREE_KEY = 0L;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = tableSizeFor(expectedSize);
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /** Builds a map from every key to its index in {@code keys[0..count)}. */
+    public static LongIntHashMap indexOf(long[] keys, int count) {
+        LongIntHashMap map = new LongIntHashMap(count);
+        for (int i = 0; i < count; i++) {
+            map.put(keys[i], i);
+        }
+        return map;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Returns the value for {@code key}, or {@link #NO_VALUE}. */
+    public int get(long key) {
+        if (key == FREE_KEY) {
+            return hasZeroKey ? zeroValue : NO_VALUE;
+        }
+        int slot = slotOf(key);
+        while (true) {
+            long k = keys[slot];
+            if (k == key) {
+                return values[slot];
+            }
+            if (k == FREE_KEY) {
+                return NO_VALUE;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public boolean containsKey(long key) {
+        if (key == FREE_KEY) {
+            return hasZeroKey;
+        }
+        int slot = slotOf(key);
+        while (true) {
+            long k = keys[slot];
+            if (k == key) return true;
+            if (k == FREE_KEY) return false;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /** Maps {@code key} to {@code value}, replacing an earlier value. */
+    public void put(long key, int value) {
+        if (key == FREE_KEY) {
+            if (!hasZeroKey) size++;
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+        int slot = slotOf(key);
+        while (true) {
+            long k = keys[slot];
+            if (k == key) {
+                values[slot] = value;
+                return;
+            }
+            if (k == FREE_KEY) {
+                keys[slot] = key;
+                values[slot] = value;
+                if (++size * 2 > keys.length) {
+                    rehash(keys.length * 2);
+                }
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /** Removes {@code key}, returning its value or {@link #NO_VALUE}. */
+    public int remove(long key) {
+        if (key == FREE_KEY) {
+            if (!hasZeroKey) return NO_VALUE;
+            hasZeroKey = false;
+            size--;
+            return zeroValue;
+        }
+        int slot = slotOf(key);
+        while (true) {
+            long k = keys[slot];
+            if (k == FREE_KEY) {
+                return NO_VALUE;
+            }
+            if (k == key) {
+                int value = values[slot];
+                shiftBack(slot);
+                size--;
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Closes the gap left at {@code slot} by moving later entries of the probe chain back,
+     * so lookups never need tombstones.
+     */
+    private void shiftBack(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != FREE_KEY) {
+            int home = slotOf(keys[next]);
+            // Move the entry if its home slot isn't between the gap and its current slot (cyclically)
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = FREE_KEY;
+    }
+
+    /** Copies the keys into a new array, in no particular order. */
+    public long[] keys() {
+        long[] result = new long[size];
+        int count = 0;
+        if (hasZeroKey) {
+            result[count++] = FREE_KEY;
+        }
+        for (long key : keys) {
+            if (key != FREE_KEY) {
+                result[count++] = key;
+            }
+        }
+        return result;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE_KEY);
+        size = 0;
+        hasZeroKey = false;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key == FREE_KEY) continue;
+            int slot = slotOf(key);
+            while (keys[slot] != FREE_KEY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = oldValues[i];
+        }
+    }
+
+    private int slotOf(long key) {
+        // MediaStore ids are mostly consecutive, spread them over the table (Fibonacci hashing)
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /** Power of two table size that keeps {@code expectedSize} entries at most half full. */
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2L && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.gaanesuno;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures the loudness of every song that isn't in the {@link LoudnessCache} yet, while the
+ * device is charging or idle. MusicService turns each song down to the target level by it
+ * when the song is loaded.
+ *
+ * <p>The work is resumable: results are saved every few songs and when the system stops the
+ * job, and the next run skips every song already cached under its current DATE_MODIFIED.
+ * Two jobs are scheduled, one needing the charger and one needing the device idle, since
+ * JobScheduler can't express "either"; only one of them analyses at a time.</p>
+ */
+public class LoudnessAnalysisService extends JobService {
+
+    private static final String TAG = "LoudnessAnalysis";
+
+    static final String CACHE_FILE = "loudness.cache";
+    private static final int JOB_WHILE_CHARGING = 1_001;
+    private static final int JOB_WHILE_IDLE = 1_002;
+    private static final int SAVE_EVERY_SONGS = 25;
+
+    private static LoudnessCache cache; // Shared with MusicService, see getCache()
+    private static final AtomicBoolean analysing = new AtomicBoolean();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "LoudnessAnalysis");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private volatile boolean stopped;
+
+    /**
+     * Schedules the analysis, e.g. after the library changed. A job that is already scheduled
+     * or running is left alone; rescheduling it would stop it.
+     */
+    public static void schedule(Context context) {
+        JobScheduler scheduler = context.getSystemService(JobScheduler.class);
+        ComponentName service = new ComponentName(context, LoudnessAnalysisService.class);
+        if (scheduler.getPendingJob(JOB_WHILE_CHARGING) == null) {
+            scheduler.schedule(new JobInfo.Builder(JOB_WHILE_CHARGING, service).setRequiresCharging(true).build());
+        }
+        if (scheduler.getPendingJob(JOB_WHILE_IDLE) == null) {
+            scheduler.schedule(new JobInfo.Builder(JOB_WHILE_IDLE, service).setRequiresDeviceIdle(true).build());
+        }
+    }
+
+    /** The process-wide cache, read from disk on first use. */
+    public static synchronized LoudnessCache getCache(Context context) {
+        if (cache == null) {
+            File file = new File(context.getFilesDir(), CACHE_FILE);
+            try {
+                cache = LoudnessCache.readFrom(file);
+                Log.d(TAG, "Loaded loudness of " + cache.size() + " songs");
+            } catch (FileNotFoundException e) {
+                cache = new LoudnessCache();
+            } catch (IOException e) {
+                Log.w(TAG, "Discarding unreadable loudness cache: " + e.getMessage());
+                cache = new LoudnessCache();
+            }
+        }
+        return cache;
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        if (!analysing.compareAndSet(false, true)) {
+            return false; // The other job is already at it
+        }
+        stopped = false;
+        executor.execute(() -> {
+            boolean finished = false;
+            try {
+                finished = analyzeLibrary();
+            } finally {
+                analysing.set(false);
+                jobFinished(params, !finished);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        stopped = true; // The worker saves what it has and the job runs again later
+        return true;
+    }
+
+    @Override
+    public void onDestroy() {
+        stopped = true;
+        executor.shutdown();
+        super.onDestroy();
+    }
+
+    /** Returns true when every song has been analysed, false if stopped first. */
+    private boolean analyzeLibrary() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        SongStore library;
+        try {
+            library = SongStore.fromSnapshot(LibrarySnapshot.readFrom(
+                    new File(getFilesDir(), MainActivity.LIBRARY_SNAPSHOT_FILE)));
+        } catch (IOException e) {
+            Log.w(TAG, "No library snapshot to analyse: " + e.getMessage());
+            return true; // Scheduled again once the library has been scanned
+        }
+
+        LoudnessCache loudness = getCache(this);
+        loudness.retainAll(library);
+        LoudnessAnalyzer analyzer = new LoudnessAnalyzer(this);
+        long startTime = SystemClock.elapsedRealtime();
+        int analysed = 0;
+        int failed = 0;
+        for (int row = 0; row < library.size() && !stopped; row++) {
+            long id = library.getId(row);
+            long modified = library.getDateModified(row);
+            if (loudness.contains(id, modified)) continue;
+
+            Song song = library.get(row);
+            try {
+                LoudnessMeter meter = analyzer.analyze(song, () -> stopped);
+                if (stopped) break;
+                if (meter != null) {
+                    loudness.put(id, modified, (float) meter.getIntegratedLoudness(), meter.getPeak());
+                } else {
+                    loudness.put(id, modified, Float.NaN, 0); // No audio track: left at full volume
+                }
+                analysed++;
+            } catch (IOException e) {
+                // Kept as unmeasurable so it isn't retried until the file changes
+                Log.w(TAG, "Could not analyse " + song.getTitle() + ": " + e.getMessage());
+                loudness.put(id, modified, Float.NaN, 0);
+                failed++;
+            }
+            if ((analysed + failed) % SAVE_EVERY_SONGS == 0) {
+                save(loudness);
+            }
+        }
+        save(loudness);
+        Log.d(TAG, "Analysed " + analysed + " songs (" + failed + " failed) in "
+                + (SystemClock.elapsedRealtime() - startTime) + " ms" + (stopped ? ", stopped" : ""));
+        return !stopped;
+    }
+
+    private void save(LoudnessCache loudness) {
+        try {
+            loudness.writeTo(new File(getFilesDir(), CACHE_FILE));
+        } catch (IOException e) {
+            Log.w(TAG, "Could not save loudness cache: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.gaanesuno;
+
+import android.content.Context;
+import android.media.AudioFormat;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Decodes a song with MediaExtractor and MediaCodec as fast as the codec goes (nothing is
+ * played) and runs the PCM through a {@link LoudnessMeter}. Blocking; call it on a worker
+ * thread.
+ */
+public class LoudnessAnalyzer {
+
+    private static final long DEQUEUE_TIMEOUT_US = 10_000;
+
+    private final Context context;
+    private final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+    // Reused between songs, grown to the largest decoder buffer seen
+    private short[] pcm16 = new short[0];
+    private float[] pcmFloat = new float[0];
+
+    public LoudnessAnalyzer(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Measures the whole song.
+     * @param stopped Polled between buffers; when it returns true the song is abandoned.
+     * @return The meter after the last sample, or null if stopped (or the song has no audio track).
+     * @throws IOException If the file can't be opened or decoded.
+     */
+    public LoudnessMeter analyze(Song song, BooleanSupplier stopped) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(context, song.getData(), null);
+            MediaFormat format = selectAudioTrack(extractor);
+            if (format == null) return null;
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+            return decode(extractor, codec, stopped);
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            throw new IOException("Could not decode " + song.getTitle(), e); // MediaCodec errors are runtime exceptions
+        } finally {
+            if (codec != null) {
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    private static MediaFormat selectAudioTrack(MediaExtractor extractor) {
+        for (int track = 0; track < extractor.getTrackCount(); track++) {
+            MediaFormat format = extractor.getTrackFormat(track);
+            String mime = format.getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith("audio/")) {
+                extractor.selectTrack(track);
+                return format;
+            }
+        }
+        return null;
+    }
+
+    private LoudnessMeter decode(MediaExtractor extractor, MediaCodec codec, BooleanSupplier stopped) {
+        LoudnessMeter meter = null;
+        boolean floatPcm = false;
+        boolean inputDone = false;
+        while (true) {
+            if (stopped.getAsBoolean()) return null;
+
+            if (!inputDone) {
+                int input = codec.dequeueInputBuffer(DEQUEUE_TIMEOUT_US);
+                if (input >= 0) {
+                    int size = extractor.readSampleData(codec.getInputBuffer(input), 0);
+                    if (size < 0) {
+                        codec.queueInputBuffer(input, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        inputDone = true;
+                    } else {
+                        codec.queueInputBuffer(input, 0, size, extractor.getSampleTime(), 0);
+                        extractor.advance();
+                    }
+                }
+            }
+
+            int output = codec.dequeueOutputBuffer(bufferInfo, DEQUEUE_TIMEOUT_US);
+            if (output == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                MediaFormat outputFormat = codec.getOutputFormat();
+                int channels = outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                int sampleRate = outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                floatPcm = outputFormat.containsKey(MediaFormat.KEY_PCM_ENCODING)
+                        && outputFormat.getInteger(MediaFormat.KEY_PCM_ENCODING) == AudioFormat.ENCODING_PCM_FLOAT;
+                if (meter == null) {
+                    meter = new LoudnessMeter(channels, sampleRate);
+                }
+            } else if (output >= 0) {
+                if (bufferInfo.size > 0) {
+                    if (meter == null) { // Some decoders never report a format change
+                        MediaFormat outputFormat = codec.getOutputFormat();
+                        meter = new LoudnessMeter(outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT),
+                                outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE));
+                    }
+                    ByteBuffer buffer = codec.getOutputBuffer(output);
+                    buffer.position(bufferInfo.offset).limit(bufferInfo.offset + bufferInfo.size);
+                    measure(meter, buffer.order(ByteOrder.nativeOrder()), floatPcm);
+                }
+                codec.releaseOutputBuffer(output, false);
+                if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    return meter;
+                }
+            }
+        }
+    }
+
+    private void measure(LoudnessMeter meter, ByteBuffer buffer, boolean floatPcm) {
+        int channels = meter.getChannels();
+        if (floatPcm) {
+            int samples = buffer.remaining() / 4;
+            if (pcmFloat.length < samples) pcmFloat = new float[samples];
+            buffer.asFloatBuffer().get(pcmFloat, 0, samples);
+            meter.process(pcmFloat, 0, samples / channels);
+        } else {
+            int samples = buffer.remaining() / 2;
+            if (pcm16.length < samples) pcm16 = new short[samples];
+            buffer.asShortBuffer().get(pcm16, 0, samples);
+            meter.process(pcm16, 0, samples / channels);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.gaanesuno;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Loudness and peak of every analysed song, keyed by song id and DATE_MODIFIED so a file that
+ * was replaced is analysed again, and the normalization gain derived from them.
+ *
+ * <p>Rows live in parallel primitive arrays behind a {@link LongIntHashMap}, 24 bytes a song
+ * on disk. The analysis adds rows on its worker thread while the playback thread looks gains
+ * up, so every method is synchronized.</p>
+ *
+ * <pre>
+ * int    magic ("GSLC")
+ * int    format version
+ * int    record count
+ * record[count]: long id, long dateModified, float loudness (LUFS), float peak
+ * long   CRC32 of every byte before it
+ * </pre>
+ */
+public final class LoudnessCache {
+
+    static final int MAGIC = 0x47534C43; // "GSLC"
+    static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 4;
+    private static final int RECORD_SIZE = 8 + 8 + 4 + 4;
+    private static final int CHECKSUM_SIZE = 8;
+
+    /** Loudness every song is brought to, the ReplayGain 2.0 reference level. */
+    public static final float TARGET_LUFS = -18f;
+
+    /** Thrown when a cache file is truncated, has a bad checksum or an unknown version. */
+    public static class CorruptCacheException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public CorruptCacheException(String message) {
+            super(message);
+        }
+    }
+
+    private final LongIntHashMap rowById;
+    private long[] ids;
+    private long[] dateModified;
+    private float[] loudness;
+    private float[] peaks;
+    private int size;
+
+    public LoudnessCache() {
+        this(16);
+    }
+
+    private LoudnessCache(int capacity) {
+        rowById = new LongIntHashMap(capacity);
+        ids = new long[capacity];
+        dateModified = new long[capacity];
+        loudness = new float[capacity];
+        peaks = new float[capacity];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /** True if the song was analysed in this version of its file. */
+    public synchronized boolean contains(long id, long modified) {
+        int row = rowById.get(id);
+        return row != LongIntHashMap.NO_VALUE && dateModified[row] == modified;
+    }
+
+    /** Stores a result, replacing the one of an older version of the file. */
+    public synchronized void put(long id, long modified, float songLoudness, float peak) {
+        int row = rowById.get(id);
+        if (row == LongIntHashMap.NO_VALUE) {
+            if (size == ids.length) {
+                int capacity = size + (size >> 1);
+                ids = Arrays.copyOf(ids, capacity);
+                dateModified = Arrays.copyOf(dateModified, capacity);
+                loudness = Arrays.copyOf(loudness, capacity);
+                peaks = Arrays.copyOf(peaks, capacity);
+            }
+            row = size++;
+            rowById.put(id, row);
+        }
+        ids[row] = id;
+        dateModified[row] = modified;
+        loudness[row] = songLoudness;
+        peaks[row] = peak;
+    }
+
+    /**
+     * Linear volume that normalizes the song, 1 when it hasn't been analysed (or was changed
+     * since). Capped at 1: MediaPlayer volumes can't go above full scale, so quiet songs stay
+     * as they are and loud ones are turned down to the target.
+     */
+    public synchronized float getGain(long id, long modified) {
+        int row = rowById.get(id);
+        if (row == LongIntHashMap.NO_VALUE || dateModified[row] != modified) {
+            return 1f;
+        }
+        return (float) Math.min(1, Math.pow(10, gainDb(loudness[row], peaks[row]) / 20));
+    }
+
+    /**
+     * Gain in dB bringing a song of this loudness to {@link #TARGET_LUFS}, lowered where needed
+     * so its peak doesn't clip. 0 for silence.
+     */
+    public static double gainDb(double songLoudness, double peak) {
+        if (Double.isInfinite(songLoudness) || Double.isNaN(songLoudness)) {
+            return 0;
+        }
+        double gain = TARGET_LUFS - songLoudness;
+        if (peak > 0) {
+            gain = Math.min(gain, -20 * Math.log10(peak));
+        }
+        return gain;
+    }
+
+    /** Drops the songs that are no longer in the library. */
+    public synchronized void retainAll(SongStore library) {
+        int kept = 0;
+        for (int row = 0; row < size; row++) {
+            if (library.indexOfId(ids[row]) < 0) {
+                rowById.remove(ids[row]);
+                continue;
+            }
+            if (kept != row) {
+                ids[kept] = ids[row];
+                dateModified[kept] = dateModified[row];
+                loudness[kept] = loudness[row];
+                peaks[kept] = peaks[row];
+                rowById.put(ids[kept], kept);
+            }
+            kept++;
+        }
+        size = kept;
+    }
+
+    // --- Reading and writing ---
+
+    /**
+     * Writes the cache to {@code file} through a temporary file renamed into place, like
+     * {@link LibrarySnapshot#writeTo}, so a crash mid-write keeps the previous cache.
+     */
+    public void writeTo(File file) throws IOException {
+        ByteBuffer buffer;
+        synchronized (this) {
+            buffer = ByteBuffer.allocate(HEADER_SIZE + size * RECORD_SIZE + CHECKSUM_SIZE);
+            buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(size);
+            for (int row = 0; row < size; row++) {
+                buffer.putLong(ids[row]).putLong(dateModified[row]).putFloat(loudness[row]).putFloat(peaks[row]);
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putLong(crc.getValue());
+        buffer.flip();
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not move loudness cache into place: " + file);
+        }
+    }
+
+    /**
+     * Reads a cache file.
+     * @throws CorruptCacheException If it is truncated, fails the checksum or has another version.
+     * @throws IOException If the file cannot be read at all.
+     */
+    public static LoudnessCache readFrom(File file) throws IOException {
+        byte[] bytes;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            if (length < HEADER_SIZE + CHECKSUM_SIZE || length > Integer.MAX_VALUE) {
+                throw new CorruptCacheException("Unexpected loudness cache size: " + length);
+            }
+            bytes = new byte[(int) length];
+            raf.readFully(bytes);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int payloadSize = bytes.length - CHECKSUM_SIZE;
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, payloadSize);
+        if (crc.getValue() != buffer.getLong(payloadSize)) {
+            throw new CorruptCacheException("Checksum mismatch");
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new CorruptCacheException("Not a loudness cache");
+        }
+        int version = buffer.getInt();
+        if (version != FORMAT_VERSION) {
+            throw new CorruptCacheException("Unsupported loudness cache version: " + version);
+        }
+        int count = buffer.getInt();
+        if (count < 0 || (long) count * RECORD_SIZE != payloadSize - HEADER_SIZE) {
+            throw new CorruptCacheException("Invalid record count: " + count);
+        }
+        LoudnessCache cache = new LoudnessCache(Math.max(16, count));
+        for (int i = 0; i < count; i++) {
+            cache.put(buffer.getLong(), buffer.getLong(), buffer.getFloat(), buffer.getFloat());
+        }
+        return cache;
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.gaanesuno;
+
+import java.util.Arrays;
+
+/**
+ * Integrated loudness (EBU R128 / ITU-R BS.1770) and sample peak of a stream of PCM.
+ *
+ * <p>The signal is K-weighted (a high shelf and a high pass per channel), its mean square is
+ * taken over 400 ms blocks overlapping by 75%, and the blocks are gated: anything under
+ * -70 LUFS is dropped, then anything 10 LU under the loudness of what's left. Blocks go into
+ * a histogram of {@link #BIN_LU} wide bins instead of a list, so memory stays fixed however
+ * long the song is and {@link #process} never allocates; the relative gate is exact to within
+ * one bin. Channels are weighted equally (music files are mono or stereo) and the peak is the
+ * sample peak, not the oversampled true peak.</p>
+ */
+public final class LoudnessMeter {
+
+    static final double ABSOLUTE_GATE_LUFS = -70;
+    static final double RELATIVE_GATE_LU = -10;
+    static final double BIN_LU = 0.1;
+    private static final double MAX_LUFS = 10; // Louder blocks go into the top bin
+    private static final int BINS = (int) Math.round((MAX_LUFS - ABSOLUTE_GATE_LUFS) / BIN_LU);
+    private static final int SUB_BLOCKS_PER_BLOCK = 4; // 100 ms steps, 400 ms blocks
+
+    private final int channels;
+    private final double sampleRate;
+    private final int subBlockFrames;
+
+    // K-weighting: pre-filter (shelf) then RLB high pass, coefficients {b0, b1, b2, a1, a2}
+    private final double[] shelf;
+    private final double[] highPass;
+    private final double[] state; // Per channel: shelf z1, z2, high pass z1, z2
+
+    private final double[] subBlockEnergies = new double[SUB_BLOCKS_PER_BLOCK]; // Ring of the last four
+    private int subBlockCount;
+    private double subBlockSum;
+    private int subBlockFramesDone;
+
+    private final long[] binCounts = new long[BINS];
+    private final double[] binEnergies = new double[BINS];
+    private float peak;
+    private long frames;
+
+    public LoudnessMeter(int channels, double sampleRate) {
+        if (channels < 1) throw new IllegalArgumentException("channels: " + channels);
+        this.channels = channels;
+        this.sampleRate = sampleRate;
+        this.subBlockFrames = (int) Math.round(sampleRate / 10);
+        this.shelf = shelfCoefficients(sampleRate);
+        this.highPass = highPassCoefficients(sampleRate);
+        this.state = new double[channels * 4];
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /** Measures {@code frames} interleaved frames of float samples, full scale at ±1. */
+    public void process(float[] samples, int offset, int frames) {
+        for (int frame = 0; frame < frames; frame++) {
+            int base = offset + frame * channels;
+            double energy = 0;
+            for (int channel = 0; channel < channels; channel++) {
+                energy += weightedSquare(samples[base + channel], channel);
+            }
+            addFrame(energy);
+        }
+    }
+
+    /** Measures {@code frames} interleaved frames of 16-bit samples. */
+    public void process(short[] samples, int offset, int frames) {
+        for (int frame = 0; frame < frames; frame++) {
+            int base = offset + frame * channels;
+            double energy = 0;
+            for (int channel = 0; channel < channels; channel++) {
+                energy += weightedSquare(samples[base + channel] * (1f / 32768), channel);
+            }
+            addFrame(energy);
+        }
+    }
+
+    private double weightedSquare(float sample, int channel) {
+        float magnitude = Math.abs(sample);
+        if (magnitude > peak) {
+            peak = magnitude;
+        }
+        int s = channel * 4;
+        // Direct form II transposed, like ParametricEqualizer
+        double x = sample;
+        double y = shelf[0] * x + state[s];
+        state[s] = shelf[1] * x - shelf[3] * y + state[s + 1];
+        state[s + 1] = shelf[2] * x - shelf[4] * y;
+        x = y;
+        y = highPass[0] * x + state[s + 2];
+        state[s + 2] = highPass[1] * x - highPass[3] * y + state[s + 3];
+        state[s + 3] = highPass[2] * x - highPass[4] * y;
+        return y * y;
+    }
+
+    private void addFrame(double energy) {
+        subBlockSum += energy;
+        frames++;
+        if (++subBlockFramesDone < subBlockFrames) return;
+
+        subBlockEnergies[subBlockCount % SUB_BLOCKS_PER_BLOCK] = subBlockSum / subBlockFrames;
+        subBlockCount++;
+        subBlockSum = 0;
+        subBlockFramesDone = 0;
+        if (subBlockCount < SUB_BLOCKS_PER_BLOCK) return;
+
+        double blockEnergy = 0;
+        for (double subBlock : subBlockEnergies) {
+            blockEnergy += subBlock;
+        }
+        blockEnergy /= SUB_BLOCKS_PER_BLOCK;
+        double loudness = loudnessOf(blockEnergy);
+        if (loudness < ABSOLUTE_GATE_LUFS) return;
+        int bin = Math.min(BINS - 1, (int) ((loudness - ABSOLUTE_GATE_LUFS) / BIN_LU));
+        binCounts[bin]++;
+        binEnergies[bin] += blockEnergy;
+    }
+
+    /**
+     * Gated loudness of everything measured so far in LUFS, or NEGATIVE_INFINITY when no
+     * block passed the gates (silence, or less than 400 ms of audio).
+     */
+    public double getIntegratedLoudness() {
+        long count = 0;
+        double energy = 0;
+        for (int bin = 0; bin < BINS; bin++) {
+            count += binCounts[bin];
+            energy += binEnergies[bin];
+        }
+        if (count == 0) return Double.NEGATIVE_INFINITY;
+
+        double threshold = loudnessOf(energy / count) + RELATIVE_GATE_LU;
+        // Bins whose centre is above the relative gate
+        int firstBin = Math.max(0, (int) Math.ceil((threshold - ABSOLUTE_GATE_LUFS) / BIN_LU - 0.5));
+        count = 0;
+        energy = 0;
+        for (int bin = firstBin; bin < BINS; bin++) {
+            count += binCounts[bin];
+            energy += binEnergies[bin];
+        }
+        return count == 0 ? Double.NEGATIVE_INFINITY : loudnessOf(energy / count);
+    }
+
+    /** Largest absolute sample so far, 1 at full scale. */
+    public float getPeak() {
+        return peak;
+    }
+
+    /** Frames measured since construction or the last {@link #reset}. */
+    public long getFrames() {
+        return frames;
+    }
+
+    /** Starts over for another song with the same format. */
+    public void reset() {
+        Arrays.fill(state, 0);
+        Arrays.fill(subBlockEnergies, 0);
+        subBlockCount = 0;
+        subBlockSum = 0;
+        subBlockFramesDone = 0;
+        Arrays.fill(binCounts, 0);
+        Arrays.fill(binEnergies, 0);
+        peak = 0;
+        frames = 0;
+    }
+
+    private static double loudnessOf(double meanSquare) {
+        return -0.691 + 10 * Math.log10(meanSquare);
+    }
+
+    // BS.1770 gives the filters for 48 kHz; these are their analogue prototypes, so any rate works
+
+    private static double[] shelfCoefficients(double sampleRate) {
+        double f0 = 1681.974450955533;
+        double gainDb = 3.999843853973347;
+        double q = 0.7071752369554196;
+        double k = Math.tan(Math.PI * f0 / sampleRate);
+        double vh = Math.pow(10, gainDb / 20);
+        double vb = Math.pow(vh, 0.4996667741545416);
+        double a0 = 1 + k / q + k * k;
+        return new double[]{
+                (vh + vb * k / q + k * k) / a0,
+                2 * (k * k - vh) / a0,
+                (vh - vb * k / q + k * k) / a0,
+                2 * (k * k - 1) / a0,
+                (1 - k / q + k * k) / a0
+        };
+    }
+
+    private static double[] highPassCoefficients(double sampleRate) {
+        double f0 = 38.13547087602444;
+        double q = 0.5003270373238773;
+        double k = Math.tan(Math.PI * f0 / sampleRate);
+        double a0 = 1 + k / q + k * k;
+        return new double[]{1, -2, 1, 2 * (k * k - 1) / a0, (1 - k / q + k * k) / a0};
+    }
+}
@@ -2,31 +2,40 @@ package com.example.gaanesuno;
 
 import android.Manifest;
 import android.app.AlertDialog;
+import android.app.PendingIntent;
 import android.content.ComponentName;
-import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
 import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
 import android.graphics.PorterDuff;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
-import android.provider.MediaStore;
+import android.os.SystemClock;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.text.format.DateUtils;
 import android.util.Log;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.EditText;
+import android.widget.LinearLayout;
 import android.widget.PopupMenu;
+import android.widget.ProgressBar;
 import android.widget.SeekBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.activity.EdgeToEdge;
+import androidx.activity.OnBackPressedCallback;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.IntentSenderRequest;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.AppCompatImageButton;
@@ -41,28 +50,73 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MainActivity extends AppCompatActivity implements
-        MusicService.OnSongChangedListener,
+        PlaybackStateBus.Subscriber,
         SongAdapter.OnSongOptionsClickListener {
 
     private static final String TAG = "MainActivity";
+    private static final Trace.Point PLAYING_CHANGED = Trace.point(TAG, Trace.DEBUG, "onPlaybackStateChanged: isPlaying={}");
     private static final int PERMISSION_REQUEST_CODE = 100;
     private RecyclerView recyclerViewSongs;
     private SongAdapter songAdapter;
-    private List<Song> songList;
+    private SongStore songList; // Shared read-only with SongAdapter and MusicService
 
     private MusicService musicService;
     private boolean isBound = false;
 
-    private TextView tvSongTitle, tvSongArtist, tvCurrentTime, tvTotalTime;
+    private LibraryScanner libraryScanner;
+    private boolean isLibraryLoaded = false; // True once a full library scan has completed
+    private LibrarySync librarySync; // Applies MediaStore changes made while the app runs
+
+    private EditText etSearch;
+    private final ExecutorService indexExecutor = Executors.newSingleThreadExecutor(); // Builds search index and sort orders
+    private SongSearchIndex searchIndex; // Index used for queries (main thread), null until first built
+    private SongSearchIndex backgroundSearchIndex; // Index being kept up to date (index executor only)
+    private int[] searchRows = new int[0]; // Reused result buffer for queries
+
+    private SongSorter songSorter; // Sort orders of songList, null until built; carried over when songList changes
+    private SongSorter.Key sortKey; // Null shows the library in MediaStore order
+    private boolean sortAscending = true;
+
+    private TextView tvSongTitle, tvSongArtist, tvCurrentTime, tvTotalTime, tvHeaderTitle;
     private AppCompatImageButton btnPlayPause, btnNext, btnPrevious, btnShuffle, btnRepeat, btnTimer, btnSettingsMenu;
+    private AppCompatImageButton btnClearSelection, btnDeleteSelected;
+
+    private SongDeleter songDeleter;
+    private long[] pendingDeleteIds; // Songs in the system delete request that is showing (Android 11+)
+    private final ActivityResultLauncher<IntentSenderRequest> deleteRequestLauncher =
+            registerForActivityResult(new ActivityResultContracts.StartIntentSenderForResult(), result -> {
+                long[] requestedIds = pendingDeleteIds;
+                pendingDeleteIds = null;
+                if (requestedIds == null) return;
+                if (result.getResultCode() == RESULT_OK) {
+                    onSongsDeleted(requestedIds, 0); // The system deleted the whole batch
+                } else {
+                    Log.d(TAG, "Delete request for " + requestedIds.length + " songs declined.");
+                }
+            });
+    // While songs are marked, Back clears the selection instead of leaving
+    private final OnBackPressedCallback selectionBackCallback = new OnBackPressedCallback(false) {
+        @Override
+        public void handleOnBackPressed() {
+            songAdapter.clearSelection();
+        }
+    };
     private SeekBar seekBarProgress;
     private ConstraintLayout playbackControlsLayout; // Declare the layout for click listener
 
     private Handler handler = new Handler();
-    private Runnable updateSeekBarRunnable;
+    private SeekScrubber seekScrubber;
+    private ProgressTicker progressTicker; // Moves seekBarProgress from the service's snapshot
+    private final Executor mainExecutor = handler::post; // Where the service's snapshots are delivered
+    private PlaybackState shownState; // Last snapshot drawn; null draws everything from the next one
 
     private final int COLOR_ACTIVE = 0xFF1DB954; // Spotify green-like
     private final int COLOR_INACTIVE = 0xFFB3B3B3; // Light grey
@@ -74,11 +128,20 @@ public class MainActivity extends AppCompatActivity implements
     public static final String KEY_WAS_PLAYING = "wasPlaying";
     public static final String KEY_SHUFFLE_ENABLED = "shuffleEnabled";
     public static final String KEY_REPEAT_MODE = "repeatMode";
+    public static final String KEY_SORT_KEY = "sortKey";
+    public static final String KEY_SORT_ASCENDING = "sortAscending";
+    public static final String KEY_CROSSFADE_SECONDS = "crossfadeSeconds";
+    public static final String KEY_EQUALIZER_PRESET = "equalizerPreset_"; // + output device, each has its own
+    public static final String KEY_READ_AHEAD_MB = "readAheadMb"; // 0 = off
+    private static final int[] READ_AHEAD_CHOICES_MB = {0, 2, 4, 8, 16};
+
+    static final String LIBRARY_SNAPSHOT_FILE = "library.snapshot";
 
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        Trace.init((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0, Log::println);
         EdgeToEdge.enable(this);
         setContentView(R.layout.activity_main);
 
@@ -96,24 +159,75 @@ public class MainActivity extends AppCompatActivity implements
         btnRepeat = findViewById(R.id.btn_repeat);
         btnTimer = findViewById(R.id.btn_timer);
         btnSettingsMenu = findViewById(R.id.btn_settings_menu);
+        tvHeaderTitle = findViewById(R.id.tv_header_title);
+        btnClearSelection = findViewById(R.id.btn_clear_selection);
+        btnDeleteSelected = findViewById(R.id.btn_delete_selected);
 
         // Initialize the playback controls layout for click listener
         playbackControlsLayout = findViewById(R.id.playback_controls_layout);
+        etSearch = findViewById(R.id.et_search);
+
+        SharedPreferences sortPrefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        String savedSortKey = sortPrefs.getString(KEY_SORT_KEY, null);
+        sortKey = savedSortKey != null ? SongSorter.Key.valueOf(savedSortKey) : null;
+        sortAscending = sortPrefs.getBoolean(KEY_SORT_ASCENDING, true);
 
 
         recyclerViewSongs = findViewById(R.id.recyclerView_songs);
         recyclerViewSongs.setLayoutManager(new LinearLayoutManager(this));
-        songList = new ArrayList<>(); // Initialize songList here
+        songList = SongStore.EMPTY; // Initialize songList here
         songAdapter = new SongAdapter(songList);
         recyclerViewSongs.setAdapter(songAdapter);
+        libraryScanner = new LibraryScanner(this);
+        librarySync = new LibrarySync(this, libraryScanner, new File(getFilesDir(), LIBRARY_SNAPSHOT_FILE),
+                new LibrarySync.Listener() {
+                    @Override
+                    public SongStore getCurrentLibrary() {
+                        return isLibraryLoaded ? songList : null;
+                    }
+
+                    @Override
+                    public void onLibrarySynced(SongStore library, LibraryScanner.ScanStats stats) {
+                        Log.d(TAG, "Library synced: " + stats);
+                        LoudnessAnalysisService.schedule(MainActivity.this); // Measures the new songs
+                        songList = library;
+                        refreshSongList();
+                        updateLibraryIndexes();
+                        if (isBound) {
+                            musicService.updateSongList(songList); // Keeps the queue and current song
+                        }
+                    }
+                });
 
         songAdapter.setOnItemClickListener(position -> {
             if (musicService != null) {
-                musicService.playSong(position);
+                // By id: the adapter shows the library order, the service may be playing a shuffled one
+                musicService.playSongWithId(songAdapter.getItemId(position));
             }
         });
 
         songAdapter.setOnSongOptionsClickListener(this);
+        songAdapter.setOnSelectionChangedListener(this::onSelectionChanged);
+        songDeleter = new SongDeleter(this);
+        getOnBackPressedDispatcher().addCallback(this, selectionBackCallback);
+        btnClearSelection.setOnClickListener(v -> songAdapter.clearSelection());
+        btnDeleteSelected.setOnClickListener(v -> deleteSongs(songAdapter.getCheckedIds()));
+
+        // Filter the list on every keystroke; queries take well under a millisecond on 100k songs
+        etSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                refreshSongList();
+            }
+        });
 
         // Start the service explicitly. This ensures it continues running even if MainActivity is destroyed.
         Intent musicServiceIntent = new Intent(this, MusicService.class);
@@ -160,7 +274,7 @@ public class MainActivity extends AppCompatActivity implements
                     // Update the selected item in the RecyclerView to the new index if shuffle changes
                     // Note: If shuffle is enabled, the index in the UI list is not necessarily the same as in activeSongList
                     // We find the song in the UI list to highlight it.
-                    int uiListIndex = songList.indexOf(currentSong);
+                    int uiListIndex = songAdapter.getPositionOfId(currentSong.getId()); // O(1) index lookup
                     if(uiListIndex != -1) {
                         songAdapter.setSelectedPosition(uiListIndex);
                         ((LinearLayoutManager) recyclerViewSongs.getLayoutManager()).scrollToPositionWithOffset(uiListIndex, 0);
@@ -182,27 +296,50 @@ public class MainActivity extends AppCompatActivity implements
             Toast.makeText(this, "Sleep Timer: Feature coming soon! (Will open a timer dialog)", Toast.LENGTH_SHORT).show();
         });
 
-        btnSettingsMenu.setOnClickListener(this::showSettingsMenu);
+        btnSettingsMenu.setOnClickListener(v -> showSettingsMenu(v, false));
+        btnSettingsMenu.setOnLongClickListener(v -> {
+            showSettingsMenu(v, true); // Long press also offers the diagnostics screen
+            return true;
+        });
 
+        SeekScrubber.Timer uiTimer = new SeekScrubber.Timer() {
+            @Override
+            public void postDelayed(Runnable task, long delayMs) {
+                handler.postDelayed(task, delayMs);
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+                handler.removeCallbacks(task);
+            }
+        };
+        seekScrubber = createSeekScrubber(uiTimer);
+        progressTicker = new ProgressTicker(() -> musicService != null ? musicService.getPlaybackState() : null,
+                this::showProgress, uiTimer, SystemClock::uptimeMillis);
+        seekBarProgress.addOnLayoutChangeListener((v, left, top, right, bottom, oldLeft, oldTop, oldRight, oldBottom) ->
+                progressTicker.setWidthPx(right - left - v.getPaddingLeft() - v.getPaddingRight()));
         seekBarProgress.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
-                if (fromUser && musicService != null) {
-                    musicService.seekTo(progress);
+                if (fromUser) {
+                    tvCurrentTime.setText(formatDuration(progress)); // Follow the thumb, not the player
+                    seekScrubber.onProgressChanged(progress);
                 }
             }
 
             @Override
             public void onStartTrackingTouch(SeekBar seekBar) {
                 // Pause seek bar updates while user is dragging
-                handler.removeCallbacks(updateSeekBarRunnable);
+                progressTicker.stop();
+                seekScrubber.onStartTrackingTouch(seekBar.getProgress());
             }
 
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {
-                // Resume seek bar updates if music is playing
+                seekScrubber.onStopTrackingTouch(seekBar.getProgress());
+                // Resume seek bar updates if music is playing, once the final seek had time to land
                 if (musicService != null && musicService.isPlaying()) {
-                    startSeekBarUpdates();
+                    progressTicker.startDelayed(SeekScrubber.SETTLE_HOLD_MS);
                 } else {
                     // If paused, ensure UI reflects current position after seek
                     tvCurrentTime.setText(formatDuration(seekBar.getProgress()));
@@ -248,7 +385,7 @@ public class MainActivity extends AppCompatActivity implements
             MusicService.MusicBinder binder = (MusicService.MusicBinder) service;
             musicService = binder.getService();
             isBound = true;
-            musicService.setOnSongChangedListener(MainActivity.this);
+            musicService.subscribe(MainActivity.this, mainExecutor);
             Log.d(TAG, "MusicService connected.");
 
             // Set the song list in the service. This is crucial for the service to know
@@ -257,91 +394,106 @@ public class MainActivity extends AppCompatActivity implements
                 musicService.setSongList(songList);
             }
 
-            // Restore playback state from SharedPreferences
-            SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-            long lastSongId = prefs.getLong(KEY_LAST_SONG_ID, -1L);
-            int lastSongPositionMs = prefs.getInt(KEY_LAST_SONG_POSITION, 0);
-            boolean wasPlaying = prefs.getBoolean(KEY_WAS_PLAYING, false); // Retrieve the 'was playing' state
+            // The last song can only be looked up once the library scan is complete,
+            // otherwise onScanFinished() restores the state when the scan is done.
+            if (isLibraryLoaded) {
+                restorePlaybackState();
+            } else {
+                Log.d(TAG, "onServiceConnected: Library scan still running, deferring state restore.");
+                updateShuffleButtonState();
+                updateRepeatButtonState();
+            }
+        }
 
-            Song lastSong = null;
-            int lastSongIndex = RecyclerView.NO_POSITION;
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            isBound = false;
+            musicService = null;
+            Log.d(TAG, "MusicService disconnected.");
+        }
+    };
 
-            // Find the last played song in the loaded songList
-            if (lastSongId != -1L && !songList.isEmpty()) {
-                for (int i = 0; i < songList.size(); i++) {
-                    if (songList.get(i).getId() == lastSongId) {
-                        lastSong = songList.get(i);
-                        lastSongIndex = i;
-                        break;
-                    }
-                }
+    /**
+     * Restores the last played song, position and shuffle/repeat modes into the service.
+     * Requires a bound service and a fully loaded song list.
+     */
+    private void restorePlaybackState() {
+        // Restore playback state from SharedPreferences
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        long lastSongId = prefs.getLong(KEY_LAST_SONG_ID, -1L);
+        int lastSongPositionMs = prefs.getInt(KEY_LAST_SONG_POSITION, 0);
+        boolean wasPlaying = prefs.getBoolean(KEY_WAS_PLAYING, false); // Retrieve the 'was playing' state
+
+        Song lastSong = null;
+        int lastSongIndex = RecyclerView.NO_POSITION;
+
+        // Find the last played song in the loaded songList
+        if (lastSongId != -1L && !songList.isEmpty()) {
+            int index = songList.indexOfId(lastSongId);
+            if (index != -1) {
+                lastSong = songList.get(index);
+                lastSongIndex = index;
             }
+        }
 
-            // Apply shuffle and repeat modes to the service without showing toast
-            musicService.setShuffle(prefs.getBoolean(KEY_SHUFFLE_ENABLED, false));
-            musicService.setRepeatMode(prefs.getInt(KEY_REPEAT_MODE, MusicService.REPEAT_OFF), false);
+        // Apply shuffle and repeat modes to the service without showing toast
+        musicService.setShuffle(prefs.getBoolean(KEY_SHUFFLE_ENABLED, false));
+        musicService.setRepeatMode(prefs.getInt(KEY_REPEAT_MODE, MusicService.REPEAT_OFF), false);
+        musicService.setCrossfadeSeconds(prefs.getInt(KEY_CROSSFADE_SECONDS, 0));
 
 
-            Song currentServiceSong = musicService.getCurrentSong();
-            boolean serviceIsPlaying = musicService.isPlaying(); // Current actual state of the service
-            boolean serviceIsPrepared = musicService.isMediaPlayerPrepared();
-            int serviceCurrentPosition = musicService.getCurrentPosition();
-            int serviceDuration = musicService.getDuration();
+        Song currentServiceSong = musicService.getCurrentSong();
+        boolean serviceIsPlaying = musicService.isPlaying(); // Current actual state of the service
+        boolean serviceIsPrepared = musicService.isMediaPlayerPrepared();
+        int serviceCurrentPosition = musicService.getCurrentPosition();
+        int serviceDuration = musicService.getDuration();
 
-            // >>>>>>> MODIFICATION FOR SMART RE-ENTRY (MINIMIZE vs. CLOSE) <<<<<<<
+        // >>>>>>> MODIFICATION FOR SMART RE-ENTRY (MINIMIZE vs. CLOSE) <<<<<<<
 
-            if (currentServiceSong != null && serviceIsPlaying && serviceIsPrepared &&
-                    lastSong != null && currentServiceSong.getId() == lastSong.getId()) {
-                // Scenario 1: Service is already playing the *same* song, is prepared, and is playing.
-                // This indicates the app was minimized and the service continued playing.
-                // We want to reflect the current playing state of the service.
-                Log.d(TAG, "onServiceConnected: Service was playing same song. Updating UI to match service state.");
-                onSongChanged(currentServiceSong, serviceIsPlaying); // Update song info and playing state
-                onPlaybackStateChanged(serviceIsPlaying); // Update play/pause button
-                onProgressUpdate(serviceCurrentPosition, serviceDuration); // Update seekbar and time
+        if (currentServiceSong != null && serviceIsPlaying && serviceIsPrepared &&
+                lastSong != null && currentServiceSong.getId() == lastSong.getId()) {
+            // Scenario 1: Service is already playing the *same* song, is prepared, and is playing.
+            // This indicates the app was minimized and the service continued playing.
+            // We want to reflect the current playing state of the service.
+            Log.d(TAG, "onServiceConnected: Service was playing same song. Updating UI to match service state.");
+            onSongChanged(currentServiceSong, serviceIsPlaying); // Update song info and playing state
+            onPlaybackStateChanged(serviceIsPlaying); // Update play/pause button
+            onProgressUpdate(serviceCurrentPosition, serviceDuration); // Update seekbar and time
 
-                seekBarProgress.setMax(serviceDuration);
-                seekBarProgress.setProgress(serviceCurrentPosition);
+            seekBarProgress.setMax(serviceDuration);
+            seekBarProgress.setProgress(serviceCurrentPosition);
 
-                startSeekBarUpdates(); // Ensure seekbar updates are running
+            progressTicker.start(); // Ensure seekbar updates are running
 
-            } else if (lastSong != null) {
-                // Scenario 2: No song playing, or a different song, or service not prepared.
-                // This is where 'wasPlaying' from SharedPreferences becomes crucial.
-                Log.d(TAG, "onServiceConnected: Service needs to prepare/load last known song. Using saved 'wasPlaying' state (" + wasPlaying + ").");
+        } else if (lastSong != null) {
+            // Scenario 2: No song playing, or a different song, or service not prepared.
+            // This is where 'wasPlaying' from SharedPreferences becomes crucial.
+            Log.d(TAG, "onServiceConnected: Service needs to prepare/load last known song. Using saved 'wasPlaying' state (" + wasPlaying + ").");
 
-                // Pass the 'wasPlaying' preference to decide if it should play automatically
-                // The service will handle setting up the MediaPlayer based on this.
-                musicService.prepareSongForRestore(lastSong, lastSongIndex, wasPlaying, lastSongPositionMs);
+            // Pass the 'wasPlaying' preference to decide if it should play automatically
+            // The service will handle setting up the MediaPlayer based on this.
+            musicService.prepareSongForRestore(lastSong, lastSongIndex, wasPlaying, lastSongPositionMs);
 
-                // Immediately update UI with the song details. Playback state will be
-                // dictated by 'wasPlaying' and then updated via onPlaybackStateChanged
-                // from the service if it starts playing.
-                onSongChanged(lastSong, wasPlaying); // Initial UI state should reflect 'wasPlaying'
-                onPlaybackStateChanged(wasPlaying); // Set play/pause button based on 'wasPlaying'
-                seekBarProgress.setMax((int)lastSong.getDuration()); // Set max for seekbar
-                seekBarProgress.setProgress(lastSongPositionMs);
+            // Immediately update UI with the song details. Playback state will be
+            // dictated by 'wasPlaying' and then updated via onPlaybackStateChanged
+            // from the service if it starts playing.
+            onSongChanged(lastSong, wasPlaying); // Initial UI state should reflect 'wasPlaying'
+            onPlaybackStateChanged(wasPlaying); // Set play/pause button based on 'wasPlaying'
+            seekBarProgress.setMax((int)lastSong.getDuration()); // Set max for seekbar
+            seekBarProgress.setProgress(lastSongPositionMs);
 
-            } else {
-                // Scenario 3: No last song found or list is empty, reset UI
-                Log.d(TAG, "onServiceConnected: No last song found or list is empty. Resetting UI.");
-                onSongChanged(null, false);
-                onPlaybackStateChanged(false); // Ensure play button is shown
-            }
-            // >>>>>>> END MODIFICATION <<<<<<<
-
-            // Update UI buttons based on restored service state
-            updateShuffleButtonState();
-            updateRepeatButtonState();
+        } else {
+            // Scenario 3: No last song found or list is empty, reset UI
+            Log.d(TAG, "onServiceConnected: No last song found or list is empty. Resetting UI.");
+            onSongChanged(null, false);
+            onPlaybackStateChanged(false); // Ensure play button is shown
         }
+        // >>>>>>> END MODIFICATION <<<<<<<
 
-        @Override
-        public void onServiceDisconnected(ComponentName name) {
-            isBound = false;
-            musicService = null;
-            Log.d(TAG, "MusicService disconnected.");
-        }
-    };
+        // Update UI buttons based on restored service state
+        updateShuffleButtonState();
+        updateRepeatButtonState();
+    }
 
     //--- Permission Handling ---
     private boolean checkPermissions() {
@@ -389,68 +541,297 @@ public class MainActivity extends AppCompatActivity implements
     }
     //--- End Permission Handling ---
 
+    /**
+     * Starts a background load of the audio library. The list from the last run's snapshot is
+     * shown first if there is one, otherwise songs are appended page by page as the scanner
+     * delivers them, so the UI thread never touches the cursor.
+     */
     private void loadAudioFiles() {
-        songList.clear();
-        ContentResolver contentResolver = getContentResolver();
-        Uri uri = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
-        String selection = MediaStore.Audio.Media.IS_MUSIC + "!= 0";
-        String sortOrder = MediaStore.Audio.Media.TITLE + " ASC";
-
-        Cursor cursor = contentResolver.query(uri, null, selection, null, sortOrder);
-
-        if (cursor != null && cursor.moveToFirst()) {
-            int idColumn = cursor.getColumnIndex(MediaStore.Audio.Media._ID);
-            int titleColumn = cursor.getColumnIndex(MediaStore.Audio.Media.TITLE);
-            int artistColumn = cursor.getColumnIndex(MediaStore.Audio.Media.ARTIST);
-            int durationColumn = cursor.getColumnIndex(MediaStore.Audio.Media.DURATION);
-            int dataColumnIndex = cursor.getColumnIndex(MediaStore.Audio.Media.DATA); // Path string
-
-            do {
-                long id = cursor.getLong(idColumn);
-                String title = cursor.getString(titleColumn);
-                String artist = cursor.getString(artistColumn);
-                long duration = cursor.getLong(durationColumn);
-                String data = cursor.getString(dataColumnIndex);
-
-                Uri contentUri = Uri.withAppendedPath(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, String.valueOf(id));
-
-                // Ensure data is not null and represents a valid file path if needed for older APIs,
-                // or just rely on contentUri for playback.
-                if (data != null && new File(data).exists()) {
-                    songList.add(new Song(id, title, artist, contentUri, duration, data));
-                } else if (data == null) {
-                    // Fallback if data is null, but contentUri might still work for some files
-                    Log.w(TAG, "Song " + title + " has null data path, attempting with contentUri only.");
-                    songList.add(new Song(id, title, artist, contentUri, duration, null)); // path as null
+        isLibraryLoaded = false;
+        librarySync.start(); // Changes during the load are kept and synced when it finishes
+        songList = SongStore.EMPTY;
+        refreshSongList();
+        libraryScanner.load(new File(getFilesDir(), LIBRARY_SNAPSHOT_FILE), new LibraryScanner.Callback() {
+            @Override
+            public void onPageLoaded(SongStore library, boolean isFirstPage) {
+                int positionStart = songList.size();
+                songList = library;
+                if (isSearching()) {
+                    refreshSongList();
+                } else {
+                    songAdapter.appendSongs(songList, positionStart);
+                }
+                if (isFirstPage && isBound) {
+                    // Make the first screen playable right away, the full list follows when the scan finishes
+                    musicService.setSongList(songList);
+                }
+            }
+
+            @Override
+            public void onLibraryReplaced(SongStore library) {
+                // The snapshot was out of date, MediaStore had changes since the last run
+                songList = library;
+                refreshSongList();
+                if (isBound) {
+                    musicService.setSongList(songList);
+                }
+            }
+
+            @Override
+            public void onScanFinished(LibraryScanner.ScanStats stats) {
+                Log.d(TAG, "Library scan finished: " + stats);
+                isLibraryLoaded = true;
+                librarySync.requestSync();
+                LoudnessAnalysisService.schedule(MainActivity.this);
+                updateLibraryIndexes();
+                if (songList.isEmpty()) {
+                    Toast.makeText(MainActivity.this, "No music found on your device. Please add music files to your device's storage.", Toast.LENGTH_LONG).show();
+                }
+                // Once songs are loaded, pass them to the service if it's already bound
+                if (isBound) {
+                    musicService.setSongList(songList);
+                    restorePlaybackState();
                 }
-            } while (cursor.moveToNext());
-            cursor.close();
+            }
+        });
+    }
+
+    /**
+     * Shows the library in the list, sorted by the chosen order and filtered by the search
+     * field when there is a query. The highlight is put back on the playing song once the
+     * new list is shown.
+     */
+    private void refreshSongList() {
+        refreshSongList(this::highlightCurrentSong);
+    }
+
+    private void refreshSongList(Runnable commitCallback) {
+        songAdapter.submitList(filterSongList(), commitCallback);
+    }
+
+    private List<Song> filterSongList() {
+        if (sortKey != null && songSorter != null && songSorter.getStore() != songList) {
+            // Orders of an older library: keep its order by id until updateLibraryIndexes() rebuilds them
+            songSorter = songSorter.carryOver(songList);
         }
-        songAdapter.updateSongList(songList);
-        if (songList.isEmpty()) {
-            Toast.makeText(this, "No music found on your device. Please add music files to your device's storage.", Toast.LENGTH_LONG).show();
-        } else {
-            // Once songs are loaded, pass them to the service if it's already bound
-            if (isBound) {
-                musicService.setSongList(songList);
+        SongSorter sorter = sortKey != null ? songSorter : null;
+        int count = SongSearchIndex.NO_QUERY;
+        if (isSearching()) {
+            if (searchRows.length < songList.size()) {
+                searchRows = new int[songList.size()];
+            }
+            count = searchIndex.search(etSearch.getText(), songList, searchRows);
+        }
+        if (count == SongSearchIndex.NO_QUERY) {
+            // The whole library; a cached order is only wrapped, not copied
+            return sorter != null ? songList.inOrder(sorter.order(sortKey, sortAscending)) : songList;
+        }
+        int[] rows = Arrays.copyOf(searchRows, count);
+        if (sorter != null) {
+            sorter.sortRows(rows, count, sortKey, sortAscending);
+        }
+        return songList.inOrder(rows);
+    }
+
+    /** True if the list is filtered by a query (only once the search index is built). */
+    private boolean isSearching() {
+        return searchIndex != null && etSearch.length() > 0;
+    }
+
+    /** Lets the user pick the crossfade length: off (gapless) or 1 to 12 seconds. */
+    private void showCrossfadeDialog() {
+        int current = getSharedPreferences(PREFS_NAME, MODE_PRIVATE).getInt(KEY_CROSSFADE_SECONDS, 0);
+        int padding = (int) (24 * getResources().getDisplayMetrics().density);
+        TextView label = new TextView(this);
+        label.setPadding(padding, padding / 2, padding, 0);
+        SeekBar seekBar = new SeekBar(this);
+        seekBar.setPadding(padding, padding / 2, padding, padding / 2);
+        seekBar.setMax(CrossfadeCurve.MAX_SECONDS);
+        seekBar.setProgress(current);
+        label.setText(crossfadeLabel(current));
+        seekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar bar, int progress, boolean fromUser) {
+                label.setText(crossfadeLabel(progress));
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar bar) {
             }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar bar) {
+            }
+        });
+        LinearLayout content = new LinearLayout(this);
+        content.setOrientation(LinearLayout.VERTICAL);
+        content.addView(label);
+        content.addView(seekBar);
+
+        new AlertDialog.Builder(this)
+                .setTitle("Crossfade")
+                .setView(content)
+                .setPositiveButton("OK", (dialog, which) -> {
+                    int seconds = seekBar.getProgress();
+                    getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit().putInt(KEY_CROSSFADE_SECONDS, seconds).apply();
+                    if (isBound) {
+                        musicService.setCrossfadeSeconds(seconds);
+                    }
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private static String crossfadeLabel(int seconds) {
+        return seconds == 0 ? "Off (gapless)" : seconds + (seconds == 1 ? " second" : " seconds");
+    }
+
+    /** Lets the user pick the equalizer preset for the output that is playing (speaker, headphones...). */
+    private void showEqualizerDialog() {
+        if (!isBound) {
+            Toast.makeText(this, "Music service not ready.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        List<EqualizerPreset> presets = EqualizerPreset.PRESETS;
+        String[] names = new String[presets.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = presets.get(i).getName();
+        }
+        int checked = presets.indexOf(musicService.getEqualizerPreset());
+
+        new AlertDialog.Builder(this)
+                .setTitle("Equalizer (" + musicService.getOutputDeviceName() + ")")
+                .setSingleChoiceItems(names, checked, (dialog, which) -> {
+                    if (isBound) {
+                        musicService.setEqualizerPreset(presets.get(which)); // Also saved for this output
+                    }
+                    dialog.dismiss();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    /**
+     * Lets the user turn on reading songs ahead into memory, for slow SD cards and USB storage,
+     * and pick how much memory it may use.
+     */
+    private void showReadAheadDialog() {
+        int current = getSharedPreferences(PREFS_NAME, MODE_PRIVATE).getInt(KEY_READ_AHEAD_MB, 0);
+        String[] names = new String[READ_AHEAD_CHOICES_MB.length];
+        int checked = 0;
+        for (int i = 0; i < names.length; i++) {
+            int megabytes = READ_AHEAD_CHOICES_MB[i];
+            names[i] = megabytes == 0 ? "Off (read on demand)" : megabytes + " MB";
+            if (megabytes == current) checked = i;
         }
+
+        new AlertDialog.Builder(this)
+                .setTitle("Buffered reading")
+                .setSingleChoiceItems(names, checked, (dialog, which) -> {
+                    int megabytes = READ_AHEAD_CHOICES_MB[which];
+                    getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit().putInt(KEY_READ_AHEAD_MB, megabytes).apply();
+                    if (isBound) {
+                        musicService.setReadAheadMegabytes(megabytes); // From the next song on
+                    }
+                    dialog.dismiss();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    /**
+     * Sorts the list by {@code key}; choosing the current key again flips the direction.
+     * Only swaps in a precomputed order, the library isn't queried again.
+     */
+    private void setSortOrder(SongSorter.Key key) {
+        sortAscending = key != sortKey || !sortAscending;
+        sortKey = key;
+        getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit()
+                .putString(KEY_SORT_KEY, key.name())
+                .putBoolean(KEY_SORT_ASCENDING, sortAscending)
+                .apply();
+        refreshSongList(() -> {
+            highlightCurrentSong();
+            recyclerViewSongs.scrollToPosition(0);
+        });
+    }
+
+    /**
+     * Brings the search index and the sort orders in line with the current library on the
+     * index executor. Usually only the changed songs are indexed for search; a fresh index
+     * is built when many were removed. Sort orders are collated again from scratch.
+     */
+    private void updateLibraryIndexes() {
+        final SongStore library = songList;
+        indexExecutor.execute(() -> {
+            long startTime = System.nanoTime();
+            SongSearchIndex index = backgroundSearchIndex;
+            if (index == null || !index.update(library)) {
+                index = SongSearchIndex.build(library);
+                backgroundSearchIndex = index;
+            }
+            long indexedTime = System.nanoTime();
+            final SongSorter sorter = SongSorter.build(library, Locale.getDefault());
+            Log.d(TAG, "Search index of " + index.size() + " songs ready in "
+                    + (indexedTime - startTime) / 1_000_000 + " ms, sort orders in "
+                    + (System.nanoTime() - indexedTime) / 1_000_000 + " ms");
+            final SongSearchIndex readyIndex = index;
+            handler.post(() -> {
+                if (isDestroyed()) return;
+                boolean wasSearching = isSearching();
+                searchIndex = readyIndex;
+                songSorter = sorter;
+                if (wasSearching || isSearching() || (sortKey != null && sorter.getStore() == songList)) {
+                    refreshSongList(); // Apply a query or order chosen before the indexes were ready
+                }
+            });
+        });
+    }
+
+    private void highlightCurrentSong() {
+        Song currentSong = musicService != null ? musicService.getCurrentSong() : null;
+        songAdapter.setSelectedPosition(currentSong == null ? RecyclerView.NO_POSITION
+                : songAdapter.getPositionOfId(currentSong.getId()));
     }
 
-    //--- MusicService.OnSongChangedListener Callbacks ---
+    //--- Playback State Snapshots ---
+
+    /** Draws a snapshot from the service; after (re)subscribing the first one draws everything. */
     @Override
-    public void onSongChanged(Song song, boolean isPlaying) {
+    public void onPlaybackState(PlaybackState state) {
+        PlaybackState previous = shownState;
+        shownState = state;
+        if (previous == null && state.getSong() == null) {
+            return; // Nothing loaded in the service yet; keep what restorePlaybackState() shows
+        }
+        boolean all = previous == null;
+        if (all || state.getSong() != previous.getSong()) {
+            onSongChanged(state.getSong(), state.isPlaying());
+        }
+        if (all || state.isPlaying() != previous.isPlaying()) {
+            onPlaybackStateChanged(state.isPlaying());
+        }
+        if (all || !state.sameQueue(previous)) {
+            updateShuffleButtonState();
+            updateRepeatButtonState();
+        }
+        onProgressUpdate(state.getPositionMs(SystemClock.uptimeMillis()), state.getDurationMs());
+    }
+
+    private void onSongChanged(Song song, boolean isPlaying) {
         if (song != null) {
             tvSongTitle.setText(song.getTitle());
             tvSongArtist.setText(song.getArtist());
             seekBarProgress.setMax((int) song.getDuration());
             tvTotalTime.setText(formatDuration(song.getDuration()));
-            // Highlight the currently playing song in the RecyclerView
-            int currentSongIndex = songList.indexOf(song);
+            // Highlight the currently playing song in the RecyclerView (if the search shows it)
+            int currentSongIndex = songAdapter.getPositionOfId(song.getId());
             if (currentSongIndex != -1) {
                 songAdapter.setSelectedPosition(currentSongIndex);
                 // Scroll to the current song, with an offset to keep it visible
                 ((LinearLayoutManager) recyclerViewSongs.getLayoutManager()).scrollToPositionWithOffset(currentSongIndex, 0);
+            } else {
+                songAdapter.setSelectedPosition(-1); // Filtered out by the search
             }
         } else {
             // No song playing, reset UI
@@ -464,51 +845,50 @@ public class MainActivity extends AppCompatActivity implements
         }
     }
 
-    @Override
-    public void onPlaybackStateChanged(boolean isPlaying) {
-        Log.d(TAG, "onPlaybackStateChanged: isPlaying=" + isPlaying);
+    private void onPlaybackStateChanged(boolean isPlaying) {
+        PLAYING_CHANGED.log(isPlaying ? 1 : 0);
         if (isPlaying) {
             btnPlayPause.setImageResource(R.drawable.ic_pause_white_24dp);
-            startSeekBarUpdates(); // Start updating seekbar only when playing
+            progressTicker.start(); // Start updating seekbar only when playing
         } else {
             btnPlayPause.setImageResource(R.drawable.ic_play_arrow_white_24dp);
-            handler.removeCallbacks(updateSeekBarRunnable); // Stop updates when paused
+            progressTicker.stop(); // Stop updates when paused
         }
     }
 
-    @Override
-    public void onProgressUpdate(int currentPosition, int duration) {
-        // This callback is less critical now as seek bar updates are managed by a Runnable.
-        // It could be used for other real-time UI updates or if seekbar updates were pushed from service.
-        // For current setup, the seekbar updates are pulled by the Runnable in MainActivity.
-        // We still update the current time text to be absolutely sure.
+    private void onProgressUpdate(int currentPosition, int duration) {
+        // The position may have jumped (seek, restore); the ticker carries on from the snapshot
+        if (seekScrubber.isDragging()) return; // The label follows the thumb meanwhile
         tvCurrentTime.setText(formatDuration(currentPosition));
+        if (shownState != null && shownState.isPlaying()) {
+            progressTicker.start();
+        }
     }
-    //--- End MusicService.OnSongChangedListener Callbacks ---
+    //--- End Playback State Snapshots ---
 
     private String formatDuration(long milliseconds) {
         return DateUtils.formatElapsedTime(milliseconds / 1000);
     }
 
     //--- SeekBar Updates ---
-    private void startSeekBarUpdates() {
-        // Ensure only one runnable instance is scheduled
-        if (updateSeekBarRunnable == null) {
-            updateSeekBarRunnable = new Runnable() {
-                @Override
-                public void run() {
-                    if (musicService != null && musicService.isPlaying()) {
-                        int currentPosition = musicService.getCurrentPosition();
-                        seekBarProgress.setProgress(currentPosition);
-                        tvCurrentTime.setText(formatDuration(currentPosition));
-                        handler.postDelayed(this, 1000); // Update every second
-                    } else {
-                        handler.removeCallbacks(this); // Stop updates if not playing
-                    }
-                }
-            };
-        }
-        handler.post(updateSeekBarRunnable); // Start the updates
+
+    /** Seeks for seekBarProgress: previews while dragging, one precise seek on release. */
+    private SeekScrubber createSeekScrubber(SeekScrubber.Timer timer) {
+        return new SeekScrubber((positionMs, preview) -> {
+            if (musicService == null) return;
+            if (preview) {
+                musicService.seekPreview(positionMs);
+            } else {
+                musicService.seekTo(positionMs);
+            }
+        }, timer, SystemClock::uptimeMillis, SeekStats.getInstance(), SeekScrubber.DEFAULT_INTERVAL_MS);
+    }
+
+    /** A tick of progressTicker: the position extrapolated from the snapshot, no player call. */
+    private void showProgress(int positionMs, int durationMs) {
+        if (seekScrubber.isDragging()) return;
+        seekBarProgress.setProgress(positionMs);
+        tvCurrentTime.setText(formatDuration(positionMs));
     }
     //--- End SeekBar Updates ---
 
@@ -544,21 +924,40 @@ public class MainActivity extends AppCompatActivity implements
         }
     }
 
-    private void showSettingsMenu(android.view.View anchorView) {
+    private void showSettingsMenu(android.view.View anchorView, boolean showDiagnostics) {
         PopupMenu popup = new PopupMenu(this, anchorView);
         popup.getMenuInflater().inflate(R.menu.settings_menu, popup.getMenu());
+        popup.getMenu().findItem(R.id.action_diagnostics).setVisible(showDiagnostics);
 
         popup.setOnMenuItemClickListener(item -> {
             int id = item.getItemId();
             if (id == R.id.action_toggle_theme) {
                 Toast.makeText(MainActivity.this, "Theme Toggle Clicked! (Implement light/dark mode logic)", Toast.LENGTH_SHORT).show();
                 return true;
+            } else if (id == R.id.action_crossfade) {
+                showCrossfadeDialog();
+                return true;
             } else if (id == R.id.action_equalizer) {
-                Toast.makeText(MainActivity.this, "Equalizer Clicked! (Navigate to Equalizer Activity/Fragment)", Toast.LENGTH_SHORT).show();
+                showEqualizerDialog();
+                return true;
+            } else if (id == R.id.action_read_ahead) {
+                showReadAheadDialog();
+                return true;
+            } else if (id == R.id.action_sort_title) {
+                setSortOrder(SongSorter.Key.TITLE);
+                return true;
+            } else if (id == R.id.action_sort_artist) {
+                setSortOrder(SongSorter.Key.ARTIST);
+                return true;
+            } else if (id == R.id.action_sort_duration) {
+                setSortOrder(SongSorter.Key.DURATION);
                 return true;
             } else if (id == R.id.action_about) {
                 Toast.makeText(MainActivity.this, "About Clicked! (Show app info)", Toast.LENGTH_SHORT).show();
                 return true;
+            } else if (id == R.id.action_diagnostics) {
+                startActivity(new Intent(MainActivity.this, DiagnosticsActivity.class));
+                return true;
             }
             return false;
         });
@@ -569,14 +968,15 @@ public class MainActivity extends AppCompatActivity implements
 
     // SongAdapter.OnSongOptionsClickListener Implementation (for deleting songs)
     @Override
-    public void onSongOptionsClick(View view, int position) {
+    public void onSongOptionsClick(View view, int adapterPosition) {
+        long songId = songAdapter.getItemId(adapterPosition);
         PopupMenu popup = new PopupMenu(this, view);
         popup.getMenuInflater().inflate(R.menu.song_options_menu, popup.getMenu());
 
         popup.setOnMenuItemClickListener(item -> {
             int id = item.getItemId();
             if (id == R.id.action_delete_song) {
-                showDeleteConfirmationDialog(position);
+                deleteSongs(new long[]{songId}); // A batch of one
                 return true;
             }
             return false;
@@ -584,109 +984,146 @@ public class MainActivity extends AppCompatActivity implements
         popup.show();
     }
 
-    /**
-     * Displays a confirmation dialog before deleting a song.
-     * @param position The position of the song in the songList.
-     */
-    private void showDeleteConfirmationDialog(int position) {
-        if (position < 0 || position >= songList.size()) {
-            Log.e(TAG, "Invalid position for delete dialog: " + position);
-            return;
-        }
-        Song songToDelete = songList.get(position);
-
-        new AlertDialog.Builder(this)
-                .setTitle("Delete Song")
-                .setMessage("Are you sure you want to delete '" + songToDelete.getTitle() + "'? This action cannot be undone.")
-                .setPositiveButton("Delete", (dialog, which) -> {
-                    deleteSong(position);
-                })
-                .setNegativeButton("Cancel", null)
-                .show();
+    /** Shows the selection count and actions in the header while songs are marked. */
+    private void onSelectionChanged(int selectedCount) {
+        boolean selecting = selectedCount > 0;
+        tvHeaderTitle.setText(selecting ? selectedCount + " selected" : "Gaane Suno");
+        btnClearSelection.setVisibility(selecting ? View.VISIBLE : View.GONE);
+        btnDeleteSelected.setVisibility(selecting ? View.VISIBLE : View.GONE);
+        btnTimer.setVisibility(selecting ? View.GONE : View.VISIBLE);
+        btnSettingsMenu.setVisibility(selecting ? View.GONE : View.VISIBLE);
+        selectionBackCallback.setEnabled(selecting);
     }
 
     /**
-     * Handles the actual deletion of the song file from storage and updates the UI.
-     * @param position The position of the song to delete in the songList.
+     * Deletes a batch of songs with one confirmation: the system's delete request on Android
+     * 11+, otherwise our dialog followed by a parallel delete with a progress bar. The list,
+     * the search index and the service are updated once for the whole batch.
      */
-    private void deleteSong(int position) {
+    private void deleteSongs(long[] songIds) {
         if (musicService == null) {
             Toast.makeText(this, "Music service not ready for deletion.", Toast.LENGTH_SHORT).show();
             return;
         }
-        if (position < 0 || position >= songList.size()) {
-            Log.e(TAG, "Invalid position for deletion: " + position);
+        List<Song> songsToDelete = new ArrayList<>(songIds.length);
+        for (long songId : songIds) {
+            int index = songList.indexOfId(songId);
+            if (index != -1) {
+                songsToDelete.add(songList.get(index));
+            }
+        }
+        if (songsToDelete.isEmpty()) {
+            Log.e(TAG, "None of the " + songIds.length + " songs to delete are in the library.");
             Toast.makeText(this, "Error: Song not found.", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        Song songToDelete = songList.get(position);
-        Song currentPlayingSong = musicService.getCurrentSong();
-        boolean wasPlayingDeletedSong = (currentPlayingSong != null && currentPlayingSong.getId() == songToDelete.getId());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            // The system asks the user once and deletes the whole batch itself
+            try {
+                pendingDeleteIds = idsOf(songsToDelete);
+                PendingIntent deleteRequest = songDeleter.createDeleteRequest(songsToDelete);
+                deleteRequestLauncher.launch(new IntentSenderRequest.Builder(deleteRequest.getIntentSender()).build());
+            } catch (Exception e) {
+                pendingDeleteIds = null;
+                Log.e(TAG, "Could not create delete request: " + e.getMessage());
+                Toast.makeText(this, "An unexpected error occurred during deletion: " + e.getMessage(), Toast.LENGTH_LONG).show();
+            }
+            return;
+        }
 
-        boolean deletedSuccessfully = false;
-        Uri contentUri = songToDelete.getData();
+        String message = songsToDelete.size() == 1
+                ? "Are you sure you want to delete '" + songsToDelete.get(0).getTitle() + "'? This action cannot be undone."
+                : "Are you sure you want to delete " + songsToDelete.size() + " songs? This action cannot be undone.";
+        new AlertDialog.Builder(this)
+                .setTitle(songsToDelete.size() == 1 ? "Delete Song" : "Delete Songs")
+                .setMessage(message)
+                .setPositiveButton("Delete", (dialog, which) -> startLegacyDelete(songsToDelete))
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
 
-        try {
-            ContentResolver contentResolver = getContentResolver();
-            int rowsAffected = contentResolver.delete(contentUri, null, null);
+    /** Before Android 11: deletes the songs on background threads, showing the progress. */
+    private void startLegacyDelete(List<Song> songsToDelete) {
+        ProgressBar progressBar = new ProgressBar(this, null, android.R.attr.progressBarStyleHorizontal);
+        progressBar.setMax(songsToDelete.size());
+        int padding = (int) (24 * getResources().getDisplayMetrics().density);
+        progressBar.setPadding(padding, padding, padding, padding);
+        AlertDialog progressDialog = new AlertDialog.Builder(this)
+                .setTitle("Deleting " + songsToDelete.size() + (songsToDelete.size() == 1 ? " song" : " songs"))
+                .setView(progressBar)
+                .setCancelable(false)
+                .show();
 
-            if (rowsAffected > 0) {
-                deletedSuccessfully = true;
-                Log.d(TAG, "Deleted song via MediaStore: " + songToDelete.getTitle());
-            } else {
-                Log.w(TAG, "Failed to delete via MediaStore, rows affected: " + rowsAffected + ". Attempting direct file delete (legacy fallback).");
-                // Fallback for older Android versions or specific device quirks where MediaStore.delete doesn't work directly
-                File file = new File(songToDelete.getPath());
-                if (file.exists() && file.delete()) {
-                    deletedSuccessfully = true;
-                    Log.d(TAG, "Deleted song via direct file delete: " + songToDelete.getTitle());
-                } else {
-                    Log.e(TAG, "Failed to delete song file: " + songToDelete.getPath());
-                    Toast.makeText(this, "Failed to delete file from storage: " + songToDelete.getTitle(), Toast.LENGTH_LONG).show();
-                }
+        songDeleter.delete(songsToDelete, new SongDeleter.Callback() {
+            @Override
+            public void onProgress(int done, int total) {
+                progressBar.setProgress(done);
             }
-        } catch (SecurityException e) {
-            Log.e(TAG, "SecurityException during song deletion: " + e.getMessage());
-            Toast.makeText(this, "Permission denied to delete song. On Android 10+, this might require specific user approval or 'All files access'.", Toast.LENGTH_LONG).show();
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
-                // For Android 11 (R) and above, direct file access is restricted.
-                // You should use MediaStore.createDeleteRequest(uris) to ask for user consent for deletion.
-                Toast.makeText(this, "On Android 11+, deletion requires explicit user confirmation via MediaStore.createDeleteRequest().", Toast.LENGTH_LONG).show();
+
+            @Override
+            public void onFinished(long[] deletedIds, int failedCount) {
+                if (isDestroyed()) return;
+                progressDialog.dismiss();
+                onSongsDeleted(deletedIds, failedCount);
             }
-        } catch (Exception e) {
-            Log.e(TAG, "An unexpected error occurred during deletion: " + e.getMessage());
-            Toast.makeText(this, "An unexpected error occurred during deletion: " + e.getMessage(), Toast.LENGTH_LONG).show();
+        });
+    }
+
+    /**
+     * Removes deleted songs from the library with one list update: a single new store,
+     * one adapter diff, one search index update and one service update that keeps the queue.
+     */
+    private void onSongsDeleted(long[] deletedIds, int failedCount) {
+        songAdapter.clearSelection();
+        if (failedCount > 0) {
+            Toast.makeText(this, "Failed to delete " + failedCount + (failedCount == 1 ? " song." : " songs."), Toast.LENGTH_LONG).show();
+        }
+        if (deletedIds.length == 0) {
+            return;
+        }
+        Toast.makeText(this, deletedIds.length + (deletedIds.length == 1 ? " song" : " songs") + " deleted successfully.", Toast.LENGTH_SHORT).show();
+
+        Song currentPlayingSong = musicService != null ? musicService.getCurrentSong() : null;
+        boolean wasPlayingDeletedSong = false;
+        if (currentPlayingSong != null) {
+            for (long deletedId : deletedIds) {
+                if (deletedId == currentPlayingSong.getId()) {
+                    wasPlayingDeletedSong = true;
+                    break;
+                }
+            }
+        }
+        if (wasPlayingDeletedSong) {
+            musicService.pause();
+            tvSongTitle.setText("No song playing");
+            tvSongArtist.setText("Artist");
+            seekBarProgress.setProgress(0);
+            tvCurrentTime.setText("0:00");
+            songAdapter.setSelectedPosition(-1);
         }
 
-        if (deletedSuccessfully) {
-            Toast.makeText(this, "'" + songToDelete.getTitle() + "' deleted successfully.", Toast.LENGTH_SHORT).show();
-            if (wasPlayingDeletedSong) {
+        songList = songList.withoutIds(deletedIds);
+        refreshSongList();
+        updateLibraryIndexes();
+        if (musicService != null) {
+            musicService.updateSongList(songList); // Keeps the queue, next continues after the deleted songs
+            if (songList.isEmpty() && musicService.isPlaying()) {
+                // If the list became empty and something was still playing, stop it
                 musicService.pause();
-                tvSongTitle.setText("No song playing");
-                tvSongArtist.setText("Artist");
-                seekBarProgress.setProgress(0);
-                tvCurrentTime.setText("0:00");
-                songAdapter.setSelectedPosition(-1);
-                // The service itself needs to clear its current song and index
-                // You might need to add methods in MusicService for this, e.g., musicService.clearCurrentSong();
-                // For now, if current song is null, service will handle it.
-            }
-            songList.remove(position);
-            songAdapter.updateSongList(songList);
-
-            // Inform the service about the updated song list
-            if (musicService != null) {
-                musicService.setSongList(songList); // Re-set the song list in the service
-                if (songList.isEmpty() && musicService.isPlaying()) {
-                    // If the list became empty and something was still playing, stop it
-                    musicService.pause();
-                    musicService.seekTo(0);
-                }
+                musicService.seekTo(0);
             }
         }
     }
 
+    private static long[] idsOf(List<Song> songs) {
+        long[] ids = new long[songs.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = songs.get(i).getId();
+        }
+        return ids;
+    }
+
     @Override
     protected void onStart() {
         super.onStart();
@@ -732,24 +1169,30 @@ public class MainActivity extends AppCompatActivity implements
         // Unbind from the service to avoid Activity leaks if it's not needed in background.
         // If the service is a foreground service, it will continue running anyway.
         if (isBound) {
-            musicService.setOnSongChangedListener(null); // Crucial to prevent leaks
+            musicService.unsubscribe(this); // Crucial to prevent leaks
             unbindService(serviceConnection);
             isBound = false;
             Log.d(TAG, "MainActivity onStop: Unbinding service.");
         }
-        handler.removeCallbacks(updateSeekBarRunnable); // Stop updates
+        shownState = null; // Missed snapshots: draw everything again on return
+        progressTicker.stop(); // Stop updates
+        seekScrubber.cancel(); // A drag cut short by leaving doesn't seek
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
         Log.d(TAG, "MainActivity onDestroy.");
+        librarySync.stop();
+        libraryScanner.shutdown(); // Drop any scan still running
+        indexExecutor.shutdownNow();
+        songDeleter.shutdown();
         // Make sure to unbind service and remove callbacks if not already done in onStop
         if (isBound) {
-            musicService.setOnSongChangedListener(null);
+            musicService.unsubscribe(this);
             unbindService(serviceConnection);
             isBound = false;
         }
-        handler.removeCallbacks(updateSeekBarRunnable);
+        progressTicker.stop();
     }
 }
\ No newline at end of file
@@ -0,0 +1,194 @@
+package com.example.gaanesuno;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.os.Build;
+import android.os.PowerManager;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.function.IntSupplier;
+
+/**
+ * {@link PlaybackEngine} on android.media.MediaPlayer, for music. Has to be created on a
+ * thread with a Looper; MediaPlayer delivers the callbacks there.
+ *
+ * <p>All engines of the service share one audio session, so effects attached to it (the
+ * equalizer) apply to whichever of them is playing.</p>
+ *
+ * <p>With read-ahead on, songs are fed through a {@link BufferedMediaDataSource} instead of the
+ * content Uri; the preloaded next song's buffer fills while the current one plays.</p>
+ */
+public class MediaPlayerEngine implements PlaybackEngine,
+        MediaPlayer.OnPreparedListener,
+        MediaPlayer.OnCompletionListener,
+        MediaPlayer.OnErrorListener,
+        MediaPlayer.OnSeekCompleteListener {
+
+    private static final String TAG = "MediaPlayerEngine";
+
+    private final Context context;
+    private final Callback callback;
+    private final IntSupplier readAheadBytes; // Ring size of a buffered source, 0 reads through the Uri
+    private final MediaPlayer player = new MediaPlayer();
+    private BufferedMediaDataSource dataSource; // The current song's, when buffered
+    private float volume = 1f;
+    private float trackGain = 1f;
+
+    /**
+     * @param audioSessionId AudioManager.ERROR for a session of its own.
+     * @param readAheadBytes Read when each song is loaded, so a new setting applies from the next song.
+     */
+    public MediaPlayerEngine(Context context, Callback callback, int audioSessionId, IntSupplier readAheadBytes) {
+        this.context = context.getApplicationContext();
+        this.callback = callback;
+        this.readAheadBytes = readAheadBytes;
+        if (audioSessionId != AudioManager.ERROR) {
+            player.setAudioSessionId(audioSessionId); // Still idle, so it's allowed
+        }
+        player.setAudioAttributes(new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_MEDIA)
+                .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                .build());
+        player.setOnPreparedListener(this);
+        player.setOnCompletionListener(this);
+        player.setOnErrorListener(this);
+        player.setOnSeekCompleteListener(this);
+        // Keeps the CPU awake while playing with the screen off, so a scheduled crossfade starts on time
+        player.setWakeMode(this.context, PowerManager.PARTIAL_WAKE_LOCK);
+    }
+
+    @Override
+    public void setSource(Song song) throws IOException {
+        player.reset();
+        closeDataSource();
+        int capacity = readAheadBytes.getAsInt();
+        if (capacity > 0) {
+            try {
+                dataSource = new BufferedMediaDataSource(context, song.getData(), capacity);
+                player.setDataSource(dataSource);
+                return;
+            } catch (IOException e) {
+                Log.w(TAG, "Read-ahead unavailable for " + song.getTitle() + ", reading directly: " + e.getMessage());
+                closeDataSource();
+                player.reset();
+            }
+        }
+        player.setDataSource(context, song.getData());
+    }
+
+    private void closeDataSource() {
+        if (dataSource == null) return;
+        try {
+            dataSource.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Closing read-ahead source: " + e.getMessage());
+        }
+        dataSource = null;
+    }
+
+    @Override
+    public void prepareAsync() {
+        player.prepareAsync();
+    }
+
+    @Override
+    public void start() {
+        player.start();
+    }
+
+    @Override
+    public void pause() {
+        player.pause();
+    }
+
+    @Override
+    public void seekTo(int positionMs) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            player.seekTo(positionMs, MediaPlayer.SEEK_CLOSEST);
+        } else {
+            player.seekTo(positionMs); // Closest on these versions for most formats
+        }
+    }
+
+    @Override
+    public void seekToSync(int positionMs) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            player.seekTo(positionMs, MediaPlayer.SEEK_CLOSEST_SYNC);
+        } else {
+            player.seekTo(positionMs);
+        }
+    }
+
+    @Override
+    public void reset() {
+        player.reset();
+        closeDataSource();
+    }
+
+    @Override
+    public void release() {
+        player.release();
+        closeDataSource();
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return player.isPlaying();
+    }
+
+    @Override
+    public int getPosition() {
+        return player.getCurrentPosition();
+    }
+
+    @Override
+    public int getDuration() {
+        return player.getDuration();
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        this.volume = volume;
+        player.setVolume(volume * trackGain, volume * trackGain);
+    }
+
+    @Override
+    public void setTrackGain(float gain) {
+        trackGain = gain;
+        setVolume(volume);
+    }
+
+    @Override
+    public void setLooping(boolean looping) {
+        player.setLooping(looping);
+    }
+
+    @Override
+    public void setNext(PlaybackEngine next) {
+        player.setNextMediaPlayer(next != null ? ((MediaPlayerEngine) next).player : null);
+    }
+
+    @Override
+    public void onPrepared(MediaPlayer mp) {
+        callback.onPrepared(this);
+    }
+
+    @Override
+    public void onCompletion(MediaPlayer mp) {
+        callback.onCompletion(this);
+    }
+
+    @Override
+    public boolean onError(MediaPlayer mp, int what, int extra) {
+        callback.onError(this, what, extra);
+        return true; // Handled, MediaPlayer doesn't call onCompletion after it
+    }
+
+    @Override
+    public void onSeekComplete(MediaPlayer mp) {
+        callback.onSeekComplete(this);
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.gaanesuno;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the media session (lock screen, headsets, Bluetooth, Android Auto...) in step with the
+ * {@link PlaybackStateBus}. Remote controllers extrapolate the position from the anchor,
+ * speed and status of the pushed state, so like the activities they need no periodic
+ * position updates: a push only follows play, pause, seek or another song.
+ *
+ * <p>Snapshots that change nothing the session shows (a queue change on the same timeline)
+ * push nothing. Metadata is only pushed for another song or duration, and the shuffle and
+ * repeat modes only when they change. The bus already coalesces snapshots published faster
+ * than the executor runs.</p>
+ *
+ * <p>A looping (repeat one) song is pushed again once per loop, at the start: controllers
+ * don't know it starts over and would run past its end.</p>
+ *
+ * <p>Runs on the playback thread.</p>
+ */
+public final class MediaSessionSync implements PlaybackStateBus.Subscriber {
+
+    /** The media session; MusicService wraps MediaSessionCompat. */
+    public interface Session {
+        /** Title, artist and duration of the song, or nothing playing when null. */
+        void setMetadata(Song song, int durationMs);
+
+        /** Status and speed of {@code state}, at {@code positionMs} read at {@code positionUptimeMs}. */
+        void setPlaybackState(PlaybackState state, int positionMs, long positionUptimeMs);
+
+        void setModes(boolean shuffle, int repeatMode);
+    }
+
+    private final Session session;
+    private final SeekScrubber.Timer timer;
+    private final LongSupplier uptimeClock; // Milliseconds
+    private final Runnable loopStart = this::onLoopStart;
+
+    private PlaybackState pushed; // Last state pushed, null before the first
+    private Song metadataSong;
+    private int metadataDurationMs = -1;
+    private boolean modesPushed;
+    private boolean shuffle;
+    private int repeatMode;
+    private boolean loopScheduled;
+
+    private long statePushes;
+    private long metadataPushes;
+
+    public MediaSessionSync(Session session, SeekScrubber.Timer timer, LongSupplier uptimeClock) {
+        this.session = session;
+        this.timer = timer;
+        this.uptimeClock = uptimeClock;
+    }
+
+    @Override
+    public void onPlaybackState(PlaybackState state) {
+        Song song = state.getSong();
+        // While the song loads its library duration stands in; the player's usually matches it
+        int durationMs = state.getDurationMs() > 0 || song == null ? state.getDurationMs() : song.getDuration();
+        if (metadataDurationMs < 0 || !sameSong(song, metadataSong) || durationMs != metadataDurationMs) {
+            metadataSong = song;
+            metadataDurationMs = durationMs;
+            metadataPushes++;
+            session.setMetadata(song, durationMs);
+        }
+        if (!modesPushed || state.isShuffle() != shuffle || state.getRepeatMode() != repeatMode) {
+            modesPushed = true;
+            shuffle = state.isShuffle();
+            repeatMode = state.getRepeatMode();
+            session.setModes(shuffle, repeatMode);
+        }
+        if (pushed == null || !sameTimeline(state, pushed)) {
+            pushState(state, state.getAnchorPositionMs(), state.getAnchorUptimeMs());
+        }
+    }
+
+    /** Stops the loop pushes; the session is released. */
+    public void release() {
+        cancelLoop();
+    }
+
+    public long getStatePushes() {
+        return statePushes;
+    }
+
+    public long getMetadataPushes() {
+        return metadataPushes;
+    }
+
+    private void pushState(PlaybackState state, int positionMs, long positionUptimeMs) {
+        pushed = state;
+        statePushes++;
+        session.setPlaybackState(state, positionMs, positionUptimeMs);
+        cancelLoop();
+        if (state.isPlaying() && state.isLooping() && state.getDurationMs() > 0 && state.getSpeed() > 0) {
+            int remainingMs = state.getDurationMs() - positionMs;
+            loopScheduled = true;
+            timer.postDelayed(loopStart, Math.max(1, (long) Math.ceil(remainingMs / state.getSpeed())));
+        }
+    }
+
+    private void onLoopStart() {
+        loopScheduled = false;
+        long now = uptimeClock.getAsLong();
+        pushState(pushed, pushed.getPositionMs(now), now); // Back near 0
+    }
+
+    private void cancelLoop() {
+        if (loopScheduled) {
+            loopScheduled = false;
+            timer.cancel(loopStart);
+        }
+    }
+
+    /** Same status, speed, looping and anchor: what a controller extrapolates from. */
+    private static boolean sameTimeline(PlaybackState a, PlaybackState b) {
+        return a.getStatus() == b.getStatus() && a.getSpeed() == b.getSpeed() && a.isLooping() == b.isLooping()
+                && a.getDurationMs() == b.getDurationMs() && sameSong(a.getSong(), b.getSong())
+                && a.getAnchorPositionMs() == b.getAnchorPositionMs() && a.getAnchorUptimeMs() == b.getAnchorUptimeMs();
+    }
+
+    private static boolean sameSong(Song a, Song b) {
+        if (a == null || b == null) return a == b;
+        return a.getId() == b.getId() && a.getDateModified() == b.getDateModified();
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.gaanesuno;
 
+import android.app.ActivityManager;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
@@ -10,14 +11,23 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
 import android.media.AudioAttributes;
+import android.media.AudioDeviceCallback;
+import android.media.AudioDeviceInfo;
 import android.media.AudioFocusRequest;
 import android.media.AudioManager;
-import android.media.MediaPlayer;
 import android.os.Binder;
 import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.v4.media.MediaMetadataCompat;
+import android.support.v4.media.session.MediaSessionCompat;
+import android.support.v4.media.session.PlaybackStateCompat;
 import android.util.Log;
 import android.widget.RemoteViews;
 import android.widget.Toast;
@@ -26,43 +36,45 @@ import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 import androidx.core.content.ContextCompat;
 
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.concurrent.Executor;
 
-public class MusicService extends Service implements
-        MediaPlayer.OnCompletionListener,
-        MediaPlayer.OnErrorListener,
-        MediaPlayer.OnPreparedListener,
-        AudioManager.OnAudioFocusChangeListener {
+public class MusicService extends Service implements AudioManager.OnAudioFocusChangeListener {
 
     private static final String TAG = "MusicService";
+    // First argument: the command type's ordinal times two, plus one when its flag is set
+    private static final Trace.Point COMMAND = Trace.point(TAG, Trace.DEBUG, "Command {} index={} value={}",
+            commandLabels());
 
-    private MediaPlayer mediaPlayer;
-    private List<Song> songList; // The original list of songs
-    private List<Song> activeSongList; // The list currently being played (can be shuffled)
-    private int currentSongIndex = -1;
-    private Song currentSong;
-    private int currentPosition; // Current playback position for saving/restoring
-    private boolean isPrepared = false; // Flag to indicate if MediaPlayer is prepared
-    private boolean shouldPlayAfterPrepared = false; // Flag to play immediately after preparation
+    // The queue, the players and what happens when a song ends or fails; only used on the playback thread
+    private PlaybackController controller;
+    private CrossfadeScheduler crossfader;
+
+    // Times each stage of starting a song, shown in the diagnostics screen
+    private final PlaybackLatencyTracker latencyTracker = PlaybackLatencyTracker.getInstance();
 
     // Service Binder
     private final IBinder musicBinder = new MusicBinder();
 
-    // Callbacks for MainActivity to update UI
-    public interface OnSongChangedListener {
-        void onSongChanged(Song song, boolean isPlaying);
-        void onPlaybackStateChanged(boolean isPlaying);
-        void onProgressUpdate(int currentPosition, int duration);
-    }
-    private OnSongChangedListener listener;
+    // Snapshots for the activities (and anything else drawing the playback state)
+    private final PlaybackStateBus stateBus = new PlaybackStateBus();
 
     // Notification
     private static final String CHANNEL_ID = "MusicPlayerChannel";
     private static final int NOTIFICATION_ID = 101;
     private NotificationManager notificationManager;
+    private NotificationThrottle notificationThrottle; // Playback thread only
+    // Built once in onCreate; every notification reuses them
+    private PendingIntent playIntent, pauseIntent, nextIntent, previousIntent, stopIntent, contentIntent;
+
+    // Media session: lock screen, headset and Bluetooth controls. Kept in sync from the state bus
+    // on the playback thread; its callbacks run on the main thread and queue commands like the UI
+    private MediaSessionCompat mediaSession;
+    private MediaSessionSync mediaSessionSync;
+    private static final long MEDIA_SESSION_ACTIONS = PlaybackStateCompat.ACTION_PLAY
+            | PlaybackStateCompat.ACTION_PAUSE | PlaybackStateCompat.ACTION_PLAY_PAUSE
+            | PlaybackStateCompat.ACTION_SKIP_TO_NEXT | PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS
+            | PlaybackStateCompat.ACTION_SEEK_TO | PlaybackStateCompat.ACTION_STOP
+            | PlaybackStateCompat.ACTION_SET_SHUFFLE_MODE | PlaybackStateCompat.ACTION_SET_REPEAT_MODE;
 
     // Actions for Notification and Service control
     public static final String ACTION_PLAY = "com.example.gaanesuno.ACTION_PLAY";
@@ -72,35 +84,111 @@ public class MusicService extends Service implements
     public static final String ACTION_STOP = "com.example.gaanesuno.ACTION_STOP"; // For notification close
 
     // Shuffle & Repeat modes
-    private boolean isShuffleEnabled = false;
-    public static final int REPEAT_OFF = 0;
-    public static final int REPEAT_ALL = 1;
-    public static final int REPEAT_ONE = 2;
-    private int repeatMode = REPEAT_OFF;
-
-    // Handler for updating seekbar and notification periodically
-    private Handler handler = new Handler();
-    private Runnable updateNotificationAndSeekBarRunnable;
+    public static final int REPEAT_OFF = PlaybackController.REPEAT_OFF;
+    public static final int REPEAT_ALL = PlaybackController.REPEAT_ALL;
+    public static final int REPEAT_ONE = PlaybackController.REPEAT_ONE;
+
+    // Playback thread: every command, player callback and progress update runs on it, so the main
+    // thread never blocks in reset()/setDataSource() and the players are only touched from one thread
+    private HandlerThread playbackThread;
+    private Handler playbackHandler;
+    private PlaybackCommandQueue commands;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile PlaybackState state = PlaybackState.EMPTY; // Latest snapshot, read by the getters
+    private static final int ANCHOR_TOLERANCE_MS = 50; // Position drift kept before re-anchoring
+
+    // Settings as last requested on the main thread; the getters return them right away while
+    // the commands applying them may still be queued
+    private volatile boolean requestedShuffle = false;
+    private volatile int requestedRepeatMode = REPEAT_OFF;
+    private volatile int requestedCrossfadeSeconds = 0;
+
+    // Runs on the playback thread once playback starts; the UI extrapolates from the snapshot after it
+    private Runnable progressUpdateRunnable;
 
     // Audio Focus
     private AudioManager audioManager;
     private AudioFocusRequest audioFocusRequest; // For API 26+
 
+    // Equalizer: both players share one audio session with the platform equalizer on it, and
+    // each output (speaker, headphones, Bluetooth...) remembers its own preset
+    private static final String OUTPUT_SPEAKER = "Speaker";
+    private int audioSessionId = AudioManager.ERROR;
+    private PlatformEqualizer equalizer;
+    private String outputDevice = OUTPUT_SPEAKER; // Main thread only
+    private final AudioDeviceCallback outputDeviceCallback = new AudioDeviceCallback() {
+        @Override
+        public void onAudioDevicesAdded(AudioDeviceInfo[] addedDevices) {
+            onOutputDevicesChanged();
+        }
+
+        @Override
+        public void onAudioDevicesRemoved(AudioDeviceInfo[] removedDevices) {
+            onOutputDevicesChanged();
+        }
+    };
+
+    // Read-ahead: ring bytes per player, 0 when songs are read through their content Uri
+    private volatile int readAheadBytes = 0;
+
     // --- Service Lifecycle Methods ---
 
     @Override
     public void onCreate() {
         super.onCreate();
+        // The service can start without an activity (from the notification), so it sets up tracing too
+        Trace.init((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0, Log::println);
         Log.d(TAG, "MusicService onCreate: Service is being created.");
 
-        songList = new ArrayList<>();
-        activeSongList = new ArrayList<>();
-        initMediaPlayer(); // Initialize MediaPlayer
+        audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
+        audioSessionId = audioManager.generateAudioSessionId();
+        setReadAheadMegabytes(getSharedPreferences(MainActivity.PREFS_NAME, MODE_PRIVATE)
+                .getInt(MainActivity.KEY_READ_AHEAD_MB, 0));
+
+        playbackThread = new HandlerThread("Playback", Process.THREAD_PRIORITY_AUDIO);
+        playbackThread.start();
+        playbackHandler = new Handler(playbackThread.getLooper());
+        commands = new PlaybackCommandQueue(playbackHandler::post, this::onCommand);
+        crossfader = new CrossfadeScheduler(token -> controller.onCrossfadeFinished(token), playbackHandler);
+        controller = new PlaybackController(new ControllerHost(),
+                callback -> new MediaPlayerEngine(this, callback, audioSessionId, () -> readAheadBytes), crossfader,
+                latencyTracker, SystemClock::uptimeMillis);
+        // Created on the playback thread so the player's callbacks are delivered there too
+        playbackHandler.post(controller::init);
+        // Reads the loudness cache before the first song is loaded
+        playbackHandler.post(() -> LoudnessAnalysisService.getCache(this));
 
         notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
         createNotificationChannel(); // Create notification channel for Android O+
+        createNotificationIntents();
+        SeekScrubber.Timer playbackTimer = new SeekScrubber.Timer() {
+            @Override
+            public void postDelayed(Runnable task, long delayMs) {
+                playbackHandler.postDelayed(task, delayMs);
+            }
 
-        audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
+            @Override
+            public void cancel(Runnable task) {
+                playbackHandler.removeCallbacks(task);
+            }
+        };
+        notificationThrottle = new NotificationThrottle(this::postNotification, playbackTimer,
+                SystemClock::uptimeMillis, NotificationStats.getInstance(), NotificationThrottle.DEFAULT_INTERVAL_MS);
+
+        mediaSession = new MediaSessionCompat(this, TAG);
+        mediaSession.setCallback(mediaSessionCallback); // On the main thread, where it is created
+        mediaSession.setSessionActivity(contentIntent);
+        mediaSession.setActive(true);
+        mediaSessionSync = new MediaSessionSync(new SessionHost(), playbackTimer, SystemClock::uptimeMillis);
+        // Delivered after the playback thread's current task, so a burst of snapshots is one push
+        stateBus.subscribe(mediaSessionSync, playbackHandler::post);
+
+        outputDevice = currentOutputDevice();
+        if (audioSessionId != AudioManager.ERROR) {
+            equalizer = new PlatformEqualizer(audioSessionId);
+            equalizer.apply(getEqualizerPreset());
+        }
+        audioManager.registerAudioDeviceCallback(outputDeviceCallback, mainHandler);
 
         // Register receiver for notification button clicks
         IntentFilter filter = new IntentFilter();
@@ -112,19 +200,9 @@ public class MusicService extends Service implements
         ContextCompat.registerReceiver(this, notificationActionReceiver, filter, ContextCompat.RECEIVER_NOT_EXPORTED);
         Log.d(TAG, "Notification action receiver registered.");
 
-        // Runnable to update progress (seekbar and notification)
-        updateNotificationAndSeekBarRunnable = new Runnable() {
-            @Override
-            public void run() {
-                if (mediaPlayer != null && mediaPlayer.isPlaying()) {
-                    currentPosition = mediaPlayer.getCurrentPosition();
-                    if (listener != null) {
-                        listener.onProgressUpdate(currentPosition, mediaPlayer.getDuration());
-                    }
-                    handler.postDelayed(this, 1000); // Update every second
-                }
-            }
-        };
+        // One progress update when playback starts, with the position the player reports once
+        // it runs. There is no periodic update: nothing wakes up while playing with the screen off.
+        progressUpdateRunnable = controller::updateProgress; // Also publishes the new position
     }
 
     @Override
@@ -185,13 +263,42 @@ public class MusicService extends Service implements
         super.onDestroy();
         Log.d(TAG, "MusicService onDestroy: Service is being destroyed. Releasing resources.");
 
+        // Saving the state and releasing the players happen on the playback thread, after the
+        // commands still queued there (e.g. the pause of a stop action); quitSafely() runs them first
+        playbackHandler.post(this::releasePlayback);
+        playbackThread.quitSafely();
+
+        // Stop the foreground service and remove the notification
+        stopForeground(true); // true means remove the notification
+        Log.d(TAG, "Foreground service stopped and notification removed.");
+
+        audioManager.unregisterAudioDeviceCallback(outputDeviceCallback);
+        if (equalizer != null) {
+            equalizer.release();
+        }
+
+        // Unregister the broadcast receiver
+        try {
+            unregisterReceiver(notificationActionReceiver);
+            Log.d(TAG, "Notification action receiver unregistered.");
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Receiver not registered, skipping unregister: " + e.getMessage());
+        }
+    }
+
+    /** Last step on the playback thread: saves where playback was and releases the players. */
+    private void releasePlayback() {
+        boolean wasPlaying = controller.isPlaying();
+        int position = controller.getCurrentPosition();
+        Song currentSong = controller.getCurrentSong();
+
         // Save current playback state before destruction
         SharedPreferences.Editor editor = getSharedPreferences(MainActivity.PREFS_NAME, MODE_PRIVATE).edit();
         if (currentSong != null) {
             editor.putLong(MainActivity.KEY_LAST_SONG_ID, currentSong.getId());
-            editor.putInt(MainActivity.KEY_LAST_SONG_POSITION, getCurrentPosition()); // Get actual current position
-            editor.putBoolean(MainActivity.KEY_WAS_PLAYING, isPlaying()); // Save if it was playing or paused
-            Log.d(TAG, "onDestroy: Saved last song ID: " + currentSong.getId() + ", position: " + getCurrentPosition() + ", wasPlaying: " + isPlaying());
+            editor.putInt(MainActivity.KEY_LAST_SONG_POSITION, position); // Get actual current position
+            editor.putBoolean(MainActivity.KEY_WAS_PLAYING, wasPlaying); // Save if it was playing or paused
+            Log.d(TAG, "onDestroy: Saved last song ID: " + currentSong.getId() + ", position: " + position + ", wasPlaying: " + wasPlaying);
         } else {
             // No song playing or available, clear saved state
             editor.remove(MainActivity.KEY_LAST_SONG_ID);
@@ -201,16 +308,18 @@ public class MusicService extends Service implements
         }
         editor.apply();
 
-        // Release MediaPlayer resources
-        if (mediaPlayer != null) {
-            if (mediaPlayer.isPlaying()) {
-                mediaPlayer.stop();
-                Log.d(TAG, "MediaPlayer stopped in onDestroy.");
-            }
-            mediaPlayer.release();
-            mediaPlayer = null;
-            Log.d(TAG, "MediaPlayer released in onDestroy.");
-        }
+        // Release the players
+        crossfader.quit(); // Stops touching the players before they are released
+        controller.release(); // Also stops the progress updates
+        notificationThrottle.reset(); // No deferred post after this
+        // A pause queued by a stop action ran just before this and may have posted the notification
+        // again after onDestroy() removed it; remove it here, where nothing can post it afterwards
+        stopForeground(true);
+        notificationManager.cancel(NOTIFICATION_ID);
+        stateBus.unsubscribe(mediaSessionSync);
+        mediaSessionSync.release();
+        mediaSession.setActive(false);
+        mediaSession.release();
 
         // Abandon audio focus
         if (audioManager != null) {
@@ -222,22 +331,6 @@ public class MusicService extends Service implements
                 Log.d(TAG, "Audio focus abandoned (API < 26).");
             }
         }
-
-        // Stop the handler's updates
-        handler.removeCallbacks(updateNotificationAndSeekBarRunnable);
-        Log.d(TAG, "Handler callbacks removed.");
-
-        // Stop the foreground service and remove the notification
-        stopForeground(true); // true means remove the notification
-        Log.d(TAG, "Foreground service stopped and notification removed.");
-
-        // Unregister the broadcast receiver
-        try {
-            unregisterReceiver(notificationActionReceiver);
-            Log.d(TAG, "Notification action receiver unregistered.");
-        } catch (IllegalArgumentException e) {
-            Log.e(TAG, "Receiver not registered, skipping unregister: " + e.getMessage());
-        }
     }
 
     /**
@@ -256,132 +349,6 @@ public class MusicService extends Service implements
         super.onTaskRemoved(rootIntent);
     }
 
-    // --- MediaPlayer Setup and Callbacks ---
-
-    /** Initializes the MediaPlayer instance. */
-    private void initMediaPlayer() {
-        if (mediaPlayer == null) {
-            mediaPlayer = new MediaPlayer();
-            mediaPlayer.setAudioAttributes(new AudioAttributes.Builder()
-                    .setUsage(AudioAttributes.USAGE_MEDIA)
-                    .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
-                    .build());
-            mediaPlayer.setOnCompletionListener(this);
-            mediaPlayer.setOnErrorListener(this);
-            mediaPlayer.setOnPreparedListener(this); // Set the default onPreparedListener here
-            Log.d(TAG, "MediaPlayer initialized for the first time.");
-        } else {
-            Log.d(TAG, "MediaPlayer already initialized.");
-        }
-    }
-
-    /** Prepares the MediaPlayer with a new song. */
-    private void prepareMediaPlayer(Song song) {
-        if (mediaPlayer == null) {
-            initMediaPlayer(); // Ensure mediaPlayer is not null
-        }
-        mediaPlayer.reset(); // Reset to idle state
-        isPrepared = false; // Mark as not prepared yet
-        try {
-            mediaPlayer.setDataSource(getApplicationContext(), song.getData());
-            mediaPlayer.prepareAsync(); // Asynchronously prepare
-            Log.d(TAG, "MediaPlayer preparing asynchronously for: " + song.getTitle());
-        } catch (IOException e) {
-            Log.e(TAG, "Error setting data source or preparing for " + song.getTitle() + ": " + e.getMessage(), e);
-            Toast.makeText(this, "Error loading song: " + song.getTitle() + ". Skipping...", Toast.LENGTH_SHORT).show();
-            // Handle error: e.g., skip to next song
-            if (listener != null) {
-                listener.onSongChanged(null, false); // Clear UI
-                listener.onPlaybackStateChanged(false); // Update play/pause button
-            }
-            playNextSong(); // Try to play next song if current one fails
-        }
-    }
-
-    @Override
-    public void onPrepared(MediaPlayer mp) {
-        isPrepared = true; // MediaPlayer is now prepared
-        Log.d(TAG, "MediaPlayer onPrepared for: " + currentSong.getTitle() + ", shouldPlayAfterPrepared: " + shouldPlayAfterPrepared);
-
-        if (shouldPlayAfterPrepared) {
-            // Only attempt to start if audio focus is granted
-            if (requestAudioFocus()) {
-                mp.start(); // Start actual playback
-                Log.d(TAG, "MediaPlayer started playing from onPrepared: " + currentSong.getTitle());
-                startForeground(NOTIFICATION_ID, createNotification(currentSong, true)); // Promote to foreground
-                handler.post(updateNotificationAndSeekBarRunnable); // Start seekbar updates
-                if (listener != null) {
-                    listener.onPlaybackStateChanged(true); // Notify activity that it's playing
-                    listener.onSongChanged(currentSong, true); // Update song info and playing state in UI
-                }
-            } else {
-                Log.w(TAG, "Audio focus denied onPrepared. Cannot play immediately.");
-                if (listener != null) {
-                    listener.onPlaybackStateChanged(false); // Update UI to paused state
-                }
-                // Optional: update notification to show paused state if focus denied
-                notificationManager.notify(NOTIFICATION_ID, createNotification(currentSong, false));
-            }
-            shouldPlayAfterPrepared = false; // Reset the flag after use
-        } else {
-            Log.d(TAG, "MediaPlayer prepared, but not starting playback immediately (shouldPlayAfterPrepared was false).");
-            // If just preparing (e.g., for seek or restore paused state), update UI to paused
-            if (listener != null) {
-                listener.onSongChanged(currentSong, false);
-                listener.onPlaybackStateChanged(false);
-            }
-            // Update notification to reflect paused state
-            notificationManager.notify(NOTIFICATION_ID, createNotification(currentSong, false));
-        }
-    }
-
-    @Override
-    public void onCompletion(MediaPlayer mp) {
-        Log.d(TAG, "MediaPlayer onCompletion. Current song: " + (currentSong != null ? currentSong.getTitle() : "null"));
-        switch (repeatMode) {
-            case REPEAT_ONE:
-                Log.d(TAG, "Repeat ONE: Replaying current song.");
-                play(); // Replay the same song by calling play()
-                break;
-            case REPEAT_ALL:
-                Log.d(TAG, "Repeat ALL: Playing next song.");
-                playNextSong(); // Play next song
-                break;
-            case REPEAT_OFF:
-            default:
-                if (currentSongIndex < activeSongList.size() - 1) {
-                    Log.d(TAG, "Repeat OFF: Playing next song.");
-                    playNextSong(); // Play next if not the last song
-                } else {
-                    // Last song in list, repeat off. Stop playback.
-                    Log.d(TAG, "Repeat OFF: Last song finished. Stopping playback.");
-                    pause(); // Pause playback
-                    seekTo(0); // Reset to beginning of the last song
-                    if (listener != null) {
-                        listener.onSongChanged(currentSong, false); // Update UI for finished song, paused
-                        listener.onPlaybackStateChanged(false); // Update play/pause button
-                        listener.onProgressUpdate(0, currentSong.getDuration()); // Reset seekbar
-                    }
-                    stopForeground(false); // Keep notification visible but not foreground
-                    notificationManager.notify(NOTIFICATION_ID, createNotification(currentSong, false));
-                }
-                break;
-        }
-    }
-
-    @Override
-    public boolean onError(MediaPlayer mp, int what, int extra) {
-        Log.e(TAG, "MediaPlayer onError: what=" + what + ", extra=" + extra);
-        isPrepared = false; // MediaPlayer is no longer prepared
-        if (listener != null) {
-            listener.onPlaybackStateChanged(false); // Update UI
-        }
-        Toast.makeText(this, "Error playing song. Skipping...", Toast.LENGTH_SHORT).show();
-        // Attempt to play the next song to continue playback
-        playNextSong();
-        return true; // Indicates that the error has been handled
-    }
-
     // --- Audio Focus Management ---
 
     /** Requests audio focus for playback. */
@@ -411,450 +378,419 @@ public class MusicService extends Service implements
         }
     }
 
-    /** Handles changes in audio focus. */
+    /** Audio focus changes are queued like any other command, they pause, resume and duck the player. */
     @Override
     public void onAudioFocusChange(int focusChange) {
+        commands.post(PlaybackCommand.audioFocus(focusChange));
+    }
+
+    /** Handles changes in audio focus. */
+    private void handleAudioFocusChange(int focusChange) {
         switch (focusChange) {
             case AudioManager.AUDIOFOCUS_GAIN:
                 Log.d(TAG, "Audio focus gained.");
-                // Resume playback if it was paused due to transient loss
-                if (mediaPlayer != null && !mediaPlayer.isPlaying() && isPrepared) {
-                    mediaPlayer.start();
-                    startForeground(NOTIFICATION_ID, createNotification(currentSong, true));
-                    handler.post(updateNotificationAndSeekBarRunnable);
-                    if (listener != null) {
-                        listener.onPlaybackStateChanged(true);
-                    }
-                }
-                mediaPlayer.setVolume(1.0f, 1.0f); // Restore full volume
+                // Resume playback if it was paused due to transient loss, restore full volume
+                controller.onFocusGained();
                 break;
             case AudioManager.AUDIOFOCUS_LOSS:
                 Log.d(TAG, "Audio focus lost (long term). Pausing and abandoning focus.");
                 // Permanent loss of audio focus, stop playback entirely
-                pause();
+                controller.pause();
                 // No need to abandon here, as requestAudioFocus handled it.
                 // If you explicitly abandon here, ensure it's not double abandoned.
                 break;
             case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT:
                 Log.d(TAG, "Audio focus lost (transient). Pausing.");
                 // Temporary loss (e.g., phone call), pause playback
-                if (mediaPlayer != null && mediaPlayer.isPlaying()) {
-                    mediaPlayer.pause();
-                    currentPosition = mediaPlayer.getCurrentPosition();
-                    stopForeground(false); // Keep notification visible but downgrade service
-                    notificationManager.notify(NOTIFICATION_ID, createNotification(currentSong, false));
-                    handler.removeCallbacks(updateNotificationAndSeekBarRunnable);
-                    if (listener != null) {
-                        listener.onPlaybackStateChanged(false);
-                    }
-                }
+                controller.onFocusLostTransient();
                 break;
             case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK:
                 Log.d(TAG, "Audio focus lost (transient, can duck). Ducking volume.");
                 // Temporary loss where system allows "ducking" (lower volume)
-                if (mediaPlayer != null && mediaPlayer.isPlaying()) {
-                    mediaPlayer.setVolume(0.1f, 0.1f); // Lower volume
-                }
+                controller.onFocusLostCanDuck();
                 break;
         }
     }
 
     // --- Music Playback Controls (Public API for MainActivity) ---
-
-    /** Sets the main list of songs and initializes the active list. */
-    public void setSongList(List<Song> songs) {
-        if (songs == null) {
-            this.songList = new ArrayList<>();
-            this.activeSongList = new ArrayList<>();
-            Log.w(TAG, "setSongList: Provided song list is null. Initializing empty lists.");
-            return;
-        }
-        this.songList = new ArrayList<>(songs);
-        this.activeSongList = new ArrayList<>(songs); // Active list initially same as original
-        Log.d(TAG, "Song list set. Total songs: " + songList.size() + ". Active list initialized.");
-    }
+    // Each call only queues a command for the playback thread and returns right away; the
+    // outcome reaches the UI through the state bus and the getters once the command has run.
 
     /**
-     * Plays a song at a specific index from the active song list.
-     * This method handles preparing the MediaPlayer and initiates playback via onPrepared.
+     * Sets the main list of songs and initializes the active list.
+     * The store is immutable, so it is shared with the caller instead of being copied.
      */
-    public void playSong(int songIndex) {
-        Log.d(TAG, "playSong called with index: " + songIndex);
-        if (activeSongList.isEmpty()) {
-            Toast.makeText(this, "No songs to play.", Toast.LENGTH_SHORT).show();
-            Log.w(TAG, "playSong: activeSongList is empty. Cannot play.");
-            if (listener != null) {
-                listener.onSongChanged(null, false);
-                listener.onPlaybackStateChanged(false);
-            }
-            stopForeground(true); // Ensure notification is gone if no songs
-            return;
-        }
-        if (songIndex < 0 || songIndex >= activeSongList.size()) {
-            Log.e(TAG, "Invalid song index: " + songIndex + ". List size: " + activeSongList.size());
-            Toast.makeText(this, "Invalid song selection.", Toast.LENGTH_SHORT).show();
-            return;
-        }
+    public void setSongList(SongStore songs) {
+        commands.post(PlaybackCommand.setSongList(songs));
+    }
 
-        currentSongIndex = songIndex;
-        currentSong = activeSongList.get(currentSongIndex);
-        Log.d(TAG, "Attempting to play song: " + currentSong.getTitle() + " at index " + currentSongIndex);
+    /** Swaps in an updated library without touching playback, see {@link PlaybackController#updateSongList}. */
+    public void updateSongList(SongStore songs) {
+        commands.post(PlaybackCommand.updateSongList(songs));
+    }
 
-        // Signal to onPrepared that playback should start after preparation
-        shouldPlayAfterPrepared = true;
-        prepareMediaPlayer(currentSong); // This will call onPrepared when ready
+    /** Plays the song with this id from wherever it is in the active (possibly shuffled) list. */
+    public void playSongWithId(long songId) {
+        commands.post(PlaybackCommand.playId(songId));
+    }
 
-        // Update UI with new song info immediately (show as initially paused until started)
-        if (listener != null) {
-            listener.onSongChanged(currentSong, false); // Update UI with new song details
-            listener.onPlaybackStateChanged(false); // Ensure UI shows paused state initially
-        }
-        Log.d(TAG, "playSong: Initiated preparation for " + currentSong.getTitle() + ". Playback will start in onPrepared.");
+    /** Plays a song at a specific index from the active song list. */
+    public void playSong(int songIndex) {
+        commands.post(PlaybackCommand.playIndex(songIndex));
     }
 
-    /**
-     * Resumes playback if paused, or starts playback of current song if not playing.
-     * Also handles initial song selection if no song is loaded.
-     */
+    /** Resumes playback, or starts the current (or first) song. */
     public void play() {
-        Log.d(TAG, "play() called.");
-        if (currentSong == null) {
-            if (!activeSongList.isEmpty()) {
-                Log.d(TAG, "play(): No current song selected, playing first song (index 0).");
-                playSong(0); // If no song loaded, play the first one
-                return; // playSong will handle preparation and starting
-            } else {
-                Log.w(TAG, "play(): No songs available in the list. Cannot play.");
-                Toast.makeText(this, "No song to play.", Toast.LENGTH_SHORT).show();
-                stopForeground(true); // Ensure notification is gone
-                return;
-            }
-        }
-
-        if (!isPrepared) {
-            // If MediaPlayer is not prepared, prepare it and signal to play after.
-            Log.d(TAG, "play(): MediaPlayer not prepared for " + currentSong.getTitle() + ". Preparing now.");
-            shouldPlayAfterPrepared = true; // Set flag to play after preparation
-            prepareMediaPlayer(currentSong); // Re-prepare the current song
-            return; // Wait for onPrepared to start playback
-        }
-
-        // If prepared and not currently playing, attempt to start
-        if (!mediaPlayer.isPlaying()) {
-            if (requestAudioFocus()) {
-                mediaPlayer.start();
-                Log.d(TAG, "play(): MediaPlayer started playing: " + currentSong.getTitle());
-                // Crucial: Start foreground service and update notification when playing
-                startForeground(NOTIFICATION_ID, createNotification(currentSong, true));
-                handler.post(updateNotificationAndSeekBarRunnable); // Start seekbar updates
-                if (listener != null) {
-                    listener.onPlaybackStateChanged(true); // Notify activity that it's playing
-                }
-            } else {
-                Log.w(TAG, "play(): Could not get audio focus. Cannot play.");
-                Toast.makeText(this, "Could not get audio focus to play music.", Toast.LENGTH_SHORT).show();
-                if (listener != null) {
-                    listener.onPlaybackStateChanged(false); // Update UI to paused
-                }
-                // Update notification to reflect paused state if focus denied
-                notificationManager.notify(NOTIFICATION_ID, createNotification(currentSong, false));
-            }
-        } else {
-            Log.d(TAG, "play(): MediaPlayer already playing. No action needed.");
-        }
+        commands.post(PlaybackCommand.play());
     }
 
-    /** Pauses the current playback. */
     public void pause() {
-        Log.d(TAG, "pause() called.");
-        if (mediaPlayer != null && mediaPlayer.isPlaying()) {
-            mediaPlayer.pause();
-            currentPosition = mediaPlayer.getCurrentPosition(); // Save current position
-            Log.d(TAG, "MediaPlayer paused. Position: " + currentPosition);
-
-            // Stop foreground service but keep notification visible
-            stopForeground(false);
-            // Update notification icon to 'play'
-            notificationManager.notify(NOTIFICATION_ID, createNotification(currentSong, false));
-
-            handler.removeCallbacks(updateNotificationAndSeekBarRunnable); // Stop seekbar updates
-            if (listener != null) {
-                listener.onPlaybackStateChanged(false); // Notify activity to update UI
-            }
-        } else {
-            Log.d(TAG, "pause(): MediaPlayer not playing or null. No action needed.");
-        }
+        commands.post(PlaybackCommand.pause());
     }
 
-    /** Plays the next song in the active list. */
     public void playNextSong() {
-        Log.d(TAG, "playNextSong() called.");
-        if (activeSongList.isEmpty()) {
-            Log.w(TAG, "Cannot play next song: song list is empty.");
-            Toast.makeText(this, "No songs in list.", Toast.LENGTH_SHORT).show();
-            stopForeground(true); // Ensure notification is gone
-            return;
-        }
-        int nextIndex = currentSongIndex + 1;
-        if (nextIndex >= activeSongList.size()) {
-            nextIndex = 0; // Wrap around to the beginning
-        }
-        Log.d(TAG, "Playing next song. Current index: " + currentSongIndex + ", New index: " + nextIndex);
-        playSong(nextIndex); // Use playSong to handle preparation and start
+        commands.post(PlaybackCommand.next());
     }
 
-    /** Plays the previous song in the active list. */
     public void playPreviousSong() {
-        Log.d(TAG, "playPreviousSong() called.");
-        if (activeSongList.isEmpty()) {
-            Log.w(TAG, "Cannot play previous song: song list is empty.");
-            Toast.makeText(this, "No songs in list.", Toast.LENGTH_SHORT).show();
-            stopForeground(true); // Ensure notification is gone
+        commands.post(PlaybackCommand.previous());
+    }
+
+    public void seekTo(int position) {
+        commands.post(PlaybackCommand.seek(position));
+    }
+
+    /** A fast, approximate seek while the user scrubs; ends with a {@link #seekTo} on release. */
+    public void seekPreview(int position) {
+        commands.post(PlaybackCommand.seekPreview(position));
+    }
+
+    /** Prepares a song for restoration (e.g. app re-launch), seeks to the position and plays if asked. */
+    public void prepareSongForRestore(Song song, int index, boolean shouldPlay, int positionMs) {
+        commands.post(PlaybackCommand.restore(song, index, positionMs, shouldPlay));
+    }
+
+    public void toggleShuffle() {
+        boolean enable = !requestedShuffle;
+        setShuffle(enable);
+        Toast.makeText(this, "Shuffle: " + (enable ? "On" : "Off"), Toast.LENGTH_SHORT).show();
+    }
+
+    public void setShuffle(boolean enable) {
+        requestedShuffle = enable;
+        commands.post(PlaybackCommand.setShuffle(enable));
+    }
+
+    public void toggleRepeat() {
+        setRepeatMode((requestedRepeatMode + 1) % 3, true);
+    }
+
+    public void setRepeatMode(int mode, boolean showToast) {
+        if (mode < REPEAT_OFF || mode > REPEAT_ONE) {
+            Log.e(TAG, "Attempted to set invalid repeat mode: " + mode);
             return;
         }
-        int prevIndex = currentSongIndex - 1;
-        if (prevIndex < 0) {
-            prevIndex = activeSongList.size() - 1; // Wrap around to the end
+        requestedRepeatMode = mode;
+        commands.post(PlaybackCommand.setRepeat(mode));
+        if (showToast) {
+            String toastMessage = "";
+            switch (mode) {
+                case REPEAT_OFF: toastMessage = "Repeat: Off"; break;
+                case REPEAT_ALL: toastMessage = "Repeat: All"; break;
+                case REPEAT_ONE: toastMessage = "Repeat: One"; break;
+            }
+            Toast.makeText(this, toastMessage, Toast.LENGTH_SHORT).show();
         }
-        Log.d(TAG, "Playing previous song. Current index: " + currentSongIndex + ", New index: " + prevIndex);
-        playSong(prevIndex); // Use playSong to handle preparation and start
     }
 
-    /** Seeks to a specific position in the current song. */
-    public void seekTo(int position) {
-        Log.d(TAG, "seekTo() called with position: " + position);
-        if (mediaPlayer != null && isPrepared) {
-            mediaPlayer.seekTo(position);
-            currentPosition = position; // Update current position
-            Log.d(TAG, "MediaPlayer seeked to: " + position);
-            if (listener != null) {
-                listener.onProgressUpdate(currentPosition, mediaPlayer.getDuration());
-            }
-        } else {
-            Log.w(TAG, "seekTo(): MediaPlayer not prepared or null. Cannot seek.");
+    /** Crossfade length in seconds ({@link CrossfadeCurve#MIN_SECONDS} to MAX_SECONDS), or 0 to link songs gaplessly. */
+    public void setCrossfadeSeconds(int seconds) {
+        int clamped = seconds <= 0 ? 0 : Math.max(CrossfadeCurve.MIN_SECONDS, Math.min(CrossfadeCurve.MAX_SECONDS, seconds));
+        requestedCrossfadeSeconds = clamped;
+        commands.post(PlaybackCommand.setCrossfade(clamped));
+    }
+
+    // --- Playback Thread ---
+
+    /** Names of the command types, and with " on" for a set flag, as {@link #COMMAND} shows them. */
+    private static String[] commandLabels() {
+        PlaybackCommand.Type[] types = PlaybackCommand.Type.values();
+        String[] labels = new String[types.length * 2];
+        for (PlaybackCommand.Type type : types) {
+            labels[type.ordinal() * 2] = type.name();
+            labels[type.ordinal() * 2 + 1] = type.name() + " on";
+        }
+        return labels;
+    }
+
+    /** Runs one queued command on the playback thread, then publishes the resulting state. */
+    private void onCommand(PlaybackCommand command) {
+        COMMAND.log(command.getType().ordinal() * 2 + (command.getFlag() ? 1 : 0), command.getIndex(), command.getValue());
+        switch (command.getType()) {
+            case PLAY_INDEX:
+                controller.playSong(command.getIndex());
+                break;
+            case PLAY_ID:
+                controller.playSongWithId(command.getValue());
+                break;
+            case PLAY:
+                controller.play();
+                break;
+            case PAUSE:
+                controller.pause();
+                break;
+            case NEXT:
+                controller.next();
+                break;
+            case PREVIOUS:
+                controller.previous();
+                break;
+            case SEEK:
+                if (command.getFlag()) {
+                    controller.seekPreview(command.getIndex());
+                } else {
+                    SeekStats.getInstance().preciseSeekStarted();
+                    controller.seekTo(command.getIndex());
+                }
+                break;
+            case SET_SONG_LIST:
+                controller.setSongList(command.getSongs());
+                break;
+            case UPDATE_SONG_LIST:
+                controller.updateSongList(command.getSongs());
+                break;
+            case SET_SHUFFLE:
+                controller.setShuffle(command.getFlag());
+                break;
+            case SET_REPEAT:
+                controller.setRepeatMode(command.getIndex());
+                break;
+            case SET_CROSSFADE:
+                controller.setCrossfadeSeconds(command.getIndex());
+                break;
+            case RESTORE:
+                controller.restore(command.getSong(), command.getIndex(), command.getFlag(), (int) command.getValue());
+                break;
+            case AUDIO_FOCUS:
+                handleAudioFocusChange(command.getIndex());
+                break;
         }
+        publishState();
     }
 
     /**
-     * Prepares a specific song for restoration (e.g., app re-launch).
-     * This method customizes onPrepared behavior for seeking and conditional playback.
+     * Replaces the snapshot read by the getters with the current state of the player and hands
+     * it to the subscribers. A snapshot on the same timeline and queue is kept, so its anchor
+     * (and what the UI extrapolates) only moves on play, pause, seek, a song or queue change,
+     * not by the player's position jitter.
      */
-    public void prepareSongForRestore(Song song, int index, boolean shouldPlay, int positionMs) {
-        if (song == null) {
-            Log.d(TAG, "prepareSongForRestore: No song to restore.");
-            if (listener != null) {
-                listener.onSongChanged(null, false);
-                listener.onPlaybackStateChanged(false);
-            }
-            stopForeground(true); // Remove notification if no song to restore
-            return;
+    private void publishState() {
+        PlaybackState next = controller.getState();
+        if (!next.sameTimeline(state, next.getAnchorUptimeMs(), ANCHOR_TOLERANCE_MS) || !next.sameQueue(state)) {
+            state = next;
+            stateBus.publish(next);
         }
-        this.currentSong = song;
-        this.currentSongIndex = index;
-        this.currentPosition = positionMs;
-        Log.d(TAG, "prepareSongForRestore: " + song.getTitle() + ", shouldPlay: " + shouldPlay + ", position: " + positionMs);
+    }
 
-        // Temporarily override onPrepared to handle seek and play/pause logic after preparation
-        mediaPlayer.setOnPreparedListener(new MediaPlayer.OnPreparedListener() {
-            @Override
-            public void onPrepared(MediaPlayer mp) {
-                isPrepared = true;
-                Log.d(TAG, "MediaPlayer onPrepared for restore. Seeking to: " + positionMs);
-                mp.seekTo(positionMs);
-
-                if (shouldPlay) {
-                    Log.d(TAG, "Auto-playing after restore based on shouldPlay=true.");
-                    // Request focus and start. This is similar to the play() method's starting logic.
-                    if (requestAudioFocus()) {
-                        mp.start();
-                        startForeground(NOTIFICATION_ID, createNotification(currentSong, true));
-                        handler.post(updateNotificationAndSeekBarRunnable);
-                        if (listener != null) {
-                            listener.onPlaybackStateChanged(true);
-                            listener.onSongChanged(currentSong, true); // Update UI playing state
-                        }
-                    } else {
-                        Log.w(TAG, "Audio focus denied during restore auto-play. Remaining paused.");
-                        if (listener != null) {
-                            listener.onPlaybackStateChanged(false);
-                            listener.onSongChanged(currentSong, false); // Update UI paused state
-                        }
-                        notificationManager.notify(NOTIFICATION_ID, createNotification(currentSong, false));
-                    }
-                } else {
-                    Log.d(TAG, "Keeping paused after restore based on shouldPlay=false.");
-                    if (listener != null) {
-                        listener.onSongChanged(currentSong, false); // Update UI to show song paused
-                        listener.onPlaybackStateChanged(false);
-                        listener.onProgressUpdate(positionMs, mp.getDuration()); // Update seekbar
-                    }
-                    // Update notification for paused state
-                    notificationManager.notify(NOTIFICATION_ID, createNotification(currentSong, false));
-                    // No need to call stopForeground here unless it was previously playing and now needs to be downgraded.
-                    // If it was already paused before app close, it won't be foreground.
-                }
-                // IMPORTANT: Reset listener to default after restore logic is done
-                mediaPlayer.setOnPreparedListener(MusicService.this);
-            }
-        });
-        prepareMediaPlayer(song); // Prepare the song to trigger the temporary onPreparedListener
+    /** Toasts have to be shown from the main thread. */
+    private void showToast(String message) {
+        mainHandler.post(() -> Toast.makeText(this, message, Toast.LENGTH_SHORT).show());
     }
 
+    /** The service side of the controller: threads, notification, audio focus and the state bus. */
+    private class ControllerHost implements PlaybackController.Host {
+        @Override
+        public boolean requestAudioFocus() {
+            return MusicService.this.requestAudioFocus();
+        }
+
+        @Override
+        public float getTrackGain(Song song) {
+            return LoudnessAnalysisService.getCache(MusicService.this).getGain(song.getId(), song.getDateModified());
+        }
+
+        @Override
+        public void post(Runnable task) {
+            playbackHandler.post(() -> {
+                task.run();
+                publishState(); // Like after a command
+            });
+        }
+
+        @Override
+        public void startProgressUpdates() {
+            playbackHandler.removeCallbacks(progressUpdateRunnable);
+            playbackHandler.post(progressUpdateRunnable);
+        }
+
+        @Override
+        public void stopProgressUpdates() {
+            playbackHandler.removeCallbacks(progressUpdateRunnable);
+        }
+
+        @Override
+        public void showNotification(Song song, boolean isPlaying) {
+            notificationThrottle.request(song, isPlaying); // Posted now, once the burst ends, or not at all
+        }
+
+        @Override
+        public void removeNotification() {
+            notificationThrottle.reset();
+            stopForeground(true);
+        }
+
+        // The three below reach the UI as a new snapshot on the state bus
+
+        @Override
+        public void onSongChanged(Song song, boolean isPlaying) {
+            publishState();
+        }
+
+        @Override
+        public void onPlaybackStateChanged(boolean isPlaying) {
+            publishState();
+        }
+
+        @Override
+        public void onProgressUpdate(int positionMs, int durationMs) {
+            publishState();
+        }
+
+        @Override
+        public void onSeekComplete() {
+            SeekStats.getInstance().seekCompleted();
+        }
+
+        @Override
+        public void showMessage(String message) {
+            showToast(message);
+        }
+
+        @Override
+        public void log(String message) {
+            Log.d(TAG, message);
+        }
+    }
 
     // --- Getters for Activity to query service state ---
+    // They read the snapshot published by the playback thread and never touch the player
+
     public boolean isPlaying() {
-        return mediaPlayer != null && mediaPlayer.isPlaying();
+        return state.isPlaying();
     }
 
     public Song getCurrentSong() {
-        return currentSong;
+        return state.getSong();
     }
 
     public int getCurrentPosition() {
-        return mediaPlayer != null ? mediaPlayer.getCurrentPosition() : currentPosition;
+        return state.getPositionMs(SystemClock.uptimeMillis());
     }
 
     public int getDuration() {
-        return mediaPlayer != null && isPrepared ? mediaPlayer.getDuration() : 0;
+        return state.getDurationMs();
     }
 
     public boolean isMediaPlayerPrepared() {
-        return isPrepared;
+        return state.isPrepared();
     }
 
-    public void setOnSongChangedListener(OnSongChangedListener listener) {
-        this.listener = listener;
+    /** The latest snapshot of what is playing. */
+    public PlaybackState getPlaybackState() {
+        return state;
     }
 
-    // --- Shuffle & Repeat Logic ---
-    public void toggleShuffle() {
-        isShuffleEnabled = !isShuffleEnabled;
-        if (isShuffleEnabled) {
-            Log.d(TAG, "Shuffle enabled.");
-            shuffleSongList();
-        } else {
-            Log.d(TAG, "Shuffle disabled.");
-            resetActiveSongListOrder();
-        }
-        Toast.makeText(this, "Shuffle: " + (isShuffleEnabled ? "On" : "Off"), Toast.LENGTH_SHORT).show();
-        // Notify UI about shuffle state change if needed
-        if (listener != null) {
-            listener.onPlaybackStateChanged(isPlaying()); // Re-trigger UI update to reflect shuffle icon
-        }
+    /**
+     * Subscribes to playback snapshots on {@code executor}, starting with the latest one. Any
+     * number of subscribers; unsubscribe when done, the service outlives activities.
+     */
+    public void subscribe(PlaybackStateBus.Subscriber subscriber, Executor executor) {
+        stateBus.subscribe(subscriber, executor);
+    }
+
+    public void unsubscribe(PlaybackStateBus.Subscriber subscriber) {
+        stateBus.unsubscribe(subscriber);
     }
 
     public boolean isShuffleEnabled() {
-        return isShuffleEnabled;
+        return requestedShuffle;
     }
 
-    private void shuffleSongList() {
-        if (songList.isEmpty()) return;
+    public int getRepeatMode() {
+        return requestedRepeatMode;
+    }
 
-        // Create a new shuffled list
-        List<Song> newActiveList = new ArrayList<>(songList);
+    public int getCrossfadeSeconds() {
+        return requestedCrossfadeSeconds;
+    }
 
-        // If a song is currently playing, ensure it remains at the beginning
-        // or its position is preserved in the new shuffled list.
-        if (currentSong != null) {
-            // Find its original index
-            int originalIndex = -1;
-            for(int i = 0; i < newActiveList.size(); i++) {
-                if(newActiveList.get(i).getId() == currentSong.getId()) {
-                    originalIndex = i;
-                    break;
-                }
-            }
+    // --- Read-ahead ---
 
-            if (originalIndex != -1) {
-                // Remove current song, shuffle the rest, then re-add current song to active position
-                Song tempCurrentSong = newActiveList.remove(originalIndex);
-                Collections.shuffle(newActiveList);
-                newActiveList.add(0, tempCurrentSong); // Place current song at the start of the shuffled list
-                currentSongIndex = 0; // Update index to 0
-            } else {
-                // Should not happen if currentSong came from songList, but as a fallback
-                Collections.shuffle(newActiveList);
-                currentSongIndex = 0; // Play the first song of the newly shuffled list
-            }
-        } else {
-            Collections.shuffle(newActiveList);
-            currentSongIndex = 0; // Default to first song if no current song
-        }
-        this.activeSongList = newActiveList;
-        Log.d(TAG, "Song list shuffled. Current song index: " + currentSongIndex);
+    /**
+     * Buffers songs in memory ahead of the player, for storage too slow to read on demand;
+     * 0 turns it off. The budget is shared by the playing and the preloaded song and capped
+     * for the device's memory. Applies from the next song loaded.
+     */
+    public void setReadAheadMegabytes(int megabytes) {
+        ActivityManager activityManager = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+        readAheadBytes = ReadAheadBuffer.capacityPerSource(megabytes,
+                activityManager.getMemoryClass(), activityManager.isLowRamDevice());
+        Log.d(TAG, "Read-ahead of " + megabytes + " MB requested, " + readAheadBytes + " bytes per player");
     }
 
-    private void resetActiveSongListOrder() {
-        if (songList.isEmpty()) return;
-        this.activeSongList = new ArrayList<>(songList); // Reset to original order
+    // --- Equalizer (main thread) ---
 
-        // Find the new index of the current song in the original order
-        if (currentSong != null) {
-            for (int i = 0; i < songList.size(); i++) {
-                if (songList.get(i).getId() == currentSong.getId()) {
-                    currentSongIndex = i;
-                    Log.d(TAG, "Song list order reset. Current song " + currentSong.getTitle() + " new index: " + currentSongIndex);
-                    return; // Found and set, exit
-                }
-            }
-            // If currentSong not found (shouldn't happen if it was from songList)
-            currentSongIndex = 0;
-            Log.w(TAG, "Current song not found in original list after reset. Setting index to 0.");
-        } else {
-            currentSongIndex = -1; // No current song
-            Log.d(TAG, "Song list order reset. No current song.");
-        }
+    /** Name of the output music is heard on, whose preset the Equalizer dialog edits. */
+    public String getOutputDeviceName() {
+        return outputDevice;
     }
 
-
-    public void toggleRepeat() {
-        repeatMode = (repeatMode + 1) % 3;
-        String toastMessage = "";
-        switch (repeatMode) {
-            case REPEAT_OFF:
-                toastMessage = "Repeat: Off";
-                break;
-            case REPEAT_ALL:
-                toastMessage = "Repeat: All";
-                break;
-            case REPEAT_ONE:
-                toastMessage = "Repeat: One";
-                break;
-        }
-        Toast.makeText(this, toastMessage, Toast.LENGTH_SHORT).show();
-        Log.d(TAG, "Repeat mode toggled to: " + repeatMode);
+    /** The preset saved for the current output, Flat if none was picked yet. */
+    public EqualizerPreset getEqualizerPreset() {
+        String name = getSharedPreferences(MainActivity.PREFS_NAME, MODE_PRIVATE)
+                .getString(MainActivity.KEY_EQUALIZER_PRESET + outputDevice, null);
+        return EqualizerPreset.byName(name);
     }
 
-    public int getRepeatMode() {
-        return repeatMode;
+    /** Plays through {@code preset} and saves it for the current output. */
+    public void setEqualizerPreset(EqualizerPreset preset) {
+        getSharedPreferences(MainActivity.PREFS_NAME, MODE_PRIVATE).edit()
+                .putString(MainActivity.KEY_EQUALIZER_PRESET + outputDevice, preset.getName())
+                .apply();
+        if (equalizer != null) {
+            equalizer.apply(preset);
+        }
     }
 
-    public void setRepeatMode(int mode, boolean showToast) {
-        if (mode >= REPEAT_OFF && mode <= REPEAT_ONE) {
-            repeatMode = mode;
-            Log.d(TAG, "Repeat mode set to: " + repeatMode + " (via setRepeatMode)");
-            if (showToast) {
-                String toastMessage = "";
-                switch (repeatMode) {
-                    case REPEAT_OFF: toastMessage = "Repeat: Off"; break;
-                    case REPEAT_ALL: toastMessage = "Repeat: All"; break;
-                    case REPEAT_ONE: toastMessage = "Repeat: One"; break;
-                }
-                Toast.makeText(this, toastMessage, Toast.LENGTH_SHORT).show();
-            }
-        } else {
-            Log.e(TAG, "Attempted to set invalid repeat mode: " + mode);
+    /** Headphones plugged in or Bluetooth connected: switch to that output's preset. */
+    private void onOutputDevicesChanged() {
+        String device = currentOutputDevice();
+        if (device.equals(outputDevice)) return; // E.g. the callback for the devices already connected
+        outputDevice = device;
+        if (equalizer != null) {
+            EqualizerPreset preset = getEqualizerPreset();
+            Log.d(TAG, "Output is now " + device + ", equalizer preset " + preset.getName());
+            equalizer.apply(preset);
         }
     }
 
-    public void setShuffle(boolean enable) {
-        isShuffleEnabled = enable;
-        if (isShuffleEnabled) {
-            shuffleSongList();
-        } else {
-            resetActiveSongListOrder();
+    /** Where music plays: Bluetooth, wired or USB headphones when connected, else the speaker. */
+    private String currentOutputDevice() {
+        String device = OUTPUT_SPEAKER;
+        for (AudioDeviceInfo info : audioManager.getDevices(AudioManager.GET_DEVICES_OUTPUTS)) {
+            switch (info.getType()) {
+                case AudioDeviceInfo.TYPE_BLUETOOTH_A2DP:
+                    return "Bluetooth"; // Audio is routed there whatever else is plugged in
+                case AudioDeviceInfo.TYPE_WIRED_HEADPHONES:
+                case AudioDeviceInfo.TYPE_WIRED_HEADSET:
+                    device = "Headphones";
+                    break;
+                case AudioDeviceInfo.TYPE_USB_DEVICE:
+                    if (OUTPUT_SPEAKER.equals(device)) device = "USB";
+                    break;
+            }
         }
-        Log.d(TAG, "Shuffle set to: " + isShuffleEnabled + " (via setShuffle)");
+        return device;
     }
 
     // --- Notification Handling ---
@@ -873,6 +809,38 @@ public class MusicService extends Service implements
         }
     }
 
+    /** Creates the PendingIntents of the notification's buttons and body, once per service. */
+    private void createNotificationIntents() {
+        int flags = PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT;
+        // Play and pause share request code 0; their actions differ, so they are two PendingIntents
+        playIntent = PendingIntent.getService(this, 0, new Intent(this, MusicService.class).setAction(ACTION_PLAY), flags);
+        pauseIntent = PendingIntent.getService(this, 0, new Intent(this, MusicService.class).setAction(ACTION_PAUSE), flags);
+        nextIntent = PendingIntent.getService(this, 1, // Use unique request codes
+                new Intent(this, MusicService.class).setAction(ACTION_NEXT), flags);
+        previousIntent = PendingIntent.getService(this, 2,
+                new Intent(this, MusicService.class).setAction(ACTION_PREVIOUS), flags);
+        stopIntent = PendingIntent.getService(this, 3,
+                new Intent(this, MusicService.class).setAction(ACTION_STOP), flags);
+
+        // Intent to open MainActivity when notification is clicked
+        Intent notificationIntent = new Intent(this, MainActivity.class);
+        // Flags to bring existing activity to front rather than creating new one
+        notificationIntent.setAction(Intent.ACTION_MAIN);
+        notificationIntent.addCategory(Intent.CATEGORY_LAUNCHER);
+        notificationIntent.addFlags(Intent.FLAG_ACTIVITY_REORDER_TO_FRONT);
+        contentIntent = PendingIntent.getActivity(this, 0, notificationIntent, flags);
+    }
+
+    /** Posts the notification the throttle let through; on the playback thread. */
+    private void postNotification(Song song, boolean isPlaying) {
+        if (isPlaying) {
+            startForeground(NOTIFICATION_ID, createNotification(song, true)); // Promote to foreground
+        } else {
+            stopForeground(false); // Keep notification visible but not foreground
+            notificationManager.notify(NOTIFICATION_ID, createNotification(song, false));
+        }
+    }
+
     /** Builds and returns the Notification for the foreground service. */
     private Notification createNotification(Song song, boolean isPlaying) {
         // Use RemoteViews for custom notification layout
@@ -894,43 +862,21 @@ public class MusicService extends Service implements
 
         // Set play/pause icon based on playback state
         int playPauseIcon = isPlaying ? R.drawable.ic_pause_white_24dp : R.drawable.ic_play_arrow_white_24dp;
-        String playPauseAction = isPlaying ? ACTION_PAUSE : ACTION_PLAY;
+        PendingIntent playPausePendingIntent = isPlaying ? pauseIntent : playIntent;
 
         notificationLayout.setImageViewResource(R.id.notification_play_pause, playPauseIcon);
         notificationLayoutExpanded.setImageViewResource(R.id.notification_play_pause_expanded, playPauseIcon);
 
-        // Create PendingIntents for notification actions
-        PendingIntent playPausePendingIntent = PendingIntent.getService(this, 0,
-                new Intent(this, MusicService.class).setAction(playPauseAction),
-                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
-        PendingIntent nextPendingIntent = PendingIntent.getService(this, 1, // Use unique request codes
-                new Intent(this, MusicService.class).setAction(ACTION_NEXT),
-                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
-        PendingIntent previousPendingIntent = PendingIntent.getService(this, 2,
-                new Intent(this, MusicService.class).setAction(ACTION_PREVIOUS),
-                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
-        PendingIntent stopPendingIntent = PendingIntent.getService(this, 3,
-                new Intent(this, MusicService.class).setAction(ACTION_STOP),
-                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
-
-        // Set OnClickPendingIntents for buttons
+        // Set OnClickPendingIntents for buttons (the cached ones)
         notificationLayout.setOnClickPendingIntent(R.id.notification_play_pause, playPausePendingIntent);
-        notificationLayout.setOnClickPendingIntent(R.id.notification_next, nextPendingIntent);
-        notificationLayout.setOnClickPendingIntent(R.id.notification_previous, previousPendingIntent);
-        notificationLayout.setOnClickPendingIntent(R.id.notification_stop, stopPendingIntent);
+        notificationLayout.setOnClickPendingIntent(R.id.notification_next, nextIntent);
+        notificationLayout.setOnClickPendingIntent(R.id.notification_previous, previousIntent);
+        notificationLayout.setOnClickPendingIntent(R.id.notification_stop, stopIntent);
 
         notificationLayoutExpanded.setOnClickPendingIntent(R.id.notification_play_pause_expanded, playPausePendingIntent);
-        notificationLayoutExpanded.setOnClickPendingIntent(R.id.notification_next_expanded, nextPendingIntent);
-        notificationLayoutExpanded.setOnClickPendingIntent(R.id.notification_previous_expanded, previousPendingIntent);
-        notificationLayoutExpanded.setOnClickPendingIntent(R.id.notification_stop_expanded, stopPendingIntent);
-
-        // Intent to open MainActivity when notification is clicked
-        Intent notificationIntent = new Intent(this, MainActivity.class);
-        // Flags to bring existing activity to front rather than creating new one
-        notificationIntent.setAction(Intent.ACTION_MAIN);
-        notificationIntent.addCategory(Intent.CATEGORY_LAUNCHER);
-        notificationIntent.addFlags(Intent.FLAG_ACTIVITY_REORDER_TO_FRONT);
-        PendingIntent contentIntent = PendingIntent.getActivity(this, 0, notificationIntent, PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+        notificationLayoutExpanded.setOnClickPendingIntent(R.id.notification_next_expanded, nextIntent);
+        notificationLayoutExpanded.setOnClickPendingIntent(R.id.notification_previous_expanded, previousIntent);
+        notificationLayoutExpanded.setOnClickPendingIntent(R.id.notification_stop_expanded, stopIntent);
 
         NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
                 .setSmallIcon(R.drawable.ic_music_note_white_24dp)
@@ -941,20 +887,117 @@ public class MusicService extends Service implements
                 .setCustomContentView(notificationLayout)
                 .setCustomBigContentView(notificationLayoutExpanded)
                 .setContentIntent(contentIntent) // Click on notification body opens app
+                // Ties the notification to the media session, for the system's media controls
+                .setStyle(new androidx.media.app.NotificationCompat.DecoratedMediaCustomViewStyle()
+                        .setMediaSession(mediaSession.getSessionToken()))
                 .setOngoing(isPlaying); // Set to true if playing to make it non-dismissible by swipe
 
         // Optional: Add a delete intent for when the notification is dismissed by user (if setOngoing is false)
         // If setOngoing(true), the user can only dismiss it via the ACTION_STOP button or by stopping the service explicitly.
         if (!isPlaying) { // If not playing, allow it to be dismissible
-            Intent deleteIntent = new Intent(this, MusicService.class);
-            deleteIntent.setAction(ACTION_STOP); // Use your stop action
-            PendingIntent deletePendingIntent = PendingIntent.getService(this, 4, deleteIntent, PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
-            builder.setDeleteIntent(deletePendingIntent);
+            builder.setDeleteIntent(stopIntent); // Same action as the stop button
         }
 
         return builder.build();
     }
 
+    // --- Media Session ---
+
+    /** Media buttons and remote controllers queue the same commands as the notification. */
+    private final MediaSessionCompat.Callback mediaSessionCallback = new MediaSessionCompat.Callback() {
+        // onMediaButtonEvent() is left to the default, which turns key events into the calls below
+
+        @Override
+        public void onPlay() {
+            play();
+        }
+
+        @Override
+        public void onPause() {
+            pause();
+        }
+
+        @Override
+        public void onSkipToNext() {
+            playNextSong();
+        }
+
+        @Override
+        public void onSkipToPrevious() {
+            playPreviousSong();
+        }
+
+        @Override
+        public void onSeekTo(long pos) {
+            seekTo((int) pos);
+        }
+
+        @Override
+        public void onStop() {
+            Log.d(TAG, "Media session STOP received. Calling stopSelf().");
+            pause(); // Pause before stopping
+            stopSelf();
+        }
+
+        @Override
+        public void onSetShuffleMode(int shuffleMode) {
+            setShuffle(shuffleMode != PlaybackStateCompat.SHUFFLE_MODE_NONE);
+        }
+
+        @Override
+        public void onSetRepeatMode(int repeatMode) {
+            switch (repeatMode) {
+                case PlaybackStateCompat.REPEAT_MODE_ONE: setRepeatMode(REPEAT_ONE, false); break;
+                case PlaybackStateCompat.REPEAT_MODE_NONE: setRepeatMode(REPEAT_OFF, false); break;
+                default: setRepeatMode(REPEAT_ALL, false); break; // ALL or GROUP
+            }
+        }
+    };
+
+    /** What {@link MediaSessionSync} pushes, as MediaSessionCompat wants it; on the playback thread. */
+    private class SessionHost implements MediaSessionSync.Session {
+        @Override
+        public void setMetadata(Song song, int durationMs) {
+            if (song == null) {
+                mediaSession.setMetadata(null);
+                return;
+            }
+            mediaSession.setMetadata(new MediaMetadataCompat.Builder()
+                    .putString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID, String.valueOf(song.getId()))
+                    .putString(MediaMetadataCompat.METADATA_KEY_TITLE, song.getTitle())
+                    .putString(MediaMetadataCompat.METADATA_KEY_ARTIST, song.getArtist())
+                    .putLong(MediaMetadataCompat.METADATA_KEY_DURATION, durationMs)
+                    .build());
+        }
+
+        @Override
+        public void setPlaybackState(PlaybackState state, int positionMs, long positionUptimeMs) {
+            int sessionState;
+            switch (state.getStatus()) {
+                case PLAYING: sessionState = PlaybackStateCompat.STATE_PLAYING; break;
+                case PAUSED: sessionState = PlaybackStateCompat.STATE_PAUSED; break;
+                case PREPARING: sessionState = PlaybackStateCompat.STATE_BUFFERING; break;
+                default: sessionState = PlaybackStateCompat.STATE_NONE; break;
+            }
+            // The session's anchor is on the elapsed realtime clock, ours on the uptime clock
+            long updateTime = SystemClock.elapsedRealtime() - (SystemClock.uptimeMillis() - positionUptimeMs);
+            mediaSession.setPlaybackState(new PlaybackStateCompat.Builder()
+                    .setState(sessionState, positionMs, state.isPlaying() ? state.getSpeed() : 0f, updateTime)
+                    .setActions(MEDIA_SESSION_ACTIONS)
+                    .build());
+        }
+
+        @Override
+        public void setModes(boolean shuffle, int repeatMode) {
+            mediaSession.setShuffleMode(shuffle ? PlaybackStateCompat.SHUFFLE_MODE_ALL : PlaybackStateCompat.SHUFFLE_MODE_NONE);
+            switch (repeatMode) {
+                case REPEAT_ONE: mediaSession.setRepeatMode(PlaybackStateCompat.REPEAT_MODE_ONE); break;
+                case REPEAT_ALL: mediaSession.setRepeatMode(PlaybackStateCompat.REPEAT_MODE_ALL); break;
+                default: mediaSession.setRepeatMode(PlaybackStateCompat.REPEAT_MODE_NONE); break;
+            }
+        }
+    }
+
     // --- BroadcastReceiver for Notification Actions (Internal to service) ---
     private BroadcastReceiver notificationActionReceiver = new BroadcastReceiver() {
         @Override
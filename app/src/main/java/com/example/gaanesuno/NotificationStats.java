@@ -0,0 +1,71 @@
+package com.example.gaanesuno;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the {@link NotificationThrottle}, shown on the diagnostics screen: how many
+ * notification updates the playback code asked for and how many were actually posted.
+ */
+public final class NotificationStats {
+
+    private static final NotificationStats INSTANCE = new NotificationStats();
+
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong performed = new AtomicLong();
+    private final AtomicLong identical = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /** The counters of the service's notification. */
+    public static NotificationStats getInstance() {
+        return INSTANCE;
+    }
+
+    void requested() {
+        requested.incrementAndGet();
+    }
+
+    void performed() {
+        performed.incrementAndGet();
+    }
+
+    /** Dropped: it showed what was already posted. */
+    void identical() {
+        identical.incrementAndGet();
+    }
+
+    /** Replaced by a later request within the same interval. */
+    void coalesced() {
+        coalesced.incrementAndGet();
+    }
+
+    public long getRequested() {
+        return requested.get();
+    }
+
+    public long getPerformed() {
+        return performed.get();
+    }
+
+    public long getIdentical() {
+        return identical.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public void reset() {
+        requested.set(0);
+        performed.set(0);
+        identical.set(0);
+        coalesced.set(0);
+    }
+
+    /** Report for the diagnostics screen. */
+    public String toText() {
+        return String.format(Locale.ROOT,
+                "Updates requested: %d, posted: %d\nDropped as identical: %d, coalesced: %d\n",
+                requested.get(), performed.get(), identical.get(), coalesced.get());
+    }
+}
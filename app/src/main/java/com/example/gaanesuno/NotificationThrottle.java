@@ -0,0 +1,114 @@
+package com.example.gaanesuno;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Sits between the playback code and the media notification: one user action often asks for
+ * the same notification several times (prepared, started, focus gained...), and building and
+ * posting one is far from free.
+ *
+ * <p>A request showing what was last posted is dropped. Otherwise the first request after a
+ * quiet {@code intervalMs} is posted right away (so a promotion to foreground isn't delayed)
+ * and later ones within the interval are coalesced into a single post of the newest state
+ * when it ends.</p>
+ *
+ * <p>Runs on the playback thread.</p>
+ */
+public final class NotificationThrottle {
+
+    /** One frame at 60 Hz; the shade can't show updates faster anyway. */
+    public static final long DEFAULT_INTERVAL_MS = 16;
+
+    /** Builds and posts the notification; MusicService on the device. */
+    public interface Poster {
+        void post(Song song, boolean isPlaying);
+    }
+
+    private final Poster poster;
+    private final SeekScrubber.Timer timer;
+    private final LongSupplier uptimeClock; // Milliseconds
+    private final NotificationStats stats;
+    private final long intervalMs;
+    private final Runnable trailingPost = this::postPending;
+
+    private boolean posted; // Something is shown; postedSong/postedPlaying say what
+    private Song postedSong;
+    private boolean postedPlaying;
+    private long lastPostTime = Long.MIN_VALUE / 2;
+
+    private boolean pending; // A coalesced request waits for trailingPost
+    private Song pendingSong;
+    private boolean pendingPlaying;
+
+    public NotificationThrottle(Poster poster, SeekScrubber.Timer timer, LongSupplier uptimeClock,
+                                NotificationStats stats, long intervalMs) {
+        this.poster = poster;
+        this.timer = timer;
+        this.uptimeClock = uptimeClock;
+        this.stats = stats;
+        this.intervalMs = intervalMs;
+    }
+
+    /** Shows the song with a play or pause button, now or at the end of the interval. */
+    public void request(Song song, boolean isPlaying) {
+        stats.requested();
+        if (pending) {
+            stats.coalesced(); // Replaces the request that was waiting
+            pendingSong = song;
+            pendingPlaying = isPlaying;
+            return;
+        }
+        if (isPosted(song, isPlaying)) {
+            stats.identical();
+            return;
+        }
+        long wait = lastPostTime + intervalMs - uptimeClock.getAsLong();
+        if (wait <= 0) {
+            post(song, isPlaying);
+        } else {
+            pending = true;
+            pendingSong = song;
+            pendingPlaying = isPlaying;
+            timer.postDelayed(trailingPost, wait);
+        }
+    }
+
+    /** The notification was removed: drop a waiting post, and post the next request again. */
+    public void reset() {
+        if (pending) {
+            pending = false;
+            pendingSong = null;
+            timer.cancel(trailingPost);
+        }
+        posted = false;
+        postedSong = null;
+    }
+
+    private void postPending() {
+        if (!pending) return;
+        pending = false;
+        Song song = pendingSong;
+        pendingSong = null;
+        if (isPosted(song, pendingPlaying)) {
+            stats.identical(); // The burst ended where it started
+        } else {
+            post(song, pendingPlaying);
+        }
+    }
+
+    private void post(Song song, boolean isPlaying) {
+        posted = true;
+        postedSong = song;
+        postedPlaying = isPlaying;
+        lastPostTime = uptimeClock.getAsLong();
+        stats.performed();
+        poster.post(song, isPlaying);
+    }
+
+    /** Same song (and the same version of its file) and the same button as the last post. */
+    private boolean isPosted(Song song, boolean isPlaying) {
+        if (!posted || isPlaying != postedPlaying) return false;
+        if (song == null || postedSong == null) return song == postedSong;
+        return song.getId() == postedSong.getId() && song.getDateModified() == postedSong.getDateModified();
+    }
+}
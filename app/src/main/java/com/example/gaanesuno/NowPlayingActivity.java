@@ -9,6 +9,7 @@ import android.graphics.PorterDuffColorFilter;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.animation.Animation;
 import android.view.animation.LinearInterpolator;
@@ -23,12 +24,22 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.content.ContextCompat;
 
 import java.util.Locale;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 public class NowPlayingActivity extends AppCompatActivity implements
-        MusicService.OnSongChangedListener {
+        PlaybackStateBus.Subscriber {
 
     private static final String TAG = "NowPlayingActivity";
+    private static final Trace.Point PROGRESS = Trace.point(TAG, Trace.VERBOSE, "Position from snapshot: {}/{} ms");
+    private static final Trace.Point SONG_CHANGED = Trace.point(TAG, Trace.DEBUG, "Song changed to {}, duration {} ms");
+    private static final Trace.Point PLAYING_CHANGED = Trace.point(TAG, Trace.DEBUG, "Playing changed: {}");
+    private static final Trace.Point PLAY_PAUSE_CLICKED = Trace.point(TAG, Trace.DEBUG, "Play/Pause clicked while playing: {}");
+    private static final Trace.Point SHUFFLE_CLICKED = Trace.point(TAG, Trace.DEBUG, "Shuffle clicked, was enabled: {}");
+    private static final Trace.Point REPEAT_CLICKED = Trace.point(TAG, Trace.DEBUG, "Repeat clicked, mode was {}");
+    private static final Trace.Point SEEK_RELEASED = Trace.point(TAG, Trace.DEBUG, "SeekBar tracking stopped at {} ms");
+    private static final Trace.Point SHUFFLE_SHOWN = Trace.point(TAG, Trace.DEBUG, "Shuffle button state updated: {}");
+    private static final Trace.Point REPEAT_SHOWN = Trace.point(TAG, Trace.DEBUG, "Repeat button state updated to mode {}");
 
     // UI Elements
     private ImageView ivMusicIconRotating;
@@ -51,7 +62,21 @@ public class NowPlayingActivity extends AppCompatActivity implements
 
     // Handler for SeekBar updates
     private Handler handler = new Handler();
-    private Runnable updateSeekBarRunnable;
+    private final SeekScrubber.Timer uiTimer = new SeekScrubber.Timer() {
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            handler.postDelayed(task, delayMs);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            handler.removeCallbacks(task);
+        }
+    };
+    private SeekScrubber seekScrubber;
+    private ProgressTicker progressTicker; // Moves the seek bar from the service's snapshot
+    private final Executor mainExecutor = handler::post; // Where the service's snapshots are delivered
+    private PlaybackState shownState; // Last snapshot drawn; null draws everything from the next one
 
     // Animation for the rotating icon
     private RotateAnimation rotateAnimation;
@@ -72,25 +97,11 @@ public class NowPlayingActivity extends AppCompatActivity implements
         startService(serviceIntent);
         bindService(serviceIntent, serviceConnection, Context.BIND_AUTO_CREATE);
 
-        // Setup Runnable for SeekBar updates
-        updateSeekBarRunnable = new Runnable() {
-            @Override
-            public void run() {
-                if (musicService != null && musicService.isPlaying()) {
-                    int currentPosition = musicService.getCurrentPosition();
-                    int duration = musicService.getDuration();
-                    seekbarProgress.setProgress(currentPosition);
-                    tvCurrentTime.setText(formatTime(currentPosition));
-                    tvTotalTime.setText(formatTime(duration));
-                    Log.d(TAG, "SeekBar updated: " + formatTime(currentPosition) + "/" + formatTime(duration));
-                } else if (musicService == null) {
-                    Log.w(TAG, "updateSeekBarRunnable: MusicService is null.");
-                } else {
-                    Log.d(TAG, "updateSeekBarRunnable: MusicService not playing.");
-                }
-                handler.postDelayed(this, 1000); // Update every second
-            }
-        };
+        // Seek bar updates, extrapolated from the service's snapshot
+        progressTicker = new ProgressTicker(() -> musicService != null ? musicService.getPlaybackState() : null,
+                this::showProgress, uiTimer, SystemClock::uptimeMillis);
+        seekbarProgress.addOnLayoutChangeListener((v, left, top, right, bottom, oldLeft, oldTop, oldRight, oldBottom) ->
+                progressTicker.setWidthPx(right - left - v.getPaddingLeft() - v.getPaddingRight()));
     }
 
     private void initViews() {
@@ -117,7 +128,7 @@ public class NowPlayingActivity extends AppCompatActivity implements
 
         btnPlayPause.setOnClickListener(v -> {
             if (musicService != null) {
-                Log.d(TAG, "Play/Pause button clicked. Current state: " + (musicService.isPlaying() ? "PLAYING" : "PAUSED"));
+                PLAY_PAUSE_CLICKED.log(musicService.isPlaying() ? 1 : 0);
                 if (musicService.isPlaying()) {
                     musicService.pause();
                 } else {
@@ -154,7 +165,7 @@ public class NowPlayingActivity extends AppCompatActivity implements
                 musicService.toggleShuffle();
                 updateShuffleButtonState(musicService.isShuffleEnabled());
                 Toast.makeText(this, "Shuffle: " + (musicService.isShuffleEnabled() ? "ON" : "OFF"), Toast.LENGTH_SHORT).show();
-                Log.d(TAG, "Shuffle button clicked. Shuffle enabled: " + musicService.isShuffleEnabled());
+                SHUFFLE_CLICKED.log(musicService.isShuffleEnabled() ? 1 : 0);
             } else {
                 Toast.makeText(this, "Music service not ready yet.", Toast.LENGTH_SHORT).show();
                 Log.e(TAG, "Shuffle button clicked but MusicService is null.");
@@ -172,19 +183,19 @@ public class NowPlayingActivity extends AppCompatActivity implements
                     case MusicService.REPEAT_ONE: repeatModeText = "ONE"; break;
                 }
                 Toast.makeText(this, "Repeat: " + repeatModeText, Toast.LENGTH_SHORT).show();
-                Log.d(TAG, "Repeat button clicked. Repeat mode: " + musicService.getRepeatMode());
+                REPEAT_CLICKED.log(musicService.getRepeatMode());
             } else {
                 Toast.makeText(this, "Music service not ready yet.", Toast.LENGTH_SHORT).show();
                 Log.e(TAG, "Repeat button clicked but MusicService is null.");
             }
         });
 
+        seekScrubber = createSeekScrubber();
         seekbarProgress.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
-                if (fromUser && musicService != null) {
-                    musicService.seekTo(progress);
-                    Log.d(TAG, "SeekBar progress changed by user to: " + formatTime(progress));
+                if (fromUser) {
+                    seekScrubber.onProgressChanged(progress); // Rate-limited previews while dragging
                 }
                 tvCurrentTime.setText(formatTime(progress)); // Update current time text immediately
             }
@@ -192,14 +203,17 @@ public class NowPlayingActivity extends AppCompatActivity implements
             @Override
             public void onStartTrackingTouch(SeekBar seekBar) {
                 Log.d(TAG, "SeekBar tracking started.");
-                handler.removeCallbacks(updateSeekBarRunnable); // Stop updates while user is seeking
+                progressTicker.stop(); // Stop updates while user is seeking
+                seekScrubber.onStartTrackingTouch(seekBar.getProgress());
             }
 
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {
-                Log.d(TAG, "SeekBar tracking stopped.");
+                SEEK_RELEASED.log(seekBar.getProgress());
+                seekScrubber.onStopTrackingTouch(seekBar.getProgress());
                 if (musicService != null && musicService.isPlaying()) { // Only resume if playing
-                    handler.post(updateSeekBarRunnable); // Resume updates
+                    // Keep showing the thumb until the final seek had time to land
+                    progressTicker.startDelayed(SeekScrubber.SETTLE_HOLD_MS); // Resume updates
                 }
             }
         });
@@ -246,11 +260,10 @@ public class NowPlayingActivity extends AppCompatActivity implements
             MusicService.MusicBinder binder = (MusicService.MusicBinder) service;
             musicService = binder.getService();
             isBound = true;
-            musicService.setOnSongChangedListener(NowPlayingActivity.this);
             Log.d(TAG, "MusicService bound successfully to NowPlayingActivity.");
 
-            // Update UI with current song info from service immediately after binding
-            updateUiFromService();
+            // The latest snapshot arrives right away and updates the UI
+            musicService.subscribe(NowPlayingActivity.this, mainExecutor);
         }
 
         @Override
@@ -258,74 +271,40 @@ public class NowPlayingActivity extends AppCompatActivity implements
             isBound = false;
             musicService = null;
             Log.d(TAG, "MusicService disconnected from NowPlayingActivity.");
-            handler.removeCallbacks(updateSeekBarRunnable); // Stop updates
+            progressTicker.stop(); // Stop updates
             // Potentially show a message to the user that service is unavailable
             Toast.makeText(NowPlayingActivity.this, "Music service disconnected.", Toast.LENGTH_LONG).show();
         }
     };
 
-    /** Updates UI elements with data from the MusicService. */
-    private void updateUiFromService() {
-        if (musicService == null) {
-            Log.w(TAG, "updateUiFromService called but musicService is null.");
-            // Reset UI to default "no song playing" state
-            tvSongTitle.setText("No song playing");
-            tvSongArtist.setText("");
-            seekbarProgress.setProgress(0);
-            seekbarProgress.setMax(0);
-            tvCurrentTime.setText("0:00");
-            tvTotalTime.setText("0:00");
-            onPlaybackStateChanged(false); // Ensure play button is shown and animation stopped
-            updateShuffleButtonState(false);
-            updateRepeatButtonState(MusicService.REPEAT_OFF);
-            handler.removeCallbacks(updateSeekBarRunnable); // Stop any lingering updates
-            return;
-        }
+    // --- Playback State Snapshots ---
 
-        Song currentSong = musicService.getCurrentSong();
-        if (currentSong != null) {
-            tvSongTitle.setText(currentSong.getTitle());
-            tvSongArtist.setText(currentSong.getArtist());
-            int duration = musicService.getDuration();
-            seekbarProgress.setMax(duration); // Set max duration
-            tvTotalTime.setText(formatTime(duration));
-            Log.d(TAG, "updateUiFromService: Song info updated. Title: " + currentSong.getTitle() + ", Duration: " + formatTime(duration));
-        } else {
-            tvSongTitle.setText("No song playing");
-            tvSongArtist.setText("");
-            seekbarProgress.setProgress(0);
-            seekbarProgress.setMax(0);
-            tvCurrentTime.setText("0:00");
-            tvTotalTime.setText("0:00");
-            Log.d(TAG, "updateUiFromService: No current song found.");
+    /** Draws a snapshot from the service; after (re)subscribing the first one draws everything. */
+    @Override
+    public void onPlaybackState(PlaybackState state) {
+        PlaybackState previous = shownState;
+        shownState = state;
+        boolean all = previous == null;
+        if (all || state.getSong() != previous.getSong() || state.getDurationMs() != previous.getDurationMs()) {
+            onSongChanged(state.getSong(), state.getDurationMs());
         }
-
-        onPlaybackStateChanged(musicService.isPlaying()); // Update play/pause button and animation
-        onProgressUpdate(musicService.getCurrentPosition(), musicService.getDuration()); // Initial seekbar pos
-        updateShuffleButtonState(musicService.isShuffleEnabled());
-        updateRepeatButtonState(musicService.getRepeatMode());
-
-        handler.post(updateSeekBarRunnable); // Start periodic updates
+        if (all || state.isPlaying() != previous.isPlaying()) {
+            onPlaybackStateChanged(state.isPlaying());
+        }
+        if (all || !state.sameQueue(previous)) {
+            updateShuffleButtonState(state.isShuffle());
+            updateRepeatButtonState(state.getRepeatMode());
+        }
+        onProgressUpdate(state.getPositionMs(SystemClock.uptimeMillis()), state.getDurationMs());
     }
 
-
-    // --- MusicService.OnSongChangedListener Implementation ---
-
-    @Override
-    public void onSongChanged(Song song, boolean isPlaying) {
-        Log.d(TAG, "onSongChanged callback received in NowPlayingActivity. Song: " + (song != null ? song.getTitle() : "null"));
+    private void onSongChanged(Song song, int duration) {
+        SONG_CHANGED.log(song != null ? song.getId() : -1, duration);
         if (song != null) {
             tvSongTitle.setText(song.getTitle());
             tvSongArtist.setText(song.getArtist());
-            // It's important to get the duration directly from the service after a song change
-            if (musicService != null) {
-                int duration = musicService.getDuration();
-                seekbarProgress.setMax(duration);
-                tvTotalTime.setText(formatTime(duration));
-            } else {
-                seekbarProgress.setMax(0);
-                tvTotalTime.setText("0:00");
-            }
+            seekbarProgress.setMax(duration); // 0 until the song is prepared
+            tvTotalTime.setText(formatTime(duration));
             seekbarProgress.setProgress(0); // Reset seekbar for new song
             tvCurrentTime.setText("0:00"); // Reset current time for new song
         } else {
@@ -336,37 +315,61 @@ public class NowPlayingActivity extends AppCompatActivity implements
             tvTotalTime.setText("0:00");
             tvCurrentTime.setText("0:00");
         }
-        onPlaybackStateChanged(isPlaying); // Update play/pause button and animation
     }
 
-    @Override
-    public void onPlaybackStateChanged(boolean isPlaying) {
-        Log.d(TAG, "onPlaybackStateChanged callback received in NowPlayingActivity: " + isPlaying);
+    private void onPlaybackStateChanged(boolean isPlaying) {
+        PLAYING_CHANGED.log(isPlaying ? 1 : 0);
         if (isPlaying) {
             btnPlayPause.setImageResource(R.drawable.ic_pause_white_24dp);
             startRotationAnimation();
-            handler.post(updateSeekBarRunnable); // Ensure seekbar updates
+            progressTicker.start(); // Ensure seekbar updates
         } else {
             btnPlayPause.setImageResource(R.drawable.ic_play_arrow_white_24dp);
             stopRotationAnimation();
-            handler.removeCallbacks(updateSeekBarRunnable); // Stop seekbar updates
+            progressTicker.stop(); // Stop seekbar updates
         }
     }
 
-    @Override
-    public void onProgressUpdate(int currentPosition, int duration) {
-        Log.d(TAG, "onProgressUpdate callback received: " + formatTime(currentPosition) + "/" + formatTime(duration));
+    private void onProgressUpdate(int currentPosition, int duration) {
+        PROGRESS.log(currentPosition, duration);
+        if (seekScrubber.isDragging()) return; // The seek bar follows the finger meanwhile
         if (seekbarProgress.getMax() == 0 && duration > 0) { // Set max duration if not already set
             seekbarProgress.setMax(duration);
             tvTotalTime.setText(formatTime(duration));
         }
         seekbarProgress.setProgress(currentPosition);
         tvCurrentTime.setText(formatTime(currentPosition));
+        if (shownState != null && shownState.isPlaying()) {
+            progressTicker.start(); // The position may have jumped; carry on from the new snapshot
+        }
     }
 
 
     // --- Helper Methods ---
 
+    /** Seeks for the seek bar: previews while dragging, one precise seek on release. */
+    private SeekScrubber createSeekScrubber() {
+        return new SeekScrubber((positionMs, preview) -> {
+            if (musicService == null) return;
+            if (preview) {
+                musicService.seekPreview(positionMs);
+            } else {
+                musicService.seekTo(positionMs);
+            }
+        }, uiTimer, SystemClock::uptimeMillis, SeekStats.getInstance(), SeekScrubber.DEFAULT_INTERVAL_MS);
+    }
+
+    /** A tick of progressTicker: the position extrapolated from the snapshot, no player call. */
+    private void showProgress(int positionMs, int durationMs) {
+        if (seekScrubber.isDragging()) return;
+        if (durationMs > 0 && seekbarProgress.getMax() != durationMs) {
+            seekbarProgress.setMax(durationMs);
+            tvTotalTime.setText(formatTime(durationMs));
+        }
+        seekbarProgress.setProgress(positionMs);
+        tvCurrentTime.setText(formatTime(positionMs));
+    }
+
     private String formatTime(long milliseconds) {
         return String.format(Locale.getDefault(), "%02d:%02d",
                 TimeUnit.MILLISECONDS.toMinutes(milliseconds),
@@ -381,7 +384,7 @@ public class NowPlayingActivity extends AppCompatActivity implements
         } else {
             btnShuffle.setColorFilter(new PorterDuffColorFilter(ContextCompat.getColor(this, R.color.grey_text), PorterDuff.Mode.SRC_IN));
         }
-        Log.d(TAG, "Shuffle button state updated: " + isShuffleEnabled);
+        SHUFFLE_SHOWN.log(isShuffleEnabled ? 1 : 0);
     }
 
     private void updateRepeatButtonState(int repeatMode) {
@@ -399,7 +402,7 @@ public class NowPlayingActivity extends AppCompatActivity implements
                 btnRepeat.setColorFilter(new PorterDuffColorFilter(ContextCompat.getColor(this, R.color.green_accent), PorterDuff.Mode.SRC_IN));
                 break;
         }
-        Log.d(TAG, "Repeat button state updated to mode: " + repeatMode);
+        REPEAT_SHOWN.log(repeatMode);
     }
 
     // --- Activity Lifecycle ---
@@ -409,9 +412,8 @@ public class NowPlayingActivity extends AppCompatActivity implements
         super.onResume();
         Log.d(TAG, "NowPlayingActivity onResume called. isBound: " + isBound);
         if (isBound && musicService != null) {
-            musicService.setOnSongChangedListener(this); // Re-register listener
-            updateUiFromService(); // Refresh UI state from service
-            Log.d(TAG, "NowPlayingActivity onResume: UI updated and listener set.");
+            musicService.subscribe(this, mainExecutor); // The latest snapshot refreshes the UI
+            Log.d(TAG, "NowPlayingActivity onResume: Subscribed to playback state.");
         } else {
             // Re-bind if service was unbound or destroyed
             Intent serviceIntent = new Intent(this, MusicService.class);
@@ -425,12 +427,14 @@ public class NowPlayingActivity extends AppCompatActivity implements
     protected void onPause() {
         super.onPause();
         Log.d(TAG, "NowPlayingActivity onPause called.");
-        // Unregister listener to prevent memory leaks if activity is in background
+        // Unsubscribe to prevent memory leaks if activity is in background
         if (isBound && musicService != null) {
-            musicService.setOnSongChangedListener(null);
-            Log.d(TAG, "NowPlayingActivity onPause: Listener cleared.");
+            musicService.unsubscribe(this);
+            Log.d(TAG, "NowPlayingActivity onPause: Unsubscribed from playback state.");
         }
-        handler.removeCallbacks(updateSeekBarRunnable); // Stop updates
+        shownState = null; // Missed snapshots: draw everything again on return
+        progressTicker.stop(); // Stop updates
+        seekScrubber.cancel(); // A drag cut short by leaving doesn't seek
         stopRotationAnimation(); // Ensure animation stops when activity is paused
     }
 
@@ -439,12 +443,13 @@ public class NowPlayingActivity extends AppCompatActivity implements
         super.onDestroy();
         Log.d(TAG, "NowPlayingActivity onDestroy: Unbinding service and stopping service.");
         if (isBound) {
+            musicService.unsubscribe(this);
             unbindService(serviceConnection);
             isBound = false;
         }
         stopService(new Intent(this, MusicService.class));
 
-        handler.removeCallbacks(updateSeekBarRunnable); // Ensure runnable is stopped
+        progressTicker.stop(); // Ensure updates are stopped
         stopRotationAnimation(); // Ensure animation stops
     }
 }
\ No newline at end of file
@@ -0,0 +1,152 @@
+package com.example.gaanesuno;
+
+import java.util.Arrays;
+
+/**
+ * Multi-band parametric equalizer on interleaved float PCM: one biquad per band (peaking or
+ * shelving, from the RBJ audio EQ cookbook), run in place on every channel.
+ *
+ * <p>Coefficients and filter state live in flat arrays sized at construction, so changing a
+ * band or processing a block never allocates; it can run on an audio callback thread without
+ * giving the GC anything to do. Not thread safe: set the bands from the thread that processes,
+ * or between blocks.</p>
+ */
+public final class ParametricEqualizer {
+
+    public enum BandType {
+        PEAK, // Boosts or cuts around the frequency
+        LOW_SHELF, // Boosts or cuts everything below the frequency
+        HIGH_SHELF // Boosts or cuts everything above the frequency
+    }
+
+    private static final double DENORMAL_LIMIT = 1e-25; // Filter state this small is silence
+
+    private final int bandCount;
+    private final int channels;
+    private final double sampleRate;
+    private final double[] coefficients; // Per band: b0, b1, b2, a1, a2, normalized by a0
+    private final double[] state; // Per band and channel: z1, z2 (transposed direct form II)
+
+    /** An equalizer with every band flat, which passes the signal through unchanged. */
+    public ParametricEqualizer(int bandCount, int channels, double sampleRate) {
+        this.bandCount = bandCount;
+        this.channels = channels;
+        this.sampleRate = sampleRate;
+        this.coefficients = new double[bandCount * 5];
+        this.state = new double[bandCount * channels * 2];
+        for (int band = 0; band < bandCount; band++) {
+            coefficients[band * 5] = 1; // b0 = 1, the rest 0
+        }
+    }
+
+    public int getBandCount() {
+        return bandCount;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Sets one band. {@code q} is the width for PEAK (higher is narrower) and the slope for
+     * the shelves (0.707 is the steepest without a bump). The filter state is kept, so a
+     * change while playing doesn't click.
+     */
+    public void setBand(int band, BandType type, double frequencyHz, double gainDb, double q) {
+        double a = Math.pow(10, gainDb / 40);
+        double w0 = 2 * Math.PI * Math.min(frequencyHz, sampleRate * 0.49) / sampleRate;
+        double cos = Math.cos(w0);
+        double alpha = Math.sin(w0) / (2 * q);
+        double b0, b1, b2, a0, a1, a2;
+        switch (type) {
+            case LOW_SHELF: {
+                double twoSqrtAAlpha = 2 * Math.sqrt(a) * alpha;
+                b0 = a * ((a + 1) - (a - 1) * cos + twoSqrtAAlpha);
+                b1 = 2 * a * ((a - 1) - (a + 1) * cos);
+                b2 = a * ((a + 1) - (a - 1) * cos - twoSqrtAAlpha);
+                a0 = (a + 1) + (a - 1) * cos + twoSqrtAAlpha;
+                a1 = -2 * ((a - 1) + (a + 1) * cos);
+                a2 = (a + 1) + (a - 1) * cos - twoSqrtAAlpha;
+                break;
+            }
+            case HIGH_SHELF: {
+                double twoSqrtAAlpha = 2 * Math.sqrt(a) * alpha;
+                b0 = a * ((a + 1) + (a - 1) * cos + twoSqrtAAlpha);
+                b1 = -2 * a * ((a - 1) + (a + 1) * cos);
+                b2 = a * ((a + 1) + (a - 1) * cos - twoSqrtAAlpha);
+                a0 = (a + 1) - (a - 1) * cos + twoSqrtAAlpha;
+                a1 = 2 * ((a - 1) - (a + 1) * cos);
+                a2 = (a + 1) - (a - 1) * cos - twoSqrtAAlpha;
+                break;
+            }
+            case PEAK:
+            default:
+                b0 = 1 + alpha * a;
+                b1 = -2 * cos;
+                b2 = 1 - alpha * a;
+                a0 = 1 + alpha / a;
+                a1 = -2 * cos;
+                a2 = 1 - alpha / a;
+                break;
+        }
+        int c = band * 5;
+        coefficients[c] = b0 / a0;
+        coefficients[c + 1] = b1 / a0;
+        coefficients[c + 2] = b2 / a0;
+        coefficients[c + 3] = a1 / a0;
+        coefficients[c + 4] = a2 / a0;
+    }
+
+    /** Filters {@code frames} interleaved frames starting at {@code offset}, in place. */
+    public void process(float[] samples, int offset, int frames) {
+        for (int band = 0; band < bandCount; band++) {
+            int c = band * 5;
+            double b0 = coefficients[c];
+            double b1 = coefficients[c + 1];
+            double b2 = coefficients[c + 2];
+            double a1 = coefficients[c + 3];
+            double a2 = coefficients[c + 4];
+            if (b0 == 1 && b1 == a1 && b2 == a2) continue; // Flat (0 dB or never set): passes through
+            for (int channel = 0; channel < channels; channel++) {
+                int s = (band * channels + channel) * 2;
+                double z1 = state[s];
+                double z2 = state[s + 1];
+                int end = offset + frames * channels;
+                for (int i = offset + channel; i < end; i += channels) {
+                    double x = samples[i];
+                    double y = b0 * x + z1;
+                    z1 = b1 * x - a1 * y + z2;
+                    z2 = b2 * x - a2 * y;
+                    samples[i] = (float) y;
+                }
+                // Decaying into denormals after the music stops would make every later block slow
+                state[s] = Math.abs(z1) < DENORMAL_LIMIT ? 0 : z1;
+                state[s + 1] = Math.abs(z2) < DENORMAL_LIMIT ? 0 : z2;
+            }
+        }
+    }
+
+    /** Clears the filter state, e.g. before a song that doesn't continue the last one. */
+    public void reset() {
+        Arrays.fill(state, 0);
+    }
+
+    /** Gain of all bands together at {@code frequencyHz}, in dB, computed from the coefficients. */
+    public double magnitudeDb(double frequencyHz) {
+        double w = 2 * Math.PI * frequencyHz / sampleRate;
+        double cos1 = Math.cos(w);
+        double sin1 = Math.sin(w);
+        double cos2 = Math.cos(2 * w);
+        double sin2 = Math.sin(2 * w);
+        double db = 0;
+        for (int band = 0; band < bandCount; band++) {
+            int c = band * 5;
+            double numRe = coefficients[c] + coefficients[c + 1] * cos1 + coefficients[c + 2] * cos2;
+            double numIm = -(coefficients[c + 1] * sin1 + coefficients[c + 2] * sin2);
+            double denRe = 1 + coefficients[c + 3] * cos1 + coefficients[c + 4] * cos2;
+            double denIm = -(coefficients[c + 3] * sin1 + coefficients[c + 4] * sin2);
+            db += 10 * Math.log10((numRe * numRe + numIm * numIm) / (denRe * denRe + denIm * denIm));
+        }
+        return db;
+    }
+}
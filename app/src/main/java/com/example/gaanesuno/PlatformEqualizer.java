@@ -0,0 +1,53 @@
+package com.example.gaanesuno;
+
+import android.media.audiofx.Equalizer;
+import android.util.Log;
+
+/**
+ * Plays an {@link EqualizerPreset} through the platform equalizer on the players' audio
+ * session. MediaPlayer doesn't hand its PCM to the app, so {@link AudioEffectsChain} can't
+ * run on it; instead the response of the same filters is sampled at each platform band's
+ * centre, preamp included, and set as that band's level.
+ */
+public class PlatformEqualizer {
+
+    private static final String TAG = "PlatformEqualizer";
+    private static final int RESPONSE_SAMPLE_RATE = 48_000;
+
+    private Equalizer equalizer; // null if the device has none, or after release()
+
+    public PlatformEqualizer(int audioSessionId) {
+        try {
+            equalizer = new Equalizer(0, audioSessionId);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "No equalizer on this device: " + e.getMessage());
+        }
+    }
+
+    public void apply(EqualizerPreset preset) {
+        if (equalizer == null) return;
+        ParametricEqualizer response = new ParametricEqualizer(preset.getBandCount(), 1, RESPONSE_SAMPLE_RATE);
+        preset.applyTo(response);
+        try {
+            short[] range = equalizer.getBandLevelRange(); // Millibels
+            short bands = equalizer.getNumberOfBands();
+            for (short band = 0; band < bands; band++) {
+                double centreHz = equalizer.getCenterFreq(band) / 1000.0; // Reported in milliHertz
+                double levelDb = response.magnitudeDb(centreHz) + preset.getPreampDb();
+                long level = Math.max(range[0], Math.min(range[1], Math.round(levelDb * 100)));
+                equalizer.setBandLevel(band, (short) level);
+            }
+            equalizer.setEnabled(!preset.isFlat());
+            Log.d(TAG, "Applied preset " + preset.getName() + " to " + bands + " bands");
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not apply preset " + preset.getName() + ": " + e.getMessage());
+        }
+    }
+
+    public void release() {
+        if (equalizer != null) {
+            equalizer.release();
+            equalizer = null;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.gaanesuno;
+
+/**
+ * One request to MusicService's playback thread: play a song, pause, seek, change the queue...
+ *
+ * <p>Commands are immutable values, created on whatever thread asks (the UI, the notification,
+ * audio focus callbacks) and executed in order on the playback thread by
+ * {@link PlaybackCommandQueue}. The caller never touches the player itself.</p>
+ */
+public final class PlaybackCommand {
+
+    public enum Type {
+        PLAY_INDEX, // Play the song at index in the active list
+        PLAY_ID, // Play the song with this id, wherever it is in the active list
+        PLAY, // Resume, or start the current (or first) song
+        PAUSE,
+        NEXT,
+        PREVIOUS,
+        SEEK, // To index ms, flag = preview (fast and approximate, while scrubbing)
+        SET_SONG_LIST, // New library, active list starts over in library order
+        UPDATE_SONG_LIST, // Changed library, queue and current song are kept
+        SET_SHUFFLE, // flag = on
+        SET_REPEAT, // index = repeat mode
+        SET_CROSSFADE, // index = seconds
+        RESTORE, // Prepare song at index, seek to position ms, flag = start playing
+        AUDIO_FOCUS // index = AudioManager focus change
+    }
+
+    private final Type type;
+    private final int index;
+    private final long value;
+    private final boolean flag;
+    private final Object payload; // SongStore or Song, depending on the type
+
+    private PlaybackCommand(Type type, int index, long value, boolean flag, Object payload) {
+        this.type = type;
+        this.index = index;
+        this.value = value;
+        this.flag = flag;
+        this.payload = payload;
+    }
+
+    public static PlaybackCommand playIndex(int index) {
+        return new PlaybackCommand(Type.PLAY_INDEX, index, 0, false, null);
+    }
+
+    public static PlaybackCommand playId(long songId) {
+        return new PlaybackCommand(Type.PLAY_ID, -1, songId, false, null);
+    }
+
+    public static PlaybackCommand play() {
+        return new PlaybackCommand(Type.PLAY, -1, 0, false, null);
+    }
+
+    public static PlaybackCommand pause() {
+        return new PlaybackCommand(Type.PAUSE, -1, 0, false, null);
+    }
+
+    public static PlaybackCommand next() {
+        return new PlaybackCommand(Type.NEXT, -1, 0, false, null);
+    }
+
+    public static PlaybackCommand previous() {
+        return new PlaybackCommand(Type.PREVIOUS, -1, 0, false, null);
+    }
+
+    public static PlaybackCommand seek(int positionMs) {
+        return new PlaybackCommand(Type.SEEK, positionMs, 0, false, null);
+    }
+
+    public static PlaybackCommand seekPreview(int positionMs) {
+        return new PlaybackCommand(Type.SEEK, positionMs, 0, true, null);
+    }
+
+    public static PlaybackCommand setSongList(SongStore songs) {
+        return new PlaybackCommand(Type.SET_SONG_LIST, -1, 0, false, songs);
+    }
+
+    public static PlaybackCommand updateSongList(SongStore songs) {
+        return new PlaybackCommand(Type.UPDATE_SONG_LIST, -1, 0, false, songs);
+    }
+
+    public static PlaybackCommand setShuffle(boolean enabled) {
+        return new PlaybackCommand(Type.SET_SHUFFLE, -1, 0, enabled, null);
+    }
+
+    public static PlaybackCommand setRepeat(int mode) {
+        return new PlaybackCommand(Type.SET_REPEAT, mode, 0, false, null);
+    }
+
+    public static PlaybackCommand setCrossfade(int seconds) {
+        return new PlaybackCommand(Type.SET_CROSSFADE, seconds, 0, false, null);
+    }
+
+    public static PlaybackCommand restore(Song song, int index, int positionMs, boolean shouldPlay) {
+        return new PlaybackCommand(Type.RESTORE, index, positionMs, shouldPlay, song);
+    }
+
+    public static PlaybackCommand audioFocus(int focusChange) {
+        return new PlaybackCommand(Type.AUDIO_FOCUS, focusChange, 0, false, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /** Song index, seek position, repeat mode, crossfade seconds or focus change, depending on the type. */
+    public int getIndex() {
+        return index;
+    }
+
+    /** Song id for PLAY_ID, position in ms for RESTORE. */
+    public long getValue() {
+        return value;
+    }
+
+    /** Shuffle on for SET_SHUFFLE, start playing for RESTORE. */
+    public boolean getFlag() {
+        return flag;
+    }
+
+    public SongStore getSongs() {
+        return (SongStore) payload;
+    }
+
+    public Song getSong() {
+        return (Song) payload;
+    }
+
+    @Override
+    public String toString() {
+        return type + (index != -1 ? " " + index : "") + (value != 0 ? " " + value : "") + (flag ? " on" : "");
+    }
+}
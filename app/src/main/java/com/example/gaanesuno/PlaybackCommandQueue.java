@@ -0,0 +1,71 @@
+package com.example.gaanesuno;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands {@link PlaybackCommand}s from any thread to a single playback thread, which executes
+ * them one at a time in the order they were posted.
+ *
+ * <p>Posting never blocks: the command goes into a lock-free queue and, unless a drain is
+ * already pending, one drain task is handed to the playback thread's executor (a Handler on
+ * Android). A drain executes every command queued by then, so a burst of posts costs one
+ * wake-up of the playback thread rather than one message per command.</p>
+ */
+public final class PlaybackCommandQueue {
+
+    /** Executes commands; only ever called on the playback thread, one command at a time. */
+    public interface Target {
+        void onCommand(PlaybackCommand command);
+    }
+
+    private final Executor playbackThread;
+    private final Target target;
+    private final ConcurrentLinkedQueue<PlaybackCommand> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final Runnable drainRunnable = this::drain; // Posted once per burst, not re-created each time
+    private final AtomicLong postedCount = new AtomicLong();
+    private final AtomicLong drainCount = new AtomicLong();
+    private volatile long executedCount; // Only written by the playback thread
+
+    public PlaybackCommandQueue(Executor playbackThread, Target target) {
+        this.playbackThread = playbackThread;
+        this.target = target;
+    }
+
+    /** Queues a command for the playback thread; callable from any thread. */
+    public void post(PlaybackCommand command) {
+        pending.offer(command);
+        postedCount.incrementAndGet();
+        if (drainScheduled.compareAndSet(false, true)) {
+            playbackThread.execute(drainRunnable);
+        }
+    }
+
+    public long getPostedCount() {
+        return postedCount.get();
+    }
+
+    public long getExecutedCount() {
+        return executedCount;
+    }
+
+    /** Number of times the playback thread woke up to execute commands. */
+    public long getDrainCount() {
+        return drainCount.get();
+    }
+
+    private void drain() {
+        // Cleared before polling: a command posted from here on schedules another drain,
+        // at worst one that finds the queue already empty
+        drainScheduled.set(false);
+        drainCount.incrementAndGet();
+        PlaybackCommand command;
+        while ((command = pending.poll()) != null) {
+            target.onCommand(command);
+            executedCount++;
+        }
+    }
+}
@@ -0,0 +1,1055 @@
+package com.example.gaanesuno;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+/**
+ * The playback logic of MusicService: the queue, shuffle and repeat, gapless hand-over and
+ * crossfades, restoring the last song, and skipping songs that fail to load. It drives two
+ * {@link PlaybackEngine}s and tells its {@link Host} what to show.
+ *
+ * <p>Not thread safe: every method, and every engine callback, runs on the playback thread.
+ * The service owns that thread, the notification, audio focus and the UI listener.</p>
+ */
+public class PlaybackController implements PlaybackEngine.Callback {
+
+    private static final String TAG = "PlaybackController";
+
+    // Trace points of the paths every song takes; songs are traced by id, not by title
+    private static final Trace.Point PLAY_INDEX = Trace.point(TAG, Trace.DEBUG, "playSong called with index {}");
+    private static final Trace.Point PLAY_INVALID_INDEX = Trace.point(TAG, Trace.DEBUG, "Invalid song index {}, list size {}");
+    private static final Trace.Point PLAY_SUPERSEDED = Trace.point(TAG, Trace.DEBUG, "Song {} superseded before it was loaded");
+    private static final Trace.Point PLAY_SONG = Trace.point(TAG, Trace.DEBUG, "Playing song {} at index {}");
+    private static final Trace.Point PLAY_PRELOADED = Trace.point(TAG, Trace.DEBUG, "Song {} was preloaded, starting without preparing");
+    private static final Trace.Point PLAY_PREPARING = Trace.point(TAG, Trace.DEBUG, "Song {} preparing, playback starts in onPrepared");
+    private static final Trace.Point PLAY_NOT_PREPARED = Trace.point(TAG, Trace.DEBUG, "play(): engine not prepared for song {}, preparing now");
+    private static final Trace.Point PREPARING = Trace.point(TAG, Trace.DEBUG, "Engine preparing asynchronously for song {}");
+    private static final Trace.Point PREPARED = Trace.point(TAG, Trace.DEBUG, "onPrepared for song {}, play after prepared: {}");
+    private static final Trace.Point STARTED = Trace.point(TAG, Trace.DEBUG, "Started playing song {}");
+    private static final Trace.Point PAUSED = Trace.point(TAG, Trace.DEBUG, "Paused at {} ms");
+    private static final Trace.Point COMPLETED = Trace.point(TAG, Trace.DEBUG, "onCompletion of song {}");
+    private static final Trace.Point NEXT = Trace.point(TAG, Trace.DEBUG, "Next song: index {} -> {}");
+    private static final Trace.Point PREVIOUS = Trace.point(TAG, Trace.DEBUG, "Previous song: index {} -> {}");
+    private static final Trace.Point NEXT_PREPARING = Trace.point(TAG, Trace.DEBUG, "Preparing next engine for song {} at index {}");
+    private static final Trace.Point NEXT_PREPARED = Trace.point(TAG, Trace.DEBUG, "Next engine prepared: song {}");
+    private static final Trace.Point NEXT_LINKED = Trace.point(TAG, Trace.DEBUG, "Next engine linked: song {}");
+    private static final Trace.Point HAND_OVER = Trace.point(TAG, Trace.DEBUG, "Gapless hand-over to song {} at index {}");
+    private static final Trace.Point RESTORE = Trace.point(TAG, Trace.DEBUG, "Restore song {}, play: {}, at {} ms");
+    private static final Trace.Point SONG_LIST_SET = Trace.point(TAG, Trace.DEBUG, "Song list set: {} songs");
+    private static final Trace.Point SONG_LIST_UPDATED = Trace.point(TAG, Trace.DEBUG, "Song list updated: {} songs, current index {}");
+    private static final Trace.Point SHUFFLE = Trace.point(TAG, Trace.DEBUG, "Shuffle set to {}");
+    private static final Trace.Point SHUFFLED = Trace.point(TAG, Trace.DEBUG, "Song list shuffled, current index {}");
+    private static final Trace.Point ORDER_RESET = Trace.point(TAG, Trace.DEBUG, "Song list order reset, song {} now at index {}");
+    private static final Trace.Point REPEAT = Trace.point(TAG, Trace.DEBUG, "Repeat mode set to {}");
+    private static final Trace.Point CROSSFADE = Trace.point(TAG, Trace.DEBUG, "Crossfade set to {} s");
+
+    // Repeat modes
+    public static final int REPEAT_OFF = 0;
+    public static final int REPEAT_ALL = 1;
+    public static final int REPEAT_ONE = 2;
+
+    /** What the controller needs from the service; called on the playback thread. */
+    public interface Host {
+        boolean requestAudioFocus();
+
+        /** Loudness normalization of the song as a linear gain, 1 if it hasn't been analysed. */
+        float getTrackGain(Song song);
+
+        /** Runs the task on the playback thread after the commands already queued there. */
+        void post(Runnable task);
+
+        /**
+         * Playback started: calls {@link #updateProgress} once, after the commands already
+         * queued. Nothing polls the player after that; listeners extrapolate the position from
+         * the published {@link PlaybackState}.
+         */
+        void startProgressUpdates();
+
+        /** Drops the update if it hasn't run yet. */
+        void stopProgressUpdates();
+
+        /** Playing: foreground with a pause button. Paused: notification kept, no longer foreground. */
+        void showNotification(Song song, boolean isPlaying);
+
+        /** Nothing to play: the notification goes away. */
+        void removeNotification();
+
+        void onSongChanged(Song song, boolean isPlaying);
+
+        void onPlaybackStateChanged(boolean isPlaying);
+
+        void onProgressUpdate(int positionMs, int durationMs);
+
+        /** The current engine finished a seek. */
+        void onSeekComplete();
+
+        /** A short message for the user (a toast on the device). */
+        void showMessage(String message);
+
+        /** A debug log line. */
+        void log(String message);
+    }
+
+    /** Fades from the current engine into the next one; {@link CrossfadeScheduler} on the device. */
+    public interface Crossfader {
+        /** Schedules a fade and returns its token, passed to {@link #onCrossfadeFinished} when it ends. */
+        int schedule(PlaybackEngine from, PlaybackEngine to, long delayMs, long fadeMs);
+
+        /** Stops the fade; returns true if the incoming engine had been started. */
+        boolean cancel();
+
+        boolean isFading();
+
+        void setVolume(float volume);
+    }
+
+    private final Host host;
+    private final PlaybackEngine.Factory engineFactory;
+    private final Crossfader crossfader;
+    private final PlaybackLatencyTracker latencyTracker;
+    private final LongSupplier uptimeClock; // For the position snapshots
+
+    private PlaybackEngine engine;
+    private SongStore songList = SongStore.EMPTY; // The original list of songs, shared read-only with MainActivity
+    private List<Song> activeSongList = songList; // The list currently being played (songList itself, or a shuffled view of it)
+    private int[] shuffleOrder; // Rows of songList behind the shuffled activeSongList, null when not shuffled
+    private int currentSongIndex = -1;
+    private Song currentSong;
+    private int currentPosition; // Current playback position for saving/restoring
+    private boolean isPrepared = false; // Flag to indicate if the engine is prepared
+    private boolean shouldPlayAfterPrepared = false; // Flag to play immediately after preparation
+    private boolean loadPending = false; // The current song is loaded once the queued commands have run
+    private final Runnable loadPendingSongRunnable = this::loadPendingSong;
+
+    // Restoring the last song: once prepared it seeks here and only plays if it was playing before
+    private boolean restorePending = false;
+    private int restorePositionMs;
+    private boolean restoreShouldPlay;
+
+    // Gapless playback: the song that follows the current one is prepared on a second engine and
+    // linked to it, so it starts the moment the current one ends
+    private PlaybackEngine nextEngine;
+    private Song nextSong; // Song loaded (or loading) in nextEngine, null when none
+    private int nextSongIndex = -1;
+    private boolean isNextPrepared = false;
+    private boolean isNextLinked = false; // engine hands over to nextEngine on completion
+
+    // Crossfade: instead of being linked, the next engine is faded in over the end of the current song
+    private long crossfadeMs = 0; // 0 = off, songs are linked gaplessly
+    private int crossfadeToken = -1; // Token of the scheduled or running fade, -1 when none
+    private float volume = 1.0f; // Full, or lowered while ducking
+
+    private boolean isShuffleEnabled = false;
+    private int repeatMode = REPEAT_OFF;
+    private int queueVersion; // Bumped on every change of activeSongList
+
+    public PlaybackController(Host host, PlaybackEngine.Factory engineFactory, Crossfader crossfader,
+                              PlaybackLatencyTracker latencyTracker, LongSupplier uptimeClock) {
+        this.host = host;
+        this.engineFactory = engineFactory;
+        this.crossfader = crossfader;
+        this.latencyTracker = latencyTracker;
+        this.uptimeClock = uptimeClock;
+    }
+
+    /** Creates the current engine ahead of the first song; otherwise it's created on first use. */
+    public void init() {
+        if (engine == null) {
+            engine = engineFactory.create(this);
+            host.log("Engine initialized for the first time.");
+        }
+    }
+
+    /** Releases both engines; the controller can't be used afterwards. */
+    public void release() {
+        if (nextEngine != null) {
+            nextEngine.release();
+            nextEngine = null;
+        }
+        if (engine != null) {
+            engine.release();
+            engine = null;
+            host.log("Engine released.");
+        }
+        host.stopProgressUpdates();
+    }
+
+    // --- State ---
+
+    /** Snapshot of the current state, with the position read now. */
+    public PlaybackState getState() {
+        PlaybackState.Status status;
+        int position = currentPosition;
+        int duration = 0;
+        if (currentSong == null) {
+            status = PlaybackState.Status.IDLE;
+        } else if (!isPrepared) {
+            status = PlaybackState.Status.PREPARING;
+        } else {
+            position = engine.getPosition();
+            duration = engine.getDuration();
+            status = engine.isPlaying() ? PlaybackState.Status.PLAYING : PlaybackState.Status.PAUSED;
+        }
+        // Engines play at normal speed; repeat one loops inside the engine
+        return new PlaybackState(currentSong, currentSongIndex, status, position, uptimeClock.getAsLong(), duration,
+                1f, repeatMode == REPEAT_ONE).withQueue(isShuffleEnabled, repeatMode, queueVersion);
+    }
+
+    public Song getCurrentSong() {
+        return currentSong;
+    }
+
+    public int getCurrentSongIndex() {
+        return currentSongIndex;
+    }
+
+    /** Position in the current song, also while it isn't loaded (e.g. restored but not prepared yet). */
+    public int getCurrentPosition() {
+        return engine != null && isPrepared ? engine.getPosition() : currentPosition;
+    }
+
+    public boolean isPlaying() {
+        return engine != null && engine.isPlaying();
+    }
+
+    public boolean isShuffleEnabled() {
+        return isShuffleEnabled;
+    }
+
+    public int getRepeatMode() {
+        return repeatMode;
+    }
+
+    /** The list in play order, shuffled or not. */
+    public List<Song> getActiveSongList() {
+        return activeSongList;
+    }
+
+    /** Reads the position once playback has started and tells the host; false if nothing plays. */
+    public boolean updateProgress() {
+        if (engine == null || !engine.isPlaying()) return false;
+        currentPosition = engine.getPosition();
+        host.onProgressUpdate(currentPosition, engine.getDuration());
+        latencyTracker.mark(PlaybackLatencyTracker.Stage.FIRST_PROGRESS); // Ignored after the first one
+        return true;
+    }
+
+    // --- Engine Callbacks ---
+
+    /** Prepares the current engine with a new song. */
+    private void prepareEngine(Song song) {
+        init(); // Ensure the engine is not null
+        unlinkNextPlayer(); // A link survives reset(), the new song must not hand over to a stale next engine
+        isPrepared = false; // Mark as not prepared yet
+        try {
+            engine.setSource(song); // Resets it, which cancels a prepare still in flight
+            engine.setTrackGain(host.getTrackGain(song));
+            latencyTracker.mark(PlaybackLatencyTracker.Stage.DATA_SOURCE_SET);
+            engine.prepareAsync(); // Asynchronously prepare
+            PREPARING.log(song.getId());
+        } catch (IOException e) {
+            host.log("Error setting data source or preparing for " + song.getTitle() + ": " + e.getMessage());
+            latencyTracker.cancel();
+            host.showMessage("Error loading song: " + song.getTitle() + ". Skipping...");
+            // Handle error: e.g., skip to next song
+            host.onSongChanged(null, false); // Clear UI
+            host.onPlaybackStateChanged(false); // Update play/pause button
+            next(); // Try to play next song if current one fails
+        }
+    }
+
+    @Override
+    public void onPrepared(PlaybackEngine prepared) {
+        if (prepared == nextEngine) {
+            onNextPrepared();
+            return;
+        }
+        if (prepared != engine) return;
+        if (loadPending) {
+            host.log("onPrepared for a song that was skipped meanwhile, ignoring.");
+            return; // The pending load resets the engine for the new one
+        }
+        isPrepared = true; // The engine is now prepared
+        if (restorePending) {
+            onRestorePrepared();
+            prepareNextPlayer();
+            return;
+        }
+        latencyTracker.mark(PlaybackLatencyTracker.Stage.PREPARED);
+        PREPARED.log(currentSong.getId(), shouldPlayAfterPrepared ? 1 : 0);
+
+        if (shouldPlayAfterPrepared) {
+            // Only attempt to start if audio focus is granted
+            if (host.requestAudioFocus()) {
+                latencyTracker.mark(PlaybackLatencyTracker.Stage.AUDIO_FOCUS);
+                engine.start(); // Start actual playback
+                latencyTracker.mark(PlaybackLatencyTracker.Stage.STARTED);
+                STARTED.log(currentSong.getId());
+                host.showNotification(currentSong, true); // Promote to foreground
+                host.startProgressUpdates(); // Start seekbar updates
+                host.onPlaybackStateChanged(true); // Notify activity that it's playing
+                host.onSongChanged(currentSong, true); // Update song info and playing state in UI
+            } else {
+                host.log("Audio focus denied onPrepared. Cannot play immediately.");
+                latencyTracker.cancel();
+                host.onPlaybackStateChanged(false); // Update UI to paused state
+                host.showNotification(currentSong, false);
+            }
+            shouldPlayAfterPrepared = false; // Reset the flag after use
+        } else {
+            host.log("Prepared, but not starting playback immediately (shouldPlayAfterPrepared was false).");
+            latencyTracker.cancel();
+            // If just preparing (e.g., for seek), update UI to paused
+            host.onSongChanged(currentSong, false);
+            host.onPlaybackStateChanged(false);
+            host.showNotification(currentSong, false);
+        }
+        prepareNextPlayer(); // Line up the following song while this one plays
+    }
+
+    /** The restored song is prepared: seek to where it was and play only if it was playing. */
+    private void onRestorePrepared() {
+        restorePending = false;
+        host.log("onPrepared for restore. Seeking to: " + restorePositionMs);
+        engine.seekTo(restorePositionMs);
+
+        if (restoreShouldPlay) {
+            // Request focus and start. This is similar to play()'s starting logic.
+            if (host.requestAudioFocus()) {
+                engine.start();
+                host.showNotification(currentSong, true);
+                host.startProgressUpdates();
+                host.onPlaybackStateChanged(true);
+                host.onSongChanged(currentSong, true); // Update UI playing state
+            } else {
+                host.log("Audio focus denied during restore auto-play. Remaining paused.");
+                host.onPlaybackStateChanged(false);
+                host.onSongChanged(currentSong, false); // Update UI paused state
+                host.showNotification(currentSong, false);
+            }
+        } else {
+            host.log("Keeping paused after restore based on shouldPlay=false.");
+            host.onSongChanged(currentSong, false); // Update UI to show song paused
+            host.onPlaybackStateChanged(false);
+            host.onProgressUpdate(restorePositionMs, engine.getDuration()); // Update seekbar
+            host.showNotification(currentSong, false);
+        }
+    }
+
+    @Override
+    public void onCompletion(PlaybackEngine completed) {
+        COMPLETED.log(currentSong != null ? currentSong.getId() : -1);
+        if (completed != engine) {
+            host.log("onCompletion from an engine that is not current, ignoring.");
+            return;
+        }
+        if (loadPending) return; // The song was skipped, the next one is about to load
+        if (isNextLinked) {
+            // The next engine was already started without a gap, it only has to become current
+            handOverToNextPlayer();
+            return;
+        }
+        if (crossfadeToken != -1 && crossfader.isFading()) {
+            // The song ended a step before the fade did: the next one is already playing
+            crossfadeToken = -1;
+            crossfader.cancel();
+            handOverToNextPlayer();
+            return;
+        }
+        switch (repeatMode) {
+            case REPEAT_ONE:
+                host.log("Repeat ONE: Replaying current song.");
+                play(); // Replay the same song
+                break;
+            case REPEAT_ALL:
+                host.log("Repeat ALL: Playing next song.");
+                next(); // Play next song
+                break;
+            case REPEAT_OFF:
+            default:
+                if (currentSongIndex < activeSongList.size() - 1) {
+                    host.log("Repeat OFF: Playing next song.");
+                    next(); // Play next if not the last song
+                } else {
+                    // Last song in list, repeat off. Stop playback.
+                    host.log("Repeat OFF: Last song finished. Stopping playback.");
+                    pause(); // Pause playback
+                    seekTo(0); // Reset to beginning of the last song
+                    host.onSongChanged(currentSong, false); // Update UI for finished song, paused
+                    host.onPlaybackStateChanged(false); // Update play/pause button
+                    host.onProgressUpdate(0, currentSong.getDuration()); // Reset seekbar
+                    host.showNotification(currentSong, false); // Keep notification visible but not foreground
+                }
+                break;
+        }
+    }
+
+    @Override
+    public void onError(PlaybackEngine failed, int what, int extra) {
+        if (failed == nextEngine) {
+            // Only the preloaded song failed; the current one keeps playing and the next song
+            // gets the normal prepare (and its error handling) when its turn comes
+            host.log("Next engine onError: what=" + what + ", extra=" + extra);
+            clearNextPlayer();
+            return;
+        }
+        if (failed != engine) return;
+        host.log("onError: what=" + what + ", extra=" + extra);
+        isPrepared = false; // The engine is no longer prepared
+        if (loadPending) return; // From a song that was skipped; the pending load resets the engine
+        latencyTracker.cancel();
+        host.onPlaybackStateChanged(false); // Update UI
+        host.showMessage("Error playing song. Skipping...");
+        // Attempt to play the next song to continue playback
+        next();
+    }
+
+    @Override
+    public void onSeekComplete(PlaybackEngine seeked) {
+        if (seeked == engine) {
+            host.onSeekComplete();
+        }
+    }
+
+    // --- Gapless Playback ---
+
+    /** Prepared callback of the next engine: link it as soon as it's ready. */
+    private void onNextPrepared() {
+        if (nextSong == null) return; // Cleared meanwhile
+        isNextPrepared = true;
+        NEXT_PREPARED.log(nextSong.getId());
+        linkNextPlayer();
+    }
+
+    /**
+     * Makes sure the next engine holds the song that should follow the current one and is linked
+     * to it. Called when the current engine is prepared and whenever the queue, shuffle or repeat
+     * mode changes; if the following song is still the same it is kept instead of prepared again.
+     */
+    private void prepareNextPlayer() {
+        if (engine == null || !isPrepared) return; // Runs again from onPrepared
+        // Repeat one loops inside the engine, which is gapless on its own
+        engine.setLooping(repeatMode == REPEAT_ONE);
+        int index = nextAutoIndex();
+        if (index == -1) {
+            clearNextPlayer();
+            return;
+        }
+        Song song = activeSongList.get(index);
+        nextSongIndex = index;
+        if (nextSong != null && nextSong.getId() == song.getId() && nextSong.getDateModified() == song.getDateModified()) {
+            nextSong = song; // Same file, possibly with an edited title
+            linkNextPlayer(); // No-op unless the link was dropped
+            return;
+        }
+
+        unlinkNextPlayer();
+        if (nextEngine == null) {
+            nextEngine = engineFactory.create(this);
+        }
+        isNextPrepared = false;
+        nextSong = song;
+        try {
+            nextEngine.setSource(song);
+            nextEngine.setTrackGain(host.getTrackGain(song));
+            nextEngine.prepareAsync();
+            NEXT_PREPARING.log(song.getId(), index);
+        } catch (IOException e) {
+            // Not fatal: onCompletion falls back to preparing it the normal way
+            host.log("Error preparing next song " + song.getTitle() + ": " + e.getMessage());
+            clearNextPlayer();
+        }
+    }
+
+    /** Index that plays after the current song ends on its own, or -1 when nothing is preloaded. */
+    private int nextAutoIndex() {
+        if (currentSong == null || activeSongList.isEmpty() || repeatMode == REPEAT_ONE) return -1;
+        int next = currentSongIndex + 1; // Also right when the current song was removed from the list
+        if (next < activeSongList.size()) return next;
+        return repeatMode == REPEAT_ALL ? 0 : -1;
+    }
+
+    private void linkNextPlayer() {
+        if (isNextLinked || crossfadeToken != -1 || !isPrepared || !isNextPrepared) return;
+        if (crossfadeMs > 0 && scheduleCrossfade()) return;
+        try {
+            engine.setNext(nextEngine);
+            isNextLinked = true;
+            NEXT_LINKED.log(nextSong.getId());
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            host.log("Could not link next engine: " + e.getMessage());
+        }
+    }
+
+    private void unlinkNextPlayer() {
+        cancelCrossfade();
+        if (!isNextLinked) return;
+        isNextLinked = false;
+        try {
+            engine.setNext(null);
+        } catch (IllegalStateException e) {
+            host.log("Could not unlink next engine: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Schedules the fade into the prepared next engine so that it ends with the current song.
+     * Returns false if too little of the song is left for a fade; it is linked gaplessly then.
+     */
+    private boolean scheduleCrossfade() {
+        if (!engine.isPlaying()) return true; // Paused: scheduled again by play(), from the new position
+        int duration = engine.getDuration();
+        int position = engine.getPosition();
+        long fadeMs = Math.min(CrossfadeCurve.fadeLength(crossfadeMs, duration, nextEngine.getDuration()),
+                duration - position);
+        if (fadeMs < CrossfadeCurve.MIN_FADE_MS) return false;
+        crossfadeToken = crossfader.schedule(engine, nextEngine,
+                CrossfadeCurve.startDelay(duration, position, fadeMs), fadeMs);
+        return true;
+    }
+
+    /** Stops a scheduled or running fade; if the next song was already fading in it's silenced and rewound. */
+    private void cancelCrossfade() {
+        if (crossfadeToken == -1) return;
+        crossfadeToken = -1;
+        if (crossfader.cancel()) {
+            host.log("Crossfade cancelled while fading, rewinding " + nextSong.getTitle());
+            nextEngine.pause();
+            nextEngine.seekTo(0);
+            nextEngine.setVolume(volume);
+            engine.setVolume(volume);
+        }
+    }
+
+    /** The fade ended: the next song is playing at full volume, the current one is silent. */
+    public void onCrossfadeFinished(int token) {
+        if (token != crossfadeToken) return; // Cancelled or replaced since
+        crossfadeToken = -1;
+        crossfader.cancel(); // Acknowledges the fade, the next engine keeps playing
+        handOverToNextPlayer();
+    }
+
+    /** Drops the preloaded song; the engine itself is kept for the next one. */
+    private void clearNextPlayer() {
+        unlinkNextPlayer();
+        if (nextEngine != null && nextSong != null) {
+            nextEngine.reset();
+        }
+        nextSong = null;
+        nextSongIndex = -1;
+        isNextPrepared = false;
+    }
+
+    /**
+     * Makes the prepared next engine the current one, for a skip to the preloaded song.
+     * Returns false if the next engine doesn't hold the song at this index.
+     */
+    private boolean swapInNextPlayer(int songIndex) {
+        if (!isNextPrepared || nextSong == null || songIndex != nextSongIndex
+                || nextSong.getId() != activeSongList.get(songIndex).getId()) {
+            return false;
+        }
+        unlinkNextPlayer();
+        swapPlayers();
+        return true;
+    }
+
+    /** Called from onCompletion once the linked next engine has started. */
+    private void handOverToNextPlayer() {
+        isNextLinked = false; // The link was used up
+        int index = nextSongIndex;
+        Song song = nextSong;
+        swapPlayers();
+        currentSongIndex = index;
+        currentSong = song;
+        currentPosition = 0;
+        HAND_OVER.log(currentSong.getId(), currentSongIndex);
+
+        host.onSongChanged(currentSong, true);
+        host.onPlaybackStateChanged(true);
+        host.showNotification(currentSong, true);
+        // The updates stopped themselves when the old engine ended, restart them on the new one
+        host.startProgressUpdates();
+        prepareNextPlayer();
+    }
+
+    private void swapPlayers() {
+        PlaybackEngine previous = engine;
+        engine = nextEngine;
+        nextEngine = previous;
+        engine.setVolume(volume); // May still be at a crossfade level
+        previous.reset(); // Frees its decoder until the following song is loaded into it
+        isPrepared = true;
+        nextSong = null;
+        nextSongIndex = -1;
+        isNextPrepared = false;
+    }
+
+    // --- Audio Focus ---
+
+    /** Focus is back: resume playback if it was paused by a transient loss, and full volume. */
+    public void onFocusGained() {
+        if (engine != null && !engine.isPlaying() && isPrepared) {
+            engine.start();
+            linkNextPlayer(); // Schedules the crossfade again, if any
+            host.showNotification(currentSong, true);
+            host.startProgressUpdates();
+            host.onPlaybackStateChanged(true);
+        }
+        setVolume(1.0f); // Restore full volume
+    }
+
+    /** Temporary loss (e.g., phone call): pause, to resume on {@link #onFocusGained}. */
+    public void onFocusLostTransient() {
+        if (engine != null && engine.isPlaying()) {
+            cancelCrossfade(); // Scheduled again from the paused position on resume
+            engine.pause();
+            currentPosition = engine.getPosition();
+            host.showNotification(currentSong, false); // Keep notification visible but downgrade service
+            host.stopProgressUpdates();
+            host.onPlaybackStateChanged(false);
+        }
+    }
+
+    /** Temporary loss where the system allows "ducking": lower the volume. */
+    public void onFocusLostCanDuck() {
+        if (engine != null && engine.isPlaying()) {
+            setVolume(0.1f);
+        }
+    }
+
+    /** Sets the playing volume, including a running crossfade, which scales its ramp by it. */
+    private void setVolume(float newVolume) {
+        volume = newVolume;
+        crossfader.setVolume(newVolume);
+        if (engine != null && !crossfader.isFading()) {
+            engine.setVolume(newVolume); // While fading the next ramp step applies it
+        }
+    }
+
+    // --- Commands ---
+
+    /**
+     * Sets the main list of songs and initializes the active list.
+     * The store is immutable, so it is shared with the caller instead of being copied.
+     */
+    public void setSongList(SongStore songs) {
+        if (songs == null) {
+            this.songList = SongStore.EMPTY;
+            setActiveSongList(songList);
+            this.shuffleOrder = null;
+            host.log("setSongList: Provided song list is null. Initializing empty lists.");
+            clearNextPlayer();
+            return;
+        }
+        this.songList = songs;
+        setActiveSongList(songs); // Active list initially same as original
+        this.shuffleOrder = null;
+        SONG_LIST_SET.log(songList.size());
+        prepareNextPlayer();
+    }
+
+    /**
+     * Swaps in an updated library (songs added, changed or removed while the app runs)
+     * without touching playback. Unlike {@link #setSongList}, a shuffled queue keeps its
+     * order for the songs that are still there; new songs are shuffled in after the
+     * current one. If the current song was removed it keeps playing, and next/previous
+     * continue from where it was.
+     */
+    public void updateSongList(SongStore songs) {
+        if (songs == null) return;
+        SongStore oldSongList = songList;
+        this.songList = songs;
+
+        if (!isShuffleEnabled || shuffleOrder == null) {
+            setActiveSongList(songs);
+            currentSongIndex = remapCurrentIndex(oldSongList, currentSongIndex);
+        } else {
+            // Keep the shuffled order of surviving songs, remember which rows are covered
+            boolean[] covered = new boolean[songs.size()];
+            int[] order = new int[songs.size()];
+            int count = 0;
+            int newCurrentIndex = -1;
+            for (int i = 0; i < shuffleOrder.length; i++) {
+                int row = songs.indexOfId(oldSongList.getId(shuffleOrder[i]));
+                if (i == currentSongIndex) {
+                    newCurrentIndex = row != -1 ? count : count - 1; // Removed: next plays what followed it
+                }
+                if (row != -1) {
+                    order[count++] = row;
+                    covered[row] = true;
+                }
+            }
+            // Added songs go to random places after the current one
+            int first = Math.max(0, newCurrentIndex + 1);
+            Random random = new Random();
+            for (int row = 0; row < songs.size(); row++) {
+                if (covered[row]) continue;
+                int position = first + random.nextInt(count - first + 1);
+                System.arraycopy(order, position, order, position + 1, count - position);
+                order[position] = row;
+                count++;
+            }
+            this.shuffleOrder = order;
+            setActiveSongList(songs.inOrder(order));
+            currentSongIndex = newCurrentIndex;
+        }
+        if (currentSong != null && currentSongIndex >= 0 && currentSongIndex < activeSongList.size()
+                && activeSongList.get(currentSongIndex).getId() == currentSong.getId()) {
+            currentSong = activeSongList.get(currentSongIndex); // Pick up edited title/artist
+        }
+        SONG_LIST_UPDATED.log(songs.size(), currentSongIndex);
+        prepareNextPlayer(); // Only prepares again if a different song now follows
+    }
+
+    /** Index of the current song in the new (unshuffled) list; if it was removed, the index before its successor. */
+    private int remapCurrentIndex(SongStore oldSongList, int oldIndex) {
+        if (currentSong == null || oldIndex < 0) return oldIndex;
+        int row = songList.indexOfId(currentSong.getId());
+        if (row != -1) return row;
+        for (int i = oldIndex + 1; i < oldSongList.size(); i++) {
+            int next = songList.indexOfId(oldSongList.getId(i));
+            if (next != -1) return next - 1;
+        }
+        return songList.size() - 1;
+    }
+
+    /**
+     * Plays the song with this id from wherever it is in the active (possibly shuffled)
+     * list, found through the id index instead of a scan.
+     */
+    public void playSongWithId(long songId) {
+        int index = activeIndexOfId(songId);
+        if (index == -1) {
+            host.log("playSongWithId: song " + songId + " is not in the active list.");
+            return;
+        }
+        playSong(index);
+    }
+
+    /** Position of a song in the play order, shuffled or not, or -1. O(1). */
+    private int activeIndexOfId(long songId) {
+        if (activeSongList instanceof SongStore.OrderedView) {
+            return ((SongStore.OrderedView) activeSongList).indexOfId(songId);
+        }
+        return songList.indexOfId(songId); // Not shuffled, activeSongList is songList
+    }
+
+    /**
+     * Plays a song at a specific index from the active song list.
+     * The title is shown right away; the engine is loaded by {@link #loadPendingSong} once the
+     * commands queued behind this one have run, and playback starts in onPrepared.
+     */
+    public void playSong(int songIndex) {
+        PLAY_INDEX.log(songIndex);
+        if (activeSongList.isEmpty()) {
+            host.showMessage("No songs to play.");
+            host.onSongChanged(null, false);
+            host.onPlaybackStateChanged(false);
+            host.removeNotification(); // Ensure notification is gone if no songs
+            return;
+        }
+        if (songIndex < 0 || songIndex >= activeSongList.size()) {
+            PLAY_INVALID_INDEX.log(songIndex, activeSongList.size());
+            host.showMessage("Invalid song selection.");
+            return;
+        }
+
+        if (loadPending) {
+            PLAY_SUPERSEDED.log(currentSong.getId());
+        } else if (isPrepared) {
+            // The old song stops now, not when the new one is loaded
+            unlinkNextPlayer(); // Cancels a crossfade too, before the engine it fades out is paused
+            if (engine.isPlaying()) {
+                engine.pause();
+                currentPosition = engine.getPosition();
+            }
+            host.stopProgressUpdates();
+            isPrepared = false; // Until the new song is; its callbacks are ignored meanwhile
+        }
+        currentSongIndex = songIndex;
+        currentSong = activeSongList.get(currentSongIndex);
+        latencyTracker.markPlayRequest(PlaybackLatencyTracker.fileTypeOf(currentSong.getPath()));
+        PLAY_SONG.log(currentSong.getId(), currentSongIndex);
+
+        // Signal to onPrepared that playback should start after preparation
+        shouldPlayAfterPrepared = true;
+        requestLoad();
+
+        // Update UI with new song info immediately (show as initially paused until started)
+        host.onSongChanged(currentSong, false); // Update UI with new song details
+        host.onPlaybackStateChanged(false); // Ensure UI shows paused state initially
+    }
+
+    /**
+     * Loads the current song once the commands already queued have run. A burst of skips
+     * (Next tapped five times, or held down on a headset) only moves the current song, so
+     * the engine is reset and prepared once, for the song the burst ends on.
+     */
+    private void requestLoad() {
+        if (loadPending) return; // Already queued, it loads whatever is current by then
+        loadPending = true;
+        host.post(loadPendingSongRunnable);
+    }
+
+    private void loadPendingSong() {
+        if (!loadPending) return; // Replaced by a restore meanwhile
+        loadPending = false;
+        if (currentSong == null) return;
+        restorePending = false; // A restore may have been superseded
+        if (swapInNextPlayer(currentSongIndex)) {
+            // Skipping to the preloaded song: it's prepared already, start it right away
+            PLAY_PRELOADED.log(currentSong.getId());
+            onPrepared(engine);
+            return;
+        }
+        prepareEngine(currentSong);
+        PLAY_PREPARING.log(currentSong.getId());
+    }
+
+    /**
+     * Resumes playback if paused, or starts playback of current song if not playing.
+     * Also handles initial song selection if no song is loaded.
+     */
+    public void play() {
+        if (currentSong == null) {
+            if (!activeSongList.isEmpty()) {
+                host.log("play(): No current song selected, playing first song (index 0).");
+                playSong(0); // If no song loaded, play the first one
+            } else {
+                host.log("play(): No songs available in the list. Cannot play.");
+                host.showMessage("No song to play.");
+                host.removeNotification(); // Ensure notification is gone
+            }
+            return;
+        }
+
+        if (!isPrepared) {
+            // If the engine is not prepared, prepare it and signal to play after.
+            PLAY_NOT_PREPARED.log(currentSong.getId());
+            shouldPlayAfterPrepared = true; // Set flag to play after preparation
+            requestLoad(); // Re-prepare the current song
+            return; // Wait for onPrepared to start playback
+        }
+
+        // If prepared and not currently playing, attempt to start
+        if (!engine.isPlaying()) {
+            if (host.requestAudioFocus()) {
+                engine.start();
+                linkNextPlayer(); // Schedules the crossfade from the resumed position, if any
+                STARTED.log(currentSong.getId());
+                // Crucial: Start foreground service and update notification when playing
+                host.showNotification(currentSong, true);
+                host.startProgressUpdates(); // Start seekbar updates
+                host.onPlaybackStateChanged(true); // Notify activity that it's playing
+            } else {
+                host.log("play(): Could not get audio focus. Cannot play.");
+                host.showMessage("Could not get audio focus to play music.");
+                host.onPlaybackStateChanged(false); // Update UI to paused
+                host.showNotification(currentSong, false);
+            }
+        } else {
+            host.log("play(): Already playing. No action needed.");
+        }
+    }
+
+    /** Pauses the current playback; also what a permanent loss of audio focus does. */
+    public void pause() {
+        if (engine != null && engine.isPlaying()) {
+            cancelCrossfade(); // A fade in progress stops; play() schedules it again
+            engine.pause();
+            currentPosition = engine.getPosition(); // Save current position
+            PAUSED.log(currentPosition);
+
+            // Stop foreground service but keep notification visible, with a 'play' icon
+            host.showNotification(currentSong, false);
+            host.stopProgressUpdates(); // Stop seekbar updates
+            host.onPlaybackStateChanged(false); // Notify activity to update UI
+        } else {
+            host.log("pause(): Not playing. No action needed.");
+        }
+    }
+
+    /** Plays the next song in the active list. */
+    public void next() {
+        if (activeSongList.isEmpty()) {
+            host.log("Cannot play next song: song list is empty.");
+            host.showMessage("No songs in list.");
+            host.removeNotification(); // Ensure notification is gone
+            return;
+        }
+        int nextIndex = currentSongIndex + 1;
+        if (nextIndex >= activeSongList.size()) {
+            nextIndex = 0; // Wrap around to the beginning
+        }
+        NEXT.log(currentSongIndex, nextIndex);
+        playSong(nextIndex); // Use playSong to handle preparation and start
+    }
+
+    /** Plays the previous song in the active list. */
+    public void previous() {
+        if (activeSongList.isEmpty()) {
+            host.log("Cannot play previous song: song list is empty.");
+            host.showMessage("No songs in list.");
+            host.removeNotification(); // Ensure notification is gone
+            return;
+        }
+        int prevIndex = currentSongIndex - 1;
+        if (prevIndex < 0) {
+            prevIndex = activeSongList.size() - 1; // Wrap around to the end
+        }
+        PREVIOUS.log(currentSongIndex, prevIndex);
+        playSong(prevIndex); // Use playSong to handle preparation and start
+    }
+
+    /** Seeks to a specific position in the current song. */
+    public void seekTo(int position) {
+        seek(position, false);
+    }
+
+    /** Seeks near the position, to the closest sync frame; a precise seekTo() follows when scrubbing ends. */
+    public void seekPreview(int position) {
+        seek(position, true);
+    }
+
+    private void seek(int position, boolean preview) {
+        if (engine != null && isPrepared) {
+            boolean hadCrossfade = crossfadeToken != -1;
+            cancelCrossfade(); // Its timing was based on the old position
+            if (preview) {
+                engine.seekToSync(position);
+            } else {
+                engine.seekTo(position);
+            }
+            currentPosition = position; // Update current position
+            if (hadCrossfade) {
+                linkNextPlayer();
+            }
+            host.onProgressUpdate(currentPosition, engine.getDuration());
+        } else {
+            host.log("seekTo(): Engine not prepared. Cannot seek.");
+        }
+    }
+
+    /**
+     * Prepares a specific song for restoration (e.g., app re-launch): once prepared it seeks
+     * to the saved position, and plays only if it was playing before.
+     */
+    public void restore(Song song, int index, boolean shouldPlay, int positionMs) {
+        if (song == null) {
+            host.log("restore: No song to restore.");
+            host.onSongChanged(null, false);
+            host.onPlaybackStateChanged(false);
+            host.removeNotification(); // Remove notification if no song to restore
+            return;
+        }
+        // The restore replaces a song that was picked but not loaded yet
+        loadPending = false;
+        this.currentSong = song;
+        // The caller passes the index in the library order; when shuffled the song sits elsewhere
+        int activeIndex = activeIndexOfId(song.getId());
+        this.currentSongIndex = activeIndex != -1 ? activeIndex : index;
+        this.currentPosition = positionMs;
+        RESTORE.log(song.getId(), shouldPlay ? 1 : 0, positionMs);
+
+        restorePending = true;
+        restorePositionMs = positionMs;
+        restoreShouldPlay = shouldPlay;
+        prepareEngine(song);
+    }
+
+    // --- Shuffle, Repeat & Crossfade ---
+
+    public void setShuffle(boolean enable) {
+        isShuffleEnabled = enable;
+        if (isShuffleEnabled) {
+            shuffleSongList();
+        } else {
+            resetActiveSongListOrder();
+        }
+        SHUFFLE.log(isShuffleEnabled ? 1 : 0);
+        host.onPlaybackStateChanged(isPlaying()); // Re-trigger UI update to reflect shuffle icon
+    }
+
+    private void shuffleSongList() {
+        if (songList.isEmpty()) return;
+
+        // Shuffle an order of row indexes instead of copying the songs themselves
+        int size = songList.size();
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+
+        // If a song is currently playing, ensure it remains at the beginning
+        // or its position is preserved in the new shuffled list.
+        int first = 0;
+        if (currentSong != null) {
+            int originalIndex = songList.indexOfId(currentSong.getId());
+            if (originalIndex != -1) {
+                // Place current song at the start, shuffle the rest behind it
+                order[originalIndex] = 0;
+                order[0] = originalIndex;
+                first = 1;
+            }
+            // If not found (should not happen if currentSong came from songList), shuffle everything
+        }
+        Random random = new Random();
+        for (int i = size - 1; i > first; i--) {
+            int j = first + random.nextInt(i - first + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        currentSongIndex = 0; // Current song (or the first song if none) is at the start
+        this.shuffleOrder = order;
+        setActiveSongList(songList.inOrder(order));
+        SHUFFLED.log(currentSongIndex);
+        prepareNextPlayer();
+    }
+
+    private void setActiveSongList(List<Song> songs) {
+        activeSongList = songs;
+        queueVersion++;
+    }
+
+    private void resetActiveSongListOrder() {
+        if (songList.isEmpty()) return;
+        setActiveSongList(songList); // Reset to original order
+        this.shuffleOrder = null;
+
+        // Find the new index of the current song in the original order
+        if (currentSong != null) {
+            int index = songList.indexOfId(currentSong.getId());
+            if (index != -1) {
+                currentSongIndex = index;
+                ORDER_RESET.log(currentSong.getId(), currentSongIndex);
+                prepareNextPlayer();
+                return; // Found and set, exit
+            }
+            // If currentSong not found (shouldn't happen if it was from songList)
+            currentSongIndex = 0;
+            host.log("Current song not found in original list after reset. Setting index to 0.");
+        } else {
+            currentSongIndex = -1; // No current song
+            host.log("Song list order reset. No current song.");
+        }
+        prepareNextPlayer();
+    }
+
+    public void setRepeatMode(int mode) {
+        repeatMode = mode;
+        REPEAT.log(repeatMode);
+        prepareNextPlayer(); // What follows the last song (or the song itself) depends on the mode
+    }
+
+    public void setCrossfadeSeconds(int seconds) {
+        if (seconds * 1000L == crossfadeMs) return;
+        crossfadeMs = seconds * 1000L;
+        CROSSFADE.log(seconds);
+        unlinkNextPlayer(); // Switches between linking and fading
+        linkNextPlayer();
+    }
+}
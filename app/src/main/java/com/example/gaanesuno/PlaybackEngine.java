@@ -0,0 +1,74 @@
+package com.example.gaanesuno;
+
+import java.io.IOException;
+
+/**
+ * The player {@link PlaybackController} drives: load a song, start, pause, seek, link the next
+ * one. {@link MediaPlayerEngine} plays on the device; tests and benchmarks drive a fake one on
+ * a virtual clock instead.
+ *
+ * <p>Follows MediaPlayer's model: preparing is asynchronous and reported through the
+ * {@link Callback}, which is called on the thread the engine was created on. Calls that are
+ * invalid in the current state throw IllegalStateException.</p>
+ */
+public interface PlaybackEngine {
+
+    /** Events of an engine, delivered on the thread it was created on. */
+    interface Callback {
+        void onPrepared(PlaybackEngine engine);
+
+        /** The song played to its end; a linked next engine has already been started. */
+        void onCompletion(PlaybackEngine engine);
+
+        /** Playback or preparing failed; the engine has to be reset before it is used again. */
+        void onError(PlaybackEngine engine, int what, int extra);
+
+        /** A seek finished; seeks issued close together may be reported only once. */
+        void onSeekComplete(PlaybackEngine engine);
+    }
+
+    /** Creates the engines of the controller, on the playback thread. */
+    interface Factory {
+        PlaybackEngine create(Callback callback);
+    }
+
+    /** Resets the engine and sets the song's file as its source; {@link #prepareAsync} loads it. */
+    void setSource(Song song) throws IOException;
+
+    void prepareAsync();
+
+    void start();
+
+    void pause();
+
+    /** Seeks to exactly this position. */
+    void seekTo(int positionMs);
+
+    /** Seeks to the sync frame nearest this position: fast but approximate, for previews while scrubbing. */
+    void seekToSync(int positionMs);
+
+    /** Back to idle: drops the song, a prepare in flight and the link to a next engine. */
+    void reset();
+
+    void release();
+
+    boolean isPlaying();
+
+    int getPosition();
+
+    int getDuration();
+
+    void setVolume(float volume);
+
+    /**
+     * The song's loudness normalization, at most 1. Scales the volume now and every volume set
+     * after it, so fades and ducking work on the normalized level.
+     */
+    void setTrackGain(float gain);
+
+    /** Replays the song from the start when it ends, without a gap and without onCompletion. */
+    void setLooping(boolean looping);
+
+    /** Starts {@code next} (prepared) the moment this song ends, without a gap; null unlinks. */
+    void setNext(PlaybackEngine next);
+}
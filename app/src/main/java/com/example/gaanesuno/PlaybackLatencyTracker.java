@@ -0,0 +1,249 @@
+package com.example.gaanesuno;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Times each stage of starting a song, from the tap on the list to the first progress update,
+ * and keeps a {@link LatencyHistogram} per stage and file type so slow codecs and slow storage
+ * show up in the diagnostics screen.
+ *
+ * <p>One start is traced at a time: a tap (or a play request from the notification, the
+ * next/previous buttons, ...) begins a trace and each later stage records the time since the
+ * stage before it. Stages reported out of order or without a trace (a resume, a restore) are
+ * ignored, and a new play request replaces an unfinished trace.</p>
+ *
+ * <p>Requests that replace unfinished traces are a skip burst (Next tapped five times): the
+ * {@link #BURST} row times it from the first request of the burst to the first progress of
+ * the song it ended on, which stays flat as long as superseded songs aren't loaded.</p>
+ */
+public final class PlaybackLatencyTracker {
+
+    /** Stages of the play path, in the order they happen. */
+    public enum Stage {
+        TAP, // Song tapped in the list; optional, a trace can start at PLAY_REQUEST
+        PLAY_REQUEST, // MusicService.playSong()
+        DATA_SOURCE_SET, // setDataSource() returned
+        PREPARED, // onPrepared()
+        AUDIO_FOCUS, // requestAudioFocus() granted
+        STARTED, // MediaPlayer.start() returned
+        FIRST_PROGRESS // First progress update after starting
+    }
+
+    /** Histogram row for the whole start, from the first stage of the trace to FIRST_PROGRESS. */
+    public static final String TOTAL = "TOTAL";
+    /** Histogram row for skip bursts, from the first request of the burst to FIRST_PROGRESS. */
+    public static final String BURST = "BURST";
+    /** File type under which every start is recorded as well. */
+    public static final String ALL_TYPES = "all";
+
+    private static final Stage[] STAGES = Stage.values(); // values() copies the array on every call
+    private static final long NO_TRACE = -1;
+    private static final long MAX_TRACE_NANOS = 60_000_000_000L; // Longer than this is not a start, drop it
+
+    private static final PlaybackLatencyTracker INSTANCE = new PlaybackLatencyTracker(System::nanoTime);
+
+    private final LongSupplier clock;
+    private final Map<String, LatencyHistogram[]> histograms = new LinkedHashMap<>(); // File type -> one per stage, then TOTAL
+
+    // The trace in progress, guarded by this
+    private long traceStartNanos = NO_TRACE;
+    private long lastNanos;
+    private Stage lastStage;
+    private String traceType;
+    private long burstStartNanos = NO_TRACE; // First request of the burst the trace ends, if any
+    private long supersededCount; // Requests replaced before their song played
+
+    PlaybackLatencyTracker(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /** The tracker shared by the list, the service and the diagnostics screen. */
+    public static PlaybackLatencyTracker getInstance() {
+        return INSTANCE;
+    }
+
+    /** A song was tapped; the play request that follows continues this trace. */
+    public synchronized void markTap() {
+        startTrace(Stage.TAP, null);
+    }
+
+    /**
+     * The service was asked to play a song of this file type (see {@link #fileTypeOf}).
+     * Continues a trace started by a tap, otherwise starts a new one.
+     */
+    public synchronized void markPlayRequest(String fileType) {
+        long now = clock.getAsLong();
+        if (lastStage == Stage.TAP && now - traceStartNanos <= MAX_TRACE_NANOS) {
+            traceType = fileType;
+            record(Stage.PLAY_REQUEST, now);
+        } else {
+            startTrace(Stage.PLAY_REQUEST, fileType);
+        }
+    }
+
+    /** Records a stage of the current trace; FIRST_PROGRESS also records the total and ends it. */
+    public synchronized void mark(Stage stage) {
+        if (traceStartNanos == NO_TRACE || traceType == null || stage.ordinal() <= lastStage.ordinal()) {
+            return;
+        }
+        long now = clock.getAsLong();
+        if (now - traceStartNanos > MAX_TRACE_NANOS) {
+            cancel();
+            return;
+        }
+        record(stage, now);
+        if (stage == Stage.FIRST_PROGRESS) {
+            long totalMicros = (now - traceStartNanos) / 1_000;
+            histogramsFor(traceType)[STAGES.length].record(totalMicros);
+            histogramsFor(ALL_TYPES)[STAGES.length].record(totalMicros);
+            if (burstStartNanos != NO_TRACE) {
+                long burstMicros = (now - burstStartNanos) / 1_000;
+                histogramsFor(traceType)[STAGES.length + 1].record(burstMicros);
+                histogramsFor(ALL_TYPES)[STAGES.length + 1].record(burstMicros);
+            }
+            traceStartNanos = NO_TRACE;
+            burstStartNanos = NO_TRACE;
+        }
+    }
+
+    /** Drops the current trace, e.g. when the song failed to play or focus was denied. */
+    public synchronized void cancel() {
+        traceStartNanos = NO_TRACE;
+        burstStartNanos = NO_TRACE;
+        lastStage = null;
+        traceType = null;
+    }
+
+    public synchronized void reset() {
+        histograms.clear();
+        supersededCount = 0;
+        cancel();
+    }
+
+    /** Number of play requests replaced by another one before their song started playing. */
+    public synchronized long getSupersededCount() {
+        return supersededCount;
+    }
+
+    /** Lower-case extension of a file path ("mp3", "flac", ...), or "unknown". */
+    public static String fileTypeOf(String path) {
+        if (path == null) return "unknown";
+        int dot = path.lastIndexOf('.');
+        if (dot == -1 || dot < path.lastIndexOf('/') || dot == path.length() - 1 || path.length() - dot > 9) {
+            return "unknown";
+        }
+        String extension = path.substring(dot + 1).toLowerCase(Locale.ROOT);
+        for (int i = 0; i < extension.length(); i++) {
+            if (!Character.isLetterOrDigit(extension.charAt(i))) return "unknown";
+        }
+        return extension;
+    }
+
+    /** Plain text table of every stage per file type, in milliseconds, for the diagnostics screen. */
+    public synchronized String toText() {
+        if (histograms.isEmpty()) {
+            return "No playback starts recorded yet.\n";
+        }
+        StringBuilder text = new StringBuilder();
+        text.append("Superseded requests: ").append(supersededCount).append('\n');
+        for (Map.Entry<String, LatencyHistogram[]> entry : histograms.entrySet()) {
+            text.append(entry.getKey()).append('\n');
+            text.append(String.format(Locale.ROOT, "  %-16s %6s %8s %8s %8s %8s%n", "stage (ms)", "n", "p50", "p90", "p99", "max"));
+            LatencyHistogram[] rows = entry.getValue();
+            for (int i = 0; i < rows.length; i++) {
+                LatencyHistogram row = rows[i];
+                if (row.getCount() == 0) continue;
+                text.append(String.format(Locale.ROOT, "  %-16s %6d %8.1f %8.1f %8.1f %8.1f%n", rowName(i), row.getCount(),
+                        row.getPercentile(50) / 1000.0, row.getPercentile(90) / 1000.0,
+                        row.getPercentile(99) / 1000.0, row.getMax() / 1000.0));
+            }
+        }
+        return text.toString();
+    }
+
+    /** Every non-empty histogram as JSON, values in microseconds, for export. */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder("{\"unit\":\"us\",\"superseded\":").append(supersededCount)
+                .append(",\"fileTypes\":{");
+        boolean firstType = true;
+        for (Map.Entry<String, LatencyHistogram[]> entry : histograms.entrySet()) {
+            if (!firstType) json.append(',');
+            firstType = false;
+            json.append('"').append(entry.getKey()).append("\":{"); // File types are letters and digits only
+            boolean firstRow = true;
+            LatencyHistogram[] rows = entry.getValue();
+            for (int i = 0; i < rows.length; i++) {
+                LatencyHistogram row = rows[i];
+                if (row.getCount() == 0) continue;
+                if (!firstRow) json.append(',');
+                firstRow = false;
+                json.append('"').append(rowName(i)).append("\":{")
+                        .append("\"count\":").append(row.getCount())
+                        .append(",\"mean\":").append(row.getMean())
+                        .append(",\"p50\":").append(row.getPercentile(50))
+                        .append(",\"p90\":").append(row.getPercentile(90))
+                        .append(",\"p99\":").append(row.getPercentile(99))
+                        .append(",\"max\":").append(row.getMax())
+                        .append('}');
+            }
+            json.append('}');
+        }
+        return json.append("}}").toString();
+    }
+
+    /** The histogram for one stage (or {@link #TOTAL}, {@link #BURST}) and file type, or null if nothing was recorded. */
+    public synchronized LatencyHistogram getHistogram(String fileType, String row) {
+        LatencyHistogram[] rows = histograms.get(fileType);
+        if (rows == null) return null;
+        if (TOTAL.equals(row)) return rows[STAGES.length];
+        if (BURST.equals(row)) return rows[STAGES.length + 1];
+        return rows[Stage.valueOf(row).ordinal()];
+    }
+
+    private void startTrace(Stage stage, String fileType) {
+        long now = clock.getAsLong();
+        if (traceStartNanos != NO_TRACE && lastStage.ordinal() < Stage.STARTED.ordinal()
+                && now - traceStartNanos <= MAX_TRACE_NANOS) {
+            // Replaces a request whose song never played: part of a burst that started with the first one
+            supersededCount++;
+            if (burstStartNanos == NO_TRACE) burstStartNanos = traceStartNanos;
+        } else {
+            burstStartNanos = NO_TRACE;
+        }
+        traceStartNanos = now;
+        lastNanos = now;
+        lastStage = stage;
+        traceType = fileType;
+    }
+
+    private void record(Stage stage, long now) {
+        long micros = (now - lastNanos) / 1_000;
+        histogramsFor(traceType)[stage.ordinal()].record(micros);
+        histogramsFor(ALL_TYPES)[stage.ordinal()].record(micros);
+        lastNanos = now;
+        lastStage = stage;
+    }
+
+    private LatencyHistogram[] histogramsFor(String fileType) {
+        LatencyHistogram[] rows = histograms.get(fileType);
+        if (rows == null) {
+            rows = new LatencyHistogram[STAGES.length + 2];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = new LatencyHistogram();
+            }
+            if (!ALL_TYPES.equals(fileType) && !histograms.containsKey(ALL_TYPES)) {
+                histogramsFor(ALL_TYPES); // Keep "all" first in the report
+            }
+            histograms.put(fileType, rows);
+        }
+        return rows;
+    }
+
+    private static String rowName(int row) {
+        if (row == STAGES.length) return TOTAL;
+        return row == STAGES.length + 1 ? BURST : STAGES[row].name();
+    }
+}
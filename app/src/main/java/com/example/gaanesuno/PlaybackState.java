@@ -0,0 +1,153 @@
+package com.example.gaanesuno;
+
+/**
+ * Immutable snapshot of what MusicService is playing, published by the playback thread after
+ * every command and player callback so other threads can read it without touching the player.
+ *
+ * <p>The position is stored with the time it was read (the anchor) and the playback speed;
+ * while playing it is extrapolated from there, so a snapshot taken a minute ago still gives the
+ * right position now. A new snapshot is only needed when the timeline changes: play, pause,
+ * seek, another song. UIs read the position every frame without asking the player.</p>
+ *
+ * <p>It also carries the queue settings (shuffle, repeat and a version of the active list),
+ * so a subscriber of {@link PlaybackStateBus} can draw everything from one snapshot.</p>
+ */
+public final class PlaybackState {
+
+    public enum Status {
+        IDLE, // No song loaded
+        PREPARING, // A song is loading
+        PAUSED, // Prepared, not playing
+        PLAYING
+    }
+
+    public static final PlaybackState EMPTY = new PlaybackState(null, -1, Status.IDLE, 0, 0, 0);
+
+    private final Song song;
+    private final int index;
+    private final Status status;
+    private final int positionMs;
+    private final long positionUptimeMs; // When positionMs was read, on the uptime clock
+    private final int durationMs;
+    private final float speed; // Media ms per uptime ms while playing
+    private final boolean looping; // Repeat one: the song starts over at its end without a new snapshot
+    private final boolean shuffle;
+    private final int repeatMode; // PlaybackController.REPEAT_*
+    private final int queueVersion; // Changes whenever the active list is replaced or reordered
+
+    public PlaybackState(Song song, int index, Status status, int positionMs, long positionUptimeMs, int durationMs) {
+        this(song, index, status, positionMs, positionUptimeMs, durationMs, 1f, false);
+    }
+
+    public PlaybackState(Song song, int index, Status status, int positionMs, long positionUptimeMs, int durationMs,
+                         float speed, boolean looping) {
+        this(song, index, status, positionMs, positionUptimeMs, durationMs, speed, looping, false, 0, 0);
+    }
+
+    private PlaybackState(Song song, int index, Status status, int positionMs, long positionUptimeMs, int durationMs,
+                          float speed, boolean looping, boolean shuffle, int repeatMode, int queueVersion) {
+        this.song = song;
+        this.index = index;
+        this.status = status;
+        this.positionMs = positionMs;
+        this.positionUptimeMs = positionUptimeMs;
+        this.durationMs = durationMs;
+        this.speed = speed;
+        this.looping = looping;
+        this.shuffle = shuffle;
+        this.repeatMode = repeatMode;
+        this.queueVersion = queueVersion;
+    }
+
+    /** This snapshot with the queue settings it was taken under. */
+    public PlaybackState withQueue(boolean shuffle, int repeatMode, int queueVersion) {
+        return new PlaybackState(song, index, status, positionMs, positionUptimeMs, durationMs, speed, looping,
+                shuffle, repeatMode, queueVersion);
+    }
+
+    /** The current song, or null when none is loaded. */
+    public Song getSong() {
+        return song;
+    }
+
+    /** Index of the current song in the active (possibly shuffled) list, or -1. */
+    public int getIndex() {
+        return index;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isPlaying() {
+        return status == Status.PLAYING;
+    }
+
+    public boolean isPrepared() {
+        return status == Status.PLAYING || status == Status.PAUSED;
+    }
+
+    /** Duration of the prepared song in ms, 0 while nothing is prepared. */
+    public int getDurationMs() {
+        return durationMs;
+    }
+
+    /** Playback speed, 1 for normal; the position moves this many ms per ms while playing. */
+    public float getSpeed() {
+        return speed;
+    }
+
+    public boolean isLooping() {
+        return looping;
+    }
+
+    public boolean isShuffle() {
+        return shuffle;
+    }
+
+    public int getRepeatMode() {
+        return repeatMode;
+    }
+
+    /** Compare with an earlier snapshot's to tell whether the queue has to be shown again. */
+    public int getQueueVersion() {
+        return queueVersion;
+    }
+
+    /** The position when the snapshot was taken. */
+    public int getAnchorPositionMs() {
+        return positionMs;
+    }
+
+    /** When the anchor position was read, on the uptime clock. */
+    public long getAnchorUptimeMs() {
+        return positionUptimeMs;
+    }
+
+    /**
+     * Position at {@code nowUptimeMs}: extrapolated while playing, never past the end of the
+     * song; a looping song starts over instead.
+     */
+    public int getPositionMs(long nowUptimeMs) {
+        if (status != Status.PLAYING) return positionMs;
+        long position = positionMs + (long) (Math.max(0, nowUptimeMs - positionUptimeMs) * speed);
+        if (durationMs <= 0) return (int) position;
+        return (int) (looping ? position % durationMs : Math.min(position, durationMs));
+    }
+
+    /**
+     * True if {@code other} describes the same timeline: same song, index, status, duration,
+     * speed and looping, with positions at {@code nowUptimeMs} within {@code toleranceMs}.
+     * Publishing such a snapshot would only move the anchor by the player's own jitter.
+     */
+    public boolean sameTimeline(PlaybackState other, long nowUptimeMs, int toleranceMs) {
+        return song == other.song && index == other.index && status == other.status
+                && durationMs == other.durationMs && speed == other.speed && looping == other.looping
+                && Math.abs(getPositionMs(nowUptimeMs) - other.getPositionMs(nowUptimeMs)) <= toleranceMs;
+    }
+
+    /** True if {@code other} has the same shuffle, repeat mode and queue version. */
+    public boolean sameQueue(PlaybackState other) {
+        return shuffle == other.shuffle && repeatMode == other.repeatMode && queueVersion == other.queueVersion;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.gaanesuno;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands {@link PlaybackState} snapshots from the playback thread to any number of
+ * subscribers, each on the executor it chose (the main thread for activities).
+ *
+ * <p>A subscriber gets the latest snapshot as soon as it subscribes, so it can draw itself
+ * without asking the service for anything. Snapshots published faster than a subscriber's
+ * executor runs are coalesced: it only gets the newest one, never a stale one after it.
+ * The subscriber list is copy-on-write, so publishing doesn't lock and subscribing from
+ * another thread is safe.</p>
+ */
+public final class PlaybackStateBus {
+
+    public interface Subscriber {
+        void onPlaybackState(PlaybackState state);
+    }
+
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile Published latest = new Published(PlaybackState.EMPTY, 0);
+
+    /**
+     * Adds the subscriber, or moves it to {@code executor}; the latest snapshot follows on it.
+     * The executor must run tasks one at a time, like a Handler's thread.
+     */
+    public void subscribe(Subscriber subscriber, Executor executor) {
+        unsubscribe(subscriber);
+        Subscription subscription = new Subscription(subscriber, executor);
+        subscriptions.add(subscription);
+        subscription.offer(latest); // If a publish races with this, the newer snapshot wins
+    }
+
+    /** No more snapshots for the subscriber, including ones already on its executor. */
+    public void unsubscribe(Subscriber subscriber) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.subscriber == subscriber) {
+                subscription.active = false;
+                subscriptions.remove(subscription);
+            }
+        }
+    }
+
+    /** Delivers the snapshot to every subscriber; always called on the same thread. */
+    public void publish(PlaybackState state) {
+        Published published = new Published(state, latest.sequence + 1);
+        latest = published;
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(published);
+        }
+    }
+
+    public PlaybackState getLatest() {
+        return latest.state;
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /** A snapshot numbered in publishing order, so a late subscribe can't deliver an older one last. */
+    private static final class Published {
+        final PlaybackState state;
+        final long sequence;
+
+        Published(PlaybackState state, long sequence) {
+            this.state = state;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final class Subscription implements Runnable {
+        final Subscriber subscriber;
+        private final Executor executor;
+        private final AtomicReference<Published> pending = new AtomicReference<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        volatile boolean active = true;
+        private long delivered = -1; // Sequence of the last delivered snapshot, only touched on the executor
+
+        Subscription(Subscriber subscriber, Executor executor) {
+            this.subscriber = subscriber;
+            this.executor = executor;
+        }
+
+        void offer(Published published) {
+            pending.accumulateAndGet(published, (current, offered) ->
+                    current == null || offered.sequence > current.sequence ? offered : current);
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            scheduled.set(false); // A snapshot offered from here on schedules another run
+            Published published = pending.getAndSet(null);
+            if (published == null || published.sequence <= delivered || !active) return;
+            delivered = published.sequence;
+            subscriber.onPlaybackState(published.state);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.gaanesuno;
+
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Moves a seek bar and its time label along with playback, from the {@link PlaybackState}
+ * snapshot alone: the position is extrapolated from the snapshot's anchor, so a tick never
+ * calls into the player.
+ *
+ * <p>While playing it ticks when the display would actually change: at the next whole second
+ * of the label or the next pixel of the bar, whichever comes first, but never more often
+ * than once per frame. Paused, loading or stopped it doesn't tick at all; the activity calls
+ * {@link #start} again when the service reports a change.</p>
+ *
+ * <p>Runs on the UI thread.</p>
+ */
+public final class ProgressTicker {
+
+    /** Shortest time between ticks, one frame at 60 Hz. */
+    public static final long FRAME_MS = 16;
+    private static final long LABEL_STEP_MS = 1_000; // The label shows whole seconds
+
+    /** Shows the position; called on every tick that changes it. */
+    public interface Display {
+        void showProgress(int positionMs, int durationMs);
+    }
+
+    private final Supplier<PlaybackState> states;
+    private final Display display;
+    private final SeekScrubber.Timer timer;
+    private final LongSupplier uptimeClock; // Milliseconds
+    private final Runnable tick = this::tick;
+
+    private int widthPx; // Of the seek bar, 0 until it's laid out
+    private boolean scheduled;
+    private int shownPositionMs = -1;
+    private int shownDurationMs = -1;
+    private long ticks;
+
+    public ProgressTicker(Supplier<PlaybackState> states, Display display, SeekScrubber.Timer timer,
+                          LongSupplier uptimeClock) {
+        this.states = states;
+        this.display = display;
+        this.timer = timer;
+        this.uptimeClock = uptimeClock;
+    }
+
+    /** Width the seek bar is drawn with; a wider bar moves in finer steps. */
+    public void setWidthPx(int widthPx) {
+        this.widthPx = widthPx;
+    }
+
+    /** Shows the current position now and keeps it moving while playing. */
+    public void start() {
+        startDelayed(0);
+    }
+
+    /** Like {@link #start}, after {@code delayMs}; the display is left alone until then. */
+    public void startDelayed(long delayMs) {
+        stop();
+        shownPositionMs = -1; // The activity may have drawn something else meanwhile
+        scheduled = true;
+        timer.postDelayed(tick, delayMs);
+    }
+
+    /** No more ticks until the next start. */
+    public void stop() {
+        if (scheduled) {
+            scheduled = false;
+            timer.cancel(tick);
+        }
+    }
+
+    public boolean isRunning() {
+        return scheduled;
+    }
+
+    /** Ticks so far, for checking that nothing runs while paused. */
+    public long getTicks() {
+        return ticks;
+    }
+
+    private void tick() {
+        scheduled = false;
+        ticks++;
+        PlaybackState state = states.get();
+        if (state == null || !state.isPrepared()) return; // Not bound yet, or no position to show until prepared
+        long now = uptimeClock.getAsLong();
+        int position = state.getPositionMs(now);
+        int duration = state.getDurationMs();
+        if (position != shownPositionMs || duration != shownDurationMs) {
+            shownPositionMs = position;
+            shownDurationMs = duration;
+            display.showProgress(position, duration);
+        }
+        if (!state.isPlaying() || position >= duration) return; // Stands still until the next change
+        scheduled = true;
+        timer.postDelayed(tick, delayToNextStep(position, duration, state.getSpeed()));
+    }
+
+    /** Uptime ms until the position reaches the next label second or bar pixel. */
+    long delayToNextStep(int positionMs, int durationMs, float speed) {
+        long step = LABEL_STEP_MS;
+        if (widthPx > 0) {
+            step = Math.min(step, Math.max(1, durationMs / widthPx));
+        }
+        long mediaMs = step - positionMs % step;
+        long delay = speed > 0 ? (long) Math.ceil(mediaMs / speed) : LABEL_STEP_MS;
+        return Math.max(FRAME_MS, delay);
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.gaanesuno;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Reads a file ahead of the player on a thread of its own, so a slow SD card or USB stick
+ * stalls that thread instead of the decoder.
+ *
+ * <p>The file's bytes are kept in a ring of fixed capacity: a window {@code [start, end)}
+ * that the prefetch thread extends in {@link #CHUNK_BYTES} reads until it is
+ * {@code capacity} ahead of the last read, keeping a quarter of it behind the reader for the
+ * short backward reads demuxers make. A read inside the window is a copy; a read just past
+ * it waits for the prefetcher (an underrun); a read anywhere else moves the window there (a
+ * seek). Until the player first reads, the whole capacity fills from the start of the file,
+ * which is what preloads the head of the next song while the current one plays.</p>
+ */
+public final class ReadAheadBuffer implements Closeable {
+
+    /** Random access to the file being buffered; only the prefetch thread reads it. */
+    public interface Source extends Closeable {
+        long size() throws IOException;
+
+        /** Reads up to {@code length} bytes at {@code position}; returns how many, -1 at the end. */
+        int read(long position, byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    static final int CHUNK_BYTES = 64 * 1024;
+    public static final int MIN_CAPACITY = 2 * CHUNK_BYTES;
+    private static final int MB = 1024 * 1024;
+    private static final int LOW_RAM_MAX_MB = 2;
+
+    private final Source source;
+    private final long size;
+    private final byte[] ring;
+    private final int capacity;
+    private final int keepBehind;
+    private final ReadAheadStats stats;
+
+    private final Object lock = new Object();
+    private long start; // Oldest byte still in the ring
+    private long end; // One past the newest
+    private long readPosition; // End of the last read
+    private int generation; // Bumped by a seek, so a read in flight for the old window is dropped
+    private long served;
+    private IOException failure;
+    private boolean closed;
+
+    /**
+     * Starts buffering {@code source} from its first byte.
+     * @param capacity Bytes of ring, at least {@link #MIN_CAPACITY}; a smaller file only takes its size.
+     */
+    public ReadAheadBuffer(Source source, int capacity, ReadAheadStats stats) throws IOException {
+        this.source = source;
+        this.size = source.size();
+        this.capacity = (int) Math.max(1, Math.min(Math.max(capacity, MIN_CAPACITY), size));
+        this.ring = new byte[this.capacity];
+        this.keepBehind = this.capacity / 4;
+        this.stats = stats;
+        stats.sourceOpened();
+        Thread prefetcher = new Thread(this::prefetch, "ReadAhead");
+        prefetcher.setDaemon(true);
+        prefetcher.start();
+    }
+
+    /**
+     * Ring bytes per player for a total budget: the playing song and the preloaded next one
+     * get half each. The budget is capped at an eighth of the app's heap class, and at
+     * {@value #LOW_RAM_MAX_MB} MB on low-RAM devices. 0 when buffering is off.
+     */
+    public static int capacityPerSource(int totalMegabytes, int memoryClassMegabytes, boolean lowRamDevice) {
+        int megabytes = Math.min(totalMegabytes, memoryClassMegabytes / 8);
+        if (lowRamDevice) {
+            megabytes = Math.min(megabytes, LOW_RAM_MAX_MB);
+        }
+        if (totalMegabytes <= 0) return 0;
+        return Math.max(MIN_CAPACITY, megabytes * MB / 2);
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Copies up to {@code length} bytes at {@code position}, waiting for them if they haven't
+     * been read from the file yet. Returns how many were copied, -1 past the end of the file.
+     */
+    public int readAt(long position, byte[] buffer, int offset, int length) throws IOException {
+        if (position >= size) return -1;
+        if (length <= 0) return 0;
+        synchronized (lock) {
+            long waitStart = 0;
+            boolean seeked = false;
+            while (position < start || position >= end) {
+                if (closed) throw new IOException("Read-ahead buffer closed");
+                if (failure != null) throw new IOException("Reading ahead failed", failure);
+                if (position < start || position > end + capacity / 2) {
+                    // Too far from the window to wait for, start a new one there
+                    generation++;
+                    start = position;
+                    end = position;
+                    seeked = true;
+                }
+                readPosition = position; // Lets the prefetcher drop what's behind
+                lock.notifyAll();
+                if (waitStart == 0) {
+                    waitStart = System.nanoTime();
+                }
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for read-ahead");
+                }
+            }
+
+            int count = (int) Math.min(length, end - position);
+            int ringOffset = (int) (position % capacity);
+            int first = Math.min(count, capacity - ringOffset);
+            System.arraycopy(ring, ringOffset, buffer, offset, first);
+            if (first < count) {
+                System.arraycopy(ring, 0, buffer, offset + first, count - first); // Wrapped around
+            }
+            readPosition = position + count;
+            lock.notifyAll(); // Room for the prefetcher
+
+            long waited = waitStart == 0 ? 0 : System.nanoTime() - waitStart;
+            if (seeked) {
+                stats.seek(waited);
+            } else if (waited > 0 && served > 0) {
+                stats.underrun(waited); // Waits before the first byte are the cold start, not underruns
+            }
+            served += count;
+            stats.served(count);
+            return count;
+        }
+    }
+
+    private void prefetch() {
+        while (true) {
+            long position;
+            int ringOffset;
+            int length;
+            int readGeneration;
+            synchronized (lock) {
+                while (!closed && failure == null && room() <= 0) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return; // Closed
+                    }
+                }
+                if (closed || failure != null) return;
+                position = end;
+                readGeneration = generation;
+                ringOffset = (int) (position % capacity);
+                length = (int) Math.min(Math.min(CHUNK_BYTES, capacity - ringOffset), Math.min(room(), size - position));
+                start = Math.max(start, position + length - capacity); // Dropped before it's overwritten
+            }
+
+            int count;
+            try {
+                count = source.read(position, ring, ringOffset, length);
+            } catch (IOException e) {
+                synchronized (lock) {
+                    if (!closed) failure = e;
+                    lock.notifyAll();
+                }
+                return;
+            }
+            synchronized (lock) {
+                if (readGeneration == generation) {
+                    if (count < 0) {
+                        failure = new IOException("File ended at " + position + " of " + size + " bytes");
+                    } else {
+                        end += count;
+                        stats.prefetched(count);
+                    }
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /** Bytes the prefetcher may add; called with the lock held. */
+    private long room() {
+        if (end >= size) return 0;
+        long oldestKept = Math.max(start, readPosition - keepBehind);
+        return oldestKept + capacity - end;
+    }
+
+    /** Stops the prefetcher and closes the source. Safe to call more than once. */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) return;
+            closed = true;
+            lock.notifyAll();
+        }
+        source.close(); // A read in flight fails and the prefetcher ends
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.gaanesuno;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the {@link ReadAheadBuffer}s, shown on the diagnostics screen: how often the
+ * player had to wait for the storage (underruns) or moved the read-ahead window (seeks), and
+ * for how long.
+ */
+public final class ReadAheadStats {
+
+    private static final ReadAheadStats INSTANCE = new ReadAheadStats();
+
+    private final AtomicLong sources = new AtomicLong();
+    private final AtomicLong bytesPrefetched = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+    private final AtomicLong underruns = new AtomicLong();
+    private final AtomicLong underrunNanos = new AtomicLong();
+    private final AtomicLong maxUnderrunNanos = new AtomicLong();
+    private final AtomicLong seeks = new AtomicLong();
+    private final AtomicLong seekNanos = new AtomicLong();
+
+    /** The counters of every buffer the players open. */
+    public static ReadAheadStats getInstance() {
+        return INSTANCE;
+    }
+
+    void sourceOpened() {
+        sources.incrementAndGet();
+    }
+
+    void prefetched(int bytes) {
+        bytesPrefetched.addAndGet(bytes);
+    }
+
+    void served(int bytes) {
+        bytesServed.addAndGet(bytes);
+    }
+
+    /** The player read past what had been prefetched and waited this long. */
+    void underrun(long nanos) {
+        underruns.incrementAndGet();
+        underrunNanos.addAndGet(nanos);
+        maxUnderrunNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /** The player read outside the window, which was moved there; it waited this long. */
+    void seek(long nanos) {
+        seeks.incrementAndGet();
+        seekNanos.addAndGet(nanos);
+    }
+
+    public long getSources() {
+        return sources.get();
+    }
+
+    public long getBytesPrefetched() {
+        return bytesPrefetched.get();
+    }
+
+    public long getBytesServed() {
+        return bytesServed.get();
+    }
+
+    public long getUnderruns() {
+        return underruns.get();
+    }
+
+    public long getUnderrunNanos() {
+        return underrunNanos.get();
+    }
+
+    public long getSeeks() {
+        return seeks.get();
+    }
+
+    public void reset() {
+        sources.set(0);
+        bytesPrefetched.set(0);
+        bytesServed.set(0);
+        underruns.set(0);
+        underrunNanos.set(0);
+        maxUnderrunNanos.set(0);
+        seeks.set(0);
+        seekNanos.set(0);
+    }
+
+    /** Report for the diagnostics screen. */
+    public String toText() {
+        return String.format(Locale.ROOT,
+                "Files opened: %d\nRead ahead: %.1f MB, read by the player: %.1f MB\n"
+                        + "Underruns: %d, waited %.1f ms in total, longest %.1f ms\n"
+                        + "Seeks outside the buffer: %d, waited %.1f ms in total\n",
+                sources.get(), bytesPrefetched.get() / 1e6, bytesServed.get() / 1e6,
+                underruns.get(), underrunNanos.get() / 1e6, maxUnderrunNanos.get() / 1e6,
+                seeks.get(), seekNanos.get() / 1e6);
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.gaanesuno;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Turns a SeekBar drag into a handful of seeks instead of one per progress event.
+ *
+ * <p>While the thumb moves the activity shows its position itself. The player gets a fast
+ * preview seek (to the nearest sync frame) at most once per {@code intervalMs}; a move
+ * inside the interval is sent when it ends, so the preview catches up once the finger rests.
+ * Releasing the thumb sends one precise seek to where it was let go. Progress changes
+ * without a drag (keyboard, accessibility) seek precisely right away.</p>
+ *
+ * <p>Runs on the UI thread.</p>
+ */
+public final class SeekScrubber {
+
+    /** Preview cadence of the app's seek bars. */
+    public static final long DEFAULT_INTERVAL_MS = 150;
+    /**
+     * After a release, how long the activity keeps showing the thumb before its
+     * {@link ProgressTicker} draws positions from the state bus again, so a snapshot from
+     * before the final seek landed doesn't pull the thumb back.
+     */
+    public static final long SETTLE_HOLD_MS = 300;
+
+    /** Where the seeks go; MusicService on the device. */
+    public interface Seeker {
+        /** @param preview Fast and approximate, another seek follows. */
+        void seek(int positionMs, boolean preview);
+    }
+
+    /** Delayed tasks on the UI thread; a Handler on the device. */
+    public interface Timer {
+        void postDelayed(Runnable task, long delayMs);
+
+        void cancel(Runnable task);
+    }
+
+    private final Seeker seeker;
+    private final Timer timer;
+    private final LongSupplier uptimeClock; // Milliseconds
+    private final SeekStats stats;
+    private final long intervalMs; // 0 or less: no previews, only the seek on release
+    private final Runnable trailingPreview = this::sendPendingPreview;
+
+    private boolean dragging;
+    private int targetMs;
+    private int lastPreviewMs;
+    private long lastPreviewTime;
+    private boolean previewScheduled;
+    private int seeksThisDrag;
+
+    public SeekScrubber(Seeker seeker, Timer timer, LongSupplier uptimeClock, SeekStats stats, long intervalMs) {
+        this.seeker = seeker;
+        this.timer = timer;
+        this.uptimeClock = uptimeClock;
+        this.stats = stats;
+        this.intervalMs = intervalMs;
+    }
+
+    public boolean isDragging() {
+        return dragging;
+    }
+
+    /** SeekBar.onStartTrackingTouch. */
+    public void onStartTrackingTouch(int positionMs) {
+        dragging = true;
+        targetMs = positionMs;
+        lastPreviewMs = -1;
+        lastPreviewTime = Long.MIN_VALUE / 2; // The first move previews right away
+        seeksThisDrag = 0;
+    }
+
+    /** SeekBar.onProgressChanged with fromUser set. */
+    public void onProgressChanged(int positionMs) {
+        if (!dragging) {
+            seeker.seek(positionMs, false);
+            return;
+        }
+        targetMs = positionMs;
+        if (intervalMs <= 0) return;
+        long now = uptimeClock.getAsLong();
+        long wait = lastPreviewTime + intervalMs - now;
+        if (wait <= 0) {
+            cancelScheduledPreview();
+            sendPreview(now);
+        } else if (!previewScheduled) {
+            previewScheduled = true;
+            timer.postDelayed(trailingPreview, wait);
+        }
+    }
+
+    /** SeekBar.onStopTrackingTouch: the one precise seek. */
+    public void onStopTrackingTouch(int positionMs) {
+        if (!dragging) return;
+        dragging = false;
+        cancelScheduledPreview();
+        seeksThisDrag++;
+        seeker.seek(positionMs, false);
+        stats.dragFinished(seeksThisDrag);
+    }
+
+    /** Drops a drag without seeking, e.g. when the activity goes away mid-drag. */
+    public void cancel() {
+        dragging = false;
+        cancelScheduledPreview();
+    }
+
+    private void sendPendingPreview() {
+        previewScheduled = false;
+        if (dragging) {
+            sendPreview(uptimeClock.getAsLong());
+        }
+    }
+
+    private void sendPreview(long now) {
+        if (targetMs == lastPreviewMs) return; // The thumb came back to where the player already is
+        lastPreviewMs = targetMs;
+        lastPreviewTime = now;
+        seeksThisDrag++;
+        seeker.seek(targetMs, true);
+    }
+
+    private void cancelScheduledPreview() {
+        if (previewScheduled) {
+            previewScheduled = false;
+            timer.cancel(trailingPreview);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.gaanesuno;
+
+import java.util.Locale;
+import java.util.function.LongSupplier;
+
+/**
+ * Seek bar drags for the diagnostics screen: how many seeks each drag sent to the player,
+ * and the settle time from releasing the thumb until the player reported the final, precise
+ * seek complete.
+ *
+ * <p>MediaPlayer may report several seeks issued close together as one, so a preview still
+ * in flight can end the settle time a little early; with previews at most every
+ * {@link SeekScrubber#DEFAULT_INTERVAL_MS} that is rare.</p>
+ */
+public final class SeekStats {
+
+    private static final long NONE = -1;
+    private static final SeekStats INSTANCE = new SeekStats(System::nanoTime);
+
+    private final LongSupplier clock; // Nanoseconds
+    private final LatencyHistogram seeksPerDrag = new LatencyHistogram(); // Counts, not microseconds
+    private final LatencyHistogram settleMicros = new LatencyHistogram();
+
+    // The drag waiting to settle, guarded by this
+    private long releaseNanos = NONE;
+    private boolean finalSeekStarted;
+
+    SeekStats(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /** The stats shared by the seek bars, the service and the diagnostics screen. */
+    public static SeekStats getInstance() {
+        return INSTANCE;
+    }
+
+    /** A drag ended; its precise seek has just been sent. */
+    public synchronized void dragFinished(int seeks) {
+        seeksPerDrag.record(seeks);
+        releaseNanos = clock.getAsLong();
+        finalSeekStarted = false;
+    }
+
+    /** The player started a precise seek (the playback thread ran the command). */
+    public synchronized void preciseSeekStarted() {
+        if (releaseNanos != NONE) {
+            finalSeekStarted = true;
+        }
+    }
+
+    /** The player finished a seek; ends the settle time once the final seek has started. */
+    public synchronized void seekCompleted() {
+        if (releaseNanos == NONE || !finalSeekStarted) return;
+        settleMicros.record((clock.getAsLong() - releaseNanos) / 1_000);
+        releaseNanos = NONE;
+    }
+
+    public LatencyHistogram getSeeksPerDrag() {
+        return seeksPerDrag;
+    }
+
+    public LatencyHistogram getSettleMicros() {
+        return settleMicros;
+    }
+
+    public synchronized void reset() {
+        seeksPerDrag.reset();
+        settleMicros.reset();
+        releaseNanos = NONE;
+    }
+
+    /** Report for the diagnostics screen. */
+    public String toText() {
+        if (seeksPerDrag.getCount() == 0) {
+            return "No seek bar drags recorded yet.\n";
+        }
+        return String.format(Locale.ROOT, "Drags: %d, seeks per drag: p50 %d, p90 %d, max %d\n"
+                        + "Settle after release (ms): p50 %.1f, p90 %.1f, max %.1f\n",
+                seeksPerDrag.getCount(), seeksPerDrag.getPercentile(50), seeksPerDrag.getPercentile(90),
+                seeksPerDrag.getMax(), settleMicros.getPercentile(50) / 1000.0,
+                settleMicros.getPercentile(90) / 1000.0, settleMicros.getMax() / 1000.0);
+    }
+}
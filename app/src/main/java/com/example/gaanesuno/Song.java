@@ -1,14 +1,17 @@
 package com.example.gaanesuno;
 
+import android.content.ContentUris;
 import android.net.Uri;
+import android.provider.MediaStore;
 
 public class Song {
     private long id;
     private String title;
     private String artist;
-    private Uri data; // Content URI for playback and deletion (preferred)
+    private Uri data; // Content URI for playback and deletion (preferred), built lazily from the id
     private long duration;
     private String path; // Direct file path (for deletion fallback on older Android versions)
+    private long dateModified; // MediaStore DATE_MODIFIED in seconds, used to reconcile the library snapshot
 
     // Updated constructor to accept 6 arguments, including 'path'
     public Song(long id, String title, String artist, Uri data, long duration, String path) {
@@ -20,6 +23,16 @@ public class Song {
         this.path = path; // Store the direct file path
     }
 
+    public Song(long id, String title, String artist, Uri data, long duration, String path, long dateModified) {
+        this(id, title, artist, data, duration, path);
+        this.dateModified = dateModified;
+    }
+
+    // Used by SongStore: the content Uri is derived from the id the first time it's needed
+    public Song(long id, String title, String artist, long duration, String path, long dateModified) {
+        this(id, title, artist, null, duration, path, dateModified);
+    }
+
     // Existing getters
     public long getId() {
         return id;
@@ -34,6 +47,9 @@ public class Song {
     }
 
     public Uri getData() {
+        if (data == null) {
+            data = ContentUris.withAppendedId(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, id);
+        }
         return data;
     }
 
@@ -46,6 +62,10 @@ public class Song {
         return path;
     }
 
+    public long getDateModified() {
+        return dateModified;
+    }
+
     // Override equals and hashCode for reliable list operations (like indexOf)
     // This is crucial for finding songs in lists, especially after shuffle/unshuffle
     @Override
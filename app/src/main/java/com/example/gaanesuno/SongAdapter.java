@@ -1,24 +1,53 @@
 package com.example.gaanesuno;
 
 import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.widget.AppCompatImageButton;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder> {
 
+    private static final String TAG = "SongAdapter";
+    private static final Trace.Point DIFF_SUPERSEDED = Trace.point(TAG, Trace.DEBUG, "Diff of {} songs superseded, dropped");
+    private static final Trace.Point DIFFED = Trace.point(TAG, Trace.DEBUG,
+            "Diffed to {} songs in {} ms, {} updates (-1 for a full reorder)");
+
+    // One background thread for all list diffs; a newer submission makes older ones stop early
+    private static final ExecutorService DIFF_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "SongListDiff");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger submitGeneration = new AtomicInteger(); // Bumped by every list change
+    private int committedGeneration; // Generation of the list currently shown (main thread only)
+    private long selectedSongId = -1; // Id of the highlighted song, so the highlight follows it through diffs
+
     private List<Song> songList;
     private OnItemClickListener itemClickListener; // Renamed 'listener' for clarity
     private OnSongOptionsClickListener songOptionsClickListener; // New listener for the 3 dots button
     private int selectedPosition = RecyclerView.NO_POSITION; // To highlight currently playing song
 
+    // Multi-select (long press), by id so the marks survive list updates
+    private final LongIntHashMap checkedIds = new LongIntHashMap(16);
+    private boolean selectionMode = false;
+    private OnSelectionChangedListener selectionChangedListener;
+
     // 1. Interface for general item clicks (playing a song)
     public interface OnItemClickListener {
         void onItemClick(int position);
@@ -40,8 +69,20 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder
         this.songOptionsClickListener = listener;
     }
 
+    // 3. Interface for multi-select changes
+    public interface OnSelectionChangedListener {
+        // selectedCount is 0 when selection mode ends
+        void onSelectionChanged(int selectedCount);
+    }
+
+    public void setOnSelectionChangedListener(OnSelectionChangedListener listener) {
+        this.selectionChangedListener = listener;
+    }
+
     public SongAdapter(List<Song> songList) {
         this.songList = songList;
+        // Song ids are stable, lets RecyclerView keep view holders across updates
+        setHasStableIds(true);
     }
 
     /**
@@ -54,22 +95,239 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder
         if (selectedPosition != position) {
             int oldSelected = selectedPosition;
             selectedPosition = position;
+            selectedSongId = position >= 0 && position < songList.size() ? idAt(songList, position) : -1;
             // Notify RecyclerView that these items have changed so they can be redrawn
             notifyItemChanged(oldSelected); // Redraw old selected item to unhighlight
             notifyItemChanged(selectedPosition); // Redraw new selected item to add highlight
         }
     }
 
+    public boolean isSelectionMode() {
+        return selectionMode;
+    }
+
+    /** Ids of the songs marked in selection mode, in no particular order. */
+    public long[] getCheckedIds() {
+        return checkedIds.keys();
+    }
+
+    /**
+     * Marks or unmarks the song at {@code position}, starting selection mode if needed.
+     * Unmarking the last song ends selection mode.
+     */
+    public void toggleChecked(int position) {
+        long id = idAt(songList, position);
+        if (checkedIds.remove(id) == LongIntHashMap.NO_VALUE) {
+            checkedIds.put(id, 0); // Only the keys matter
+        }
+        notifyItemChanged(position);
+        if (checkedIds.size() == 0) {
+            clearSelection();
+            return;
+        }
+        selectionMode = true;
+        if (selectionChangedListener != null) {
+            selectionChangedListener.onSelectionChanged(checkedIds.size());
+        }
+    }
+
+    /** Leaves selection mode and unmarks every song. */
+    public void clearSelection() {
+        boolean hadChecked = checkedIds.size() > 0;
+        checkedIds.clear();
+        if (hadChecked) {
+            notifyItemRangeChanged(0, songList.size()); // Stable ids: only rebinds the visible rows
+        }
+        if (selectionMode) {
+            selectionMode = false;
+            if (selectionChangedListener != null) {
+                selectionChangedListener.onSelectionChanged(0);
+            }
+        }
+    }
+
     /**
-     * Updates the entire song list and clears any existing selection.
+     * Replaces the song list. The difference to the current list is computed on a background
+     * thread, keyed on song id, and applied as fine-grained insert/remove/move/change events
+     * (deleting one song is a single remove). The highlight stays on the same song.
      * @param newSongList The new list of songs.
      */
     public void updateSongList(List<Song> newSongList) {
-        this.songList = newSongList;
-        this.selectedPosition = RecyclerView.NO_POSITION; // Clear selection
-        notifyDataSetChanged();
+        submitList(newSongList, null);
+    }
+
+    /**
+     * Like {@link #updateSongList(List)}, runs {@code commitCallback} once the new list is shown.
+     * If another list is submitted before the diff finishes, this one is dropped and its
+     * callback never runs.
+     */
+    public void submitList(List<Song> newSongList, @Nullable Runnable commitCallback) {
+        final int generation = submitGeneration.incrementAndGet();
+        final List<Song> oldSongList = songList;
+        if (newSongList == oldSongList) {
+            committedGeneration = generation;
+            if (commitCallback != null) commitCallback.run();
+            return;
+        }
+        if (oldSongList.isEmpty() || newSongList.isEmpty()) {
+            // Nothing to compare, a plain insert or clear is as cheap as it gets
+            commitList(newSongList, generation);
+            if (oldSongList.isEmpty()) {
+                notifyItemRangeInserted(0, newSongList.size());
+            } else {
+                notifyItemRangeRemoved(0, oldSongList.size());
+            }
+            if (commitCallback != null) commitCallback.run();
+            return;
+        }
+
+        DIFF_EXECUTOR.execute(() -> {
+            long startTime = System.nanoTime();
+            SongListDiff.Result result = calculateDiff(oldSongList, newSongList, generation);
+            if (result == null) {
+                DIFF_SUPERSEDED.log(newSongList.size());
+                return;
+            }
+            DIFFED.log(newSongList.size(), (System.nanoTime() - startTime) / 1_000_000,
+                    result.isFullReorder() ? -1 : result.getOperationCount());
+            mainHandler.post(() -> {
+                if (generation != submitGeneration.get()) {
+                    return; // A newer list was submitted while this one was diffed
+                }
+                commitList(newSongList, generation);
+                if (result.isFullReorder()) {
+                    notifyDataSetChanged(); // Stable ids keep the view holders, only rebinding
+                } else {
+                    result.dispatchTo(updateCallback);
+                }
+                if (commitCallback != null) commitCallback.run();
+            });
+        });
     }
 
+    /**
+     * Replaces the list with one that only has songs appended to the end of the current one,
+     * e.g. when a page of a library scan arrives. Only the new rows are bound.
+     * @param newSongList The new list. Its first {@code positionStart} songs must be the current ones.
+     * @param positionStart The position of the first appended song.
+     */
+    public void appendSongs(List<Song> newSongList, int positionStart) {
+        if (committedGeneration != submitGeneration.get()) {
+            // A diff is still pending, the shown list may not be the one the pages build on
+            submitList(newSongList, null);
+            return;
+        }
+        commitList(newSongList, submitGeneration.incrementAndGet());
+        int itemCount = newSongList.size() - positionStart;
+        if (itemCount > 0) {
+            notifyItemRangeInserted(positionStart, itemCount);
+        }
+    }
+
+    private void commitList(List<Song> newSongList, int generation) {
+        songList = newSongList;
+        committedGeneration = generation;
+        // Keep the highlight on the same song, wherever it ended up
+        selectedPosition = selectedSongId == -1 ? RecyclerView.NO_POSITION : indexOfId(songList, selectedSongId);
+        if (selectedPosition == RecyclerView.NO_POSITION) {
+            selectedSongId = -1;
+        }
+    }
+
+    /** Runs on the diff thread. Returns null if a newer list was submitted in the meantime. */
+    private SongListDiff.Result calculateDiff(List<Song> oldSongList, List<Song> newSongList, int generation) {
+        long[] oldIds = idsOf(oldSongList);
+        long[] newIds = idsOf(newSongList);
+        SongListDiff.CancellationCheck cancellation = () -> generation != submitGeneration.get();
+        if (cancellation.isCancelled()) {
+            return null;
+        }
+        return SongListDiff.calculate(oldIds, oldIds.length, newIds, newIds.length,
+                (oldPosition, newPosition) -> sameContents(oldSongList, oldPosition, newSongList, newPosition),
+                cancellation);
+    }
+
+    private static boolean sameContents(List<Song> oldList, int oldPosition, List<Song> newList, int newPosition) {
+        SongStore oldStore = storeOf(oldList);
+        SongStore newStore = storeOf(newList);
+        if (oldStore != null && newStore != null) {
+            // Compare the columns directly, no Song views
+            int oldRow = rowOf(oldList, oldPosition);
+            int newRow = rowOf(newList, newPosition);
+            return oldStore.getDuration(oldRow) == newStore.getDuration(newRow)
+                    && Objects.equals(oldStore.getTitle(oldRow), newStore.getTitle(newRow))
+                    && Objects.equals(oldStore.getArtist(oldRow), newStore.getArtist(newRow));
+        }
+        Song oldSong = oldList.get(oldPosition);
+        Song newSong = newList.get(newPosition);
+        return oldSong.getDuration() == newSong.getDuration()
+                && Objects.equals(oldSong.getTitle(), newSong.getTitle())
+                && Objects.equals(oldSong.getArtist(), newSong.getArtist());
+    }
+
+    /** The store holding the columns of {@code list}, or null for a plain list of songs. */
+    @Nullable
+    private static SongStore storeOf(List<Song> list) {
+        if (list instanceof SongStore) return (SongStore) list;
+        if (list instanceof SongStore.OrderedView) return ((SongStore.OrderedView) list).getStore();
+        return null;
+    }
+
+    private static int rowOf(List<Song> list, int position) {
+        return list instanceof SongStore.OrderedView ? ((SongStore.OrderedView) list).getRow(position) : position;
+    }
+
+    private static long[] idsOf(List<Song> list) {
+        long[] ids = new long[list.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = idAt(list, i);
+        }
+        return ids;
+    }
+
+    private static long idAt(List<Song> list, int position) {
+        if (list instanceof SongStore) return ((SongStore) list).getId(position);
+        if (list instanceof SongStore.OrderedView) return ((SongStore.OrderedView) list).getId(position);
+        return list.get(position).getId();
+    }
+
+    private static int indexOfId(List<Song> list, long id) {
+        if (list instanceof SongStore) {
+            return ((SongStore) list).indexOfId(id);
+        }
+        if (list instanceof SongStore.OrderedView) {
+            return ((SongStore.OrderedView) list).indexOfId(id);
+        }
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i).getId() == id) {
+                return i;
+            }
+        }
+        return RecyclerView.NO_POSITION;
+    }
+
+    // Forwards the diff operations to RecyclerView
+    private final SongListDiff.Callback updateCallback = new SongListDiff.Callback() {
+        @Override
+        public void onInserted(int position, int count) {
+            notifyItemRangeInserted(position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            notifyItemRangeRemoved(position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            notifyItemMoved(fromPosition, toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count) {
+            notifyItemRangeChanged(position, count);
+        }
+    };
 
     @NonNull
     @Override
@@ -86,7 +344,11 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder
         holder.tvArtist.setText(currentSong.getArtist());
 
         // Update the background color and the visibility of the selected indicator
-        if (selectedPosition == position) {
+        if (checkedIds.containsKey(idAt(songList, position))) {
+            // Marked for a batch action
+            holder.itemView.setBackgroundColor(Color.parseColor("#1E3D2A")); // Dark green tint
+            holder.selectedIndicator.setVisibility(selectedPosition == position ? View.VISIBLE : View.GONE);
+        } else if (selectedPosition == position) {
             // Apply a darker background color to the entire item
             holder.itemView.setBackgroundColor(Color.parseColor("#303030")); // A darker gray
             // Show the green indicator bar
@@ -99,6 +361,19 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder
         }
     }
 
+    /**
+     * Position of the song with this id in the list currently shown, or
+     * {@link RecyclerView#NO_POSITION} (e.g. when a search filters it out).
+     */
+    public int getPositionOfId(long id) {
+        return indexOfId(songList, id);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return idAt(songList, position);
+    }
+
     @Override
     public int getItemCount() {
         return songList.size();
@@ -125,14 +400,24 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder
 
             // Set OnClickListener for the entire item (for playing the song)
             itemView.setOnClickListener(v -> {
-                if (itemClickListener != null) {
-                    int position = getAdapterPosition(); // Get the current position of the item
-                    if (position != RecyclerView.NO_POSITION) { // Ensure position is valid
-                        itemClickListener.onItemClick(position);
-                    }
+                int position = getAdapterPosition(); // Get the current position of the item
+                if (position == RecyclerView.NO_POSITION) return; // Ensure position is valid
+                if (selectionMode) {
+                    toggleChecked(position); // In selection mode a tap marks instead of playing
+                } else if (itemClickListener != null) {
+                    PlaybackLatencyTracker.getInstance().markTap(); // Start of the tap-to-audio timing
+                    itemClickListener.onItemClick(position);
                 }
             });
 
+            // Long press starts selection mode with this song marked
+            itemView.setOnLongClickListener(v -> {
+                int position = getAdapterPosition();
+                if (position == RecyclerView.NO_POSITION) return false;
+                toggleChecked(position);
+                return true;
+            });
+
             // Set OnClickListener for the 3 dots options button
             btnOptions.setOnClickListener(v -> {
                 if (songOptionsClickListener != null) {
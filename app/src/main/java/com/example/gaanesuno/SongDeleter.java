@@ -0,0 +1,125 @@
+package com.example.gaanesuno;
+
+import android.app.PendingIntent;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import androidx.annotation.RequiresApi;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deletes a batch of songs as one operation.
+ *
+ * <p>On Android 11+ the whole batch goes into a single {@link MediaStore#createDeleteRequest}
+ * (one system confirmation, the system deletes the files). Before that the songs are
+ * deleted in parallel on a few background threads, each through MediaStore with a direct
+ * file delete as fallback, and progress is reported on the main thread.</p>
+ */
+public class SongDeleter {
+
+    private static final String TAG = "SongDeleter";
+    private static final int THREAD_COUNT = 4;
+    private static final int PROGRESS_STEP = 25; // Report progress every this many songs
+
+    public interface Callback {
+        /** Main thread. */
+        void onProgress(int done, int total);
+
+        /** Main thread. {@code deletedIds} holds the songs that are really gone. */
+        void onFinished(long[] deletedIds, int failedCount);
+    }
+
+    private final ContentResolver contentResolver;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+
+    public SongDeleter(Context context) {
+        this.contentResolver = context.getContentResolver();
+    }
+
+    /**
+     * Android 11+: one request to delete every song in {@code songs}. Start its intent sender
+     * for a result; RESULT_OK means the system deleted all of them.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.R)
+    public PendingIntent createDeleteRequest(List<Song> songs) {
+        List<Uri> uris = new ArrayList<>(songs.size());
+        for (Song song : songs) {
+            uris.add(song.getData());
+        }
+        return MediaStore.createDeleteRequest(contentResolver, uris);
+    }
+
+    /**
+     * Deletes {@code songs} on background threads. Use this before Android 11, where the
+     * app may delete the files itself.
+     */
+    public void delete(List<Song> songs, Callback callback) {
+        final int total = songs.size();
+        final boolean[] deleted = new boolean[total];
+        final AtomicInteger done = new AtomicInteger();
+        final AtomicInteger remainingWorkers = new AtomicInteger(THREAD_COUNT);
+        for (int worker = 0; worker < THREAD_COUNT; worker++) {
+            final int first = worker;
+            executor.execute(() -> {
+                for (int i = first; i < total; i += THREAD_COUNT) {
+                    deleted[i] = deleteOne(songs.get(i));
+                    int count = done.incrementAndGet();
+                    if (count % PROGRESS_STEP == 0 && count < total) {
+                        mainHandler.post(() -> callback.onProgress(count, total));
+                    }
+                }
+                if (remainingWorkers.decrementAndGet() == 0) {
+                    // Last worker: every slot of deleted[] is written by now
+                    long[] deletedIds = new long[total];
+                    int deletedCount = 0;
+                    for (int i = 0; i < total; i++) {
+                        if (deleted[i]) deletedIds[deletedCount++] = songs.get(i).getId();
+                    }
+                    final long[] result = Arrays.copyOf(deletedIds, deletedCount);
+                    final int failedCount = total - deletedCount;
+                    Log.d(TAG, "Deleted " + deletedCount + " of " + total + " songs.");
+                    mainHandler.post(() -> {
+                        callback.onProgress(total, total);
+                        callback.onFinished(result, failedCount);
+                    });
+                }
+            });
+        }
+    }
+
+    private boolean deleteOne(Song song) {
+        try {
+            if (contentResolver.delete(song.getData(), null, null) > 0) {
+                return true;
+            }
+            Log.w(TAG, "MediaStore didn't delete " + song.getTitle() + ", attempting direct file delete (legacy fallback).");
+        } catch (SecurityException e) {
+            // Android 10 only lets the app delete its own files through MediaStore
+            Log.e(TAG, "SecurityException deleting " + song.getTitle() + ": " + e.getMessage());
+        }
+        File file = song.getPath() != null ? new File(song.getPath()) : null;
+        if (file != null && file.exists() && file.delete()) {
+            return true;
+        }
+        Log.e(TAG, "Failed to delete song file: " + song.getPath());
+        return false;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,310 @@
+package com.example.gaanesuno;
+
+import java.util.Arrays;
+
+/**
+ * Computes the difference between two song lists keyed on song id, as a list of
+ * remove/insert/move/change operations that can be replayed on the main thread.
+ *
+ * <p>Unlike a general sequence diff, matching by id is linear for the common cases
+ * (songs added, deleted or edited) and only reorders need extra work: the longest
+ * run of songs that kept their relative order stays put and every other song is moved.
+ * Large reorders (e.g. changing the sort order) are reported as {@link Result#isFullReorder()}
+ * so the caller can rebind instead of replaying thousands of moves.</p>
+ *
+ * <p>Positions follow the usual {@code ListUpdateCallback} convention: each operation
+ * refers to the list as it is after all previous operations were applied.</p>
+ */
+public final class SongListDiff {
+
+    /** Above this many moved songs a diff is reported as a full reorder instead. */
+    static final int MAX_MOVES = 256;
+
+    private static final int OP_REMOVE = 0;
+    private static final int OP_INSERT = 1;
+    private static final int OP_MOVE = 2;
+    private static final int OP_CHANGE = 3;
+
+    /** Receives the operations of a diff, mirrors RecyclerView's ListUpdateCallback. */
+    public interface Callback {
+        void onInserted(int position, int count);
+        void onRemoved(int position, int count);
+        void onMoved(int fromPosition, int toPosition);
+        void onChanged(int position, int count);
+    }
+
+    /** Tells whether a song that exists in both lists has different contents (title, artist...). */
+    public interface ContentComparator {
+        boolean areContentsTheSame(int oldPosition, int newPosition);
+    }
+
+    /** Polled while diffing; returning true abandons the diff. */
+    public interface CancellationCheck {
+        boolean isCancelled();
+    }
+
+    /** The operations of a finished diff. */
+    public static final class Result {
+        private final int[] ops; // Triples of (type, a, b)
+        private final int opCount;
+        private final boolean fullReorder;
+
+        Result(int[] ops, int opCount, boolean fullReorder) {
+            this.ops = ops;
+            this.opCount = opCount;
+            this.fullReorder = fullReorder;
+        }
+
+        /** True if so many songs moved that rebinding everything is cheaper than replaying moves. */
+        public boolean isFullReorder() {
+            return fullReorder;
+        }
+
+        /** Number of operations that {@link #dispatchTo} will deliver. */
+        public int getOperationCount() {
+            return opCount;
+        }
+
+        public void dispatchTo(Callback callback) {
+            for (int i = 0; i < opCount; i++) {
+                int type = ops[i * 3];
+                int a = ops[i * 3 + 1];
+                int b = ops[i * 3 + 2];
+                switch (type) {
+                    case OP_REMOVE: callback.onRemoved(a, b); break;
+                    case OP_INSERT: callback.onInserted(a, b); break;
+                    case OP_MOVE: callback.onMoved(a, b); break;
+                    case OP_CHANGE: callback.onChanged(a, b); break;
+                }
+            }
+        }
+    }
+
+    private int[] ops = new int[48];
+    private int opCount;
+
+    private SongListDiff() {
+    }
+
+    /**
+     * Diffs two lists of song ids.
+     * @param oldIds Ids of the current list, in order. Ids must be unique within a list.
+     * @param newIds Ids of the new list, in order.
+     * @param contents Compares songs present in both lists, may be null to skip change detection.
+     * @param cancellation Polled periodically, may be null.
+     * @return The result, or null if the diff was cancelled.
+     */
+    public static Result calculate(long[] oldIds, int oldSize, long[] newIds, int newSize,
+                                   ContentComparator contents, CancellationCheck cancellation) {
+        return new SongListDiff().run(oldIds, oldSize, newIds, newSize, contents, cancellation);
+    }
+
+    private Result run(long[] oldIds, int oldSize, long[] newIds, int newSize,
+                       ContentComparator contents, CancellationCheck cancellation) {
+        // Fast path: only songs appended at the end (e.g. a scan page arrived)
+        if (oldSize <= newSize && prefixEquals(oldIds, newIds, oldSize)) {
+            dispatchChanges(oldSize, null, contents);
+            if (newSize > oldSize) {
+                add(OP_INSERT, oldSize, newSize - oldSize);
+            }
+            return result(false);
+        }
+
+        LongIntHashMap newPositionById = LongIntHashMap.indexOf(newIds, newSize);
+        if (isCancelled(cancellation)) return null;
+
+        // For every old song: its position in the new list, or -1 if it was removed
+        int[] oldToNew = new int[oldSize];
+        boolean[] keptInNew = new boolean[newSize];
+        for (int i = 0; i < oldSize; i++) {
+            int newPosition = newPositionById.get(oldIds[i]); // NO_VALUE (-1) if removed
+            oldToNew[i] = newPosition;
+            if (newPosition != LongIntHashMap.NO_VALUE) {
+                keptInNew[newPosition] = true;
+            }
+        }
+        if (isCancelled(cancellation)) return null;
+
+        // 1. Removals, back to front so earlier positions stay valid, runs coalesced
+        int keptCount = 0;
+        for (int i = oldSize - 1; i >= 0; ) {
+            if (oldToNew[i] != -1) {
+                keptCount++;
+                i--;
+                continue;
+            }
+            int end = i;
+            while (i >= 0 && oldToNew[i] == -1) {
+                i--;
+            }
+            add(OP_REMOVE, i + 1, end - i);
+        }
+
+        // The kept songs in their old order, as new positions
+        int[] kept = new int[keptCount];
+        for (int i = 0, k = 0; i < oldSize; i++) {
+            if (oldToNew[i] != -1) {
+                kept[k++] = oldToNew[i];
+            }
+        }
+
+        // 2. Songs outside the longest increasing run of new positions have to move
+        boolean[] stays = longestIncreasingRun(kept);
+        if (isCancelled(cancellation)) return null;
+        int movedCount = 0;
+        for (boolean stay : stays) {
+            if (!stay) movedCount++;
+        }
+        if (movedCount > MAX_MOVES) {
+            opCount = 0;
+            return result(true);
+        }
+
+        if (movedCount > 0) {
+            // Park every moving song at the end (back to front keeps earlier positions valid)...
+            int[] parked = new int[movedCount];
+            int parkedCount = 0;
+            for (int k = keptCount - 1; k >= 0; k--) {
+                if (!stays[k]) {
+                    add(OP_MOVE, k, keptCount - 1);
+                    parked[parkedCount++] = kept[k];
+                }
+            }
+            // ...then bring each one to its final position while inserting new songs
+            int staysLeft = keptCount - movedCount;
+            for (int j = 0; j < newSize; j++) {
+                if (!keptInNew[j]) {
+                    add(OP_INSERT, j, 1);
+                    continue;
+                }
+                int t = indexOf(parked, parkedCount, j);
+                if (t == -1) {
+                    staysLeft--; // Already in place
+                    continue;
+                }
+                add(OP_MOVE, j + staysLeft + t, j);
+                System.arraycopy(parked, t + 1, parked, t, parkedCount - t - 1);
+                parkedCount--;
+            }
+            coalesceInserts();
+        } else {
+            // 3. No moves: insert new songs front to back, runs coalesced
+            for (int j = 0; j < newSize; ) {
+                if (keptInNew[j]) {
+                    j++;
+                    continue;
+                }
+                int start = j;
+                while (j < newSize && !keptInNew[j]) {
+                    j++;
+                }
+                add(OP_INSERT, start, j - start);
+            }
+        }
+        if (isCancelled(cancellation)) return null;
+
+        // 4. Content changes, reported at the final positions
+        dispatchChanges(oldSize, oldToNew, contents);
+        return result(false);
+    }
+
+    private void dispatchChanges(int oldSize, int[] oldToNew, ContentComparator contents) {
+        if (contents == null) return;
+        for (int i = 0; i < oldSize; i++) {
+            int newPosition = oldToNew == null ? i : oldToNew[i];
+            if (newPosition != -1 && !contents.areContentsTheSame(i, newPosition)) {
+                add(OP_CHANGE, newPosition, 1);
+            }
+        }
+    }
+
+    /** Merges consecutive single inserts produced by the move pass into ranges. */
+    private void coalesceInserts() {
+        int out = 0;
+        for (int i = 0; i < opCount; i++) {
+            int type = ops[i * 3];
+            int a = ops[i * 3 + 1];
+            int b = ops[i * 3 + 2];
+            if (out > 0 && type == OP_INSERT && ops[(out - 1) * 3] == OP_INSERT
+                    && ops[(out - 1) * 3 + 1] + ops[(out - 1) * 3 + 2] == a) {
+                ops[(out - 1) * 3 + 2] += b;
+                continue;
+            }
+            ops[out * 3] = type;
+            ops[out * 3 + 1] = a;
+            ops[out * 3 + 2] = b;
+            out++;
+        }
+        opCount = out;
+    }
+
+    /**
+     * Marks the elements that form a longest strictly increasing subsequence
+     * (patience sorting, O(n log n)).
+     */
+    static boolean[] longestIncreasingRun(int[] values) {
+        int n = values.length;
+        boolean[] inRun = new boolean[n];
+        if (n == 0) return inRun;
+        int[] tailIndexes = new int[n];
+        int[] previous = new int[n];
+        int length = 0;
+        for (int i = 0; i < n; i++) {
+            int lo = 0;
+            int hi = length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (values[tailIndexes[mid]] < values[i]) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            previous[i] = lo > 0 ? tailIndexes[lo - 1] : -1;
+            tailIndexes[lo] = i;
+            if (lo == length) {
+                length++;
+            }
+        }
+        for (int i = tailIndexes[length - 1]; i >= 0; i = previous[i]) {
+            inRun[i] = true;
+        }
+        return inRun;
+    }
+
+    private static boolean prefixEquals(long[] a, long[] b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isCancelled(CancellationCheck cancellation) {
+        return cancellation != null && cancellation.isCancelled();
+    }
+
+    private void add(int type, int a, int b) {
+        if ((opCount + 1) * 3 > ops.length) {
+            ops = Arrays.copyOf(ops, ops.length * 2);
+        }
+        ops[opCount * 3] = type;
+        ops[opCount * 3 + 1] = a;
+        ops[opCount * 3 + 2] = b;
+        opCount++;
+    }
+
+    private Result result(boolean fullReorder) {
+        return new Result(ops, opCount, fullReorder);
+    }
+}
@@ -0,0 +1,380 @@
+package com.example.gaanesuno;
+
+import java.util.Arrays;
+
+/**
+ * In-memory word-prefix index over song titles and artists for as-you-type search.
+ *
+ * <p>A song matches when every word of the query is the start of a word in its title or
+ * artist, ignoring case and punctuation ("shee sha" finds "Shape of You - Ed Sheeran").
+ * For every word start the index keeps posting lists keyed by its first one, two and three
+ * characters. A query takes the shortest posting list of its words as candidates and
+ * intersects it with the other words' lists (all sorted by document), so only words longer
+ * than three characters are compared with the text. When the user keeps typing, the new
+ * query can only narrow the previous result, so only the previous hits are checked again.</p>
+ *
+ * <p>Queries don't allocate: the query text, candidate marks and results live in buffers
+ * that are reused (and only grow when the library grows). Songs are indexed by id, so the
+ * index survives the library being replaced by a new {@link SongStore}; {@link #update}
+ * only indexes what was added and drops what was removed.</p>
+ *
+ * <p>Methods are synchronized: updates run on a background thread while queries come from
+ * the UI thread.</p>
+ */
+public final class SongSearchIndex {
+
+    /** Returned by {@link #search} for a query without any letters or digits (no filter). */
+    public static final int NO_QUERY = -1;
+
+    private static final int MAX_GRAM = 3;
+    private static final char SEPARATOR = ' ';
+
+    // Documents (one per indexed song), addressed by slot
+    private int docCount;
+    private long[] docIds = new long[16];
+    private long[] docModified = new long[16];
+    private boolean[] docAlive = new boolean[16];
+    private int[] textStart = new int[16];
+    private int[] textLength = new int[16];
+    private char[] text = new char[256]; // Normalized "title artist" of every document
+    private int textSize;
+    private int deadCount;
+    private final LongIntHashMap docById = new LongIntHashMap(16);
+
+    // Document <-> row mapping for the store of the last update, so queries on it don't hash
+    private SongStore mappedStore;
+    private int[] docRow = new int[16];
+    private int[] rowDoc = new int[0];
+
+    // Posting lists: gram key -> list number -> ascending document slots
+    private final LongIntHashMap listByGram = new LongIntHashMap(64);
+    private int[][] lists = new int[64][];
+    private int[] listSizes = new int[64];
+    private int listCount;
+
+    // Query buffers, reused between calls
+    private char[] query = new char[32];
+    private int[] queryWordStart = new int[8];
+    private int[] queryWordLength = new int[8];
+    private int[] queryWordList = new int[8]; // Posting list of the word's first characters
+    private int[] filterCursor = new int[8]; // Position in queryWordList's list while intersecting
+    private long[] rowBits = new long[0];
+    private char[] lastQuery = new char[32];
+    private int lastQueryLength;
+    private SongStore lastStore;
+    private int[] lastRows = new int[0];
+    private int lastRowCount;
+
+    /** Builds the index for every song in {@code store}. Call off the main thread. */
+    public static SongSearchIndex build(SongStore store) {
+        SongSearchIndex index = new SongSearchIndex();
+        index.update(store);
+        return index;
+    }
+
+    /** Number of songs currently indexed. */
+    public synchronized int size() {
+        return docCount - deadCount;
+    }
+
+    /**
+     * Brings the index in line with {@code store}: songs no longer in it or modified since
+     * they were indexed are dropped, songs not indexed yet are added. Call off the main thread.
+     * @return False if so many songs were dropped that a fresh {@link #build} would be smaller.
+     */
+    public synchronized boolean update(SongStore store) {
+        if (rowDoc.length < store.size()) {
+            rowDoc = new int[store.size()];
+        }
+        for (int doc = 0; doc < docCount; doc++) {
+            if (!docAlive[doc]) continue;
+            int row = store.indexOfId(docIds[doc]);
+            if (row == -1 || store.getDateModified(row) != docModified[doc]) {
+                docAlive[doc] = false;
+                docById.remove(docIds[doc]);
+                deadCount++;
+            } else {
+                docRow[doc] = row;
+                rowDoc[row] = doc;
+            }
+        }
+        for (int row = 0; row < store.size(); row++) {
+            if (!docById.containsKey(store.getId(row))) {
+                int doc = addDocument(store.getId(row), store.getDateModified(row), store.getTitle(row), store.getArtist(row));
+                docRow[doc] = row;
+                rowDoc[row] = doc;
+            }
+        }
+        mappedStore = store;
+        lastStore = null; // Previous results may point at rows that changed
+        return deadCount <= 1_000 || deadCount * 2 <= docCount;
+    }
+
+    /**
+     * Finds the songs of {@code store} matching {@code queryText}.
+     * @param outRows Receives the matching rows of {@code store} in ascending order. Must
+     *                have room for {@code store.size()} entries.
+     * @return The number of matching rows, or {@link #NO_QUERY} if the query is blank.
+     */
+    public synchronized int search(CharSequence queryText, SongStore store, int[] outRows) {
+        if (query.length < queryText.length()) {
+            query = new char[queryText.length() * 2];
+        }
+        int queryLength = normalize(queryText, query);
+        if (queryLength == 0) {
+            lastStore = null;
+            return NO_QUERY;
+        }
+        int wordCount = splitWords(queryLength);
+
+        int words = (store.size() + 63) >>> 6;
+        if (rowBits.length < words) {
+            rowBits = new long[words];
+        } else {
+            Arrays.fill(rowBits, 0, words, 0L);
+        }
+
+        // The query word with the shortest posting list gives the candidates
+        int list = -1;
+        for (int w = 0; w < wordCount; w++) {
+            int gramLength = Math.min(MAX_GRAM, queryWordLength[w]);
+            int candidate = listByGram.get(gramKey(query, queryWordStart[w], gramLength));
+            if (candidate == LongIntHashMap.NO_VALUE) {
+                list = -1;
+                break; // Some word starts nowhere, nothing can match
+            }
+            queryWordList[w] = candidate;
+            if (list == -1 || listSizes[candidate] < listSizes[list]) {
+                list = candidate;
+            }
+        }
+        // Words of up to three characters are exactly what their lists are keyed on
+        boolean allShort = true;
+        for (int w = 0; w < wordCount; w++) {
+            allShort &= queryWordLength[w] <= MAX_GRAM;
+        }
+        boolean mapped = store == mappedStore;
+
+        if (list == -1) {
+            // No matches
+        } else if (!allShort && store == lastStore && lastRowCount < listSizes[list]
+                && startsWith(query, queryLength, lastQuery, lastQueryLength)) {
+            // Typing on: the new query can only narrow the previous result, which is smaller
+            for (int i = 0; i < lastRowCount; i++) {
+                int row = lastRows[i];
+                int doc = mapped ? rowDoc[row] : docById.get(store.getId(row));
+                if (doc != LongIntHashMap.NO_VALUE && matches(doc, wordCount, false)) {
+                    rowBits[row >>> 6] |= 1L << row;
+                }
+            }
+        } else {
+            Arrays.fill(filterCursor, 0, wordCount, 0);
+            int[] docs = lists[list];
+            for (int i = 0, n = listSizes[list]; i < n; i++) {
+                int doc = docs[i];
+                if (docAlive[doc] && inWordLists(doc, wordCount, list) && (allShort || matches(doc, wordCount, true))) {
+                    int row = mapped ? docRow[doc] : store.indexOfId(docIds[doc]);
+                    if (row != -1) {
+                        rowBits[row >>> 6] |= 1L << row;
+                    }
+                }
+            }
+        }
+
+        // Collect the marked rows in library order
+        int count = 0;
+        for (int w = 0; w < words; w++) {
+            long bits = rowBits[w];
+            while (bits != 0) {
+                outRows[count++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
+        }
+        rememberResult(queryLength, store, outRows, count);
+        return count;
+    }
+
+    private void rememberResult(int queryLength, SongStore store, int[] rows, int count) {
+        if (lastQuery.length < queryLength) {
+            lastQuery = new char[query.length];
+        }
+        System.arraycopy(query, 0, lastQuery, 0, queryLength);
+        lastQueryLength = queryLength;
+        if (lastRows.length < count) {
+            lastRows = new int[Math.max(count, store.size())];
+        }
+        System.arraycopy(rows, 0, lastRows, 0, count);
+        lastRowCount = count;
+        lastStore = store;
+    }
+
+    /**
+     * True if the document is in the posting list of every query word (other than
+     * {@code candidates}, where it comes from). Documents must be asked for in ascending order:
+     * each list is walked once per query.
+     */
+    private boolean inWordLists(int doc, int wordCount, int candidates) {
+        for (int w = 0; w < wordCount; w++) {
+            int list = queryWordList[w];
+            if (list == candidates) continue;
+            int[] docs = lists[list];
+            int size = listSizes[list];
+            int cursor = filterCursor[w];
+            while (cursor < size && docs[cursor] < doc) cursor++;
+            filterCursor[w] = cursor;
+            if (cursor == size || docs[cursor] != doc) return false;
+        }
+        return true;
+    }
+
+    /**
+     * True if every query word is the start of a word of the document; with {@code longOnly},
+     * only words longer than their posting list's key are checked.
+     */
+    private boolean matches(int doc, int wordCount, boolean longOnly) {
+        int start = textStart[doc];
+        int end = start + textLength[doc];
+        for (int w = 0; w < wordCount; w++) {
+            int qStart = queryWordStart[w];
+            int qLength = queryWordLength[w];
+            if (longOnly && qLength <= MAX_GRAM) continue;
+            boolean found = false;
+            for (int p = start; p + qLength <= end && !found; p++) {
+                if (p > start && text[p - 1] != SEPARATOR) continue; // Not a word start
+                found = regionMatches(text, p, query, qStart, qLength);
+            }
+            if (!found) return false;
+        }
+        return true;
+    }
+
+    private int addDocument(long id, long modified, String title, String artist) {
+        if (docCount == docIds.length) {
+            int capacity = docCount * 2;
+            docIds = Arrays.copyOf(docIds, capacity);
+            docRow = Arrays.copyOf(docRow, capacity);
+            docModified = Arrays.copyOf(docModified, capacity);
+            docAlive = Arrays.copyOf(docAlive, capacity);
+            textStart = Arrays.copyOf(textStart, capacity);
+            textLength = Arrays.copyOf(textLength, capacity);
+        }
+        int needed = textSize + lengthOf(title) + 1 + lengthOf(artist);
+        if (needed > text.length) {
+            text = Arrays.copyOf(text, Math.max(needed, text.length * 2));
+        }
+        int doc = docCount++;
+        docIds[doc] = id;
+        docModified[doc] = modified;
+        docAlive[doc] = true;
+        docById.put(id, doc);
+
+        // Normalize "title artist" straight into the pool
+        int start = textSize;
+        int length = normalize(title, text, start, 0);
+        length = normalize(artist, text, start, length);
+        textStart[doc] = start;
+        textLength[doc] = length;
+        textSize = start + length;
+
+        // Post the first 1, 2 and 3 characters of every word
+        for (int p = start; p < start + length; p++) {
+            if (p > start && text[p - 1] != SEPARATOR) continue;
+            for (int g = 1; g <= MAX_GRAM && p + g <= start + length; g++) {
+                post(gramKey(text, p, g), doc);
+            }
+        }
+        return doc;
+    }
+
+    private void post(long gram, int doc) {
+        int list = listByGram.get(gram);
+        if (list == LongIntHashMap.NO_VALUE) {
+            if (listCount == lists.length) {
+                lists = Arrays.copyOf(lists, listCount * 2);
+                listSizes = Arrays.copyOf(listSizes, listCount * 2);
+            }
+            list = listCount++;
+            lists[list] = new int[4];
+            listByGram.put(gram, list);
+        }
+        int size = listSizes[list];
+        if (size > 0 && lists[list][size - 1] == doc) {
+            return; // The same word start twice in one song
+        }
+        if (size == lists[list].length) {
+            lists[list] = Arrays.copyOf(lists[list], size * 2);
+        }
+        lists[list][size] = doc;
+        listSizes[list] = size + 1;
+    }
+
+    /** Splits the normalized query into words, returns the word count. */
+    private int splitWords(int queryLength) {
+        int count = 0;
+        for (int i = 0; i < queryLength; ) {
+            int start = i;
+            while (i < queryLength && query[i] != SEPARATOR) i++;
+            if (count == queryWordStart.length) {
+                queryWordStart = Arrays.copyOf(queryWordStart, count * 2);
+                queryWordLength = Arrays.copyOf(queryWordLength, count * 2);
+                queryWordList = Arrays.copyOf(queryWordList, count * 2);
+                filterCursor = Arrays.copyOf(filterCursor, count * 2);
+            }
+            queryWordStart[count] = start;
+            queryWordLength[count] = i - start;
+            count++;
+            i++; // Skip the separator
+        }
+        return count;
+    }
+
+    private static int normalize(CharSequence in, char[] out) {
+        return normalize(in, out, 0, 0);
+    }
+
+    /**
+     * Appends {@code in} to {@code out[offset + length..]} lower-cased, with every run of
+     * characters that aren't letters or digits turned into one separator, and no leading or
+     * trailing separator. Returns the new length.
+     */
+    private static int normalize(CharSequence in, char[] out, int offset, int length) {
+        if (in == null) return length;
+        boolean pendingSeparator = length > 0;
+        for (int i = 0; i < in.length(); i++) {
+            char c = in.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSeparator) {
+                    out[offset + length++] = SEPARATOR;
+                    pendingSeparator = false;
+                }
+                out[offset + length++] = Character.toLowerCase(c);
+            } else if (length > 0) {
+                pendingSeparator = true;
+            }
+        }
+        return length;
+    }
+
+    private static int lengthOf(String s) {
+        return s == null ? 0 : s.length();
+    }
+
+    private static long gramKey(char[] chars, int start, int length) {
+        long key = (long) length << 48;
+        for (int i = 0; i < length; i++) {
+            key |= (long) chars[start + i] << (32 - 16 * i);
+        }
+        return key;
+    }
+
+    private static boolean regionMatches(char[] a, int aStart, char[] b, int bStart, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[aStart + i] != b[bStart + i]) return false;
+        }
+        return true;
+    }
+
+    private static boolean startsWith(char[] s, int sLength, char[] prefix, int prefixLength) {
+        return sLength >= prefixLength && regionMatches(s, 0, prefix, 0, prefixLength);
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.gaanesuno;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Precomputed sort orders of one {@link SongStore}.
+ *
+ * <p>Building collates every title and artist once with a locale aware {@link Collator}
+ * and turns them into int ranks; after that each order is a primitive sort of packed
+ * (rank, tie-break) longs, done once per key. Switching the order or direction only hands
+ * out a cached permutation, which {@link SongStore#inOrder} wraps without copying
+ * anything. Ties sort by title, then by library order.</p>
+ *
+ * <p>Build it off the main thread; the orders are read only afterwards.</p>
+ */
+public final class SongSorter {
+
+    public enum Key { TITLE, ARTIST, DURATION }
+
+    private final SongStore store;
+    private final int[][] ascending = new int[Key.values().length][];
+    private final int[][] descending = new int[Key.values().length][]; // Reversed on first use
+    private final int[][] positions = new int[Key.values().length][]; // Row -> position in ascending
+
+    private SongSorter(SongStore store) {
+        this.store = store;
+    }
+
+    /** Collates and sorts {@code store} by every key. Takes a while on big libraries, call off the main thread. */
+    public static SongSorter build(SongStore store, Locale locale) {
+        Collator collator = Collator.getInstance(locale);
+        collator.setStrength(Collator.SECONDARY); // "abc" == "ABC", but "é" != "e"
+        int size = store.size();
+        String[] titles = new String[size];
+        String[] artists = new String[size];
+        for (int row = 0; row < size; row++) {
+            titles[row] = store.getTitle(row);
+            artists[row] = store.getArtist(row);
+        }
+
+        SongSorter sorter = new SongSorter(store);
+        int[] titleRanks = collationRanks(titles, collator);
+        long[] packed = new long[size];
+        for (int row = 0; row < size; row++) {
+            packed[row] = (long) titleRanks[row] << 32 | row;
+        }
+        int[] titleOrder = sorter.setAscending(Key.TITLE, packed, null);
+        int[] titlePositions = sorter.positions[Key.TITLE.ordinal()];
+
+        // The other keys break ties by title position, which is unique per row
+        int[] artistRanks = collationRanks(artists, collator);
+        for (int row = 0; row < size; row++) {
+            packed[row] = (long) artistRanks[row] << 32 | titlePositions[row];
+        }
+        sorter.setAscending(Key.ARTIST, packed, titleOrder);
+        for (int row = 0; row < size; row++) {
+            long duration = Math.max(0, Math.min(Integer.MAX_VALUE, store.getDuration(row)));
+            packed[row] = duration << 32 | titlePositions[row];
+        }
+        sorter.setAscending(Key.DURATION, packed, titleOrder);
+        return sorter;
+    }
+
+    /** The store these orders index into. */
+    public SongStore getStore() {
+        return store;
+    }
+
+    /**
+     * Rows of the store in the given order; descending is the exact reverse of ascending.
+     * The array is cached and shared, don't change it.
+     */
+    public synchronized int[] order(Key key, boolean ascendingOrder) {
+        int[] order = ascending[key.ordinal()];
+        if (ascendingOrder) {
+            return order;
+        }
+        int[] reversed = descending[key.ordinal()];
+        if (reversed == null) {
+            reversed = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                reversed[i] = order[order.length - 1 - i];
+            }
+            descending[key.ordinal()] = reversed;
+        }
+        return reversed;
+    }
+
+    /**
+     * These orders carried over to {@code library}, a newer version of this sorter's store, to
+     * use until its own sorter is built: songs still in it keep their order by id, songs new
+     * to it follow in library order. O(n), nothing is collated; fine on the main thread.
+     */
+    public SongSorter carryOver(SongStore library) {
+        SongSorter sorter = new SongSorter(library);
+        int size = library.size();
+        boolean[] placed = new boolean[size];
+        for (Key key : Key.values()) {
+            int[] order = new int[size];
+            int[] position = new int[size];
+            Arrays.fill(placed, false);
+            int count = 0;
+            for (int oldRow : ascending[key.ordinal()]) {
+                int row = library.indexOfId(store.getId(oldRow));
+                if (row >= 0 && !placed[row]) {
+                    placed[row] = true;
+                    position[row] = count;
+                    order[count++] = row;
+                }
+            }
+            for (int row = 0; row < size; row++) {
+                if (!placed[row]) {
+                    position[row] = count;
+                    order[count++] = row;
+                }
+            }
+            sorter.ascending[key.ordinal()] = order;
+            sorter.positions[key.ordinal()] = position;
+        }
+        return sorter;
+    }
+
+    /**
+     * Sorts a subset of the store's rows (e.g. search hits) into the given order, in place.
+     * O(count log count), no allocation.
+     */
+    public void sortRows(int[] rows, int count, Key key, boolean ascendingOrder) {
+        int[] position = positions[key.ordinal()];
+        int[] order = ascending[key.ordinal()];
+        for (int i = 0; i < count; i++) {
+            rows[i] = position[rows[i]];
+        }
+        Arrays.sort(rows, 0, count);
+        if (!ascendingOrder) {
+            for (int i = 0, j = count - 1; i < j; i++, j--) {
+                int swap = rows[i];
+                rows[i] = rows[j];
+                rows[j] = swap;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            rows[i] = order[rows[i]];
+        }
+    }
+
+    /**
+     * Sorts the packed (primary << 32 | tie-break) keys and stores the resulting order.
+     * @param rowOfTieBreak Maps the tie-break back to a row, null if it is the row itself.
+     */
+    private int[] setAscending(Key key, long[] packed, int[] rowOfTieBreak) {
+        long[] sorted = packed.clone();
+        Arrays.sort(sorted);
+        int[] order = new int[sorted.length];
+        int[] position = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            int low = (int) sorted[i];
+            int row = rowOfTieBreak == null ? low : rowOfTieBreak[low];
+            order[i] = row;
+            position[row] = i;
+        }
+        ascending[key.ordinal()] = order;
+        positions[key.ordinal()] = position;
+        return order;
+    }
+
+    /**
+     * Collation ranks: strings equal by {@code collator} get the same rank, and ranks
+     * increase in collation order. Null sorts like the empty string.
+     */
+    private static int[] collationRanks(String[] values, Collator collator) {
+        // Artists repeat a lot, collate every distinct string once
+        Map<String, Collated> distinct = new HashMap<>();
+        Collated[] collated = new Collated[values.length];
+        for (int i = 0; i < values.length; i++) {
+            String value = values[i] == null ? "" : values[i];
+            Collated entry = distinct.get(value);
+            if (entry == null) {
+                entry = new Collated(collator.getCollationKey(value));
+                distinct.put(value, entry);
+            }
+            collated[i] = entry;
+        }
+        Collated[] sorted = distinct.values().toArray(new Collated[0]);
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; i++) {
+            // Strings that only differ in case collate equal and share a rank
+            sorted[i].rank = i > 0 && sorted[i].compareTo(sorted[i - 1]) == 0 ? sorted[i - 1].rank : i;
+        }
+        int[] ranks = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            ranks[i] = collated[i].rank;
+        }
+        return ranks;
+    }
+
+    private static final class Collated implements Comparable<Collated> {
+        final CollationKey key;
+        int rank;
+
+        Collated(CollationKey key) {
+            this.key = key;
+        }
+
+        @Override
+        public int compareTo(Collated other) {
+            return key.compareTo(other.key);
+        }
+    }
+}
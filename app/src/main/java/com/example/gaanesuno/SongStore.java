@@ -0,0 +1,360 @@
+package com.example.gaanesuno;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Immutable, column oriented song library.
+ *
+ * <p>Instead of one {@link Song} object (plus a Uri and duplicated artist strings) per track,
+ * the library is kept in parallel primitive arrays, artists are stored once per distinct
+ * name, and content Uris are derived from the id only when a song is played or deleted.
+ * MainActivity, SongAdapter and MusicService all share the same instance; a change to
+ * the library produces a new store instead of modifying this one.</p>
+ *
+ * <p>{@link #get(int)} returns a lightweight {@link Song} view of a row, which keeps the
+ * existing {@code List<Song>} based code working.</p>
+ */
+public final class SongStore extends AbstractList<Song> implements RandomAccess {
+
+    public static final SongStore EMPTY = new Builder(0).build();
+
+    private final int size;
+    private final long[] ids;
+    private final long[] durations;
+    private final long[] dateModified;
+    private final String[] titles;
+    private final int[] artistIndexes; // Index into artistPool, -1 for a null artist
+    private final String[] artistPool;
+    private final int artistCount;
+    private final String[] paths;
+    private volatile LongIntHashMap rowById; // Built on the first lookup, see indexOfId()
+
+    // Below this size a scan is as fast as hashing and saves building the index
+    private static final int LINEAR_SEARCH_LIMIT = 16;
+
+    private SongStore(int size, long[] ids, long[] durations, long[] dateModified, String[] titles,
+                      int[] artistIndexes, String[] artistPool, int artistCount, String[] paths) {
+        this.size = size;
+        this.ids = ids;
+        this.durations = durations;
+        this.dateModified = dateModified;
+        this.titles = titles;
+        this.artistIndexes = artistIndexes;
+        this.artistPool = artistPool;
+        this.artistCount = artistCount;
+        this.paths = paths;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** Returns a {@link Song} view of the row. The Uri of the song is only built if it's asked for. */
+    @Override
+    public Song get(int index) {
+        checkIndex(index);
+        return new Song(ids[index], titles[index], getArtist(index), durations[index], paths[index], dateModified[index]);
+    }
+
+    public long getId(int index) {
+        checkIndex(index);
+        return ids[index];
+    }
+
+    public String getTitle(int index) {
+        checkIndex(index);
+        return titles[index];
+    }
+
+    public String getArtist(int index) {
+        checkIndex(index);
+        int artist = artistIndexes[index];
+        return artist < 0 ? null : artistPool[artist];
+    }
+
+    public long getDuration(int index) {
+        checkIndex(index);
+        return durations[index];
+    }
+
+    public String getPath(int index) {
+        checkIndex(index);
+        return paths[index];
+    }
+
+    public long getDateModified(int index) {
+        checkIndex(index);
+        return dateModified[index];
+    }
+
+    /** Number of distinct artist names stored. */
+    int getArtistPoolSize() {
+        return artistCount;
+    }
+
+    /**
+     * Finds the row of a song by id, or -1. O(1): the first call builds a primitive
+     * id-to-row index, which is kept for the life of this (immutable) store.
+     */
+    public int indexOfId(long id) {
+        if (size <= LINEAR_SEARCH_LIMIT) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        LongIntHashMap index = rowById;
+        if (index == null) {
+            // Building twice on a race is harmless, both indexes are identical
+            index = LongIntHashMap.indexOf(ids, size);
+            rowById = index;
+        }
+        return index.get(id);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return o instanceof Song ? indexOfId(((Song) o).getId()) : -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) != -1;
+    }
+
+    /** Returns a new store without the row at {@code index}. */
+    public SongStore without(int index) {
+        checkIndex(index);
+        Builder builder = new Builder(size - 1);
+        for (int i = 0; i < size; i++) {
+            if (i != index) {
+                builder.add(this, i);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns a new store without the songs with these ids, in one pass however many there
+     * are. Ids that aren't in the store are ignored.
+     */
+    public SongStore withoutIds(long[] removedIds) {
+        LongIntHashMap removed = LongIntHashMap.indexOf(removedIds, removedIds.length);
+        Builder builder = new Builder(Math.max(0, size - removedIds.length));
+        for (int i = 0; i < size; i++) {
+            if (!removed.containsKey(ids[i])) {
+                builder.add(this, i);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns a read-only view of this store in the given order, e.g. the shuffled queue in
+     * MusicService. The view shares the columns; only the order array is extra.
+     * @param order Row indexes of this store. Not copied, the caller must not change it.
+     */
+    public OrderedView inOrder(int[] order) {
+        return new OrderedView(this, order);
+    }
+
+    /** Builds the on-disk snapshot of this store. */
+    public LibrarySnapshot toSnapshot(long generation, String mediaStoreVersion) {
+        String[] artists = new String[size];
+        for (int i = 0; i < size; i++) {
+            artists[i] = getArtist(i);
+        }
+        return new LibrarySnapshot(size, ids, titles, artists, durations, paths, dateModified,
+                generation, mediaStoreVersion);
+    }
+
+    /**
+     * Compares this store against the id and DATE_MODIFIED columns currently in MediaStore,
+     * see {@link LibrarySnapshot#diff(long[], long[], int)}.
+     */
+    public LibrarySnapshot.Delta diff(long[] currentIds, long[] currentDateModified, int currentCount) {
+        return LibrarySnapshot.diff(ids, dateModified, size, currentIds, currentDateModified, currentCount);
+    }
+
+    /** Creates a store from a decoded snapshot. */
+    public static SongStore fromSnapshot(LibrarySnapshot snapshot) {
+        Builder builder = new Builder(snapshot.size());
+        for (int i = 0; i < snapshot.size(); i++) {
+            builder.add(snapshot.getId(i), snapshot.getTitle(i), snapshot.getArtist(i),
+                    snapshot.getDuration(i), snapshot.getPath(i), snapshot.getDateModified(i));
+        }
+        return builder.build();
+    }
+
+    /** Creates a store from a list of songs, in list order. */
+    public static SongStore of(List<Song> songs) {
+        Builder builder = new Builder(songs.size());
+        for (int i = 0; i < songs.size(); i++) {
+            builder.add(songs.get(i));
+        }
+        return builder.build();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+
+    /**
+     * Appends rows and hands out immutable stores of everything appended so far.
+     *
+     * <p>Rows are only ever appended, and the arrays are replaced (never modified below the
+     * current size) when they grow, so every store returned by {@link #build()} stays valid
+     * while the builder keeps going. This lets the library scanner publish a new store after
+     * each page without copying the rows that came before.</p>
+     */
+    public static final class Builder {
+        private int size;
+        private long[] ids;
+        private long[] durations;
+        private long[] dateModified;
+        private String[] titles;
+        private int[] artistIndexes;
+        private String[] paths;
+        private String[] artistPool = new String[16];
+        private int artistCount;
+        private final Map<String, Integer> artistLookup = new HashMap<>();
+
+        public Builder(int expectedSize) {
+            int capacity = Math.max(expectedSize, 16);
+            ids = new long[capacity];
+            durations = new long[capacity];
+            dateModified = new long[capacity];
+            titles = new String[capacity];
+            artistIndexes = new int[capacity];
+            paths = new String[capacity];
+        }
+
+        public Builder add(long id, String title, String artist, long duration, String path, long modified) {
+            if (size == ids.length) {
+                int capacity = size + (size >> 1);
+                ids = Arrays.copyOf(ids, capacity);
+                durations = Arrays.copyOf(durations, capacity);
+                dateModified = Arrays.copyOf(dateModified, capacity);
+                titles = Arrays.copyOf(titles, capacity);
+                artistIndexes = Arrays.copyOf(artistIndexes, capacity);
+                paths = Arrays.copyOf(paths, capacity);
+            }
+            ids[size] = id;
+            durations[size] = duration;
+            dateModified[size] = modified;
+            titles[size] = title;
+            artistIndexes[size] = artistIndexOf(artist);
+            paths[size] = path;
+            size++;
+            return this;
+        }
+
+        /** Copies row {@code index} of another store. */
+        public Builder add(SongStore store, int index) {
+            return add(store.getId(index), store.getTitle(index), store.getArtist(index),
+                    store.getDuration(index), store.getPath(index), store.getDateModified(index));
+        }
+
+        public Builder add(Song song) {
+            return add(song.getId(), song.getTitle(), song.getArtist(), song.getDuration(),
+                    song.getPath(), song.getDateModified());
+        }
+
+        public int size() {
+            return size;
+        }
+
+        private int artistIndexOf(String artist) {
+            if (artist == null) {
+                return -1;
+            }
+            Integer index = artistLookup.get(artist);
+            if (index != null) {
+                return index;
+            }
+            if (artistCount == artistPool.length) {
+                artistPool = Arrays.copyOf(artistPool, artistCount * 2);
+            }
+            artistPool[artistCount] = artist;
+            artistLookup.put(artist, artistCount);
+            return artistCount++;
+        }
+
+        /** Returns an immutable store of all rows added so far. */
+        public SongStore build() {
+            return new SongStore(size, ids, durations, dateModified, titles, artistIndexes, artistPool, artistCount, paths);
+        }
+    }
+
+    /**
+     * A read-only reordering of a store, used for the shuffled play queue. Like the store,
+     * it finds the position of a song id in O(1) through an index built on first use.
+     */
+    public static final class OrderedView extends AbstractList<Song> implements RandomAccess {
+        private final SongStore store;
+        private final int[] order;
+        private volatile LongIntHashMap positionById;
+
+        OrderedView(SongStore store, int[] order) {
+            this.store = store;
+            this.order = order;
+        }
+
+        @Override
+        public Song get(int index) {
+            return store.get(order[index]);
+        }
+
+        public long getId(int index) {
+            return store.ids[order[index]];
+        }
+
+        /** The store this view orders. */
+        public SongStore getStore() {
+            return store;
+        }
+
+        /** The row of the underlying store at {@code index}. */
+        public int getRow(int index) {
+            return order[index];
+        }
+
+        @Override
+        public int size() {
+            return order.length;
+        }
+
+        /** Position of the song with this id in this order, or -1. */
+        public int indexOfId(long id) {
+            LongIntHashMap index = positionById;
+            if (index == null) {
+                index = new LongIntHashMap(order.length);
+                for (int i = 0; i < order.length; i++) {
+                    index.put(store.ids[order[i]], i);
+                }
+                positionById = index;
+            }
+            return index.get(id);
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            return o instanceof Song ? indexOfId(((Song) o).getId()) : -1;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexOf(o) != -1;
+        }
+    }
+}
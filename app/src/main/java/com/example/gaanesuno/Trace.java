@@ -0,0 +1,189 @@
+package com.example.gaanesuno;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Tracing for hot paths, instead of {@code Log.d(TAG, "..." + value)} which builds its string
+ * even when nobody reads it.
+ *
+ * <p>Each trace point is a constant, declared once with its tag, level and message, with
+ * {@code {}} where its numeric arguments go:</p>
+ * <pre>
+ * private static final Trace.Point SEEK = Trace.point(TAG, Trace.DEBUG, "Seek to {} ms");
+ * ...
+ * SEEK.log(positionMs);
+ * </pre>
+ * <p>A point below the trace level returns after one comparison: no formatting, no
+ * allocation, no boxing. An enabled one is written to a {@link TraceBuffer} as numbers and only
+ * formatted when the buffer is dumped (from the diagnostics screen), or right away if a
+ * {@link Sink} mirrors it to logcat, which only debuggable builds do.</p>
+ */
+public final class Trace {
+
+    // Same values as android.util.Log's priorities
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+
+    private static final int BUFFER_EVENTS = 4096;
+    private static final String LEVELS = "??VDIWE";
+
+    /** Where formatted events are mirrored; {@code android.util.Log::println} on the device. */
+    public interface Sink {
+        void println(int level, String tag, String message);
+    }
+
+    // Release builds record DEBUG and up, without a sink; per-frame points are VERBOSE
+    private static volatile int level = DEBUG;
+    private static volatile Sink sink;
+    private static final TraceBuffer buffer = new TraceBuffer(BUFFER_EVENTS);
+    private static final List<Point> points = new ArrayList<>(); // Index is the point's id
+
+    private Trace() {
+    }
+
+    /** Declares a trace point; meant for {@code static final} fields, not for every call. */
+    public static Point point(String tag, int level, String format) {
+        synchronized (points) {
+            Point point = new Point(points.size(), tag, level, format, null);
+            points.add(point);
+            return point;
+        }
+    }
+
+    /** Like {@link #point}, with the first argument shown as {@code labels[argument]}, e.g. an enum's values(). */
+    public static Point point(String tag, int level, String format, Object[] labels) {
+        synchronized (points) {
+            Point point = new Point(points.size(), tag, level, format, labels.clone());
+            points.add(point);
+            return point;
+        }
+    }
+
+    /**
+     * Called when the app or service starts: debuggable builds trace everything and mirror it
+     * to {@code sink}, others keep the defaults.
+     */
+    public static void init(boolean debuggable, Sink logcat) {
+        if (debuggable) {
+            level = VERBOSE;
+            sink = logcat;
+        }
+    }
+
+    /** Points below {@code minLevel} are skipped. */
+    public static void setLevel(int minLevel) {
+        level = minLevel;
+    }
+
+    public static int getLevel() {
+        return level;
+    }
+
+    public static void setSink(Sink logcat) {
+        sink = logcat;
+    }
+
+    public static TraceBuffer getBuffer() {
+        return buffer;
+    }
+
+    /** The events still in the buffer as text, oldest first, one per line. */
+    public static String dump() {
+        Point[] known;
+        synchronized (points) {
+            known = points.toArray(new Point[0]);
+        }
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.ROOT, "%d events traced, the last %d kept\n",
+                buffer.getWritten(), buffer.getCapacity()));
+        buffer.forEach((sequence, timeNanos, pointId, threadId, a, b, c) -> {
+            Point point = pointId < known.length ? known[pointId] : null;
+            text.append(String.format(Locale.ROOT, "%12.3f %5d ", timeNanos / 1e9, threadId));
+            if (point == null) {
+                text.append("? point ").append(pointId).append('\n');
+            } else {
+                text.append(LEVELS.charAt(point.level)).append(' ').append(point.tag).append(": ");
+                point.format(text, a, b, c);
+                text.append('\n');
+            }
+        });
+        return text.toString();
+    }
+
+    /** One place in the code that traces; see the class comment. */
+    public static final class Point {
+        private final int id;
+        private final String tag;
+        private final int level;
+        private final String format;
+        private final Object[] labels; // For the first argument, null to show the number
+
+        private Point(int id, String tag, int level, String format, Object[] labels) {
+            this.id = id;
+            this.tag = tag;
+            this.level = Math.max(VERBOSE, Math.min(level, LEVELS.length() - 1));
+            this.format = format;
+            this.labels = labels;
+        }
+
+        /** For work done only to compute arguments. */
+        public boolean isEnabled() {
+            return level >= Trace.level;
+        }
+
+        public void log() {
+            if (level < Trace.level) return;
+            record(0, 0, 0);
+        }
+
+        public void log(long a) {
+            if (level < Trace.level) return;
+            record(a, 0, 0);
+        }
+
+        public void log(long a, long b) {
+            if (level < Trace.level) return;
+            record(a, b, 0);
+        }
+
+        public void log(long a, long b, long c) {
+            if (level < Trace.level) return;
+            record(a, b, c);
+        }
+
+        private void record(long a, long b, long c) {
+            buffer.write(System.nanoTime(), id, Thread.currentThread().getId(), a, b, c);
+            Sink logcat = sink;
+            if (logcat != null) {
+                StringBuilder message = new StringBuilder(format.length() + 16);
+                format(message, a, b, c);
+                logcat.println(level, tag, message.toString());
+            }
+        }
+
+        /** Appends the message with {@code {}} replaced by the arguments in order. */
+        void format(StringBuilder out, long a, long b, long c) {
+            int argument = 0;
+            int start = 0;
+            int at;
+            while ((at = format.indexOf("{}", start)) >= 0) {
+                out.append(format, start, at);
+                long value = argument == 0 ? a : argument == 1 ? b : c;
+                if (argument == 0 && labels != null && value >= 0 && value < labels.length) {
+                    out.append(labels[(int) value]);
+                } else if (argument < 3) {
+                    out.append(value);
+                } else {
+                    out.append("{}"); // More placeholders than arguments
+                }
+                argument++;
+                start = at + 2;
+            }
+            out.append(format, start, format.length());
+        }
+    }
+}
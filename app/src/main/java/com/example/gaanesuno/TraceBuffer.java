@@ -0,0 +1,88 @@
+package com.example.gaanesuno;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size ring of the most recent trace events, recorded as numbers only: the time, the
+ * trace point, the thread and up to three arguments. Writing one formats and allocates
+ * nothing; the text is only made when the ring is dumped.
+ *
+ * <p>Writers on any thread claim a slot with one atomic increment and never wait. Each slot
+ * starts with its sequence number, cleared while the slot is written and stored last, so a
+ * reader skips slots caught mid-write instead of returning a mix of two events. (Writers a
+ * whole ring apart writing the same slot at once could still mix; with thousands of slots
+ * the older one would have to stall for thousands of events.)</p>
+ */
+public final class TraceBuffer {
+
+    /** Receives the events of {@link #forEach}, oldest first. */
+    public interface Visitor {
+        void onEvent(long sequence, long timeNanos, int pointId, long threadId, long a, long b, long c);
+    }
+
+    private static final int FIELDS = 7; // Sequence, time, point, thread, three arguments
+
+    private final AtomicLongArray slots;
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+
+    /** A ring of {@code capacity} events, rounded up to a power of two. */
+    public TraceBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        slots = new AtomicLongArray(size * FIELDS);
+        mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            slots.set(i * FIELDS, -1); // Never written
+        }
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /** Number of events written since creation or the last clear, including overwritten ones. */
+    public long getWritten() {
+        return next.get();
+    }
+
+    public void write(long timeNanos, int pointId, long threadId, long a, long b, long c) {
+        long sequence = next.getAndIncrement();
+        int base = (int) (sequence & mask) * FIELDS;
+        // Ordered stores only: each one publishes the stores before it, so a reader seeing any new
+        // field also sees the cleared sequence, and the final sequence publishes all the fields
+        slots.lazySet(base, -1); // Readers skip the slot from here on
+        slots.lazySet(base + 1, timeNanos);
+        slots.lazySet(base + 2, pointId);
+        slots.lazySet(base + 3, threadId);
+        slots.lazySet(base + 4, a);
+        slots.lazySet(base + 5, b);
+        slots.lazySet(base + 6, c);
+        slots.lazySet(base, sequence); // Ordered after the fields: publishes them
+    }
+
+    /** Visits the events still in the ring, skipping any being written meanwhile. */
+    public void forEach(Visitor visitor) {
+        long end = next.get();
+        for (long sequence = Math.max(0, end - getCapacity()); sequence < end; sequence++) {
+            int base = (int) (sequence & mask) * FIELDS;
+            if (slots.get(base) != sequence) continue; // Overwritten already, or mid-write
+            long timeNanos = slots.get(base + 1);
+            int pointId = (int) slots.get(base + 2);
+            long threadId = slots.get(base + 3);
+            long a = slots.get(base + 4);
+            long b = slots.get(base + 5);
+            long c = slots.get(base + 6);
+            if (slots.get(base) != sequence) continue; // Rewritten while read
+            visitor.onEvent(sequence, timeNanos, pointId, threadId, a, b, c);
+        }
+    }
+
+    /** Forgets every event; ones written at the same time may be lost as well. */
+    public void clear() {
+        for (int i = 0; i <= mask; i++) {
+            slots.set(i * FIELDS, -1);
+        }
+        next.set(0);
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.gaanesuno;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that code on a hot path allocates nothing, by the bytes the JVM counts for the
+ * current thread. Warm the code up first, so the measured run is compiled and its buffers
+ * have grown. JVMs without the counter skip the check.
+ */
+final class Allocations {
+
+    // A few bytes of slack for the measuring itself
+    private static final long SLACK_BYTES = 1_024;
+
+    private Allocations() {
+    }
+
+    /** Runs {@code task} once and fails if it allocated. */
+    static void assertNone(String what, Runnable task) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long before = allocatedBytes(threads);
+        task.run();
+        long allocated = allocatedBytes(threads) - before;
+        if (before >= 0) {
+            assertTrue(what + " allocated " + allocated + " bytes", allocated < SLACK_BYTES);
+        }
+    }
+
+    private static long allocatedBytes(ThreadMXBean threads) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.gaanesuno;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for the preamp, equalizer and limiter chain on float and 16-bit PCM.
+ */
+public class AudioEffectsChainTest {
+
+    private static final int SAMPLE_RATE = 48_000;
+    private static final int BLOCK_FRAMES = 256;
+
+    @Test
+    public void flatPreset_leavesPcm16Unchanged() {
+        AudioEffectsChain chain = new AudioEffectsChain(5, 2, SAMPLE_RATE, BLOCK_FRAMES);
+        chain.setPreset(EqualizerPreset.FLAT);
+        int frames = BLOCK_FRAMES * 3 + 17; // Several scratch blocks and a partial one
+        ByteBuffer pcm = ByteBuffer.allocateDirect(frames * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < frames * 2; i++) {
+            pcm.putShort((short) (Math.sin(i * 0.01) * 20_000));
+        }
+        pcm.flip();
+        ByteBuffer expected = ByteBuffer.allocate(frames * 4).order(ByteOrder.LITTLE_ENDIAN);
+        expected.put(pcm.duplicate()).flip();
+
+        chain.processPcm16(pcm, frames);
+        assertEquals(0, pcm.position());
+        assertEquals(expected, pcm);
+        assertEquals(0, chain.getLimitedFrames());
+    }
+
+    @Test
+    public void preamp_scalesTheSignal() {
+        AudioEffectsChain chain = new AudioEffectsChain(5, 1, SAMPLE_RATE, BLOCK_FRAMES);
+        chain.setPreset(EqualizerPreset.TREBLE_BOOST); // -4 dB preamp, shelves far from 20 Hz
+        float[] samples = new float[BLOCK_FRAMES];
+        for (int block = 0; block < 200; block++) { // Lets the filters settle on the constant
+            Arrays.fill(samples, 0.5f);
+            chain.process(samples, 0, BLOCK_FRAMES);
+        }
+        assertEquals(0.5 * Math.pow(10, -4 / 20.0), samples[BLOCK_FRAMES - 1], 0.002);
+    }
+
+    @Test
+    public void limiter_keepsBoostedFullScaleUnderTheCeiling() {
+        AudioEffectsChain chain = new AudioEffectsChain(5, 2, SAMPLE_RATE, BLOCK_FRAMES);
+        chain.setPreset(EqualizerPreset.BASS_BOOST); // About +6 dB at 30 Hz against a -4 dB preamp
+        float[] samples = new float[BLOCK_FRAMES * 2];
+        float peak = 0;
+        for (int block = 0; block < 400; block++) {
+            for (int i = 0; i < BLOCK_FRAMES; i++) {
+                float sine = (float) Math.sin(2 * Math.PI * 30 * (block * BLOCK_FRAMES + i) / SAMPLE_RATE);
+                samples[i * 2] = sine;
+                samples[i * 2 + 1] = -sine;
+            }
+            chain.process(samples, 0, BLOCK_FRAMES);
+            for (float sample : samples) {
+                peak = Math.max(peak, Math.abs(sample));
+            }
+        }
+        assertTrue("Peak " + peak, peak <= AudioEffectsChain.CEILING + 1e-6f); // Float rounding of gain * peak
+        assertTrue(peak > AudioEffectsChain.CEILING * 0.9f); // Held at the ceiling, not crushed
+        assertTrue(chain.getLimitedFrames() > 0);
+    }
+
+    @Test
+    public void processing_doesNotAllocate() {
+        AudioEffectsChain chain = new AudioEffectsChain(5, 2, SAMPLE_RATE, BLOCK_FRAMES);
+        ByteBuffer pcm = ByteBuffer.allocateDirect(BLOCK_FRAMES * 4).order(ByteOrder.nativeOrder());
+        float[] samples = new float[BLOCK_FRAMES * 2];
+        for (int i = 0; i < 10_000; i++) { // Warm up, so the measured run is compiled code
+            runBlocks(chain, pcm, samples, i);
+        }
+
+        Allocations.assertNone("Processing", () -> {
+            for (int i = 0; i < 10_000; i++) {
+                runBlocks(chain, pcm, samples, i);
+            }
+        });
+    }
+
+    private static void runBlocks(AudioEffectsChain chain, ByteBuffer pcm, float[] samples, int i) {
+        chain.setPreset(EqualizerPreset.PRESETS.get(i % EqualizerPreset.PRESETS.size()));
+        chain.process(samples, 0, BLOCK_FRAMES);
+        chain.processPcm16(pcm, BLOCK_FRAMES);
+    }
+}
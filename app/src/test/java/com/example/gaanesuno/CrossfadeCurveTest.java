@@ -0,0 +1,44 @@
+package com.example.gaanesuno;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for the crossfade timing and gain curve.
+ */
+public class CrossfadeCurveTest {
+
+    @Test
+    public void gains_keepConstantPowerAndHitTheEnds() {
+        long fadeMs = 6_000;
+        assertEquals(1f, CrossfadeCurve.gainOut(0, fadeMs), 1e-6);
+        assertEquals(0f, CrossfadeCurve.gainIn(0, fadeMs), 1e-6);
+        assertEquals(0f, CrossfadeCurve.gainOut(fadeMs, fadeMs), 1e-6);
+        assertEquals(1f, CrossfadeCurve.gainIn(fadeMs, fadeMs), 1e-6);
+        for (long elapsed = 0; elapsed <= fadeMs; elapsed += 20) {
+            float out = CrossfadeCurve.gainOut(elapsed, fadeMs);
+            float in = CrossfadeCurve.gainIn(elapsed, fadeMs);
+            assertEquals("power at " + elapsed, 1f, out * out + in * in, 1e-5);
+        }
+        // A late step gets the value for its own time, and times outside the fade are clamped
+        assertEquals(CrossfadeCurve.gainIn(3_000, fadeMs), CrossfadeCurve.gainOut(3_000, fadeMs), 1e-6);
+        assertEquals(1f, CrossfadeCurve.gainIn(fadeMs + 500, fadeMs), 1e-6);
+        assertEquals(1f, CrossfadeCurve.gainOut(-100, fadeMs), 1e-6);
+        assertEquals(1f, CrossfadeCurve.gainIn(0, 0), 1e-6);
+    }
+
+    @Test
+    public void fadeLength_isAtMostHalfOfEitherSong() {
+        assertEquals(8_000, CrossfadeCurve.fadeLength(8_000, 240_000, 180_000));
+        assertEquals(5_000, CrossfadeCurve.fadeLength(12_000, 240_000, 10_000)); // Short jingle next
+        assertEquals(4_000, CrossfadeCurve.fadeLength(12_000, 8_000, 240_000));
+        assertEquals(0, CrossfadeCurve.fadeLength(12_000, -1, 240_000)); // Unknown duration: no fade
+    }
+
+    @Test
+    public void startDelay_endsTheFadeWithTheSong() {
+        assertEquals(224_000, CrossfadeCurve.startDelay(240_000, 10_000, 6_000));
+        assertEquals(0, CrossfadeCurve.startDelay(240_000, 236_000, 6_000)); // Already inside the fade window
+    }
+}
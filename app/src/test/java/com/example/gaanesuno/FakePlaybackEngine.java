@@ -0,0 +1,266 @@
+package com.example.gaanesuno;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link PlaybackEngine} for JVM tests that plays on a {@link VirtualClock}: preparing takes
+ * {@link Factory#PREPARE_MS}, a song plays for its duration, ends, loops or hands over to the
+ * linked next engine exactly like MediaPlayer, and calls that MediaPlayer would reject throw
+ * IllegalStateException. Songs can be set up to fail to load or to fail while playing.
+ */
+final class FakePlaybackEngine implements PlaybackEngine {
+
+    enum State { IDLE, INITIALIZED, PREPARING, PREPARED, STARTED, PAUSED, COMPLETED, ERROR, RELEASED }
+
+    /** Creates the engines and holds what they share: the clock, failures and load counts. */
+    static final class Factory implements PlaybackEngine.Factory {
+        static final long PREPARE_MS = 40;
+        static final long SEEK_MS = 10;
+        static final int SYNC_FRAME_MS = 1_000; // seekToSync() lands on whole seconds
+
+        private final VirtualClock clock;
+        private final Set<Long> unloadable = new HashSet<>();
+        private final Map<Long, Integer> failAtMs = new HashMap<>();
+        private final List<Long> loads = new ArrayList<>(); // Song ids, in setSource() order
+        private final List<Integer> seeks = new ArrayList<>(); // Positions, in seek order
+        private final List<FakePlaybackEngine> engines = new ArrayList<>();
+
+        Factory(VirtualClock clock) {
+            this.clock = clock;
+        }
+
+        /** setSource() throws IOException for this song, like a missing or unreadable file. */
+        void failToLoad(long songId) {
+            unloadable.add(songId);
+        }
+
+        /** onError when this song gets to {@code positionMs}, like a corrupt frame. */
+        void failWhilePlaying(long songId, int positionMs) {
+            failAtMs.put(songId, positionMs);
+        }
+
+        /** Ids of the songs set as source so far, failed ones included. */
+        List<Long> getLoads() {
+            return loads;
+        }
+
+        /** Positions every engine has seeked to, sync seeks after rounding. */
+        List<Integer> getSeeks() {
+            return seeks;
+        }
+
+        List<FakePlaybackEngine> getEngines() {
+            return engines;
+        }
+
+        @Override
+        public PlaybackEngine create(Callback callback) {
+            FakePlaybackEngine engine = new FakePlaybackEngine(this, callback);
+            engines.add(engine);
+            return engine;
+        }
+    }
+
+    private final Factory factory;
+    private final Callback callback;
+    private State state = State.IDLE;
+    private Song song;
+    private int positionMs; // While started: the position at startedAtMs
+    private long startedAtMs;
+    private boolean looping;
+    private float volume = 1.0f;
+    private float trackGain = 1.0f;
+    private FakePlaybackEngine next;
+    private VirtualClock.Task pending; // Prepare, end or error of the current song
+
+    private FakePlaybackEngine(Factory factory, Callback callback) {
+        this.factory = factory;
+        this.callback = callback;
+    }
+
+    State getState() {
+        return state;
+    }
+
+    Song getSong() {
+        return song;
+    }
+
+    float getVolume() {
+        return volume;
+    }
+
+    float getTrackGain() {
+        return trackGain;
+    }
+
+    FakePlaybackEngine getNext() {
+        return next;
+    }
+
+    @Override
+    public void setSource(Song song) throws IOException {
+        reset();
+        factory.loads.add(song.getId());
+        if (factory.unloadable.contains(song.getId())) {
+            throw new IOException("Cannot open " + song.getPath());
+        }
+        this.song = song;
+        state = State.INITIALIZED;
+    }
+
+    @Override
+    public void prepareAsync() {
+        require(state == State.INITIALIZED, "prepareAsync");
+        state = State.PREPARING;
+        pending = factory.clock.postDelayed(() -> {
+            state = State.PREPARED;
+            callback.onPrepared(this);
+        }, Factory.PREPARE_MS);
+    }
+
+    @Override
+    public void start() {
+        require(isPrepared(), "start");
+        if (state == State.STARTED) return;
+        if (state == State.COMPLETED) positionMs = 0;
+        state = State.STARTED;
+        startedAtMs = factory.clock.now();
+        scheduleEnd();
+    }
+
+    @Override
+    public void pause() {
+        require(state == State.STARTED || state == State.PAUSED, "pause");
+        positionMs = getPosition();
+        state = State.PAUSED;
+        cancelPending();
+    }
+
+    @Override
+    public void seekTo(int positionMs) {
+        require(isPrepared(), "seekTo");
+        this.positionMs = Math.max(0, Math.min(positionMs, song.getDuration()));
+        if (state == State.STARTED) {
+            startedAtMs = factory.clock.now();
+            scheduleEnd();
+        }
+        factory.seeks.add(this.positionMs);
+        factory.clock.postDelayed(() -> callback.onSeekComplete(this), Factory.SEEK_MS);
+    }
+
+    @Override
+    public void seekToSync(int positionMs) {
+        seekTo(positionMs - positionMs % Factory.SYNC_FRAME_MS);
+    }
+
+    @Override
+    public void reset() {
+        require(state != State.RELEASED, "reset");
+        cancelPending();
+        state = State.IDLE;
+        song = null;
+        positionMs = 0;
+        looping = false;
+        next = null;
+    }
+
+    @Override
+    public void release() {
+        cancelPending();
+        state = State.RELEASED;
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return state == State.STARTED;
+    }
+
+    @Override
+    public int getPosition() {
+        if (state != State.STARTED) return positionMs;
+        return (int) Math.min(song.getDuration(), positionMs + factory.clock.now() - startedAtMs);
+    }
+
+    @Override
+    public int getDuration() {
+        return isPrepared() ? song.getDuration() : 0;
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        this.volume = volume;
+    }
+
+    @Override
+    public void setTrackGain(float gain) {
+        trackGain = gain;
+    }
+
+    @Override
+    public void setLooping(boolean looping) {
+        this.looping = looping;
+    }
+
+    @Override
+    public void setNext(PlaybackEngine next) {
+        require(isPrepared(), "setNext");
+        this.next = (FakePlaybackEngine) next;
+    }
+
+    private boolean isPrepared() {
+        return state == State.PREPARED || state == State.STARTED || state == State.PAUSED || state == State.COMPLETED;
+    }
+
+    /** Schedules the end of the song, or its failure if that comes first. */
+    private void scheduleEnd() {
+        cancelPending();
+        Integer failAt = factory.failAtMs.get(song.getId());
+        if (failAt != null && failAt >= positionMs) {
+            pending = factory.clock.postDelayed(this::fail, failAt - positionMs);
+        } else {
+            pending = factory.clock.postDelayed(this::end, song.getDuration() - positionMs);
+        }
+    }
+
+    private void end() {
+        pending = null;
+        if (looping) {
+            positionMs = 0;
+            startedAtMs = factory.clock.now();
+            scheduleEnd();
+            return;
+        }
+        positionMs = song.getDuration();
+        state = State.COMPLETED;
+        if (next != null && next.state == State.PREPARED) {
+            next.start(); // Started before the callback, like setNextMediaPlayer
+        }
+        next = null;
+        callback.onCompletion(this);
+    }
+
+    private void fail() {
+        pending = null;
+        positionMs = getPosition();
+        state = State.ERROR;
+        callback.onError(this, 1, 0); // MEDIA_ERROR_UNKNOWN
+    }
+
+    private void cancelPending() {
+        if (pending != null) {
+            pending.cancel();
+            pending = null;
+        }
+    }
+
+    private void require(boolean valid, String call) {
+        if (!valid) throw new IllegalStateException(call + " called in state " + state);
+    }
+}
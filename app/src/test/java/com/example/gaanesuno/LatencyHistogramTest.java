@@ -0,0 +1,59 @@
+package com.example.gaanesuno;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for the log-linear latency histogram.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_coverEveryValueWithinOneEighth() {
+        for (long value = 0; value < 5_000_000; value += 1 + value / 50) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            long lower = LatencyHistogram.lowerBoundOf(bucket);
+            long nextLower = LatencyHistogram.lowerBoundOf(bucket + 1);
+            assertTrue("value " + value, lower <= value && value < nextLower);
+            assertTrue("bucket too wide at " + value, nextLower - lower <= Math.max(1, lower / 8));
+        }
+    }
+
+    @Test
+    public void percentiles_matchSortedValues() {
+        Random random = new Random(5);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[10_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) (1_000 * Math.exp(random.nextGaussian())); // Log-normal around 1 ms, like real starts
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(values[values.length - 1], histogram.getMax());
+        for (double percentile : new double[] {50, 90, 99}) {
+            long expected = values[(int) Math.ceil(values.length * percentile / 100) - 1];
+            long actual = histogram.getPercentile(percentile);
+            assertEquals("p" + percentile, expected, actual, expected / 8.0);
+        }
+        assertEquals(Arrays.stream(values).sum() / values.length, histogram.getMean());
+    }
+
+    @Test
+    public void emptyAndReset_reportZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(50));
+        histogram.record(-5); // Clock went backwards: counts as 0
+        histogram.record(Long.MAX_VALUE / 2); // Absurd value stays in range
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.gaanesuno;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for the on-disk library snapshot format.
+ */
+public class LibrarySnapshotTest {
+
+    private static final int LARGE_LIBRARY = 100_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip_largeLibrary() throws IOException {
+        LibrarySnapshot written = createSnapshot(LARGE_LIBRARY);
+        File file = folder.newFile("library.snapshot");
+        written.writeTo(file);
+
+        LibrarySnapshot read = LibrarySnapshot.readFrom(file);
+        assertEquals(LARGE_LIBRARY, read.size());
+        assertEquals(written.getGeneration(), read.getGeneration());
+        assertEquals(written.getMediaStoreVersion(), read.getMediaStoreVersion());
+        for (int i = 0; i < LARGE_LIBRARY; i++) {
+            assertEquals(written.getId(i), read.getId(i));
+            assertEquals(written.getTitle(i), read.getTitle(i));
+            assertEquals(written.getArtist(i), read.getArtist(i));
+            assertEquals(written.getDuration(i), read.getDuration(i));
+            assertEquals(written.getPath(i), read.getPath(i));
+            assertEquals(written.getDateModified(i), read.getDateModified(i));
+        }
+    }
+
+    @Test
+    public void roundTrip_emptyLibraryAndNullStrings() throws IOException {
+        File file = folder.newFile("empty.snapshot");
+        new LibrarySnapshot(0, new long[0], new String[0], new String[0], new long[0],
+                new String[0], new long[0], -1L, null).writeTo(file);
+        LibrarySnapshot read = LibrarySnapshot.readFrom(file);
+        assertEquals(0, read.size());
+        assertNull(read.getMediaStoreVersion());
+    }
+
+    @Test
+    public void read_flippedByte_throwsCorrupt() throws IOException {
+        File file = folder.newFile("library.snapshot");
+        createSnapshot(1000).writeTo(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long offset = raf.length() / 2;
+            raf.seek(offset);
+            int b = raf.read();
+            raf.seek(offset);
+            raf.write(b ^ 0x01);
+        }
+        assertCorrupt(file);
+    }
+
+    @Test
+    public void read_truncatedFile_throwsCorrupt() throws IOException {
+        File file = folder.newFile("library.snapshot");
+        createSnapshot(1000).writeTo(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 100);
+        }
+        assertCorrupt(file);
+    }
+
+    @Test
+    public void read_otherVersion_throwsCorrupt() throws IOException {
+        File file = folder.newFile("library.snapshot");
+        createSnapshot(10).writeTo(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(4);
+            raf.writeInt(LibrarySnapshot.FORMAT_VERSION + 1);
+        }
+        assertCorrupt(file);
+    }
+
+    @Test
+    public void diff_detectsRemovedChangedAndNewSongs() {
+        LibrarySnapshot snapshot = createSnapshot(5); // ids 1..5
+        long[] currentIds = {1, 2, 4, 5, 42};
+        long[] currentDates = {
+                snapshot.getDateModified(0),
+                snapshot.getDateModified(1) + 10, // id 2 was modified
+                snapshot.getDateModified(3),      // id 3 was deleted
+                snapshot.getDateModified(4),
+                1_700_000_000L                    // id 42 is new
+        };
+        LibrarySnapshot.Delta delta = snapshot.diff(currentIds, currentDates, currentIds.length);
+        assertArrayEquals(new int[]{2}, delta.removedIndexes);
+        assertArrayEquals(new long[]{2, 42}, delta.changedIds);
+    }
+
+    @Test
+    public void diff_unchangedLibrary_isEmpty() {
+        LibrarySnapshot snapshot = createSnapshot(LARGE_LIBRARY);
+        long[] ids = new long[LARGE_LIBRARY];
+        long[] dates = new long[LARGE_LIBRARY];
+        for (int i = 0; i < LARGE_LIBRARY; i++) {
+            ids[i] = snapshot.getId(i);
+            dates[i] = snapshot.getDateModified(i);
+        }
+        assertTrue(snapshot.diff(ids, dates, LARGE_LIBRARY).isEmpty());
+    }
+
+    private static void assertCorrupt(File file) throws IOException {
+        try {
+            LibrarySnapshot.readFrom(file);
+            fail("Expected CorruptSnapshotException");
+        } catch (LibrarySnapshot.CorruptSnapshotException expected) {
+            // Caller falls back to a full scan
+        }
+    }
+
+    private static LibrarySnapshot createSnapshot(int count) {
+        long[] ids = new long[count];
+        String[] titles = new String[count];
+        String[] artists = new String[count];
+        long[] durations = new long[count];
+        String[] paths = new String[count];
+        long[] dateModified = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = i + 1;
+            titles[i] = "Track " + i + " \u0917\u093e\u0928\u093e"; // Non-ASCII to exercise UTF-8
+            artists[i] = i % 7 == 0 ? null : "Artist " + (i % 500);
+            durations[i] = 120_000L + i;
+            paths[i] = i % 11 == 0 ? null : "/storage/emulated/0/Music/track" + i + ".mp3";
+            dateModified[i] = 1_600_000_000L + i;
+        }
+        return new LibrarySnapshot(count, ids, titles, artists, durations, paths, dateModified,
+                12345L, "1.0|external_primary");
+    }
+}
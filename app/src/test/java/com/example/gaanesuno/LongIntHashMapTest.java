@@ -0,0 +1,97 @@
+package com.example.gaanesuno;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for the primitive id index.
+ */
+public class LongIntHashMapTest {
+
+    @Test
+    public void indexOf_mapsEveryIdToItsPosition() {
+        long[] ids = new long[100_000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = 1_000 + i; // Consecutive, like MediaStore ids
+        }
+        LongIntHashMap index = LongIntHashMap.indexOf(ids, ids.length);
+        assertEquals(ids.length, index.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(i, index.get(ids[i]));
+        }
+        assertEquals(LongIntHashMap.NO_VALUE, index.get(999));
+        assertEquals(LongIntHashMap.NO_VALUE, index.get(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void put_growsAndMatchesHashMap() {
+        Random random = new Random(1);
+        LongIntHashMap map = new LongIntHashMap(0);
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 50_000; i++) {
+            long key = random.nextLong() >> random.nextInt(64); // Mixed magnitudes, some negative
+            map.put(key, i);
+            expected.put(key, i);
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertEquals((int) entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void remove_keepsOtherKeysReachable() {
+        Random random = new Random(2);
+        LongIntHashMap map = new LongIntHashMap(0);
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(20_000); // Small key range, lots of collisions and removals
+            if (random.nextBoolean()) {
+                map.put(key, i);
+                expected.put(key, i);
+            } else {
+                Integer old = expected.remove(key);
+                assertEquals(old == null ? LongIntHashMap.NO_VALUE : old, map.remove(key));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (long key = 0; key < 20_000; key++) {
+            Integer value = expected.get(key);
+            assertEquals(value == null ? LongIntHashMap.NO_VALUE : value, map.get(key));
+        }
+    }
+
+    @Test
+    public void keys_returnsEveryKeyOnce() {
+        LongIntHashMap map = new LongIntHashMap(0);
+        for (long key = -50; key <= 50; key++) {
+            map.put(key, 1);
+        }
+        map.remove(7);
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        assertEquals(100, keys.length);
+        assertEquals(-50, keys[0]);
+        assertEquals(0, keys[50]); // The separately stored zero key
+        assertEquals(8, keys[57]);
+    }
+
+    @Test
+    public void zeroKey_isSupported() {
+        LongIntHashMap map = new LongIntHashMap(4);
+        assertFalse(map.containsKey(0));
+        map.put(0, 7);
+        map.put(0, 8);
+        assertEquals(1, map.size());
+        assertEquals(8, map.get(0));
+        map.clear();
+        assertEquals(LongIntHashMap.NO_VALUE, map.get(0));
+        assertEquals(0, map.size());
+    }
+}
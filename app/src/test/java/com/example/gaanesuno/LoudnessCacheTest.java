@@ -0,0 +1,105 @@
+package com.example.gaanesuno;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for the loudness cache: lookups by id and DATE_MODIFIED, the gains it hands out
+ * and the file format.
+ */
+public class LoudnessCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void gain_isOnlyGivenForTheAnalysedVersionOfTheFile() {
+        LoudnessCache cache = new LoudnessCache();
+        cache.put(7, 1_000, -12f, 0.9f);
+        assertTrue(cache.contains(7, 1_000));
+        assertFalse(cache.contains(7, 2_000)); // Replaced since, analysed again
+        assertEquals(Math.pow(10, -6 / 20.0), cache.getGain(7, 1_000), 1e-6);
+        assertEquals(1f, cache.getGain(7, 2_000), 0f);
+        assertEquals(1f, cache.getGain(8, 1_000), 0f);
+
+        cache.put(7, 2_000, -18f, 0.9f);
+        assertEquals(1, cache.size());
+        assertEquals(1f, cache.getGain(7, 2_000), 1e-6f);
+    }
+
+    @Test
+    public void quietSongs_areNotBoosted() {
+        LoudnessCache cache = new LoudnessCache();
+        cache.put(1, 0, -30f, 0.1f);
+        cache.put(2, 0, Float.NaN, 0f); // Couldn't be measured
+        assertEquals(1f, cache.getGain(1, 0), 0f);
+        assertEquals(1f, cache.getGain(2, 0), 0f);
+    }
+
+    @Test
+    public void gainDb_bringsSongsToTheTargetWithoutClipping() {
+        assertEquals(-5.0, LoudnessCache.gainDb(-13, 0.5), 1e-9);
+        assertEquals(6.02, LoudnessCache.gainDb(-26, 0.5), 0.01); // Limited by the peak, not the 8 dB to the target
+        assertEquals(0.0, LoudnessCache.gainDb(Double.NEGATIVE_INFINITY, 0), 0);
+        assertEquals(0.0, LoudnessCache.gainDb(Double.NaN, 0), 0);
+    }
+
+    @Test
+    public void roundTrip_keepsEveryRow() throws Exception {
+        LoudnessCache cache = new LoudnessCache();
+        for (int id = 1; id <= 100; id++) { // Grows past the initial capacity
+            cache.put(id, id * 10L, -10f - id / 10f, 1f / id);
+        }
+        File file = folder.newFile("loudness.cache");
+        cache.writeTo(file);
+        assertEquals(12 + 100 * 24 + 8, file.length());
+
+        LoudnessCache read = LoudnessCache.readFrom(file);
+        assertEquals(100, read.size());
+        for (int id = 1; id <= 100; id++) {
+            assertTrue(read.contains(id, id * 10L));
+            assertEquals(cache.getGain(id, id * 10L), read.getGain(id, id * 10L), 0f);
+        }
+    }
+
+    @Test(expected = LoudnessCache.CorruptCacheException.class)
+    public void corruptFile_isRejected() throws Exception {
+        LoudnessCache cache = new LoudnessCache();
+        cache.put(1, 1, -14f, 0.8f);
+        File file = folder.newFile("loudness.cache");
+        cache.writeTo(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(20);
+            raf.write(0x55);
+        }
+        LoudnessCache.readFrom(file);
+    }
+
+    @Test
+    public void retainAll_dropsSongsNoLongerInTheLibrary() {
+        LoudnessCache cache = new LoudnessCache();
+        for (int id = 1; id <= 5; id++) {
+            cache.put(id, 0, -10f, 1f);
+        }
+        List<Song> songs = new ArrayList<>();
+        songs.add(new Song(2, "Two", null, null, 1_000, "/two.mp3", 0));
+        songs.add(new Song(5, "Five", null, null, 1_000, "/five.mp3", 0));
+        cache.retainAll(SongStore.of(songs));
+
+        assertEquals(2, cache.size());
+        assertTrue(cache.contains(2, 0));
+        assertTrue(cache.contains(5, 0));
+        assertFalse(cache.contains(1, 0));
+        cache.put(9, 0, -10f, 1f); // Rows and index still agree after compacting
+        assertTrue(cache.contains(9, 0));
+        assertTrue(cache.contains(5, 0));
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.gaanesuno;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for the loudness meter on the stereo 1 kHz sine cases of EBU Tech 3341, where a
+ * sine of -23 dBFS in both channels measures -23 LUFS.
+ */
+public class LoudnessMeterTest {
+
+    private static final int SAMPLE_RATE = 48_000;
+
+    @Test
+    public void steadySine_measuresItsLevel() {
+        LoudnessMeter meter = new LoudnessMeter(2, SAMPLE_RATE);
+        feedSine(meter, -23, 20);
+        assertEquals(-23.0, meter.getIntegratedLoudness(), 0.1);
+        assertEquals(Math.pow(10, -23 / 20.0), meter.getPeak(), 1e-4);
+    }
+
+    @Test
+    public void otherSampleRate_measuresTheSame() {
+        LoudnessMeter meter = new LoudnessMeter(2, 44_100);
+        feedSine(meter, -23, 20);
+        assertEquals(-23.0, meter.getIntegratedLoudness(), 0.1);
+    }
+
+    @Test
+    public void relativeGate_ignoresQuietPassages() {
+        LoudnessMeter meter = new LoudnessMeter(2, SAMPLE_RATE);
+        feedSine(meter, -36, 10);
+        feedSine(meter, -23, 60);
+        feedSine(meter, -36, 10);
+        assertEquals(-23.0, meter.getIntegratedLoudness(), 0.1);
+    }
+
+    @Test
+    public void absoluteGate_ignoresNearSilence() {
+        LoudnessMeter meter = new LoudnessMeter(2, SAMPLE_RATE);
+        feedSine(meter, -72, 10);
+        feedSine(meter, -36, 10);
+        feedSine(meter, -23, 60);
+        feedSine(meter, -36, 10);
+        feedSine(meter, -72, 10);
+        assertEquals(-23.0, meter.getIntegratedLoudness(), 0.1);
+    }
+
+    @Test
+    public void silenceAndShortClips_haveNoLoudness() {
+        LoudnessMeter meter = new LoudnessMeter(2, SAMPLE_RATE);
+        meter.process(new float[2 * SAMPLE_RATE], 0, SAMPLE_RATE);
+        assertEquals(Double.NEGATIVE_INFINITY, meter.getIntegratedLoudness(), 0);
+
+        meter.reset();
+        feedSine(meter, -23, 0.3); // Shorter than one 400 ms block
+        assertEquals(Double.NEGATIVE_INFINITY, meter.getIntegratedLoudness(), 0);
+    }
+
+    @Test
+    public void pcm16_measuresLikeFloat() {
+        LoudnessMeter meter = new LoudnessMeter(2, SAMPLE_RATE);
+        int frames = SAMPLE_RATE * 10;
+        short[] pcm = new short[frames * 2];
+        double amplitude = Math.pow(10, -18 / 20.0);
+        for (int i = 0; i < frames; i++) {
+            short sample = (short) Math.round(32768 * amplitude * Math.sin(2 * Math.PI * 1_000 * i / SAMPLE_RATE));
+            pcm[i * 2] = sample;
+            pcm[i * 2 + 1] = sample;
+        }
+        for (int offset = 0; offset < frames; offset += 1_152) { // In decoder-sized pieces
+            meter.process(pcm, offset * 2, Math.min(1_152, frames - offset));
+        }
+        assertEquals(-18.0, meter.getIntegratedLoudness(), 0.1);
+        assertEquals(frames, meter.getFrames());
+    }
+
+    /** Stereo 1 kHz sine, the same in both channels, at a peak level in dBFS. */
+    private static void feedSine(LoudnessMeter meter, double levelDb, double seconds) {
+        double amplitude = Math.pow(10, levelDb / 20);
+        int frames = (int) Math.round(seconds * meter.getSampleRate());
+        float[] block = new float[2 * 1_024];
+        for (int done = 0; done < frames; ) {
+            int count = Math.min(1_024, frames - done);
+            for (int i = 0; i < count; i++) {
+                float sample = (float) (amplitude * Math.sin(2 * Math.PI * 1_000 * (done + i) / meter.getSampleRate()));
+                block[i * 2] = sample;
+                block[i * 2 + 1] = sample;
+            }
+            meter.process(block, 0, count);
+            done += count;
+        }
+    }
+}
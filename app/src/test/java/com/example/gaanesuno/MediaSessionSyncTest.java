@@ -0,0 +1,137 @@
+package com.example.gaanesuno;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for the media session sync on a {@link VirtualClock}: pushes follow timeline
+ * changes only, metadata and modes are diffed, and a looping song is pushed once per loop.
+ */
+public class MediaSessionSyncTest {
+
+    private static final int SONG_MS = 180_000;
+
+    private final VirtualClock clock = new VirtualClock();
+    private final RecordingSession session = new RecordingSession();
+    private final MediaSessionSync sync = new MediaSessionSync(session, new ClockTimer(), clock::now);
+
+    private final Song first = new Song(1, "First", "Artist", SONG_MS, "/music/1.mp3", 1_000);
+    private final Song second = new Song(2, "Second", "Artist", SONG_MS, "/music/2.mp3", 1_000);
+
+    @Test
+    public void playingSong_isOnePushWithNoPeriodicUpdates() {
+        sync.onPlaybackState(state(first, PlaybackState.Status.PLAYING, 5_000, false));
+        clock.advance(60_000);
+
+        assertEquals(1, sync.getStatePushes());
+        assertEquals(1, sync.getMetadataPushes());
+        assertEquals(5_000, (int) session.positions.get(0));
+        assertEquals("First", session.titles.get(0));
+    }
+
+    @Test
+    public void queueChangeOnTheSameTimeline_pushesOnlyTheModes() {
+        PlaybackState playing = state(first, PlaybackState.Status.PLAYING, 0, false);
+        sync.onPlaybackState(playing);
+        sync.onPlaybackState(playing.withQueue(true, PlaybackController.REPEAT_ALL, 1));
+
+        assertEquals(1, sync.getStatePushes());
+        assertEquals(1, sync.getMetadataPushes());
+        assertEquals(2, session.modes.size());
+        assertEquals("shuffle repeat " + PlaybackController.REPEAT_ALL, session.modes.get(1));
+    }
+
+    @Test
+    public void pauseAndNextSong_pushStateAndMetadata() {
+        sync.onPlaybackState(state(first, PlaybackState.Status.PLAYING, 0, false));
+        clock.advance(10_000);
+        sync.onPlaybackState(state(first, PlaybackState.Status.PAUSED, 10_000, false));
+        sync.onPlaybackState(state(second, PlaybackState.Status.PREPARING, 0, false));
+
+        assertEquals(3, sync.getStatePushes());
+        assertEquals(2, sync.getMetadataPushes()); // Pausing keeps the metadata
+        assertEquals(SONG_MS, (int) session.durations.get(1)); // Library duration while loading
+    }
+
+    @Test
+    public void preparedDurationDiffering_pushesMetadataAgain() {
+        sync.onPlaybackState(new PlaybackState(first, 0, PlaybackState.Status.PREPARING, 0, clock.now(), 0));
+        sync.onPlaybackState(new PlaybackState(first, 0, PlaybackState.Status.PLAYING, 0, clock.now(), SONG_MS + 250));
+
+        assertEquals(2, sync.getMetadataPushes());
+        assertEquals(SONG_MS + 250, (int) session.durations.get(1));
+    }
+
+    @Test
+    public void loopingSong_isPushedAgainAtEachLoop() {
+        sync.onPlaybackState(state(first, PlaybackState.Status.PLAYING, SONG_MS - 1_000, true));
+        clock.advance(1_000);
+        assertEquals(2, sync.getStatePushes());
+        assertEquals(0, (int) session.positions.get(1));
+
+        clock.advance(SONG_MS);
+        assertEquals(3, sync.getStatePushes());
+    }
+
+    @Test
+    public void pauseOrRelease_stopsTheLoopPushes() {
+        sync.onPlaybackState(state(first, PlaybackState.Status.PLAYING, 0, true));
+        sync.onPlaybackState(state(first, PlaybackState.Status.PAUSED, 0, true));
+        clock.advance(SONG_MS * 2);
+        assertEquals(2, sync.getStatePushes());
+
+        sync.onPlaybackState(state(first, PlaybackState.Status.PLAYING, 0, true));
+        sync.release();
+        clock.advance(SONG_MS * 2);
+        assertEquals(3, sync.getStatePushes());
+    }
+
+    private PlaybackState state(Song song, PlaybackState.Status status, int positionMs, boolean looping) {
+        return new PlaybackState(song, 0, status, positionMs, clock.now(), SONG_MS, 1f, looping);
+    }
+
+    private static final class RecordingSession implements MediaSessionSync.Session {
+        final List<String> titles = new ArrayList<>();
+        final List<Integer> durations = new ArrayList<>();
+        final List<Integer> positions = new ArrayList<>();
+        final List<String> modes = new ArrayList<>();
+
+        @Override
+        public void setMetadata(Song song, int durationMs) {
+            titles.add(song != null ? song.getTitle() : null);
+            durations.add(durationMs);
+        }
+
+        @Override
+        public void setPlaybackState(PlaybackState state, int positionMs, long positionUptimeMs) {
+            positions.add(positionMs);
+        }
+
+        @Override
+        public void setModes(boolean shuffle, int repeatMode) {
+            modes.add((shuffle ? "shuffle" : "in order") + " repeat " + repeatMode);
+        }
+    }
+
+    /** The sync's timer on the virtual clock, like the playback Handler on the device. */
+    private final class ClockTimer implements SeekScrubber.Timer {
+        private final Map<Runnable, VirtualClock.Task> posted = new HashMap<>();
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            posted.put(task, clock.postDelayed(task, delayMs));
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            VirtualClock.Task scheduled = posted.remove(task);
+            if (scheduled != null) scheduled.cancel();
+        }
+    }
+}
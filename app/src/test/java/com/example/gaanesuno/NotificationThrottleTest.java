@@ -0,0 +1,123 @@
+package com.example.gaanesuno;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for the notification throttle on a {@link VirtualClock}: identical requests are
+ * dropped, bursts become one post of the newest state, and the counters add up.
+ */
+public class NotificationThrottleTest {
+
+    private final VirtualClock clock = new VirtualClock();
+    private final NotificationStats stats = new NotificationStats();
+    private final List<String> posts = new ArrayList<>();
+    private final NotificationThrottle throttle = new NotificationThrottle(
+            (song, isPlaying) -> posts.add(song.getTitle() + (isPlaying ? " playing" : " paused")),
+            new ClockTimer(), clock::now, stats, NotificationThrottle.DEFAULT_INTERVAL_MS);
+
+    private final Song first = song(1, "First");
+    private final Song second = song(2, "Second");
+
+    @Test
+    public void firstRequest_isPostedRightAway() {
+        throttle.request(first, true);
+        assertEquals(1, posts.size());
+        assertEquals("First playing", posts.get(0));
+    }
+
+    @Test
+    public void identicalRequest_isDropped() {
+        throttle.request(first, true);
+        clock.advance(1_000);
+        throttle.request(song(1, "First"), true); // Same id and file, another object
+        clock.advance(1_000);
+
+        assertEquals(1, posts.size());
+        assertEquals(2, stats.getRequested());
+        assertEquals(1, stats.getPerformed());
+        assertEquals(1, stats.getIdentical());
+    }
+
+    @Test
+    public void changedFile_isPostedAgain() {
+        throttle.request(first, true);
+        clock.advance(1_000);
+        throttle.request(new Song(1, "First, retagged", "Artist", 180_000, "/music/1.mp3", 2_000), true);
+        assertEquals(2, posts.size());
+    }
+
+    @Test
+    public void burst_becomesOnePostOfTheNewestState() {
+        throttle.request(first, false);
+        throttle.request(first, true);
+        throttle.request(second, false);
+        throttle.request(second, true);
+        assertEquals(1, posts.size()); // Only the leading one so far
+
+        clock.advance(NotificationThrottle.DEFAULT_INTERVAL_MS);
+        assertEquals(2, posts.size());
+        assertEquals("Second playing", posts.get(1));
+        assertEquals(4, stats.getRequested());
+        assertEquals(2, stats.getPerformed());
+        assertEquals(2, stats.getCoalesced());
+    }
+
+    @Test
+    public void burstEndingWhereItStarted_postsNothingMore() {
+        throttle.request(first, true);
+        throttle.request(first, false);
+        throttle.request(first, true);
+        clock.advance(1_000);
+
+        assertEquals(1, posts.size());
+        assertEquals(1, stats.getIdentical());
+    }
+
+    @Test
+    public void reset_dropsTheWaitingPostAndPostsTheNextRequest() {
+        throttle.request(first, true);
+        throttle.request(second, true);
+        throttle.reset(); // Notification removed
+        clock.advance(1_000);
+        assertEquals(1, posts.size());
+
+        throttle.request(first, true); // Same as the last post, but nothing is shown any more
+        assertEquals(2, posts.size());
+    }
+
+    @Test
+    public void toText_reportsRequestedAndPosted() {
+        throttle.request(first, true);
+        throttle.request(first, true);
+        assertTrue(stats.toText().contains("requested: 2, posted: 1"));
+        stats.reset();
+        assertEquals(0, stats.getRequested());
+    }
+
+    private static Song song(long id, String title) {
+        return new Song(id, title, "Artist", 180_000, "/music/" + id + ".mp3", 1_000);
+    }
+
+    /** The throttle's timer on the virtual clock, like the playback Handler on the device. */
+    private final class ClockTimer implements SeekScrubber.Timer {
+        private final Map<Runnable, VirtualClock.Task> posted = new HashMap<>();
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            posted.put(task, clock.postDelayed(task, delayMs));
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            VirtualClock.Task scheduled = posted.remove(task);
+            if (scheduled != null) scheduled.cancel();
+        }
+    }
+}
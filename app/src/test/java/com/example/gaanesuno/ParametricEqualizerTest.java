@@ -0,0 +1,109 @@
+package com.example.gaanesuno;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for the equalizer's frequency response: sine waves through the filters against
+ * the response computed from the coefficients, and against the gains the bands were set to.
+ */
+public class ParametricEqualizerTest {
+
+    private static final int SAMPLE_RATE = 48_000;
+
+    @Test
+    public void peak_hasItsGainAtTheCentreAndNoneFarAway() {
+        ParametricEqualizer eq = new ParametricEqualizer(1, 1, SAMPLE_RATE);
+        eq.setBand(0, ParametricEqualizer.BandType.PEAK, 1_000, 6, 1.0);
+        assertEquals(6.0, eq.magnitudeDb(1_000), 0.01);
+        assertEquals(0.0, eq.magnitudeDb(20), 0.1);
+        assertEquals(0.0, eq.magnitudeDb(20_000), 0.2);
+        assertEquals(6.0, measuredGainDb(eq, 1_000), 0.05);
+    }
+
+    @Test
+    public void shelves_boostOrCutTheirSideOnly() {
+        ParametricEqualizer low = new ParametricEqualizer(1, 1, SAMPLE_RATE);
+        low.setBand(0, ParametricEqualizer.BandType.LOW_SHELF, 200, 8, 0.707);
+        assertEquals(8.0, low.magnitudeDb(20), 0.1);
+        assertEquals(4.0, low.magnitudeDb(200), 0.1); // Half way at the corner
+        assertEquals(0.0, low.magnitudeDb(10_000), 0.05);
+
+        ParametricEqualizer high = new ParametricEqualizer(1, 1, SAMPLE_RATE);
+        high.setBand(0, ParametricEqualizer.BandType.HIGH_SHELF, 5_000, -6, 0.707);
+        assertEquals(-6.0, high.magnitudeDb(20_000), 0.2);
+        assertEquals(0.0, high.magnitudeDb(100), 0.05);
+    }
+
+    @Test
+    public void filteredSines_matchTheComputedResponse() {
+        ParametricEqualizer eq = new ParametricEqualizer(5, 1, SAMPLE_RATE);
+        EqualizerPreset.ROCK.applyTo(eq);
+        for (double frequency : new double[]{40, 100, 440, 1_000, 3_600, 8_000, 15_000}) {
+            ParametricEqualizer fresh = new ParametricEqualizer(5, 1, SAMPLE_RATE);
+            EqualizerPreset.ROCK.applyTo(fresh);
+            assertEquals("At " + frequency + " Hz", eq.magnitudeDb(frequency), measuredGainDb(fresh, frequency), 0.05);
+        }
+    }
+
+    @Test
+    public void presetBands_reachRoughlyTheirGainsAtTheirFrequencies() {
+        ParametricEqualizer eq = new ParametricEqualizer(5, 1, SAMPLE_RATE);
+        EqualizerPreset preset = EqualizerPreset.BASS_BOOST;
+        preset.applyTo(eq);
+        assertEquals(6.0, eq.magnitudeDb(30), 1.0); // Deep bass: the low shelf plus the 230 Hz peak's skirt
+        assertEquals(0.0, eq.magnitudeDb(5_000), 0.5);
+        assertTrue(eq.magnitudeDb(60) > eq.magnitudeDb(910));
+    }
+
+    @Test
+    public void flat_passesTheSignalThroughUnchanged() {
+        ParametricEqualizer eq = new ParametricEqualizer(5, 2, SAMPLE_RATE);
+        EqualizerPreset.FLAT.applyTo(eq);
+        float[] samples = {0.5f, -0.25f, 0.125f, 1.0f, -1.0f, 0.0f};
+        float[] copy = samples.clone();
+        eq.process(samples, 0, 3);
+        assertArrayEquals(copy, samples, 0f);
+    }
+
+    @Test
+    public void channels_areFilteredIndependently() {
+        ParametricEqualizer eq = new ParametricEqualizer(1, 2, SAMPLE_RATE);
+        eq.setBand(0, ParametricEqualizer.BandType.PEAK, 1_000, 12, 1.0);
+        float[] samples = new float[2 * 4_800];
+        for (int i = 0; i < 4_800; i++) {
+            samples[i * 2] = (float) Math.sin(2 * Math.PI * 1_000 * i / SAMPLE_RATE) * 0.1f; // Left only
+        }
+        eq.process(samples, 0, 4_800);
+        for (int i = 0; i < 4_800; i++) {
+            assertEquals(0f, samples[i * 2 + 1], 0f);
+        }
+    }
+
+    /** Gain in dB of a sine at {@code frequency} through the filter, once it has settled. */
+    static double measuredGainDb(ParametricEqualizer eq, double frequency) {
+        int settle = SAMPLE_RATE / 2;
+        int measure = SAMPLE_RATE; // Whole periods for every tested frequency
+        float[] block = new float[1_024];
+        double inEnergy = 0;
+        double outEnergy = 0;
+        int n = 0;
+        while (n < settle + measure) {
+            int count = Math.min(block.length, settle + measure - n);
+            for (int i = 0; i < count; i++) {
+                block[i] = (float) (0.25 * Math.sin(2 * Math.PI * frequency * (n + i) / SAMPLE_RATE));
+            }
+            float[] input = block.clone();
+            eq.process(block, 0, count);
+            for (int i = 0; i < count; i++) {
+                if (n + i >= settle) {
+                    inEnergy += input[i] * input[i];
+                    outEnergy += block[i] * block[i];
+                }
+            }
+            n += count;
+        }
+        return 10 * Math.log10(outEnergy / inEnergy);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.gaanesuno;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for handing playback commands to the playback thread.
+ */
+public class PlaybackCommandQueueTest {
+
+    @Test
+    public void burst_isExecutedInOrderByOneDrain() {
+        List<Runnable> scheduled = new ArrayList<>();
+        List<PlaybackCommand> executed = new ArrayList<>();
+        PlaybackCommandQueue queue = new PlaybackCommandQueue(scheduled::add, executed::add);
+
+        queue.post(PlaybackCommand.playIndex(3));
+        queue.post(PlaybackCommand.next());
+        queue.post(PlaybackCommand.seek(1_500));
+        assertEquals(1, scheduled.size()); // One wake-up for the whole burst
+        assertTrue(executed.isEmpty()); // Nothing runs on the posting thread
+
+        scheduled.get(0).run();
+        assertEquals(3, executed.size());
+        assertEquals(PlaybackCommand.Type.PLAY_INDEX, executed.get(0).getType());
+        assertEquals(3, executed.get(0).getIndex());
+        assertEquals(PlaybackCommand.Type.NEXT, executed.get(1).getType());
+        assertEquals(1_500, executed.get(2).getIndex());
+        assertEquals(3, queue.getExecutedCount());
+        assertEquals(1, queue.getDrainCount());
+
+        queue.post(PlaybackCommand.pause()); // After a drain the next post wakes the thread again
+        assertEquals(2, scheduled.size());
+    }
+
+    @Test
+    public void commandPostedWhileExecuting_runsExactlyOnce() {
+        List<Runnable> scheduled = new ArrayList<>();
+        List<PlaybackCommand> executed = new ArrayList<>();
+        PlaybackCommandQueue[] queue = new PlaybackCommandQueue[1];
+        queue[0] = new PlaybackCommandQueue(scheduled::add, command -> {
+            executed.add(command);
+            if (command.getType() == PlaybackCommand.Type.PLAY) {
+                queue[0].post(PlaybackCommand.pause()); // E.g. a player callback reacting to a command
+            }
+        });
+
+        queue[0].post(PlaybackCommand.play());
+        for (int i = 0; i < scheduled.size(); i++) {
+            scheduled.get(i).run();
+        }
+        assertEquals(2, executed.size());
+        assertEquals(PlaybackCommand.Type.PAUSE, executed.get(1).getType());
+        assertEquals(2, queue[0].getPostedCount());
+    }
+
+    @Test
+    public void concurrentProducers_keepTheirOrderOnOneThread() throws Exception {
+        int producers = 4;
+        int perProducer = 20_000;
+        ExecutorService playbackThread = Executors.newSingleThreadExecutor();
+        Thread[] executingThread = new Thread[1];
+        int[] lastSeen = new int[producers];
+        Arrays.fill(lastSeen, -1);
+        boolean[] outOfOrder = new boolean[1];
+        PlaybackCommandQueue queue = new PlaybackCommandQueue(playbackThread, command -> {
+            // Only the playback thread gets here, so plain fields are safe
+            if (executingThread[0] == null) executingThread[0] = Thread.currentThread();
+            if (executingThread[0] != Thread.currentThread()) outOfOrder[0] = true;
+            int producer = command.getIndex() / perProducer;
+            int sequence = command.getIndex() % perProducer;
+            if (sequence != lastSeen[producer] + 1) outOfOrder[0] = true;
+            lastSeen[producer] = sequence;
+        });
+
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    queue.post(PlaybackCommand.seek(producer * perProducer + i));
+                }
+            });
+            threads[p].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        playbackThread.submit(() -> { }).get(5, TimeUnit.SECONDS); // Queued after the last drain
+        playbackThread.shutdown();
+
+        assertEquals(producers * perProducer, queue.getExecutedCount());
+        assertFalse(outOfOrder[0]);
+        for (int p = 0; p < producers; p++) {
+            assertEquals(perProducer - 1, lastSeen[p]);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package com.example.gaanesuno;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for the playback logic, on {@link FakePlaybackEngine}s and a {@link VirtualClock}:
+ * minutes of music play in a few milliseconds of test time.
+ */
+public class PlaybackControllerTest {
+
+    private static final int SONG_MS = 180_000;
+    private static final long PREPARE_MS = FakePlaybackEngine.Factory.PREPARE_MS;
+
+    private VirtualClock clock;
+    private FakePlaybackEngine.Factory engines;
+    private RecordingHost host;
+    private PlaybackController controller;
+
+    @Before
+    public void setUp() {
+        clock = new VirtualClock();
+        engines = new FakePlaybackEngine.Factory(clock);
+        host = new RecordingHost();
+        PlaybackLatencyTracker tracker = new PlaybackLatencyTracker(() -> clock.now() * 1_000_000);
+        controller = new PlaybackController(host, engines, new NoCrossfade(), tracker, clock::now);
+        controller.setSongList(library(5));
+    }
+
+    @Test
+    public void playSong_startsOnceLoadedAndPreloadsTheNextSong() {
+        controller.playSong(0);
+        assertEquals(PlaybackState.Status.PREPARING, controller.getState().getStatus());
+        assertEquals(1, controller.getState().getSong().getId());
+        assertTrue(engines.getLoads().isEmpty()); // Loaded after the queued commands, not inside playSong
+
+        clock.advance(PREPARE_MS);
+        assertEquals(PlaybackState.Status.PLAYING, controller.getState().getStatus());
+        assertTrue(host.foreground);
+        assertTrue(host.progressUpdates);
+
+        clock.advance(PREPARE_MS);
+        assertEquals(Arrays.asList(1L, 2L), engines.getLoads());
+        FakePlaybackEngine current = engines.getEngines().get(0);
+        assertSame(engines.getEngines().get(1), current.getNext()); // Linked for a gapless start
+
+        clock.advance(10_000);
+        assertEquals(PREPARE_MS + 10_000, controller.getState().getPositionMs(clock.now()));
+    }
+
+    @Test
+    public void repeatOff_playsTheListThroughGaplesslyAndStopsAfterTheLast() {
+        controller.setSongList(library(3));
+        controller.playSong(0);
+        clock.advance(PREPARE_MS);
+
+        clock.advance(SONG_MS);
+        assertPlaying(2, 1);
+        clock.advance(SONG_MS);
+        assertPlaying(3, 2);
+        assertEquals(Arrays.asList(1L, 2L, 3L), engines.getLoads()); // Each song loaded once, ahead of time
+
+        clock.advance(SONG_MS);
+        PlaybackState state = controller.getState();
+        assertEquals(PlaybackState.Status.PAUSED, state.getStatus());
+        assertEquals(3, state.getSong().getId());
+        assertEquals(0, state.getPositionMs(clock.now())); // Back to the start of the last song
+        assertFalse(host.foreground);
+        assertTrue(host.notificationShown);
+    }
+
+    @Test
+    public void repeatAll_wrapsToTheFirstSong() {
+        controller.setSongList(library(2));
+        controller.setRepeatMode(PlaybackController.REPEAT_ALL);
+        controller.playSong(1);
+        clock.advance(PREPARE_MS * 2);
+
+        clock.advance(SONG_MS);
+        assertPlaying(1, 0);
+    }
+
+    @Test
+    public void repeatOne_loopsTheSongWithoutLoadingItAgain() {
+        controller.setRepeatMode(PlaybackController.REPEAT_ONE);
+        controller.playSong(2);
+        clock.advance(PREPARE_MS);
+
+        clock.advance(SONG_MS * 3 + 5_000);
+        assertPlaying(3, 2);
+        assertEquals(5_000, controller.getState().getPositionMs(clock.now()));
+        assertEquals(Arrays.asList(3L), engines.getLoads()); // Nothing preloaded either
+
+        PlaybackState state = controller.getState(); // The UI extrapolates across the loop from it
+        assertTrue(state.isLooping());
+        assertEquals(10_000, state.getPositionMs(clock.now() + SONG_MS + 5_000));
+    }
+
+    @Test
+    public void skipBurst_loadsOnlyTheSongItEndsOn() {
+        controller.playSong(0);
+        clock.advance(PREPARE_MS * 2);
+        engines.getLoads().clear();
+
+        controller.next();
+        controller.next();
+        controller.next();
+        clock.runDue();
+        assertEquals(Arrays.asList(4L), engines.getLoads());
+
+        clock.advance(PREPARE_MS);
+        assertPlaying(4, 3);
+    }
+
+    @Test
+    public void skipToThePreloadedSong_startsWithoutPreparing() {
+        controller.playSong(0);
+        clock.advance(PREPARE_MS * 2);
+
+        controller.next();
+        clock.runDue();
+        assertPlaying(2, 1);
+        assertEquals(Arrays.asList(1L, 2L, 3L), engines.getLoads()); // Song 2 not loaded again, song 3 preloading
+    }
+
+    @Test
+    public void restore_seeksToTheSavedPositionAndStaysPaused() {
+        controller.restore(library(5).get(3), 3, false, 42_000);
+        clock.advance(PREPARE_MS);
+
+        PlaybackState state = controller.getState();
+        assertEquals(PlaybackState.Status.PAUSED, state.getStatus());
+        assertEquals(4, state.getSong().getId());
+        assertEquals(42_000, state.getPositionMs(clock.now() + 60_000));
+        assertEquals(42_000, host.lastProgressMs);
+        assertFalse(host.foreground);
+
+        controller.play();
+        clock.advance(1_000);
+        assertPlaying(4, 3);
+        assertEquals(43_000, controller.getState().getPositionMs(clock.now()));
+    }
+
+    @Test
+    public void restore_ofASongThatWasPlaying_resumesPlaying() {
+        controller.restore(library(5).get(1), 1, true, 90_000);
+        clock.advance(PREPARE_MS + 500);
+
+        assertPlaying(2, 1);
+        assertEquals(90_500, controller.getState().getPositionMs(clock.now()));
+    }
+
+    @Test
+    public void songThatFailsToLoad_isSkipped() {
+        engines.failToLoad(2);
+        controller.playSong(0);
+        clock.advance(PREPARE_MS * 2); // The preload of song 2 fails quietly
+
+        controller.next();
+        clock.advance(PREPARE_MS);
+        assertPlaying(3, 2);
+        assertTrue(host.messages.contains("Error loading song: Track 2. Skipping..."));
+    }
+
+    @Test
+    public void errorWhilePlaying_skipsToTheNextSong() {
+        engines.failWhilePlaying(1, 30_000);
+        controller.playSong(0);
+        clock.advance(PREPARE_MS);
+
+        clock.advance(30_000);
+        assertTrue(host.messages.contains("Error playing song. Skipping..."));
+        assertPlaying(2, 1); // The preloaded song, started without preparing
+    }
+
+    @Test
+    public void deniedAudioFocus_leavesTheSongPaused() {
+        host.grantFocus = false;
+        controller.playSong(0);
+        clock.advance(PREPARE_MS);
+
+        assertEquals(PlaybackState.Status.PAUSED, controller.getState().getStatus());
+        assertFalse(host.foreground);
+    }
+
+    @Test
+    public void trackGain_isSetOnEveryEngineASongIsLoadedInto() {
+        host.trackGains = new float[]{0, 0.5f, 0.25f, 1f};
+        controller.playSong(0);
+        clock.advance(PREPARE_MS * 2);
+
+        assertEquals(0.5f, engines.getEngines().get(0).getTrackGain(), 0f);
+        assertEquals(0.25f, engines.getEngines().get(1).getTrackGain(), 0f); // The preloaded next song
+        assertEquals(1f, engines.getEngines().get(0).getVolume(), 0f); // Fades and ducking stay relative to it
+    }
+
+    @Test
+    public void seekPreview_landsOnASyncFrameAndSeekToOnTheExactPosition() {
+        controller.playSong(0);
+        clock.advance(PREPARE_MS);
+
+        controller.seekPreview(61_500);
+        assertEquals(61_500, host.lastProgressMs); // The UI shows where the user asked for
+        controller.seekTo(62_345);
+        assertEquals(Arrays.asList(61_000, 62_345), engines.getSeeks());
+        assertEquals(0, host.seeksCompleted);
+
+        clock.advance(FakePlaybackEngine.Factory.SEEK_MS);
+        assertEquals(2, host.seeksCompleted);
+        assertEquals(62_345 + FakePlaybackEngine.Factory.SEEK_MS, controller.getState().getPositionMs(clock.now()));
+    }
+
+    @Test
+    public void state_carriesTheQueueSettingsAndAVersionOfTheQueue() {
+        controller.playSong(0);
+        clock.advance(PREPARE_MS);
+        int version = controller.getState().getQueueVersion();
+
+        controller.setShuffle(true);
+        controller.setRepeatMode(PlaybackController.REPEAT_ALL);
+        PlaybackState state = controller.getState();
+        assertTrue(state.isShuffle());
+        assertEquals(PlaybackController.REPEAT_ALL, state.getRepeatMode());
+        assertNotEquals(version, state.getQueueVersion()); // The active list was reordered
+
+        int shuffledVersion = state.getQueueVersion();
+        controller.setSongList(library(6));
+        assertNotEquals(shuffledVersion, controller.getState().getQueueVersion());
+    }
+
+    private void assertPlaying(long songId, int index) {
+        PlaybackState state = controller.getState();
+        assertEquals(PlaybackState.Status.PLAYING, state.getStatus());
+        assertEquals(songId, state.getSong().getId());
+        assertEquals(index, state.getIndex());
+        assertEquals(songId, host.lastSongId);
+    }
+
+    /** Songs with ids 1..count, titled "Track id". */
+    private static SongStore library(int count) {
+        List<Song> songs = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            songs.add(new Song(i, "Track " + i, "Artist", null, SONG_MS, "/music/track" + i + ".mp3", 0));
+        }
+        return SongStore.of(songs);
+    }
+
+    /** Runs posted tasks on the virtual clock and records what the service would show. */
+    private final class RecordingHost implements PlaybackController.Host {
+        boolean grantFocus = true;
+        boolean foreground;
+        boolean notificationShown;
+        boolean progressUpdates;
+        long lastSongId = -1;
+        int lastProgressMs = -1;
+        int seeksCompleted;
+        final List<String> messages = new ArrayList<>();
+        float[] trackGains = {}; // By song id, 1 past the end
+
+        @Override
+        public boolean requestAudioFocus() {
+            return grantFocus;
+        }
+
+        @Override
+        public float getTrackGain(Song song) {
+            return song.getId() < trackGains.length ? trackGains[(int) song.getId()] : 1f;
+        }
+
+        @Override
+        public void post(Runnable task) {
+            clock.post(task);
+        }
+
+        @Override
+        public void startProgressUpdates() {
+            progressUpdates = true;
+        }
+
+        @Override
+        public void stopProgressUpdates() {
+            progressUpdates = false;
+        }
+
+        @Override
+        public void showNotification(Song song, boolean isPlaying) {
+            notificationShown = true;
+            foreground = isPlaying;
+        }
+
+        @Override
+        public void removeNotification() {
+            notificationShown = false;
+            foreground = false;
+        }
+
+        @Override
+        public void onSongChanged(Song song, boolean isPlaying) {
+            lastSongId = song != null ? song.getId() : -1;
+        }
+
+        @Override
+        public void onPlaybackStateChanged(boolean isPlaying) {
+        }
+
+        @Override
+        public void onProgressUpdate(int positionMs, int durationMs) {
+            lastProgressMs = positionMs;
+        }
+
+        @Override
+        public void onSeekComplete() {
+            seeksCompleted++;
+        }
+
+        @Override
+        public void showMessage(String message) {
+            messages.add(message);
+        }
+
+        @Override
+        public void log(String message) {
+        }
+    }
+
+    /** Crossfade stays off in these tests; songs are linked gaplessly. */
+    private static final class NoCrossfade implements PlaybackController.Crossfader {
+        @Override
+        public int schedule(PlaybackEngine from, PlaybackEngine to, long delayMs, long fadeMs) {
+            throw new AssertionError("Crossfade is off");
+        }
+
+        @Override
+        public boolean cancel() {
+            return false;
+        }
+
+        @Override
+        public boolean isFading() {
+            return false;
+        }
+
+        @Override
+        public void setVolume(float volume) {
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.gaanesuno;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for the play path stage tracker, on a hand-driven clock.
+ */
+public class PlaybackLatencyTrackerTest {
+
+    private long now;
+    private final PlaybackLatencyTracker tracker = new PlaybackLatencyTracker(() -> now);
+
+    private void advanceMillis(long millis) {
+        now += millis * 1_000_000;
+    }
+
+    @Test
+    public void tapToFirstProgress_recordsEachStageAndTotal() {
+        tracker.markTap();
+        advanceMillis(3);
+        tracker.markPlayRequest("flac");
+        advanceMillis(40);
+        tracker.mark(PlaybackLatencyTracker.Stage.DATA_SOURCE_SET);
+        advanceMillis(200);
+        tracker.mark(PlaybackLatencyTracker.Stage.PREPARED);
+        advanceMillis(1);
+        tracker.mark(PlaybackLatencyTracker.Stage.AUDIO_FOCUS);
+        tracker.mark(PlaybackLatencyTracker.Stage.STARTED);
+        advanceMillis(10);
+        tracker.mark(PlaybackLatencyTracker.Stage.FIRST_PROGRESS);
+
+        assertEquals(3_000, tracker.getHistogram("flac", "PLAY_REQUEST").getMax());
+        assertEquals(200_000, tracker.getHistogram("flac", "PREPARED").getMax());
+        assertEquals(254_000, tracker.getHistogram("flac", PlaybackLatencyTracker.TOTAL).getMax());
+        assertEquals(1, tracker.getHistogram(PlaybackLatencyTracker.ALL_TYPES, PlaybackLatencyTracker.TOTAL).getCount());
+        assertNull(tracker.getHistogram("mp3", "PREPARED"));
+    }
+
+    @Test
+    public void stagesWithoutTraceOrOutOfOrder_areIgnored() {
+        tracker.mark(PlaybackLatencyTracker.Stage.PREPARED); // A restore, no play request
+        assertNull(tracker.getHistogram(PlaybackLatencyTracker.ALL_TYPES, "PREPARED"));
+
+        tracker.markPlayRequest("mp3"); // From the notification: no tap
+        advanceMillis(5);
+        tracker.mark(PlaybackLatencyTracker.Stage.PREPARED);
+        tracker.mark(PlaybackLatencyTracker.Stage.DATA_SOURCE_SET); // Late, ignored
+        tracker.mark(PlaybackLatencyTracker.Stage.FIRST_PROGRESS);
+        tracker.mark(PlaybackLatencyTracker.Stage.FIRST_PROGRESS); // Trace already ended
+        assertEquals(1, tracker.getHistogram("mp3", "PREPARED").getCount());
+        assertEquals(0, tracker.getHistogram("mp3", "DATA_SOURCE_SET").getCount());
+        assertEquals(1, tracker.getHistogram("mp3", PlaybackLatencyTracker.TOTAL).getCount());
+    }
+
+    @Test
+    public void newRequestAndCancel_dropUnfinishedTraces() {
+        tracker.markPlayRequest("mp3");
+        advanceMillis(5);
+        tracker.markPlayRequest("ogg"); // Skipped before the first one started
+        advanceMillis(7);
+        tracker.mark(PlaybackLatencyTracker.Stage.PREPARED);
+        assertEquals(7_000, tracker.getHistogram("ogg", "PREPARED").getMax());
+        assertNull(tracker.getHistogram("mp3", "PREPARED"));
+
+        tracker.cancel(); // Focus denied
+        tracker.mark(PlaybackLatencyTracker.Stage.STARTED);
+        assertEquals(0, tracker.getHistogram("ogg", "STARTED").getCount());
+
+        tracker.markTap();
+        advanceMillis(120_000); // Tap long ago, the request starts afresh
+        tracker.markPlayRequest("ogg");
+        assertEquals(0, tracker.getHistogram("ogg", "PLAY_REQUEST").getCount());
+    }
+
+    @Test
+    public void skipBurst_isTimedFromItsFirstRequest() {
+        tracker.markTap();
+        advanceMillis(2);
+        tracker.markPlayRequest("mp3");
+        for (int i = 0; i < 4; i++) {
+            advanceMillis(150); // Next, Next, Next... before anything played
+            tracker.markPlayRequest("flac");
+        }
+        advanceMillis(300);
+        tracker.mark(PlaybackLatencyTracker.Stage.PREPARED);
+        tracker.mark(PlaybackLatencyTracker.Stage.STARTED);
+        advanceMillis(10);
+        tracker.mark(PlaybackLatencyTracker.Stage.FIRST_PROGRESS);
+
+        assertEquals(4, tracker.getSupersededCount());
+        assertEquals(310_000, tracker.getHistogram("flac", PlaybackLatencyTracker.TOTAL).getMax()); // From the last request
+        assertEquals(912_000, tracker.getHistogram("flac", PlaybackLatencyTracker.BURST).getMax()); // From the tap
+        assertTrue(tracker.toText().contains("BURST"));
+
+        // A request after the song started is a new start, not part of the burst
+        tracker.markPlayRequest("flac");
+        advanceMillis(5);
+        tracker.mark(PlaybackLatencyTracker.Stage.STARTED);
+        tracker.markPlayRequest("flac");
+        advanceMillis(5);
+        tracker.mark(PlaybackLatencyTracker.Stage.FIRST_PROGRESS);
+        assertEquals(4, tracker.getSupersededCount());
+        assertEquals(1, tracker.getHistogram("flac", PlaybackLatencyTracker.BURST).getCount());
+    }
+
+    @Test
+    public void fileTypeOf_usesSafeExtensions() {
+        assertEquals("mp3", PlaybackLatencyTracker.fileTypeOf("/storage/Music/a.b/song.MP3"));
+        assertEquals("unknown", PlaybackLatencyTracker.fileTypeOf("/storage/Music/a.b/song"));
+        assertEquals("unknown", PlaybackLatencyTracker.fileTypeOf("/storage/Music/song."));
+        assertEquals("unknown", PlaybackLatencyTracker.fileTypeOf("/storage/Music/song.m\"p3"));
+        assertEquals("unknown", PlaybackLatencyTracker.fileTypeOf(null));
+    }
+
+    @Test
+    public void toJson_listsRecordedRows() {
+        tracker.markPlayRequest("m4a");
+        advanceMillis(2);
+        tracker.mark(PlaybackLatencyTracker.Stage.FIRST_PROGRESS);
+        // Percentiles are the middle of the bucket: 2000 us falls in [1920, 2048)
+        assertEquals("{\"unit\":\"us\",\"superseded\":0,\"fileTypes\":{"
+                + "\"all\":{\"FIRST_PROGRESS\":{\"count\":1,\"mean\":2000,\"p50\":1984,\"p90\":1984,\"p99\":1984,\"max\":2000},"
+                + "\"TOTAL\":{\"count\":1,\"mean\":2000,\"p50\":1984,\"p90\":1984,\"p99\":1984,\"max\":2000}},"
+                + "\"m4a\":{\"FIRST_PROGRESS\":{\"count\":1,\"mean\":2000,\"p50\":1984,\"p90\":1984,\"p99\":1984,\"max\":2000},"
+                + "\"TOTAL\":{\"count\":1,\"mean\":2000,\"p50\":1984,\"p90\":1984,\"p99\":1984,\"max\":2000}}}}",
+                tracker.toJson());
+        assertTrue(tracker.toText().contains("FIRST_PROGRESS"));
+    }
+}
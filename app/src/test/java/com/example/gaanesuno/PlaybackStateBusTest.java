@@ -0,0 +1,156 @@
+package com.example.gaanesuno;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for the playback state bus: several subscribers on their own executors, the
+ * latest snapshot for late subscribers, and coalescing when an executor falls behind.
+ */
+public class PlaybackStateBusTest {
+
+    private final PlaybackStateBus bus = new PlaybackStateBus();
+
+    @Test
+    public void subscribe_deliversTheLatestSnapshotRightAway() {
+        PlaybackState playing = state(1, PlaybackState.Status.PLAYING);
+        bus.publish(playing);
+
+        Recorder late = new Recorder();
+        bus.subscribe(late, Runnable::run);
+        assertEquals(1, late.states.size());
+        assertSame(playing, late.states.get(0));
+    }
+
+    @Test
+    public void everySubscriber_getsEverySnapshotOnItsOwnExecutor() {
+        Recorder main = new Recorder();
+        Recorder other = new Recorder();
+        QueuedExecutor otherThread = new QueuedExecutor();
+        bus.subscribe(main, Runnable::run);
+        bus.subscribe(other, otherThread);
+
+        PlaybackState paused = state(1, PlaybackState.Status.PAUSED);
+        bus.publish(paused);
+        assertSame(paused, main.states.get(main.states.size() - 1));
+        assertTrue(other.states.isEmpty()); // Not run yet
+
+        otherThread.runAll();
+        assertEquals(1, other.states.size());
+        assertSame(paused, other.states.get(0));
+        assertEquals(2, bus.getSubscriberCount());
+    }
+
+    @Test
+    public void slowExecutor_onlyGetsTheNewestSnapshot() {
+        Recorder subscriber = new Recorder();
+        QueuedExecutor executor = new QueuedExecutor();
+        bus.subscribe(subscriber, executor);
+        for (int i = 1; i <= 10; i++) {
+            bus.publish(state(i, PlaybackState.Status.PLAYING));
+        }
+        assertEquals(1, executor.tasks.size()); // One run scheduled, not eleven
+
+        executor.runAll();
+        assertEquals(1, subscriber.states.size());
+        assertEquals(10, subscriber.states.get(0).getIndex());
+    }
+
+    @Test
+    public void unsubscribe_dropsSnapshotsAlreadyQueued() {
+        Recorder subscriber = new Recorder();
+        QueuedExecutor executor = new QueuedExecutor();
+        bus.subscribe(subscriber, executor);
+        bus.publish(state(1, PlaybackState.Status.PLAYING));
+        bus.unsubscribe(subscriber);
+        executor.runAll();
+        bus.publish(state(2, PlaybackState.Status.PLAYING));
+        executor.runAll();
+
+        assertTrue(subscriber.states.isEmpty());
+        assertEquals(0, bus.getSubscriberCount());
+    }
+
+    @Test
+    public void subscribingAgain_movesToTheNewExecutor() {
+        Recorder subscriber = new Recorder();
+        QueuedExecutor first = new QueuedExecutor();
+        bus.subscribe(subscriber, first);
+        bus.subscribe(subscriber, Runnable::run);
+        first.runAll();
+        bus.publish(state(1, PlaybackState.Status.PLAYING));
+
+        assertEquals(2, subscriber.states.size()); // The latest on subscribing, then the new one
+        assertEquals(1, bus.getSubscriberCount());
+    }
+
+    @Test
+    public void subscribingWhilePublishing_endsOnTheLastSnapshot() throws Exception {
+        ExecutorService publisher = Executors.newSingleThreadExecutor();
+        ExecutorService delivery = Executors.newSingleThreadExecutor();
+        List<Recorder> subscribers = new ArrayList<>();
+        PlaybackState last = state(5_000, PlaybackState.Status.PLAYING);
+        publisher.execute(() -> {
+            for (int i = 0; i < 5_000; i++) {
+                bus.publish(state(i, PlaybackState.Status.PLAYING));
+            }
+            bus.publish(last);
+        });
+        for (int i = 0; i < 50; i++) {
+            Recorder subscriber = new Recorder();
+            subscribers.add(subscriber);
+            bus.subscribe(subscriber, delivery);
+        }
+        publisher.shutdown();
+        assertTrue(publisher.awaitTermination(10, TimeUnit.SECONDS));
+        delivery.shutdown();
+        assertTrue(delivery.awaitTermination(10, TimeUnit.SECONDS));
+
+        for (Recorder subscriber : subscribers) {
+            List<PlaybackState> states = subscriber.states;
+            assertSame(last, states.get(states.size() - 1));
+            for (int i = 1; i < states.size(); i++) {
+                assertTrue(states.get(i).getIndex() > states.get(i - 1).getIndex()); // Never an older one after a newer
+            }
+        }
+    }
+
+    /** A snapshot told apart by its index. */
+    private static PlaybackState state(int index, PlaybackState.Status status) {
+        return new PlaybackState(null, index, status, 0, 0, 180_000);
+    }
+
+    private static final class Recorder implements PlaybackStateBus.Subscriber {
+        final List<PlaybackState> states = new ArrayList<>();
+
+        @Override
+        public void onPlaybackState(PlaybackState state) {
+            states.add(state);
+        }
+    }
+
+    /** Runs tasks only when asked, like a busy main thread. */
+    private static final class QueuedExecutor implements java.util.concurrent.Executor {
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.gaanesuno;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for the playback state snapshot.
+ */
+public class PlaybackStateTest {
+
+    @Test
+    public void position_isExtrapolatedOnlyWhilePlaying() {
+        PlaybackState playing = new PlaybackState(null, 2, PlaybackState.Status.PLAYING, 10_000, 1_000, 180_000);
+        assertEquals(10_000, playing.getPositionMs(1_000));
+        assertEquals(12_500, playing.getPositionMs(3_500));
+        assertEquals(10_000, playing.getPositionMs(900)); // A clock read before the snapshot doesn't go back
+        assertEquals(180_000, playing.getPositionMs(500_000)); // Never past the end
+
+        PlaybackState paused = new PlaybackState(null, 2, PlaybackState.Status.PAUSED, 10_000, 1_000, 180_000);
+        assertEquals(10_000, paused.getPositionMs(60_000));
+        assertTrue(paused.isPrepared());
+        assertFalse(paused.isPlaying());
+    }
+
+    @Test
+    public void position_followsTheSpeedAndLoopsForRepeatOne() {
+        PlaybackState fast = new PlaybackState(null, 0, PlaybackState.Status.PLAYING, 10_000, 1_000, 180_000, 1.5f, false);
+        assertEquals(13_000, fast.getPositionMs(3_000));
+
+        PlaybackState looping = new PlaybackState(null, 0, PlaybackState.Status.PLAYING, 170_000, 0, 180_000, 1f, true);
+        assertEquals(179_000, looping.getPositionMs(9_000));
+        assertEquals(5_000, looping.getPositionMs(15_000)); // Started over, no new snapshot needed
+    }
+
+    @Test
+    public void sameTimeline_ignoresJitterButNotJumps() {
+        PlaybackState playing = new PlaybackState(null, 0, PlaybackState.Status.PLAYING, 10_000, 1_000, 180_000);
+        PlaybackState later = new PlaybackState(null, 0, PlaybackState.Status.PLAYING, 70_020, 61_000, 180_000);
+        assertTrue(later.sameTimeline(playing, 61_000, 50));
+
+        PlaybackState seeked = new PlaybackState(null, 0, PlaybackState.Status.PLAYING, 90_000, 61_000, 180_000);
+        assertFalse(seeked.sameTimeline(playing, 61_000, 50));
+        PlaybackState paused = new PlaybackState(null, 0, PlaybackState.Status.PAUSED, 70_000, 61_000, 180_000);
+        assertFalse(paused.sameTimeline(playing, 61_000, 50));
+        PlaybackState looping = new PlaybackState(null, 0, PlaybackState.Status.PLAYING, 70_000, 61_000, 180_000, 1f, true);
+        assertFalse(looping.sameTimeline(playing, 61_000, 50));
+    }
+
+    @Test
+    public void withQueue_keepsTheTimelineAndComparesTheSettings() {
+        PlaybackState state = new PlaybackState(null, 3, PlaybackState.Status.PLAYING, 10_000, 1_000, 180_000);
+        PlaybackState shuffled = state.withQueue(true, PlaybackController.REPEAT_ALL, 7);
+        assertTrue(shuffled.isShuffle());
+        assertEquals(PlaybackController.REPEAT_ALL, shuffled.getRepeatMode());
+        assertEquals(7, shuffled.getQueueVersion());
+        assertEquals(12_000, shuffled.getPositionMs(3_000));
+        assertTrue(shuffled.sameTimeline(state, 3_000, 0));
+
+        assertFalse(shuffled.sameQueue(state));
+        assertTrue(shuffled.sameQueue(state.withQueue(true, PlaybackController.REPEAT_ALL, 7)));
+        assertFalse(shuffled.sameQueue(state.withQueue(true, PlaybackController.REPEAT_ALL, 8)));
+    }
+
+    @Test
+    public void empty_isIdleAndUnprepared() {
+        assertEquals(PlaybackState.Status.IDLE, PlaybackState.EMPTY.getStatus());
+        assertNull(PlaybackState.EMPTY.getSong());
+        assertEquals(-1, PlaybackState.EMPTY.getIndex());
+        assertFalse(PlaybackState.EMPTY.isPrepared());
+        assertFalse(new PlaybackState(null, 0, PlaybackState.Status.PREPARING, 0, 0, 0).isPrepared());
+        assertEquals(0, PlaybackState.EMPTY.getDurationMs());
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.gaanesuno;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for the seek bar ticker on a {@link VirtualClock}: positions come from the
+ * snapshot alone, ticks follow what the display can show and stop when nothing moves.
+ */
+public class ProgressTickerTest {
+
+    private static final int SONG_MS = 180_000;
+
+    private final VirtualClock clock = new VirtualClock();
+    private final List<Integer> shown = new ArrayList<>();
+    private PlaybackState state = PlaybackState.EMPTY;
+    private final ProgressTicker ticker = new ProgressTicker(() -> state,
+            (positionMs, durationMs) -> shown.add(positionMs), new ClockTimer(), clock::now);
+
+    @Test
+    public void playing_ticksOncePerSecondWithoutAWidth() {
+        state = playing(10_400, 1f);
+        ticker.start();
+        clock.advance(10_000);
+
+        assertEquals(10_400, (int) shown.get(0));
+        assertEquals(11_000, (int) shown.get(1)); // Lined up with the label's seconds
+        assertEquals(11, ticker.getTicks());
+        assertTrue(ticker.isRunning());
+    }
+
+    @Test
+    public void wideBar_ticksPerPixelButNotFasterThanFrames() {
+        state = playing(0, 1f);
+        ticker.setWidthPx(1_000); // 180 ms per pixel
+        ticker.start();
+        clock.advance(1_800);
+        assertEquals(11, ticker.getTicks());
+
+        state = playing(0, 1f, 30_000);
+        ticker.setWidthPx(10_000); // 3 ms per pixel: a frame is the limit
+        ticker.start();
+        long before = ticker.getTicks();
+        clock.advance(160);
+        assertEquals(11, ticker.getTicks() - before);
+    }
+
+    @Test
+    public void speed_shortensTheTicks() {
+        state = playing(0, 2f);
+        ticker.start();
+        clock.advance(2_000);
+        assertEquals(5, ticker.getTicks());
+        assertEquals(4_000, (int) shown.get(shown.size() - 1));
+    }
+
+    @Test
+    public void pausedOrLoading_showsAtMostOnceAndStops() {
+        state = new PlaybackState(null, 0, PlaybackState.Status.PAUSED, 42_000, 0, SONG_MS);
+        ticker.start();
+        clock.advance(60_000);
+        assertEquals(1, ticker.getTicks());
+        assertEquals(42_000, (int) shown.get(0));
+        assertFalse(ticker.isRunning());
+
+        state = new PlaybackState(null, 1, PlaybackState.Status.PREPARING, 0, 0, 0);
+        ticker.start();
+        clock.advance(60_000);
+        assertEquals(1, shown.size()); // The restored position stays up while the song loads
+    }
+
+    @Test
+    public void endOfSong_stopsTicking() {
+        state = playing(SONG_MS - 1_500, 1f);
+        ticker.start();
+        clock.advance(60_000);
+        assertEquals(SONG_MS, (int) shown.get(shown.size() - 1));
+        assertFalse(ticker.isRunning());
+    }
+
+    @Test
+    public void stopAndDelayedStart_leaveTheDisplayAlone() {
+        state = playing(0, 1f);
+        ticker.start();
+        clock.advance(500);
+        ticker.stop();
+        clock.advance(5_000);
+        assertEquals(1, shown.size());
+
+        ticker.startDelayed(300);
+        clock.advance(299);
+        assertEquals(1, shown.size());
+        clock.advance(1);
+        assertEquals(5_800, (int) shown.get(1));
+    }
+
+    private PlaybackState playing(int positionMs, float speed) {
+        return playing(positionMs, speed, SONG_MS);
+    }
+
+    private PlaybackState playing(int positionMs, float speed, int durationMs) {
+        return new PlaybackState(null, 0, PlaybackState.Status.PLAYING, positionMs, clock.now(), durationMs, speed, false);
+    }
+
+    /** The ticker's timer on the virtual clock, like a Handler on the device. */
+    private final class ClockTimer implements SeekScrubber.Timer {
+        private final Map<Runnable, VirtualClock.Task> posted = new HashMap<>();
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            posted.put(task, clock.postDelayed(task, delayMs));
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            VirtualClock.Task scheduled = posted.remove(task);
+            if (scheduled != null) scheduled.cancel();
+        }
+    }
+}
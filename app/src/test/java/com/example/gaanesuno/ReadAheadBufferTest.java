@@ -0,0 +1,195 @@
+package com.example.gaanesuno;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for the read-ahead ring: the bytes handed out, the window following seeks, the
+ * memory it may fill and the underruns it counts, on an in-memory file that can be slowed
+ * down or made to fail.
+ */
+public class ReadAheadBufferTest {
+
+    private static final int CAPACITY = ReadAheadBuffer.MIN_CAPACITY;
+
+    private final ReadAheadStats stats = new ReadAheadStats();
+
+    @Test
+    public void sequentialReads_returnTheFileAcrossManyWraps() throws IOException {
+        MemorySource source = new MemorySource(1_000_003, 0);
+        try (ReadAheadBuffer buffer = new ReadAheadBuffer(source, CAPACITY, stats)) {
+            assertEquals(CAPACITY, buffer.getCapacity());
+            assertFileReads(buffer, source, 0, 4_096);
+            assertEquals(-1, buffer.readAt(source.size(), new byte[16], 0, 16));
+        }
+        assertEquals(0, stats.getSeeks());
+    }
+
+    @Test
+    public void smallFile_onlyTakesItsSize() throws IOException {
+        MemorySource source = new MemorySource(1_000, 0);
+        try (ReadAheadBuffer buffer = new ReadAheadBuffer(source, CAPACITY, stats)) {
+            assertEquals(1_000, buffer.getCapacity());
+            assertFileReads(buffer, source, 0, 300);
+        }
+    }
+
+    @Test
+    public void readsOutsideTheWindow_moveIt() throws IOException {
+        MemorySource source = new MemorySource(2_000_000, 0);
+        try (ReadAheadBuffer buffer = new ReadAheadBuffer(source, CAPACITY, stats)) {
+            assertFileReads(buffer, source, 1_500_000, 8_192); // Far ahead, e.g. an index at the end
+            assertEquals(1, stats.getSeeks());
+            assertFileReads(buffer, source, 0, 8_192); // Far behind
+            assertEquals(2, stats.getSeeks());
+
+            byte[] bytes = new byte[100];
+            int count = buffer.readAt(source.size() - 5_000, bytes, 0, 100); // Within a quarter of the ring behind
+            assertEquals(100, count);
+            assertEquals(2, stats.getSeeks());
+        }
+    }
+
+    @Test
+    public void beforeTheFirstRead_theHeadIsPreloadedUpToTheCapacity() throws Exception {
+        MemorySource source = new MemorySource(10 * CAPACITY, 0);
+        try (ReadAheadBuffer buffer = new ReadAheadBuffer(source, CAPACITY, stats)) {
+            waitFor(() -> stats.getBytesPrefetched() == CAPACITY);
+            Thread.sleep(50);
+            assertEquals(CAPACITY, source.bytesRead.get()); // Stops at the cap
+
+            byte[] bytes = new byte[CAPACITY];
+            int done = 0;
+            while (done < CAPACITY) {
+                done += buffer.readAt(done, bytes, done, CAPACITY - done);
+            }
+            assertEquals(0, stats.getUnderruns()); // Served from memory
+        }
+    }
+
+    @Test
+    public void slowStorage_countsUnderruns() throws IOException {
+        MemorySource source = new MemorySource(8 * CAPACITY, 5);
+        try (ReadAheadBuffer buffer = new ReadAheadBuffer(source, CAPACITY, stats)) {
+            assertFileReads(buffer, source, 0, 16_384); // Faster than 64 KB per 5 ms
+        }
+        assertTrue(stats.getUnderruns() > 0);
+        assertTrue(stats.getUnderrunNanos() > 0);
+    }
+
+    @Test
+    public void storageErrors_reachTheReader() throws IOException {
+        MemorySource source = new MemorySource(4 * CAPACITY, 0);
+        source.failAt = CAPACITY;
+        try (ReadAheadBuffer buffer = new ReadAheadBuffer(source, CAPACITY, stats)) {
+            byte[] bytes = new byte[1_024];
+            long position = 0;
+            try {
+                while (true) {
+                    position += buffer.readAt(position, bytes, 0, bytes.length);
+                }
+            } catch (IOException expected) {
+                assertEquals(CAPACITY, position); // Everything before the error was served
+            }
+        }
+    }
+
+    @Test
+    public void close_stopsReadingAndClosesTheSource() throws IOException {
+        MemorySource source = new MemorySource(4 * CAPACITY, 0);
+        ReadAheadBuffer buffer = new ReadAheadBuffer(source, CAPACITY, stats);
+        buffer.close();
+        buffer.close();
+        assertTrue(source.closed);
+        try {
+            buffer.readAt(3 * CAPACITY, new byte[10], 0, 10);
+            fail("Read after close");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void capacityPerSource_splitsAndCapsTheBudget() {
+        assertEquals(0, ReadAheadBuffer.capacityPerSource(0, 256, false));
+        assertEquals(4 * 1024 * 1024, ReadAheadBuffer.capacityPerSource(8, 256, false));
+        assertEquals(2 * 1024 * 1024, ReadAheadBuffer.capacityPerSource(16, 32, false)); // An eighth of the heap
+        assertEquals(1024 * 1024, ReadAheadBuffer.capacityPerSource(16, 256, true)); // Low-RAM device
+        assertEquals(ReadAheadBuffer.MIN_CAPACITY, ReadAheadBuffer.capacityPerSource(1, 4, false));
+    }
+
+    /** Reads from {@code position} to the end in reads of {@code readSize} and checks every byte. */
+    private static void assertFileReads(ReadAheadBuffer buffer, MemorySource source, long position, int readSize)
+            throws IOException {
+        byte[] bytes = new byte[readSize];
+        while (position < source.size()) {
+            int count = buffer.readAt(position, bytes, 0, readSize);
+            assertTrue(count > 0);
+            for (int i = 0; i < count; i++) {
+                if (bytes[i] != MemorySource.byteAt(position + i)) {
+                    fail("Wrong byte at " + (position + i));
+                }
+            }
+            position += count;
+        }
+    }
+
+    private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    /** A file of a known byte pattern, optionally taking {@code delayMs} per read. */
+    private static final class MemorySource implements ReadAheadBuffer.Source {
+        final AtomicLong bytesRead = new AtomicLong();
+        private final long size;
+        private final long delayMs;
+        volatile long failAt = Long.MAX_VALUE;
+        volatile boolean closed;
+
+        MemorySource(long size, long delayMs) {
+            this.size = size;
+            this.delayMs = delayMs;
+        }
+
+        static byte byteAt(long position) {
+            return (byte) (position * 31 + (position >> 9));
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+            if (closed) throw new IOException("Closed");
+            if (position >= failAt) throw new IOException("Bad sector");
+            if (delayMs > 0) {
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            if (position >= size) return -1;
+            int count = (int) Math.min(length, Math.min(size - position, failAt - position));
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = byteAt(position + i);
+            }
+            bytesRead.addAndGet(count);
+            return count;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.gaanesuno;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for seek bar drags on a {@link VirtualClock}: how many seeks reach the player,
+ * which of them are previews, and what ends up in {@link SeekStats}.
+ */
+public class SeekScrubberTest {
+
+    private static final long INTERVAL_MS = 150;
+
+    private final VirtualClock clock = new VirtualClock();
+    private final List<String> seeks = new ArrayList<>(); // "p1000" preview, "s1000" precise
+    private final SeekStats stats = new SeekStats(() -> clock.now() * 1_000_000);
+    private final SeekScrubber scrubber = scrubber(INTERVAL_MS);
+
+    @Test
+    public void drag_previewsAtMostOncePerIntervalAndSeeksPreciselyOnRelease() {
+        scrubber.onStartTrackingTouch(10_000);
+        // A finger moving for a second, a progress event every 16 ms
+        for (int i = 1; i <= 60; i++) {
+            scrubber.onProgressChanged(10_000 + i * 500);
+            clock.advance(16);
+        }
+        scrubber.onStopTrackingTouch(40_000);
+
+        List<String> previews = seeks.subList(0, seeks.size() - 1);
+        assertTrue(previews.size() <= 1 + 60 * 16 / INTERVAL_MS + 1);
+        assertTrue(previews.size() >= 60 * 16 / INTERVAL_MS);
+        for (String seek : previews) {
+            assertTrue(seek, seek.startsWith("p"));
+        }
+        assertEquals("s40000", seeks.get(seeks.size() - 1));
+        assertEquals(1, stats.getSeeksPerDrag().getCount());
+        assertEquals(seeks.size(), stats.getSeeksPerDrag().getMax());
+        assertFalse(scrubber.isDragging());
+    }
+
+    @Test
+    public void moveInsideTheInterval_isPreviewedWhenItEnds() {
+        scrubber.onStartTrackingTouch(0);
+        scrubber.onProgressChanged(1_000);
+        clock.advance(50);
+        scrubber.onProgressChanged(2_000);
+        clock.advance(50);
+        scrubber.onProgressChanged(3_000);
+        assertEquals(Arrays.asList("p1000"), seeks);
+
+        clock.advance(INTERVAL_MS); // The finger rests; the player catches up
+        assertEquals(Arrays.asList("p1000", "p3000"), seeks);
+        clock.advance(1_000);
+        assertEquals(2, seeks.size());
+    }
+
+    @Test
+    public void release_dropsTheScheduledPreview() {
+        scrubber.onStartTrackingTouch(0);
+        scrubber.onProgressChanged(1_000);
+        scrubber.onProgressChanged(2_000);
+        scrubber.onStopTrackingTouch(2_000);
+        clock.advance(1_000);
+        assertEquals(Arrays.asList("p1000", "s2000"), seeks);
+    }
+
+    @Test
+    public void thumbBackWhereThePlayerIs_isNotPreviewedAgain() {
+        scrubber.onStartTrackingTouch(0);
+        scrubber.onProgressChanged(1_000);
+        clock.advance(50);
+        scrubber.onProgressChanged(1_500);
+        scrubber.onProgressChanged(1_000);
+        clock.advance(INTERVAL_MS);
+        assertEquals(Arrays.asList("p1000"), seeks);
+    }
+
+    @Test
+    public void noInterval_onlySeeksOnRelease() {
+        SeekScrubber releaseOnly = scrubber(0);
+        releaseOnly.onStartTrackingTouch(0);
+        for (int i = 1; i <= 20; i++) {
+            releaseOnly.onProgressChanged(i * 1_000);
+            clock.advance(16);
+        }
+        releaseOnly.onStopTrackingTouch(20_000);
+        assertEquals(Arrays.asList("s20000"), seeks);
+        assertEquals(1, stats.getSeeksPerDrag().getMax());
+    }
+
+    @Test
+    public void changeWithoutADrag_seeksPreciselyRightAway() {
+        scrubber.onProgressChanged(5_000); // Keyboard or accessibility
+        assertEquals(Arrays.asList("s5000"), seeks);
+        assertEquals(0, stats.getSeeksPerDrag().getCount());
+    }
+
+    @Test
+    public void cancel_endsTheDragWithoutSeeking() {
+        scrubber.onStartTrackingTouch(0);
+        scrubber.onProgressChanged(1_000);
+        scrubber.onProgressChanged(2_000);
+        scrubber.cancel();
+        scrubber.onStopTrackingTouch(2_000);
+        clock.advance(1_000);
+        assertEquals(Arrays.asList("p1000"), seeks);
+        assertEquals(0, stats.getSeeksPerDrag().getCount());
+    }
+
+    @Test
+    public void settleTime_runsFromReleaseToTheFinalSeekCompleting() {
+        scrubber.onStartTrackingTouch(0);
+        scrubber.onProgressChanged(1_000);
+        clock.advance(20);
+        stats.seekCompleted(); // A preview landing mid-drag isn't the settle
+        scrubber.onStopTrackingTouch(1_000);
+
+        clock.advance(5); // The command waits on the playback thread
+        stats.seekCompleted(); // Late completion of the preview
+        stats.preciseSeekStarted();
+        clock.advance(40);
+        stats.seekCompleted();
+        clock.advance(100);
+        stats.seekCompleted(); // Unrelated later seek
+
+        assertEquals(1, stats.getSettleMicros().getCount());
+        assertEquals(45_000, stats.getSettleMicros().getMax());
+        assertTrue(stats.toText().contains("Drags: 1"));
+    }
+
+    private SeekScrubber scrubber(long intervalMs) {
+        return new SeekScrubber((positionMs, preview) -> seeks.add((preview ? "p" : "s") + positionMs),
+                new ClockTimer(), clock::now, stats, intervalMs);
+    }
+
+    /** The scrubber's timer on the virtual clock, like a Handler on the device. */
+    private final class ClockTimer implements SeekScrubber.Timer {
+        private final Map<Runnable, VirtualClock.Task> posted = new HashMap<>();
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            posted.put(task, clock.postDelayed(task, delayMs));
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            VirtualClock.Task scheduled = posted.remove(task);
+            if (scheduled != null) scheduled.cancel();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.gaanesuno;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for the id keyed song list diff. Every result is replayed on a plain list,
+ * the way RecyclerView applies it, and must turn the old ids into the new ones.
+ */
+public class SongListDiffTest {
+
+    @Test
+    public void append_isSingleInsert() {
+        long[] oldIds = ids(0, 1_000);
+        long[] newIds = ids(0, 1_500);
+        SongListDiff.Result result = diff(oldIds, newIds);
+        assertEquals(1, result.getOperationCount());
+        assertReplays(oldIds, newIds, result);
+    }
+
+    @Test
+    public void singleDeletion_inLargeList_isSingleRemove() {
+        long[] oldIds = ids(0, 50_000);
+        long[] newIds = new long[oldIds.length - 1];
+        System.arraycopy(oldIds, 0, newIds, 0, 20_000);
+        System.arraycopy(oldIds, 20_001, newIds, 20_000, newIds.length - 20_000);
+        SongListDiff.Result result = diff(oldIds, newIds);
+        assertEquals(1, result.getOperationCount());
+        RecordingCallback callback = new RecordingCallback(oldIds);
+        result.dispatchTo(callback);
+        assertEquals("R20000,1", callback.events.get(0));
+    }
+
+    @Test
+    public void singleMove_isReplayedCorrectly() {
+        long[] oldIds = {1, 2, 3, 4, 5, 6};
+        long[] newIds = {2, 3, 4, 5, 1, 6};
+        SongListDiff.Result result = diff(oldIds, newIds);
+        assertFalse(result.isFullReorder());
+        assertReplays(oldIds, newIds, result);
+    }
+
+    @Test
+    public void mixedEdits_areReplayedCorrectly() {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            List<Long> list = new ArrayList<>();
+            for (long id = 0; id < 200; id++) list.add(id);
+            long[] oldIds = toArray(list);
+            long nextId = 1_000;
+            int edits = 1 + random.nextInt(30);
+            for (int e = 0; e < edits; e++) {
+                switch (random.nextInt(3)) {
+                    case 0: if (!list.isEmpty()) list.remove(random.nextInt(list.size())); break;
+                    case 1: list.add(random.nextInt(list.size() + 1), nextId++); break;
+                    default:
+                        if (!list.isEmpty()) {
+                            Long moved = list.remove(random.nextInt(list.size()));
+                            list.add(random.nextInt(list.size() + 1), moved);
+                        }
+                }
+            }
+            assertReplays(oldIds, toArray(list), diff(oldIds, toArray(list)));
+        }
+    }
+
+    @Test
+    public void contentChanges_reportedAtNewPositions() {
+        long[] oldIds = {1, 2, 3};
+        long[] newIds = {0, 1, 2, 3};
+        // The song with id 2 changed
+        SongListDiff.Result result = SongListDiff.calculate(oldIds, oldIds.length, newIds, newIds.length,
+                (oldPosition, newPosition) -> oldIds[oldPosition] != 2, null);
+        RecordingCallback callback = new RecordingCallback(oldIds);
+        result.dispatchTo(callback);
+        assertTrue(callback.events.contains("C2,1"));
+    }
+
+    @Test
+    public void shuffledList_isFullReorder() {
+        long[] oldIds = ids(0, 10_000);
+        List<Long> shuffled = new ArrayList<>();
+        for (long id : oldIds) shuffled.add(id);
+        Collections.shuffle(shuffled, new Random(7));
+        assertTrue(diff(oldIds, toArray(shuffled)).isFullReorder());
+    }
+
+    @Test
+    public void cancelledDiff_returnsNull() {
+        long[] oldIds = ids(0, 1_000);
+        long[] newIds = ids(1, 1_000);
+        assertNull(SongListDiff.calculate(oldIds, oldIds.length, newIds, newIds.length, null, () -> true));
+    }
+
+    private static SongListDiff.Result diff(long[] oldIds, long[] newIds) {
+        return SongListDiff.calculate(oldIds, oldIds.length, newIds, newIds.length, null, null);
+    }
+
+    private static void assertReplays(long[] oldIds, long[] newIds, SongListDiff.Result result) {
+        RecordingCallback callback = new RecordingCallback(oldIds);
+        result.dispatchTo(callback);
+        assertEquals(newIds.length, callback.list.size());
+        List<Long> old = new ArrayList<>();
+        for (long id : oldIds) old.add(id);
+        for (int i = 0; i < newIds.length; i++) {
+            Long id = callback.list.get(i);
+            if (id == null) {
+                assertFalse("Inserted row must be a new song", old.contains(newIds[i]));
+            } else {
+                assertEquals(newIds[i], (long) id);
+            }
+        }
+    }
+
+    private static long[] ids(long from, int count) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) ids[i] = from + i;
+        return ids;
+    }
+
+    private static long[] toArray(List<Long> list) {
+        long[] array = new long[list.size()];
+        for (int i = 0; i < array.length; i++) array[i] = list.get(i);
+        return array;
+    }
+
+    /** Applies the operations to a list; inserted rows get a placeholder that must be the new id. */
+    private static final class RecordingCallback implements SongListDiff.Callback {
+        final List<Long> list = new ArrayList<>();
+        final List<String> events = new ArrayList<>();
+
+        RecordingCallback(long[] oldIds) {
+            for (long id : oldIds) list.add(id);
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            events.add("I" + position + "," + count);
+            for (int i = 0; i < count; i++) list.add(position + i, null);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            events.add("R" + position + "," + count);
+            for (int i = 0; i < count; i++) list.remove(position);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            events.add("M" + fromPosition + "," + toPosition);
+            list.add(toPosition, list.remove(fromPosition));
+        }
+
+        @Override
+        public void onChanged(int position, int count) {
+            events.add("C" + position + "," + count);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.gaanesuno;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for the as-you-type search index: matching, incremental updates, and no
+ * allocation per keystroke on a 100k track library.
+ */
+public class SongSearchIndexTest {
+
+    private static final int LARGE_LIBRARY = 100_000;
+    private static final String[] WORDS = {
+            "love", "night", "dil", "tera", "mera", "shape", "you", "heart", "fire", "rain",
+            "dance", "sky", "pyaar", "ishq", "summer", "blue", "dream", "river", "gold", "light"
+    };
+    private static final String[] SYLLABLES = {
+            "ka", "ri", "mo", "an", "te", "lu", "sha", "ve", "do", "ni", "pa", "ro", "mi", "ya", "zu", "el"
+    };
+
+    @Test
+    public void search_matchesWordPrefixesInTitleAndArtist() {
+        SongStore store = new SongStore.Builder(4)
+                .add(1, "Shape of You", "Ed Sheeran", 0, null, 0)
+                .add(2, "Perfect", "Ed Sheeran", 0, null, 0)
+                .add(3, "Tum Hi Ho", "Arijit Singh", 0, null, 0)
+                .add(4, "Don't Stop Me Now", "Queen", 0, null, 0)
+                .build();
+        SongSearchIndex index = SongSearchIndex.build(store);
+        int[] rows = new int[store.size()];
+
+        assertResult(index, store, rows, "shee sha", 0);
+        assertResult(index, store, rows, "ED", 0, 1);
+        assertResult(index, store, rows, "sheeran", 0, 1);
+        assertResult(index, store, rows, "eeran"); // Not a word start
+        assertResult(index, store, rows, "don t", 3);
+        assertResult(index, store, rows, "arijit tum", 2);
+        assertEquals(SongSearchIndex.NO_QUERY, index.search("  -- ", store, rows));
+    }
+
+    @Test
+    public void update_addsAndRemovesSongsIncrementally() {
+        SongStore store = new SongStore.Builder(2)
+                .add(1, "Shape of You", "Ed Sheeran", 0, null, 0)
+                .add(2, "Perfect", "Ed Sheeran", 0, null, 0)
+                .build();
+        SongSearchIndex index = SongSearchIndex.build(store);
+        int[] rows = new int[8];
+        assertResult(index, store, rows, "perf", 1);
+
+        SongStore updated = new SongStore.Builder(2)
+                .add(3, "Perfect Symphony", "Ed Sheeran", 0, null, 0)
+                .add(1, "Shape of You", "Ed Sheeran", 0, null, 0)
+                .add(2, "Perfect (edited)", "Ed Sheeran", 0, null, 5) // Modified
+                .build();
+        assertTrue(index.update(updated));
+        assertEquals(3, index.size());
+        assertResult(index, updated, rows, "perf", 0, 2);
+        assertResult(index, updated, rows, "edited", 2);
+
+        SongStore smaller = updated.without(0);
+        index.update(smaller);
+        assertResult(index, smaller, rows, "symph");
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void search_agreesWithBruteForce() {
+        SongStore store = createStore(5_000, new Random(3));
+        SongSearchIndex index = SongSearchIndex.build(store);
+        int[] rows = new int[store.size()];
+        String[] queries = {"l", "lo", "lov", "love", "love n", "love ni", "tera mera", "xyz", "d", "dr dr"};
+        for (String query : queries) {
+            int count = index.search(query, store, rows);
+            int expected = 0;
+            for (int row = 0; row < store.size(); row++) {
+                if (bruteForceMatches(store.getTitle(row) + " " + store.getArtist(row), query)) {
+                    assertTrue("Missing row " + row + " for " + query, expected < count && rows[expected] == row);
+                    expected++;
+                }
+            }
+            assertEquals(query, expected, count);
+        }
+    }
+
+    /**
+     * Typing a query one character at a time on 100k tracks with a realistic vocabulary
+     * allocates nothing once the buffers have grown. The time per keystroke is measured by
+     * LibraryIndexBenchmark.search_typeQuery in :benchmark.
+     */
+    @Test
+    public void search_largeLibrary_doesNotAllocate() {
+        SongStore store = createRealisticStore(LARGE_LIBRARY, new Random(11));
+        SongSearchIndex index = SongSearchIndex.build(store);
+        int[] rows = new int[store.size()];
+        String typed = store.getTitle(4_242).substring(0, 3) + " " + store.getArtist(4_242).substring(0, 5);
+        String[] keystrokes = new String[typed.length()];
+        for (int i = 0; i < keystrokes.length; i++) {
+            keystrokes[i] = typed.substring(0, i + 1);
+        }
+
+        typeQuery(index, store, rows, keystrokes); // Grows the buffers
+        Allocations.assertNone("Queries", () -> typeQuery(index, store, rows, keystrokes));
+        assertTrue(index.search(typed, store, rows) > 0);
+    }
+
+    private static void typeQuery(SongSearchIndex index, SongStore store, int[] rows, String[] keystrokes) {
+        for (String keystroke : keystrokes) {
+            index.search(keystroke, store, rows);
+        }
+    }
+
+    private static void assertResult(SongSearchIndex index, SongStore store, int[] rows, String query, int... expected) {
+        int count = index.search(query, store, rows);
+        assertArrayEquals(query, expected, Arrays.copyOf(rows, count));
+    }
+
+    private static boolean bruteForceMatches(String text, String query) {
+        String[] textWords = text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{Nd}]+");
+        for (String queryWord : query.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{Nd}]+")) {
+            if (queryWord.isEmpty()) continue;
+            boolean found = false;
+            for (String word : textWords) {
+                if (word.startsWith(queryWord)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) return false;
+        }
+        return true;
+    }
+
+    /** Titles and artists made of a few thousand made-up words, Zipf-like word frequencies. */
+    private static SongStore createRealisticStore(int count, Random random) {
+        String[] vocabulary = new String[5_000];
+        for (int i = 0; i < vocabulary.length; i++) {
+            StringBuilder word = new StringBuilder();
+            for (int s = 2 + random.nextInt(3); s > 0; s--) {
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            vocabulary[i] = word.toString();
+        }
+        SongStore.Builder builder = new SongStore.Builder(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder title = new StringBuilder();
+            for (int w = 1 + random.nextInt(4); w > 0; w--) {
+                title.append(vocabulary[zipf(random, vocabulary.length)]).append(' ');
+            }
+            String artist = vocabulary[(i / 12) % vocabulary.length] + " " + vocabulary[zipf(random, vocabulary.length)];
+            builder.add(i + 1, title.toString().trim(), artist, 0, null, 0);
+        }
+        return builder.build();
+    }
+
+    private static int zipf(Random random, int n) {
+        return (int) Math.min(n - 1, Math.floor(Math.pow(n, random.nextDouble())) - 1);
+    }
+
+    private static SongStore createStore(int count, Random random) {
+        SongStore.Builder builder = new SongStore.Builder(count);
+        for (int i = 0; i < count; i++) {
+            String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)]
+                    + " " + i;
+            String artist = "Artist " + WORDS[random.nextInt(WORDS.length)] + " " + (i % 3_000);
+            builder.add(i + 1, title, artist, 0, null, 0);
+        }
+        return builder.build();
+    }
+}
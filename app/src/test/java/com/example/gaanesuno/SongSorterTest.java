@@ -0,0 +1,126 @@
+package com.example.gaanesuno;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for the precomputed sort orders.
+ */
+public class SongSorterTest {
+
+    private static SongStore createStore() {
+        // In MediaStore's plain TITLE ASC order, which isn't what a reader expects
+        return new SongStore.Builder(6)
+                .add(1, "Zebra", "Bee", 300_000, null, 0)
+                .add(2, "apple", "Cat", 200_000, null, 0)
+                .add(3, "Éclair", "bee", 100_000, null, 0)
+                .add(4, "banana", null, 400_000, null, 0)
+                .add(5, "Apple", "ant", 250_000, null, 0)
+                .add(6, "eagle", "Cat", 150_000, null, 0)
+                .build();
+    }
+
+    @Test
+    public void order_collatesIgnoringCase() {
+        SongSorter sorter = SongSorter.build(createStore(), Locale.ENGLISH);
+        // "apple" and "Apple" tie, library order decides; accented É sorts with E
+        assertArrayEquals(new int[]{1, 4, 3, 5, 2, 0}, sorter.order(SongSorter.Key.TITLE, true));
+        // Unknown (null) artist first, ties by title
+        assertArrayEquals(new int[]{3, 4, 2, 0, 1, 5}, sorter.order(SongSorter.Key.ARTIST, true));
+        assertArrayEquals(new int[]{2, 5, 1, 4, 0, 3}, sorter.order(SongSorter.Key.DURATION, true));
+    }
+
+    @Test
+    public void order_descendingIsCachedReverse() {
+        SongSorter sorter = SongSorter.build(createStore(), Locale.ENGLISH);
+        int[] ascending = sorter.order(SongSorter.Key.DURATION, true);
+        int[] descending = sorter.order(SongSorter.Key.DURATION, false);
+        for (int i = 0; i < ascending.length; i++) {
+            assertEquals(ascending[i], descending[descending.length - 1 - i]);
+        }
+        // Switching back and forth hands out the same arrays
+        assertSame(ascending, sorter.order(SongSorter.Key.DURATION, true));
+        assertSame(descending, sorter.order(SongSorter.Key.DURATION, false));
+    }
+
+    @Test
+    public void carryOver_keepsTheOrderOfSongsStillInTheLibrary() {
+        SongSorter sorter = SongSorter.build(createStore(), Locale.ENGLISH);
+        // Id 5 ("Apple") deleted, id 7 added, the rest in a new library order
+        SongStore library = new SongStore.Builder(6)
+                .add(7, "Aardvark", "Ant", 50_000, null, 0)
+                .add(6, "eagle", "Cat", 150_000, null, 0)
+                .add(4, "banana", null, 400_000, null, 0)
+                .add(3, "Éclair", "bee", 100_000, null, 0)
+                .add(2, "apple", "Cat", 200_000, null, 0)
+                .add(1, "Zebra", "Bee", 300_000, null, 0)
+                .build();
+        SongSorter carried = sorter.carryOver(library);
+        assertSame(library, carried.getStore());
+        // apple, banana, eagle, Éclair, Zebra, then the new song
+        assertArrayEquals(new int[]{4, 2, 1, 3, 5, 0}, carried.order(SongSorter.Key.TITLE, true));
+        assertArrayEquals(new int[]{0, 5, 3, 1, 2, 4}, carried.order(SongSorter.Key.TITLE, false));
+
+        int[] rows = {0, 1, 4};
+        carried.sortRows(rows, 3, SongSorter.Key.DURATION, true);
+        assertArrayEquals(new int[]{1, 4, 0}, rows);
+    }
+
+    @Test
+    public void sortRows_matchesFullOrder() {
+        SongStore.Builder builder = new SongStore.Builder(2_000);
+        Random random = new Random(5);
+        for (int i = 0; i < 2_000; i++) {
+            builder.add(i + 1, "Title " + random.nextInt(500), "Artist " + random.nextInt(50),
+                    random.nextInt(600_000), null, 0);
+        }
+        SongSorter sorter = SongSorter.build(builder.build(), Locale.ENGLISH);
+        int[] rows = new int[2_000];
+        for (SongSorter.Key key : SongSorter.Key.values()) {
+            for (boolean ascending : new boolean[]{true, false}) {
+                // Every third row, in library order, like a search result
+                int count = 0;
+                for (int row = 0; row < 2_000; row += 3) rows[count++] = row;
+                sorter.sortRows(rows, count, key, ascending);
+
+                int expected = 0;
+                for (int row : sorter.order(key, ascending)) {
+                    if (row % 3 == 0) {
+                        assertEquals(key + " " + ascending, row, rows[expected++]);
+                    }
+                }
+                assertEquals(count, expected);
+            }
+        }
+    }
+
+    @Test
+    public void build_randomLibrary_ordersArePermutations() {
+        // Timing at 100k songs is LibraryIndexBenchmark.build_sortOrders in :benchmark
+        SongStore.Builder builder = new SongStore.Builder(2_000);
+        Random random = new Random(9);
+        for (int i = 0; i < 2_000; i++) {
+            builder.add(i + 1, "Song " + Integer.toString(random.nextInt(1 << 30), 36),
+                    "Artist " + random.nextInt(300), random.nextInt(600_000), null, 0);
+        }
+        SongStore store = builder.build();
+        SongSorter sorter = SongSorter.build(store, Locale.ENGLISH);
+
+        for (SongSorter.Key key : SongSorter.Key.values()) {
+            int[] sorted = sorter.order(key, true).clone();
+            Arrays.sort(sorted);
+            for (int i = 0; i < sorted.length; i++) {
+                assertEquals(key.toString(), i, sorted[i]); // A permutation of all rows
+            }
+        }
+        int[] byDuration = sorter.order(SongSorter.Key.DURATION, true);
+        for (int i = 1; i < byDuration.length; i++) {
+            assertTrue(store.getDuration(byDuration[i - 1]) <= store.getDuration(byDuration[i]));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.gaanesuno;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for the columnar song store. Only the parts of Song that don't touch
+ * Android classes (everything except getData()) are used here.
+ */
+public class SongStoreTest {
+
+    private static final int LARGE_LIBRARY = 20_000;
+    private static final int ARTISTS = 2_000;
+
+    @Test
+    public void builder_keepsRowsAndDeduplicatesArtists() {
+        SongStore store = createStore(10_000);
+        assertEquals(10_000, store.size());
+        assertEquals(ARTISTS, store.getArtistPoolSize());
+        for (int i = 0; i < store.size(); i++) {
+            Song song = store.get(i);
+            assertEquals(i + 1, song.getId());
+            assertEquals("Track " + i, song.getTitle());
+            assertEquals(artistName(i), song.getArtist());
+            assertEquals(180_000 + i, song.getDuration());
+        }
+        // Equal artist names share one String instance
+        assertSame(store.getArtist(0), store.getArtist(ARTISTS));
+    }
+
+    @Test
+    public void build_earlierStoresStayValidWhileBuilderGrows() {
+        SongStore.Builder builder = new SongStore.Builder(0);
+        List<SongStore> pages = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            builder.add(i, "Track " + i, artistName(i), i, null, 0);
+            if (i % 500 == 0) {
+                pages.add(builder.build());
+            }
+        }
+        for (SongStore page : pages) {
+            for (int i = 0; i < page.size(); i++) {
+                assertEquals(i, page.getId(i));
+                assertEquals("Track " + i, page.getTitle(i));
+            }
+        }
+    }
+
+    @Test
+    public void indexOf_comparesIds() {
+        SongStore store = createStore(100);
+        assertEquals(41, store.indexOf(new Song(42, "other title", null, 0, null, 0)));
+        assertEquals(-1, store.indexOfId(1_000));
+        assertTrue(store.contains(store.get(99)));
+    }
+
+    @Test
+    public void without_removesOneRow() {
+        SongStore store = createStore(100);
+        SongStore smaller = store.without(10);
+        assertEquals(99, smaller.size());
+        assertEquals(-1, smaller.indexOfId(11));
+        assertEquals(12, smaller.getId(10));
+        assertEquals(100, store.size()); // The original is unchanged
+    }
+
+    @Test
+    public void withoutIds_removesBatchInOnePass() {
+        SongStore store = createStore(5_000);
+        long[] removed = new long[1_000];
+        for (int i = 0; i < removed.length; i++) {
+            removed[i] = 2 + i * 5L; // Every fifth song, plus an id that isn't there
+        }
+        removed[999] = 123_456;
+        SongStore smaller = store.withoutIds(removed);
+        assertEquals(4_001, smaller.size());
+        assertEquals(-1, smaller.indexOfId(2));
+        assertEquals(-1, smaller.indexOfId(4_992));
+        assertEquals(1, smaller.getId(0));
+        assertEquals(3, smaller.getId(1));
+        assertNotEquals(-1, smaller.indexOfId(4_997)); // Replaced by the unknown id, so kept
+    }
+
+    @Test
+    public void inOrder_viewsRowsInGivenOrder() {
+        SongStore store = createStore(5);
+        SongStore.OrderedView view = store.inOrder(new int[]{4, 2, 0, 1, 3});
+        assertEquals(5, view.size());
+        assertEquals(5, view.get(0).getId());
+        assertEquals(1, view.indexOf(store.get(2)));
+        assertEquals(4, view.indexOfId(4));
+        assertEquals(3, view.getRow(4));
+    }
+
+    @Test
+    public void indexOfId_usesIndexForLargeStores() {
+        SongStore store = createStore(100_000);
+        for (int i = 0; i < store.size(); i += 997) {
+            assertEquals(i, store.indexOfId(i + 1));
+        }
+        assertEquals(-1, store.indexOfId(0));
+    }
+
+    @Test
+    public void snapshot_roundTripsThroughStore() {
+        SongStore store = createStore(1_000);
+        SongStore copy = SongStore.fromSnapshot(store.toSnapshot(7L, "v"));
+        assertEquals(store.size(), copy.size());
+        for (int i = 0; i < store.size(); i++) {
+            assertEquals(store.getId(i), copy.getId(i));
+            assertEquals(store.getArtist(i), copy.getArtist(i));
+            assertEquals(store.getPath(i), copy.getPath(i));
+        }
+    }
+
+    @Test
+    public void diff_comparesAgainstMediaStoreColumns() {
+        SongStore store = createStore(4); // ids 1..4, all modified at 0
+        LibrarySnapshot.Delta delta = store.diff(new long[]{1, 3, 4, 9}, new long[]{0, 5, 0, 0}, 4);
+        assertArrayEquals(new int[]{1}, delta.removedIndexes); // id 2 is gone
+        assertArrayEquals(new long[]{3, 9}, delta.changedIds);  // id 3 modified, id 9 new
+    }
+
+    /**
+     * What keeps the store small: one artist String per distinct artist, however many rows
+     * there are. Heap per track is measured by LibraryMemoryBenchmark in :benchmark.
+     */
+    @Test
+    public void largeLibrary_keepsOneArtistStringPerArtist() {
+        SongStore store = createStore(LARGE_LIBRARY);
+        assertEquals(LARGE_LIBRARY, store.size());
+        assertEquals(ARTISTS, store.getArtistPoolSize());
+        for (int i = ARTISTS; i < store.size(); i++) {
+            assertSame(store.getArtist(i % ARTISTS), store.getArtist(i));
+        }
+    }
+
+    private static SongStore createStore(int count) {
+        SongStore.Builder builder = new SongStore.Builder(count);
+        for (int i = 0; i < count; i++) {
+            // new String() like Cursor.getString(), so deduplication has something to do
+            builder.add(i + 1, "Track " + i, new String(artistName(i)), 180_000 + i,
+                    "/storage/emulated/0/Music/track" + i + ".mp3", 0);
+        }
+        return builder.build();
+    }
+
+    private static String artistName(int i) {
+        return "Artist " + (i % ARTISTS);
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.gaanesuno;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for the trace ring: events come back oldest first, the oldest are overwritten,
+ * and readers racing with writers never see a mix of two events.
+ */
+public class TraceBufferTest {
+
+    @Test
+    public void capacity_isRoundedUpToAPowerOfTwo() {
+        assertEquals(4096, new TraceBuffer(4096).getCapacity());
+        assertEquals(8, new TraceBuffer(5).getCapacity());
+        assertEquals(2, new TraceBuffer(1).getCapacity());
+    }
+
+    @Test
+    public void events_comeBackOldestFirst() {
+        TraceBuffer buffer = new TraceBuffer(8);
+        buffer.write(100, 1, 7, 10, 11, 12);
+        buffer.write(200, 2, 7, 20, 21, 22);
+
+        List<long[]> events = read(buffer);
+        assertEquals(2, events.size());
+        assertArrayEquals(new long[]{0, 100, 1, 7, 10, 11, 12}, events.get(0));
+        assertArrayEquals(new long[]{1, 200, 2, 7, 20, 21, 22}, events.get(1));
+    }
+
+    @Test
+    public void fullRing_keepsTheNewestEvents() {
+        TraceBuffer buffer = new TraceBuffer(4);
+        for (int i = 0; i < 10; i++) {
+            buffer.write(i, 0, 0, i, 0, 0);
+        }
+        List<long[]> events = read(buffer);
+        assertEquals(4, events.size());
+        assertEquals(6, events.get(0)[4]);
+        assertEquals(9, events.get(3)[4]);
+        assertEquals(10, buffer.getWritten());
+
+        buffer.clear();
+        assertTrue(read(buffer).isEmpty());
+    }
+
+    @Test
+    public void readingWhileWriting_neverMixesEvents() throws Exception {
+        TraceBuffer buffer = new TraceBuffer(64);
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        for (int w = 0; w < 4; w++) {
+            writers.execute(() -> {
+                for (long i = 0; i < 200_000; i++) {
+                    buffer.write(i, (int) (i & 0xff), i, i, i, i); // Every field the same
+                }
+            });
+        }
+        int checked = 0;
+        while (checked < 2_000) {
+            for (long[] event : read(buffer)) {
+                for (int field = 1; field < event.length; field++) {
+                    long expected = field == 2 ? event[1] & 0xff : event[1];
+                    assertEquals(expected, event[field]);
+                }
+            }
+            checked++;
+        }
+        writers.shutdown();
+        assertTrue(writers.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(800_000, buffer.getWritten());
+    }
+
+    private static List<long[]> read(TraceBuffer buffer) {
+        List<long[]> events = new ArrayList<>();
+        buffer.forEach((sequence, timeNanos, pointId, threadId, a, b, c) ->
+                events.add(new long[]{sequence, timeNanos, pointId, threadId, a, b, c}));
+        return events;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.gaanesuno;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM tests for trace points: level guards, formatting only when an event is read, and the
+ * dump of the shared buffer.
+ */
+public class TraceTest {
+
+    private static final Trace.Point VERBOSE_POINT = Trace.point("TraceTest", Trace.VERBOSE, "Frame at {} ms");
+    private static final Trace.Point DEBUG_POINT = Trace.point("TraceTest", Trace.DEBUG, "Song {} at index {}");
+    private static final Trace.Point LABELLED = Trace.point("TraceTest", Trace.DEBUG, "Command {} index={}",
+            new Object[]{"PLAY", "PAUSE"});
+
+    private final List<String> mirrored = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        Trace.setLevel(Trace.DEBUG);
+        Trace.setSink(null);
+        Trace.getBuffer().clear();
+    }
+
+    @After
+    public void tearDown() {
+        Trace.setLevel(Trace.DEBUG);
+        Trace.setSink(null);
+    }
+
+    @Test
+    public void pointBelowTheLevel_recordsNothing() {
+        VERBOSE_POINT.log(16);
+        assertFalse(VERBOSE_POINT.isEnabled());
+        assertEquals(0, Trace.getBuffer().getWritten());
+
+        DEBUG_POINT.log(42, 3);
+        assertEquals(1, Trace.getBuffer().getWritten());
+    }
+
+    @Test
+    public void dump_formatsTheArguments() {
+        DEBUG_POINT.log(42, 3);
+        LABELLED.log(1, 7);
+        LABELLED.log(9, 7); // No such label: the number
+
+        String dump = Trace.dump();
+        assertTrue(dump, dump.contains("D TraceTest: Song 42 at index 3\n"));
+        assertTrue(dump, dump.contains("D TraceTest: Command PAUSE index=7\n"));
+        assertTrue(dump, dump.contains("D TraceTest: Command 9 index=7\n"));
+        assertTrue(dump, dump.startsWith("3 events traced"));
+    }
+
+    @Test
+    public void sink_getsFormattedMessagesOnlyForEnabledPoints() {
+        Trace.setSink((level, tag, message) -> mirrored.add(level + " " + tag + " " + message));
+        VERBOSE_POINT.log(16);
+        DEBUG_POINT.log(1, 2);
+        assertEquals(1, mirrored.size());
+        assertEquals(Trace.DEBUG + " TraceTest Song 1 at index 2", mirrored.get(0));
+
+        Trace.setLevel(Trace.VERBOSE);
+        VERBOSE_POINT.log(16);
+        assertEquals("Frame at 16 ms", mirrored.get(1).substring(mirrored.get(1).indexOf("Frame")));
+    }
+
+    @Test
+    public void init_onlyChangesDebuggableBuilds() {
+        Trace.init(false, (level, tag, message) -> mirrored.add(message));
+        DEBUG_POINT.log(1, 2);
+        assertTrue(mirrored.isEmpty());
+        assertEquals(Trace.DEBUG, Trace.getLevel());
+
+        Trace.init(true, (level, tag, message) -> mirrored.add(message));
+        VERBOSE_POINT.log(16);
+        assertEquals(1, mirrored.size());
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.gaanesuno;
+
+import java.util.PriorityQueue;
+
+/**
+ * Time for JVM tests: it only moves in {@link #advance}, which runs the tasks that fall due on
+ * the way in time order, like a Looper would. Stands in for both the playback thread's Handler
+ * and the media clock of {@link FakePlaybackEngine}, so a test is deterministic and takes no
+ * real time however many minutes of music it plays.
+ */
+final class VirtualClock {
+
+    /** A scheduled task; cancelling it keeps it from running. */
+    static final class Task implements Comparable<Task> {
+        private final long atMs;
+        private final long sequence; // Same time: posting order
+        private final Runnable runnable;
+        private boolean cancelled;
+
+        private Task(long atMs, long sequence, Runnable runnable) {
+            this.atMs = atMs;
+            this.sequence = sequence;
+            this.runnable = runnable;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            return atMs != other.atMs ? Long.compare(atMs, other.atMs) : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final PriorityQueue<Task> tasks = new PriorityQueue<>();
+    private long nowMs;
+    private long sequence;
+
+    long now() {
+        return nowMs;
+    }
+
+    /** Runs the task at the current time, after the tasks already due. */
+    Task post(Runnable runnable) {
+        return postDelayed(runnable, 0);
+    }
+
+    Task postDelayed(Runnable runnable, long delayMs) {
+        Task task = new Task(nowMs + Math.max(0, delayMs), sequence++, runnable);
+        tasks.add(task);
+        return task;
+    }
+
+    /** Moves time forward by {@code ms}, running every task due by then, including ones they post. */
+    void advance(long ms) {
+        long targetMs = nowMs + ms;
+        Task task;
+        while ((task = tasks.peek()) != null && task.atMs <= targetMs) {
+            tasks.poll();
+            nowMs = task.atMs;
+            if (!task.cancelled) task.runnable.run();
+        }
+        nowMs = targetMs;
+    }
+
+    /** Runs the tasks due now, without moving time. */
+    void runDue() {
+        advance(0);
+    }
+}
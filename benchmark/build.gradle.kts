@@ -0,0 +1,55 @@
+// benchmark/build.gradle
+
+// JVM-only JMH benchmarks for the library and queue code of :app.
+// Run with ./gradlew :benchmark:jmh (set includes in the jmh block below to run a subset).
+// Results are written to benchmark/build/results/jmh/results.json for comparing runs.
+
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// The benchmarked classes are plain Java, so they are compiled straight from :app's sources
+// instead of depending on the Android module.
+val benchmarkedSources = listOf(
+    "Song", "SongStore", "LibrarySnapshot", "LongIntHashMap", "SongListDiff", "SongSearchIndex", "SongSorter",
+    "PlaybackCommand", "PlaybackCommandQueue", "ParametricEqualizer", "EqualizerPreset", "AudioEffectsChain",
+    "LoudnessMeter", "LoudnessCache", "ReadAheadBuffer", "ReadAheadStats", "Trace", "TraceBuffer",
+    "PlaybackController", "PlaybackEngine", "PlaybackState", "PlaybackLatencyTracker", "LatencyHistogram", "CrossfadeCurve"
+)
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            benchmarkedSources.forEach { include("com/example/gaanesuno/$it.java") }
+        }
+    }
+}
+
+// Song imports android.net.Uri for playback; it is only compiled against android.jar and
+// never touched by the benchmarks, so the JVM doesn't need it at runtime.
+val androidJar = run {
+    val properties = java.util.Properties()
+    rootProject.file("local.properties").takeIf { it.exists() }?.inputStream()?.use { properties.load(it) }
+    val sdkDir = properties.getProperty("sdk.dir") ?: System.getenv("ANDROID_HOME")
+    files("$sdkDir/platforms/android-35/android.jar")
+}
+
+dependencies {
+    compileOnly(androidJar)
+    jmhCompileOnly(androidJar)
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh.get())
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    resultFormat.set("JSON")
+    // includes.set(listOf("LookupBenchmark"))
+}
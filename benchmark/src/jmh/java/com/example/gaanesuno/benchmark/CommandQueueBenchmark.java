@@ -0,0 +1,131 @@
+package com.example.gaanesuno.benchmark;
+
+import com.example.gaanesuno.PlaybackCommand;
+import com.example.gaanesuno.PlaybackCommandQueue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency of MusicService's playback command queue, against a
+ * {@link FakePlayer} on a playback thread of its own. The {@code direct} benchmark runs the
+ * same commands on the calling thread, the way the service did before the queue, as the
+ * baseline: it's the time the main thread used to be blocked for. {@code postOnly} is what
+ * the main thread spends on them now.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandQueueBenchmark {
+
+    private static final int BURST = 64;
+
+    /** Simulated cost of loading a song: none (queue overhead only), and a fast local file. */
+    @Param({"0", "200000"})
+    public long loadNanos;
+
+    private ExecutorService playbackThread;
+    private PlaybackCommandQueue queue;
+    private FakePlayer directPlayer;
+    private PlaybackCommand[] burst;
+    private PlaybackCommand seek;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        playbackThread = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Playback");
+            thread.setDaemon(true);
+            return thread;
+        });
+        FakePlayer player = new FakePlayer(1_000, loadNanos);
+        queue = new PlaybackCommandQueue(playbackThread, player::onCommand);
+        directPlayer = new FakePlayer(1_000, loadNanos);
+
+        // What a user does: mostly seeks and play/pause, a skip every few commands
+        burst = new PlaybackCommand[BURST];
+        for (int i = 0; i < BURST; i++) {
+            switch (i % 8) {
+                case 0: burst[i] = PlaybackCommand.next(); break;
+                case 4: burst[i] = PlaybackCommand.pause(); break;
+                case 5: burst[i] = PlaybackCommand.play(); break;
+                default: burst[i] = PlaybackCommand.seek(i * 1_000); break;
+            }
+        }
+        seek = PlaybackCommand.seek(30_000);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        playbackThread.shutdownNow();
+    }
+
+    /** Per command: post a burst from this thread and wait until the playback thread has run it. */
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public long burst_queued() {
+        long target = queue.getPostedCount() + BURST;
+        for (PlaybackCommand command : burst) {
+            queue.post(command);
+        }
+        return awaitExecuted(target);
+    }
+
+    /** Per command: the same burst executed on this thread. */
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public long burst_direct() {
+        for (PlaybackCommand command : burst) {
+            directPlayer.onCommand(command);
+        }
+        return directPlayer.getLoads();
+    }
+
+    /** Per command: only the posting; the burst is drained outside the measurement. */
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void burst_postOnly(Drained drained) {
+        for (PlaybackCommand command : burst) {
+            queue.post(command);
+        }
+    }
+
+    /** Waits after each invocation of burst_postOnly until the playback thread is done with it. */
+    @State(Scope.Thread)
+    public static class Drained {
+        @TearDown(Level.Invocation)
+        public void awaitDrained(CommandQueueBenchmark benchmark) {
+            benchmark.awaitExecuted(benchmark.queue.getPostedCount());
+        }
+    }
+
+    /** Latency distribution of one command from post() until the playback thread has run it. */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long single_roundTrip() {
+        long target = queue.getPostedCount() + 1;
+        queue.post(seek);
+        return awaitExecuted(target);
+    }
+
+    private long awaitExecuted(long target) {
+        long executed;
+        while ((executed = queue.getExecutedCount()) < target) {
+            Thread.yield(); // Not a pure spin: on a single core it would hold off the playback thread
+        }
+        return executed;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.gaanesuno.benchmark;
+
+import com.example.gaanesuno.SongListDiff;
+import com.example.gaanesuno.SongStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The diff SongAdapter runs on its background thread for every list change, including
+ * collecting both id arrays like the adapter does. Scenarios: one song deleted, a batch of
+ * 1,000 deleted, one song retitled, a scan page appended and the whole list shuffled (the
+ * full reorder fallback).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DiffBenchmark {
+
+    private static final SongListDiff.CancellationCheck NEVER_CANCELLED = () -> false;
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    @Param({"deleteOne", "deleteBatch", "editOne", "appendPage", "shuffle"})
+    public String change;
+
+    private SongStore oldStore;
+    private SongStore newStore;
+    private int[] newOrder; // For "shuffle": the new list is oldStore in this order
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        oldStore = SyntheticLibrary.create(size, 42);
+        Random random = new Random(11);
+        switch (change) {
+            case "deleteOne":
+                newStore = oldStore.without(size / 2);
+                break;
+            case "deleteBatch": {
+                long[] removed = new long[1_000];
+                for (int i = 0; i < removed.length; i++) {
+                    removed[i] = oldStore.getId(random.nextInt(size));
+                }
+                newStore = oldStore.withoutIds(removed);
+                break;
+            }
+            case "editOne": {
+                SongStore.Builder builder = new SongStore.Builder(size);
+                for (int i = 0; i < size; i++) {
+                    if (i == size / 3) {
+                        builder.add(oldStore.getId(i), "Retitled", oldStore.getArtist(i), oldStore.getDuration(i),
+                                oldStore.getPath(i), oldStore.getDateModified(i) + 1);
+                    } else {
+                        builder.add(oldStore, i);
+                    }
+                }
+                newStore = builder.build();
+                break;
+            }
+            case "appendPage": {
+                // The scanner publishes pages of 500 songs; the old list is one page short
+                SongStore full = oldStore;
+                SongStore.Builder builder = new SongStore.Builder(size - 500);
+                for (int i = 0; i < size - 500; i++) {
+                    builder.add(full, i);
+                }
+                oldStore = builder.build();
+                newStore = full;
+                break;
+            }
+            case "shuffle": {
+                newOrder = new int[size];
+                for (int i = 0; i < size; i++) newOrder[i] = i;
+                for (int i = size - 1; i > 0; i--) {
+                    int j = random.nextInt(i + 1);
+                    int tmp = newOrder[i];
+                    newOrder[i] = newOrder[j];
+                    newOrder[j] = tmp;
+                }
+                newStore = oldStore;
+                break;
+            }
+            default:
+                throw new IllegalArgumentException(change);
+        }
+    }
+
+    @Benchmark
+    public SongListDiff.Result diff() {
+        long[] oldIds = idsOf(oldStore, null);
+        long[] newIds = idsOf(newStore, newOrder);
+        return SongListDiff.calculate(oldIds, oldIds.length, newIds, newIds.length,
+                (oldPosition, newPosition) -> {
+                    int newRow = newOrder == null ? newPosition : newOrder[newPosition];
+                    return oldStore.getDuration(oldPosition) == newStore.getDuration(newRow)
+                            && Objects.equals(oldStore.getTitle(oldPosition), newStore.getTitle(newRow))
+                            && Objects.equals(oldStore.getArtist(oldPosition), newStore.getArtist(newRow));
+                },
+                NEVER_CANCELLED);
+    }
+
+    private static long[] idsOf(SongStore store, int[] order) {
+        int count = order == null ? store.size() : order.length;
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = store.getId(order == null ? i : order[i]);
+        }
+        return ids;
+    }
+}
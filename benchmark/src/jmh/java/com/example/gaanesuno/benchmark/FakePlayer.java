@@ -0,0 +1,70 @@
+package com.example.gaanesuno.benchmark;
+
+import com.example.gaanesuno.PlaybackCommand;
+
+/**
+ * Stand-in for MusicService's command handlers and its MediaPlayer: the same state
+ * transitions, with a configurable busy-wait for loading a song in place of
+ * reset()/setDataSource()/prepare().
+ */
+final class FakePlayer {
+
+    enum State { IDLE, PREPARED, STARTED, PAUSED }
+
+    private final int queueSize;
+    private final long loadNanos;
+    private State state = State.IDLE;
+    private int index = -1;
+    private int positionMs;
+    private long loads;
+
+    FakePlayer(int queueSize, long loadNanos) {
+        this.queueSize = queueSize;
+        this.loadNanos = loadNanos;
+    }
+
+    void onCommand(PlaybackCommand command) {
+        switch (command.getType()) {
+            case PLAY_INDEX:
+                load(command.getIndex());
+                state = State.STARTED;
+                break;
+            case NEXT:
+                load(index + 1 < queueSize ? index + 1 : 0);
+                state = State.STARTED;
+                break;
+            case PREVIOUS:
+                load(index > 0 ? index - 1 : queueSize - 1);
+                state = State.STARTED;
+                break;
+            case PLAY:
+                if (state == State.IDLE) load(0);
+                state = State.STARTED;
+                break;
+            case PAUSE:
+                if (state == State.STARTED) state = State.PAUSED;
+                break;
+            case SEEK:
+                if (state != State.IDLE) positionMs = command.getIndex();
+                break;
+            default:
+                break;
+        }
+    }
+
+    long getLoads() {
+        return loads;
+    }
+
+    private void load(int newIndex) {
+        state = State.IDLE;
+        long end = System.nanoTime() + loadNanos;
+        while (loadNanos > 0 && System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+        index = newIndex;
+        positionMs = 0;
+        loads++;
+        state = State.PREPARED;
+    }
+}
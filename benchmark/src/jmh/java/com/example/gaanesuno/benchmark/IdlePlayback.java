@@ -0,0 +1,168 @@
+package com.example.gaanesuno.benchmark;
+
+import com.example.gaanesuno.PlaybackController;
+import com.example.gaanesuno.PlaybackEngine;
+import com.example.gaanesuno.PlaybackLatencyTracker;
+import com.example.gaanesuno.Song;
+
+/**
+ * A {@link PlaybackController} with nothing behind it: the host ignores every call except
+ * posted tasks, which run right away, and the engines accept a song but never finish
+ * preparing it. Lets the queue operations of the real controller be measured on their own.
+ */
+final class IdlePlayback {
+
+    private IdlePlayback() {
+    }
+
+    static PlaybackController createController() {
+        return new PlaybackController(new Host(), Engine::new, new NoCrossfade(),
+                PlaybackLatencyTracker.getInstance(), System::currentTimeMillis);
+    }
+
+    private static final class Host implements PlaybackController.Host {
+        @Override
+        public boolean requestAudioFocus() {
+            return true;
+        }
+
+        @Override
+        public float getTrackGain(Song song) {
+            return 1f;
+        }
+
+        @Override
+        public void post(Runnable task) {
+            task.run();
+        }
+
+        @Override
+        public void startProgressUpdates() {
+        }
+
+        @Override
+        public void stopProgressUpdates() {
+        }
+
+        @Override
+        public void showNotification(Song song, boolean isPlaying) {
+        }
+
+        @Override
+        public void removeNotification() {
+        }
+
+        @Override
+        public void onSongChanged(Song song, boolean isPlaying) {
+        }
+
+        @Override
+        public void onPlaybackStateChanged(boolean isPlaying) {
+        }
+
+        @Override
+        public void onProgressUpdate(int positionMs, int durationMs) {
+        }
+
+        @Override
+        public void onSeekComplete() {
+        }
+
+        @Override
+        public void showMessage(String message) {
+        }
+
+        @Override
+        public void log(String message) {
+        }
+    }
+
+    private static final class Engine implements PlaybackEngine {
+        Engine(PlaybackEngine.Callback callback) {
+        }
+
+        @Override
+        public void setSource(Song song) {
+        }
+
+        @Override
+        public void prepareAsync() {
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void pause() {
+        }
+
+        @Override
+        public void seekTo(int positionMs) {
+        }
+
+        @Override
+        public void seekToSync(int positionMs) {
+        }
+
+        @Override
+        public void reset() {
+        }
+
+        @Override
+        public void release() {
+        }
+
+        @Override
+        public boolean isPlaying() {
+            return false;
+        }
+
+        @Override
+        public int getPosition() {
+            return 0;
+        }
+
+        @Override
+        public int getDuration() {
+            return 0;
+        }
+
+        @Override
+        public void setVolume(float volume) {
+        }
+
+        @Override
+        public void setTrackGain(float gain) {
+        }
+
+        @Override
+        public void setLooping(boolean looping) {
+        }
+
+        @Override
+        public void setNext(PlaybackEngine next) {
+        }
+    }
+
+    private static final class NoCrossfade implements PlaybackController.Crossfader {
+        @Override
+        public int schedule(PlaybackEngine from, PlaybackEngine to, long delayMs, long fadeMs) {
+            return 0;
+        }
+
+        @Override
+        public boolean cancel() {
+            return false;
+        }
+
+        @Override
+        public boolean isFading() {
+            return false;
+        }
+
+        @Override
+        public void setVolume(float volume) {
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.gaanesuno.benchmark;
+
+import com.example.gaanesuno.SongSearchIndex;
+import com.example.gaanesuno.SongSorter;
+import com.example.gaanesuno.SongStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-library work done on MainActivity's index executor (building the search index and
+ * the sort orders) and the per-keystroke search on the main thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LibraryIndexBenchmark {
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    private SongStore store;
+    private SongSearchIndex searchIndex;
+    private String[] keystrokes;
+    private int[] rows;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        store = SyntheticLibrary.create(size, 42);
+        searchIndex = SongSearchIndex.build(store);
+        // Type the start of a title word and an artist word, like a user would
+        String typed = store.getTitle(size / 2).split(" ")[0] + " " + store.getArtist(size / 2).substring(0, 3);
+        keystrokes = new String[typed.length()];
+        for (int i = 0; i < keystrokes.length; i++) {
+            keystrokes[i] = typed.substring(0, i + 1);
+        }
+        rows = new int[size];
+    }
+
+    @Benchmark
+    public int search_typeQuery() {
+        int count = 0;
+        for (String keystroke : keystrokes) {
+            count += searchIndex.search(keystroke, store, rows);
+        }
+        return count;
+    }
+
+    @Benchmark
+    public SongSearchIndex build_searchIndex() {
+        return SongSearchIndex.build(store);
+    }
+
+    @Benchmark
+    public SongSorter build_sortOrders() {
+        return SongSorter.build(store, Locale.ENGLISH);
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.gaanesuno.benchmark;
+
+import com.example.gaanesuno.Song;
+import com.example.gaanesuno.SongStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap per track of the loaded library: a list of {@link Song} objects (as the scanner used
+ * to build it) versus the columnar {@link SongStore}. Run with the GC profiler,
+ * {@code -prof gc}, and divide {@code gc.alloc.rate.norm} by {@code size}.
+ *
+ * <p>The strings come from setup, one artist instance per row like Cursor.getString(), so
+ * only what each layout adds per row is counted. Both are built at their final size; the
+ * store's count includes its builder's artist lookup, one entry per artist. The list also
+ * kept every row's artist copy and a Uri per song, neither counted here, so its number is a
+ * lower bound.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LibraryMemoryBenchmark {
+
+    private static final int SONGS_PER_ARTIST = 12;
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    private long[] ids;
+    private String[] titles;
+    private String[] artists;
+    private long[] durations;
+    private String[] paths;
+    private long[] dateModified;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SongStore library = SyntheticLibrary.create(size, 42);
+        ids = new long[size];
+        titles = new String[size];
+        artists = new String[size];
+        durations = new long[size];
+        paths = new String[size];
+        dateModified = new long[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = library.getId(i);
+            titles[i] = library.getTitle(i);
+            // A dozen songs per artist (the synthetic names are nearly all distinct), each row its own copy
+            artists[i] = new String(library.getArtist(i - i % SONGS_PER_ARTIST).toCharArray());
+            durations[i] = library.getDuration(i);
+            paths[i] = library.getPath(i);
+            dateModified[i] = library.getDateModified(i);
+        }
+    }
+
+    @Benchmark
+    public List<Song> songObjects() {
+        List<Song> songs = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            songs.add(new Song(ids[i], titles[i], artists[i], durations[i], paths[i], dateModified[i]));
+        }
+        return songs;
+    }
+
+    @Benchmark
+    public SongStore songStore() {
+        SongStore.Builder builder = new SongStore.Builder(size);
+        for (int i = 0; i < size; i++) {
+            builder.add(ids[i], titles[i], artists[i], durations[i], paths[i], dateModified[i]);
+        }
+        return builder.build();
+    }
+}
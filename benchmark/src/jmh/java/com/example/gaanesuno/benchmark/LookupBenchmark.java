@@ -0,0 +1,130 @@
+package com.example.gaanesuno.benchmark;
+
+import com.example.gaanesuno.LongIntHashMap;
+import com.example.gaanesuno.Song;
+import com.example.gaanesuno.SongStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding a song's position by id (highlighting, playSongWithId, restoring the last song):
+ * the old linear scan, a boxed {@code HashMap<Long, Integer>} and the primitive
+ * {@link LongIntHashMap} behind {@link SongStore#indexOfId}. Building each index is
+ * measured separately, it happens once per library.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LookupBenchmark {
+
+    private static final int LOOKUPS = 1_024;
+    private static final int SCAN_LOOKUPS = 16; // A scan of 1M songs is slow enough with a few
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    private SongStore store;
+    private List<Song> songObjects;
+    private long[] ids;
+    private long[] lookupIds;
+    private Map<Long, Integer> boxedIndex;
+    private LongIntHashMap primitiveIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        store = SyntheticLibrary.create(size, 42);
+        songObjects = SyntheticLibrary.toSongObjects(store);
+        ids = SyntheticLibrary.ids(store);
+        Random random = new Random(3);
+        lookupIds = new long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            lookupIds[i] = ids[random.nextInt(size)];
+        }
+        boxedIndex = buildBoxedIndex();
+        primitiveIndex = buildPrimitiveIndex();
+        store.indexOfId(ids[0]); // Builds the store's own index outside the measurement
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SCAN_LOOKUPS)
+    public int lookup_linearScan() {
+        int sum = 0;
+        for (int i = 0; i < SCAN_LOOKUPS; i++) {
+            long id = lookupIds[i];
+            for (int j = 0; j < songObjects.size(); j++) {
+                if (songObjects.get(j).getId() == id) {
+                    sum += j;
+                    break;
+                }
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int lookup_boxedHashMap() {
+        int sum = 0;
+        for (long id : lookupIds) {
+            sum += boxedIndex.get(id);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int lookup_longIntHashMap() {
+        int sum = 0;
+        for (long id : lookupIds) {
+            sum += primitiveIndex.get(id);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int lookup_songStoreIndexOfId() {
+        int sum = 0;
+        for (long id : lookupIds) {
+            sum += store.indexOfId(id);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public Map<Long, Integer> build_boxedHashMap() {
+        return buildBoxedIndex();
+    }
+
+    @Benchmark
+    public LongIntHashMap build_longIntHashMap() {
+        return buildPrimitiveIndex();
+    }
+
+    private Map<Long, Integer> buildBoxedIndex() {
+        Map<Long, Integer> index = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            index.put(ids[i], i);
+        }
+        return index;
+    }
+
+    private LongIntHashMap buildPrimitiveIndex() {
+        return LongIntHashMap.indexOf(ids, size);
+    }
+}
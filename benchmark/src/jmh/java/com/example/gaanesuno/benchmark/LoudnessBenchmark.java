@@ -0,0 +1,60 @@
+package com.example.gaanesuno.benchmark;
+
+import com.example.gaanesuno.LoudnessMeter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loudness measuring speed in stereo frames per second, on decoder-sized blocks of 1152
+ * frames (an MP3 frame). Divided by 48,000 it is how many times faster than real time a song
+ * is measured, before the decoding the device does as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class LoudnessBenchmark {
+
+    private static final int SAMPLE_RATE = 48_000;
+    private static final int FRAMES = 1_152;
+
+    private float[] floatBlock;
+    private short[] pcm16Block;
+    private LoudnessMeter meter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(18);
+        floatBlock = new float[FRAMES * 2];
+        pcm16Block = new short[FRAMES * 2];
+        for (int i = 0; i < floatBlock.length; i++) {
+            floatBlock[i] = (float) (random.nextGaussian() * 0.2);
+            pcm16Block[i] = (short) Math.max(-32768, Math.min(32767, floatBlock[i] * 32768));
+        }
+        meter = new LoudnessMeter(2, SAMPLE_RATE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public long measureFloat() {
+        meter.process(floatBlock, 0, FRAMES);
+        return meter.getFrames();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public long measurePcm16() {
+        meter.process(pcm16Block, 0, FRAMES);
+        return meter.getFrames();
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.gaanesuno.benchmark;
+
+import com.example.gaanesuno.PlaybackController;
+import com.example.gaanesuno.Song;
+import com.example.gaanesuno.SongStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What MusicService does to its queue: take a new library ({@code setSongList}), shuffle it
+ * around the current song ({@code shuffleSongList}) and go back to library order
+ * ({@code resetActiveSongListOrder}). Each operation is measured the way the service does
+ * it now (shared {@link SongStore}, shuffled int order) and the way it did with copied
+ * {@code ArrayList<Song>}s, so the baseline stays visible. The shuffle runs in the real
+ * {@link PlaybackController}, on engines that never finish loading.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QueueBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    private SongStore store;
+    private List<Song> songObjects;
+    private Song currentSong;
+    private Random random;
+    private PlaybackController controller;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        store = SyntheticLibrary.create(size, 42);
+        songObjects = SyntheticLibrary.toSongObjects(store);
+        currentSong = songObjects.get(size * 2 / 3); // Somewhere deep in the list, like a real queue
+        random = new Random(7);
+        controller = IdlePlayback.createController();
+        controller.setSongList(store);
+        controller.playSong(size * 2 / 3);
+    }
+
+    // --- setSongList ---
+
+    @Benchmark
+    public void setSongList_copyLists(Blackhole blackhole) {
+        // Before SongStore: the library and the active list were copied on every update
+        blackhole.consume(new ArrayList<>(songObjects));
+        blackhole.consume(new ArrayList<>(songObjects));
+    }
+
+    @Benchmark
+    public SongStore setSongList_shareStore() {
+        return store; // The store is immutable and shared, nothing is copied
+    }
+
+    // --- shuffleSongList ---
+
+    @Benchmark
+    public List<Song> shuffle_copyList() {
+        List<Song> shuffled = new ArrayList<>(songObjects);
+        int originalIndex = -1;
+        for (int i = 0; i < shuffled.size(); i++) {
+            if (shuffled.get(i).getId() == currentSong.getId()) {
+                originalIndex = i;
+                break;
+            }
+        }
+        Song playing = shuffled.remove(originalIndex);
+        Collections.shuffle(shuffled, random);
+        shuffled.add(0, playing);
+        return shuffled;
+    }
+
+    @Benchmark
+    public List<Song> shuffle_rowOrder() {
+        controller.setShuffle(true); // Shuffles again on every call, around the current song
+        return controller.getActiveSongList();
+    }
+
+    // --- resetActiveSongListOrder ---
+
+    @Benchmark
+    public int reset_copyAndScan(Blackhole blackhole) {
+        List<Song> active = new ArrayList<>(songObjects);
+        blackhole.consume(active);
+        for (int i = 0; i < songObjects.size(); i++) {
+            if (songObjects.get(i).getId() == currentSong.getId()) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    @Benchmark
+    public int reset_shareAndLookUp(Blackhole blackhole) {
+        blackhole.consume(store);
+        return store.indexOfId(currentSong.getId());
+    }
+}
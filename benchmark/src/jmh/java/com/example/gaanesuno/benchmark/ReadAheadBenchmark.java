@@ -0,0 +1,102 @@
+package com.example.gaanesuno.benchmark;
+
+import com.example.gaanesuno.ReadAheadBuffer;
+import com.example.gaanesuno.ReadAheadStats;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost the read-ahead ring adds on top of the storage: reads of {@code readSize} per second
+ * (times readSize for bytes) from a file already in memory, so only the copying and the
+ * hand-over between the prefetch thread and the reader are measured. Real storage is orders
+ * of magnitude slower than either score.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ReadAheadBenchmark {
+
+    private static final int FILE_BYTES = 8 * 1024 * 1024;
+    private static final int CAPACITY = 1024 * 1024;
+
+    @Param({"4096", "65536"})
+    public int readSize;
+
+    private byte[] file;
+    private byte[] target;
+    private ReadAheadBuffer buffer;
+    private long position;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = new byte[FILE_BYTES];
+        new Random(19).nextBytes(file);
+        target = new byte[readSize];
+        buffer = new ReadAheadBuffer(new ArraySource(file), CAPACITY, new ReadAheadStats());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        buffer.close();
+    }
+
+    /** Sequential reads through the ring, wrapping to the start of the file at its end (one seek). */
+    @Benchmark
+    public int buffered() throws IOException {
+        if (position >= FILE_BYTES) {
+            position = 0;
+        }
+        int count = buffer.readAt(position, target, 0, readSize);
+        position += count;
+        return count;
+    }
+
+    /** The same reads straight from the array, the floor for the copy alone. */
+    @Benchmark
+    public int direct() {
+        if (position >= FILE_BYTES) {
+            position = 0;
+        }
+        int count = (int) Math.min(readSize, FILE_BYTES - position);
+        System.arraycopy(file, (int) position, target, 0, count);
+        position += count;
+        return count;
+    }
+
+    private static final class ArraySource implements ReadAheadBuffer.Source {
+        private final byte[] file;
+
+        ArraySource(byte[] file) {
+            this.file = file;
+        }
+
+        @Override
+        public long size() {
+            return file.length;
+        }
+
+        @Override
+        public int read(long position, byte[] buffer, int offset, int length) {
+            int count = (int) Math.min(length, file.length - position);
+            System.arraycopy(file, (int) position, buffer, offset, count);
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
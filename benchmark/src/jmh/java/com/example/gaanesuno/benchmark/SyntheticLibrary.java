@@ -0,0 +1,82 @@
+package com.example.gaanesuno.benchmark;
+
+import com.example.gaanesuno.Song;
+import com.example.gaanesuno.SongStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates reproducible libraries that look like a MediaStore scan: mostly consecutive ids
+ * with gaps, titles made of a few thousand made-up words, artists shared by about a dozen
+ * songs each, durations between 1 and 10 minutes, sorted by title like the scan query.
+ */
+public final class SyntheticLibrary {
+
+    private static final String[] SYLLABLES = {
+            "ka", "ri", "mo", "an", "te", "lu", "sha", "ve", "do", "ni", "pa", "ro", "mi", "ya", "zu", "el"
+    };
+
+    private SyntheticLibrary() {
+    }
+
+    /** A library of {@code size} songs, the same for the same seed. */
+    public static SongStore create(int size, long seed) {
+        Random random = new Random(seed);
+        String[] vocabulary = new String[5_000];
+        for (int i = 0; i < vocabulary.length; i++) {
+            StringBuilder word = new StringBuilder();
+            for (int s = 2 + random.nextInt(3); s > 0; s--) {
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            vocabulary[i] = word.toString();
+        }
+
+        String[] titles = new String[size];
+        for (int i = 0; i < size; i++) {
+            StringBuilder title = new StringBuilder();
+            for (int w = 1 + random.nextInt(4); w > 0; w--) {
+                if (title.length() > 0) title.append(' ');
+                title.append(vocabulary[zipf(random, vocabulary.length)]);
+            }
+            titles[i] = title.toString();
+        }
+        Arrays.sort(titles); // MediaStore returns TITLE ASC
+
+        SongStore.Builder builder = new SongStore.Builder(size);
+        long id = 1_000;
+        for (int i = 0; i < size; i++) {
+            id += random.nextInt(20) == 0 ? 1 + random.nextInt(50) : 1; // Deleted songs leave gaps
+            String artist = vocabulary[random.nextInt(Math.max(1, size / 12)) % vocabulary.length]
+                    + " " + vocabulary[zipf(random, vocabulary.length)];
+            long duration = 60_000 + random.nextInt(540_000);
+            builder.add(id, titles[i], artist, duration, "/storage/emulated/0/Music/" + id + ".mp3",
+                    1_600_000_000L + random.nextInt(100_000_000));
+        }
+        return builder.build();
+    }
+
+    /** The same songs as separate {@link Song} objects, like the list the app kept before SongStore. */
+    public static List<Song> toSongObjects(SongStore store) {
+        List<Song> songs = new ArrayList<>(store.size());
+        for (int i = 0; i < store.size(); i++) {
+            songs.add(store.get(i));
+        }
+        return songs;
+    }
+
+    /** Ids of every song in library order. */
+    public static long[] ids(SongStore store) {
+        long[] ids = new long[store.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = store.getId(i);
+        }
+        return ids;
+    }
+
+    private static int zipf(Random random, int n) {
+        return (int) Math.min(n - 1, Math.floor(Math.pow(n, random.nextDouble())) - 1);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.gaanesuno.benchmark;
+
+import com.example.gaanesuno.Trace;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a trace point per call: skipped by its level (what release builds pay for the
+ * per-frame points), recorded into the ring, and the string concatenation the old
+ * {@code Log.d} calls built whether or not anything was logged.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TraceBenchmark {
+
+    private static final Trace.Point VERBOSE_POINT = Trace.point("Benchmark", Trace.VERBOSE, "Position {}/{} ms");
+    private static final Trace.Point DEBUG_POINT = Trace.point("Benchmark", Trace.DEBUG, "Position {}/{} ms");
+
+    private int position;
+
+    @Setup
+    public void setUp() {
+        Trace.setLevel(Trace.DEBUG);
+        Trace.setSink(null);
+    }
+
+    @Benchmark
+    public void disabledPoint() {
+        VERBOSE_POINT.log(position++, 180_000);
+    }
+
+    @Benchmark
+    public void recordedPoint() {
+        DEBUG_POINT.log(position++, 180_000);
+    }
+
+    /** What {@code Log.d(TAG, "Position " + a + "/" + b)} built before Log even looked at it. */
+    @Benchmark
+    public String concatenation() {
+        return "Position " + position++ + "/" + 180_000 + " ms";
+    }
+}